@@ -0,0 +1,76 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.startup.StartupCoordinator;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Схема, которую открывает экран покупателя в замерах на устройстве.
+ */
+final class BenchmarkMaps {
+    static final int MAP_WIDTH = 4000;
+    static final int MAP_HEIGHT = 3000;
+    static final int SECTION_COUNT = 200;
+
+    private BenchmarkMaps() {
+    }
+
+    /**
+     * Экран покупателя открывает первую схему базы приложения. Если ее нет, создается схема
+     * {@link #MAP_WIDTH}x{@link #MAP_HEIGHT} с {@link #SECTION_COUNT} разделами; если есть,
+     * замер пропускается без файла изображения.
+     * @param context Контекст приложения
+     * @return Идентификатор схемы
+     */
+    static long ensureDefaultMap(Context context) throws IOException {
+        long mapId = StartupCoordinator.DEFAULT_MAP_ID;
+        StoreDbHelper dbHelper = StoreDbHelper.getInstance(context);
+        String imagePath = dbHelper.getStoreMapPath(mapId);
+        if (imagePath == null) {
+            File mapFile = new File(context.getFilesDir(), "benchmark_map.png");
+            writeMapImage(mapFile);
+            assertEquals(mapId, dbHelper.saveStoreMap("Benchmark", mapFile.getAbsolutePath()));
+            for (int i = 0; i < SECTION_COUNT; i++) {
+                dbHelper.addSection(new StoreSection(0, "Раздел " + i,
+                        (i % 20) * MAP_WIDTH / 20f + 50, (i / 20) * MAP_HEIGHT / 10f + 50), mapId);
+            }
+        } else {
+            assumeTrue("Изображение первой схемы не найдено: " + imagePath, new File(imagePath).exists());
+        }
+        return mapId;
+    }
+
+    private static void writeMapImage(File file) throws IOException {
+        Bitmap bitmap = Bitmap.createBitmap(MAP_WIDTH, MAP_HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+        Paint paint = new Paint();
+        // Стеллажи разных цветов, чтобы PNG сжимался как настоящая схема, а не как заливка
+        for (int i = 0; i < SECTION_COUNT; i++) {
+            paint.setColor(Color.rgb(60 + i % 7 * 25, 90 + i % 5 * 30, 120 + i % 3 * 40));
+            float left = (i % 20) * MAP_WIDTH / 20f + 20;
+            float top = (i / 20) * MAP_HEIGHT / 10f + 20;
+            canvas.drawRect(left, top, left + MAP_WIDTH / 20f - 40, top + MAP_HEIGHT / 10f - 40, paint);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.writeback.WriteBehindQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Замер скорости ручного добавления товаров: по одному товару в транзакции
+ * ({@link StoreDbHelper#addProduct}) против очереди с групповой фиксацией.
+ * База хранится в файле, чтобы в замер попадала синхронизация журнала с диском.
+ * Результаты выводятся в logcat с тегом OperatorWriteBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OperatorWriteBenchmark {
+
+    private static final String TAG = "OperatorWriteBenchmark";
+    private static final String DATABASE_NAME = "write_benchmark.db";
+    private static final int PRODUCT_COUNT = 500;
+
+    private Context context;
+    private StoreDbHelper dbHelper;
+    private long sectionId;
+
+    @Before
+    public void createDb() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        dbHelper = new StoreDbHelper(context, DATABASE_NAME);
+        long mapId = dbHelper.saveStoreMap("Benchmark", "/benchmark/map.png");
+        sectionId = dbHelper.addSection(new StoreSection(0, "Бакалея", 10, 10), mapId);
+    }
+
+    @After
+    public void closeDb() {
+        dbHelper.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void compareSingleAndGroupCommit() throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            assertTrue(dbHelper.addProduct(product("Крупа " + i)) != -1);
+        }
+        long singleMs = SystemClock.elapsedRealtime() - start;
+
+        WriteBehindQueue queue = new WriteBehindQueue(dbHelper.getWriteStore(), 64, 10);
+        List<Future<Long>> ids = new ArrayList<>(PRODUCT_COUNT);
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            ids.add(queue.submit(dbHelper.productWrite(product("Макароны " + i))));
+        }
+        queue.flush();
+        long groupMs = SystemClock.elapsedRealtime() - start;
+        queue.close();
+
+        Log.i(TAG, "transaction per insert: " + insertsPerSecond(singleMs) + " inserts/s, " +
+                "group commit: " + insertsPerSecond(groupMs) + " inserts/s");
+
+        for (Future<Long> id : ids) {
+            assertTrue(id.isDone());
+            assertTrue(id.get() != -1);
+        }
+        assertEquals(2 * PRODUCT_COUNT, dbHelper.getProductsBySection(sectionId).size());
+    }
+
+    private Product product(String name) {
+        Product product = new Product();
+        product.setName(name);
+        product.setSectionId(sectionId);
+        return product;
+    }
+
+    private static long insertsPerSecond(long elapsedMs) {
+        return PRODUCT_COUNT * 1000L / Math.max(1, elapsedMs);
+    }
+}
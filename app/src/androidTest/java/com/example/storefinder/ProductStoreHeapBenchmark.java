@@ -0,0 +1,71 @@
+package com.example.storefinder;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.storefinder.catalog.ColumnarProductStore;
+import com.example.storefinder.catalog.ProductView;
+import com.example.storefinder.models.Product;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Сравнение объема кучи: список объектов {@link Product} против {@link ColumnarProductStore}.
+ * Результаты выводятся в logcat с тегом ProductStoreHeap.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductStoreHeapBenchmark {
+
+    private static final String TAG = "ProductStoreHeap";
+    private static final int PRODUCT_COUNT = 1000000;
+
+    @Test
+    public void compareHeapUsage() {
+        long baseline = usedHeap();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            products.add(new Product(i + 1, productName(i), i % 400));
+        }
+        long listBytes = usedHeap() - baseline;
+        assertEquals(PRODUCT_COUNT, products.size());
+        products = null;
+
+        baseline = usedHeap();
+        ColumnarProductStore store = new ColumnarProductStore();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            store.add(i + 1, i % 400, productName(i));
+        }
+        store.trimToSize();
+        long storeBytes = usedHeap() - baseline;
+
+        Log.i(TAG, "List<Product>: " + listBytes / PRODUCT_COUNT + " bytes/product, " +
+                "ColumnarProductStore: " + storeBytes / PRODUCT_COUNT + " bytes/product (estimate " +
+                store.estimateHeapBytes() / PRODUCT_COUNT + ")");
+
+        // Обход через переиспользуемое представление
+        ProductView view = new ProductView();
+        assertEquals(PRODUCT_COUNT, store.view(PRODUCT_COUNT - 1, view).getId());
+        assertEquals(productName(PRODUCT_COUNT - 1), view.getName());
+        assertTrue(storeBytes < listBytes);
+    }
+
+    private static String productName(int i) {
+        return "Товар номер " + i + " упаковка " + (i % 17);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.models.StoreSection;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Замер скорости преобразования строк курсора на 100 тыс. товаров:
+ * прежний вариант (SELECT * и getColumnIndex на каждой строке) против
+ * запроса с проекцией и преобразователя строк.
+ * Результаты выводятся в logcat с тегом RowMappingBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RowMappingBenchmark {
+
+    private static final String TAG = "RowMappingBenchmark";
+    private static final int ROW_COUNT = 100000;
+
+    private StoreDbHelper dbHelper;
+    private long sectionId;
+
+    @Before
+    public void fillDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        dbHelper = new StoreDbHelper(context, null);
+        long mapId = dbHelper.saveStoreMap("Benchmark", "/benchmark/map.png");
+        sectionId = dbHelper.addSection(new StoreSection(0, "Бакалея", 10, 10), mapId);
+
+        // Прямая вставка без поискового индекса: замеряется только чтение
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO products (name, section_id) VALUES (?, ?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                insert.bindString(1, "Товар номер " + i);
+                insert.bindLong(2, sectionId);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    @After
+    public void closeDb() {
+        dbHelper.close();
+    }
+
+    @Test
+    public void compareRowMapping() {
+        // Прогрев кэша страниц SQLite
+        readLegacy();
+
+        long start = SystemClock.elapsedRealtime();
+        List<Product> legacy = readLegacy();
+        long legacyMs = SystemClock.elapsedRealtime() - start;
+
+        start = SystemClock.elapsedRealtime();
+        List<Product> mapped = dbHelper.getProductsBySection(sectionId);
+        long mappedMs = SystemClock.elapsedRealtime() - start;
+
+        Log.i(TAG, "SELECT * + getColumnIndex: " + rowsPerSecond(legacyMs) + " rows/s, " +
+                "projection + RowMapper: " + rowsPerSecond(mappedMs) + " rows/s");
+
+        assertEquals(ROW_COUNT, legacy.size());
+        assertEquals(ROW_COUNT, mapped.size());
+        assertEquals(legacy.get(ROW_COUNT - 1).getName(), mapped.get(ROW_COUNT - 1).getName());
+    }
+
+    /**
+     * Чтение в том виде, в котором оно было до перехода на преобразователи строк.
+     */
+    private List<Product> readLegacy() {
+        List<Product> productList = new ArrayList<>();
+        Cursor cursor = dbHelper.getReadableDatabase().rawQuery(
+                "SELECT * FROM products WHERE section_id = " + sectionId + " ORDER BY id", null);
+        if (cursor.moveToFirst()) {
+            do {
+                Product product = new Product();
+                product.setId(cursor.getLong(cursor.getColumnIndex("id")));
+                product.setName(cursor.getString(cursor.getColumnIndex("name")));
+                product.setSectionId(cursor.getLong(cursor.getColumnIndex("section_id")));
+                productList.add(product);
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return productList;
+    }
+
+    private static long rowsPerSecond(long elapsedMs) {
+        return ROW_COUNT * 1000L / Math.max(1, elapsedMs);
+    }
+}
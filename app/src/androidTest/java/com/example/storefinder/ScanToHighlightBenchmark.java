@@ -0,0 +1,155 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.InputDevice;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.importer.ImportResult;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.models.SectionRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Замер времени от последнего символа сканера (Enter) до выделения раздела товара на схеме.
+ * Серия символов передается экрану покупателя как события аппаратной клавиатуры
+ * с интервалом сканера. Цель — медиана не больше 30 мс.
+ * Результаты выводятся в logcat с тегом ScanToHighlightBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScanToHighlightBenchmark {
+
+    private static final String TAG = "ScanToHighlightBenchmark";
+    private static final int PRODUCT_COUNT = 10000;
+    private static final int SCANS = 20;
+    private static final long KEY_INTERVAL_MS = 5;
+    private static final long TARGET_MS = 30;
+    private static final long TIMEOUT_MS = 10000;
+
+    private Context context;
+    private int keyboardId;
+    private boolean metricsEnabled;
+
+    @Before
+    public void importBarcodes() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        metricsEnabled = Metrics.isEnabled();
+        Metrics.setEnabled(true);
+        keyboardId = findHardwareKeyboard();
+        assumeTrue("Нет аппаратной клавиатуры для событий сканера", keyboardId != KeyCharacterMap.VIRTUAL_KEYBOARD);
+
+        long mapId = BenchmarkMaps.ensureDefaultMap(context);
+        StoreDbHelper dbHelper = StoreDbHelper.getInstance(context);
+        SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+        assumeTrue("У первой схемы нет разделов", registry.size() > 0);
+
+        // Повторный запуск обновляет те же товары, а не добавляет новые
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < PRODUCT_COUNT; i++) {
+            csv.append("Сканируемый товар ").append(i).append(',')
+                    .append(registry.getName(i % registry.size())).append(',')
+                    .append(barcode(i)).append('\n');
+        }
+        ImportResult imported = dbHelper.importProductsFromCSV(csv.toString(), mapId, false);
+        assertEquals(imported.toString(), 0, imported.getSkipped());
+    }
+
+    @After
+    public void restoreMetrics() {
+        Metrics.setEnabled(metricsEnabled);
+    }
+
+    @Test
+    public void scanHighlightsWithinTarget() {
+        LatencyHistogram timeToInteractive = Metrics.histogram("startup.customer_tti");
+        LatencyHistogram scanToHighlight = Metrics.histogram("ui.scan_to_highlight");
+        timeToInteractive.reset();
+        ActivityScenario<CustomerActivity> scenario = ActivityScenario.launch(CustomerActivity.class);
+        try {
+            awaitCount(timeToInteractive, 1);
+            scanToHighlight.reset();
+            for (int scan = 0; scan < SCANS; scan++) {
+                final String code = barcode(scan * (PRODUCT_COUNT / SCANS));
+                scenario.onActivity(new ActivityScenario.ActivityAction<CustomerActivity>() {
+                    @Override
+                    public void perform(CustomerActivity activity) {
+                        typeScan(activity, code);
+                    }
+                });
+                awaitCount(scanToHighlight, scan + 1);
+            }
+        } finally {
+            scenario.close();
+        }
+
+        LatencyHistogram.Snapshot snapshot = scanToHighlight.snapshot();
+        long p50Ms = snapshot.getP50Nanos() / 1000000;
+        Log.i(TAG, "scan to highlight: p50 " + p50Ms + " ms, p95 " + snapshot.getP95Nanos() / 1000000 +
+                " ms, max " + snapshot.getMaxNanos() / 1000000 + " ms (" + PRODUCT_COUNT + " barcodes)");
+        assertTrue("Медиана от сканирования до выделения " + p50Ms + " мс, цель " + TARGET_MS + " мс",
+                p50Ms <= TARGET_MS);
+    }
+
+    /**
+     * Передает экрану код так, как его вводит сканер: символы через {@link #KEY_INTERVAL_MS} и Enter.
+     */
+    private void typeScan(CustomerActivity activity, String code) {
+        long time = SystemClock.uptimeMillis();
+        for (int i = 0; i < code.length(); i++) {
+            pressKey(activity, KeyEvent.KEYCODE_0 + (code.charAt(i) - '0'), time);
+            time += KEY_INTERVAL_MS;
+        }
+        pressKey(activity, KeyEvent.KEYCODE_ENTER, time);
+    }
+
+    private void pressKey(CustomerActivity activity, int keyCode, long time) {
+        KeyEvent down = new KeyEvent(time, time, KeyEvent.ACTION_DOWN, keyCode, 0, 0, keyboardId, 0);
+        activity.dispatchKeyEvent(down);
+        activity.dispatchKeyEvent(KeyEvent.changeAction(down, KeyEvent.ACTION_UP));
+    }
+
+    private static void awaitCount(LatencyHistogram histogram, long count) {
+        long start = SystemClock.elapsedRealtime();
+        while (histogram.snapshot().getCount() < count) {
+            assertTrue("Нет записи в " + histogram.getName(), SystemClock.elapsedRealtime() - start < TIMEOUT_MS);
+            SystemClock.sleep(1);
+        }
+    }
+
+    /**
+     * События с идентификатором экранной клавиатуры экран покупателя не считает вводом сканера,
+     * поэтому нужна клавиатура устройства (на эмуляторе она есть при hw.keyboard=yes).
+     * @return Идентификатор клавиатуры или {@link KeyCharacterMap#VIRTUAL_KEYBOARD}, если ее нет
+     */
+    private static int findHardwareKeyboard() {
+        for (int id : InputDevice.getDeviceIds()) {
+            InputDevice device = InputDevice.getDevice(id);
+            if (id != KeyCharacterMap.VIRTUAL_KEYBOARD && device != null
+                    && device.getKeyboardType() == InputDevice.KEYBOARD_TYPE_ALPHABETIC) {
+                return id;
+            }
+        }
+        return KeyCharacterMap.VIRTUAL_KEYBOARD;
+    }
+
+    private static String barcode(int index) {
+        return String.format(Locale.US, "460%010d", index);
+    }
+}
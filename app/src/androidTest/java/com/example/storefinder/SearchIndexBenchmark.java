@@ -0,0 +1,116 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.search.RussianNormalizer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Замер пропускной способности построения поискового индекса на 1 млн названий.
+ * Результаты выводятся в logcat с тегом SearchIndexBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SearchIndexBenchmark {
+
+    private static final String TAG = "SearchIndexBenchmark";
+    private static final int NAME_COUNT = 1000000;
+
+    private static final String[] NOUNS = {
+            "Молоко", "Кефир", "Сыр", "Хлеб", "Батон", "Яблоки", "Груши", "Сок", "Чай", "Кофе",
+            "Печенье", "Конфеты", "Макароны", "Рис", "Гречка", "Масло", "Йогурт", "Сметана"};
+    private static final String[] ADJECTIVES = {
+            "домашнее", "отборные", "классический", "свежий", "ароматный", "зеленый",
+            "натуральный", "сливочное", "цельнозерновой", "детское"};
+    private static final String[] BRANDS = {
+            "Простоквашино", "Весёлый молочник", "Добрый", "Ёлочка", "Агуша", "Савушкин"};
+
+    private StoreDbHelper dbHelper;
+
+    @Before
+    public void createDb() {
+        Context context = ApplicationProvider.getApplicationContext();
+        // База данных в памяти, чтобы замер не зависел от состояния файла store.db
+        dbHelper = new StoreDbHelper(context, null);
+    }
+
+    @After
+    public void closeDb() {
+        dbHelper.close();
+    }
+
+    /**
+     * Замер нормализации названий без записи в базу данных.
+     */
+    @Test
+    public void benchmarkNormalization() {
+        String[] names = generateNames(NAME_COUNT);
+
+        long start = SystemClock.elapsedRealtime();
+        int totalTerms = 0;
+        for (String name : names) {
+            totalTerms += RussianNormalizer.tokens(name).size();
+        }
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        Log.i(TAG, "normalize: " + NAME_COUNT + " names in " + elapsed + " ms, " +
+                (NAME_COUNT * 1000L / elapsed) + " names/s, " + totalTerms + " terms");
+        assertTrue(totalTerms >= NAME_COUNT);
+    }
+
+    /**
+     * Замер импорта с построением нормализованных названий и индекса слов.
+     */
+    @Test
+    public void benchmarkIndexBuild() {
+        long mapId = dbHelper.saveStoreMap("Benchmark Map", "/benchmark/map.png");
+        StoreSection section = new StoreSection();
+        section.setName("Бакалея");
+        dbHelper.addSection(section, mapId);
+
+        String[] names = generateNames(NAME_COUNT);
+        StringBuilder csv = new StringBuilder(NAME_COUNT * 40);
+        for (String name : names) {
+            csv.append(name).append(",Бакалея\n");
+        }
+
+        long start = SystemClock.elapsedRealtime();
+        int imported = dbHelper.importProductsFromCSV(csv.toString(), mapId);
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        Log.i(TAG, "index build: " + imported + " products in " + elapsed + " ms, " +
+                (imported * 1000L / elapsed) + " products/s");
+        assertEquals(NAME_COUNT, imported);
+        assertTrue(dbHelper.countProducts("молока") > 0);
+    }
+
+    /**
+     * Генерирует детерминированный набор названий товаров.
+     * @param count Количество названий
+     * @return Массив названий
+     */
+    private static String[] generateNames(int count) {
+        Random random = new Random(42);
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = NOUNS[random.nextInt(NOUNS.length)] + " " +
+                    ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " " +
+                    BRANDS[random.nextInt(BRANDS.length)] + " " + (i % 1000);
+        }
+        return names;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.storefinder;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.models.SectionRegistry;
+import com.example.storefinder.startup.StartupCoordinator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Замер времени до готовности экрана покупателя (схема и разделы показаны): загрузка
+ * в главном потоке, как в onCreate до {@link StartupCoordinator}, против подготовки в фоне.
+ * Прежний путь воспроизводится напрямую: реестр разделов, полноразмерное декодирование схемы
+ * и ее изменяемая копия; к нему прибавляется время запуска активности, общее у обоих путей.
+ * База открыта в обоих случаях, поэтому сравнивается прежде всего работа со схемой.
+ * Схема готовится {@link BenchmarkMaps#ensureDefaultMap}. Результаты (медианы) выводятся
+ * в logcat с тегом StartupBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String TAG = "StartupBenchmark";
+    private static final int RUNS = 5;
+    private static final long READY_TIMEOUT_MS = 10000;
+
+    private Context context;
+    private long mapId;
+    private boolean metricsEnabled;
+
+    @Before
+    public void createMap() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        metricsEnabled = Metrics.isEnabled();
+        Metrics.setEnabled(true);
+        mapId = BenchmarkMaps.ensureDefaultMap(context);
+    }
+
+    @After
+    public void restoreMetrics() {
+        Metrics.setEnabled(metricsEnabled);
+    }
+
+    @Test
+    public void compareSynchronousAndPreparedStartup() {
+        long[] launchMs = new long[RUNS];
+        long[] preparedMs = new long[RUNS];
+        long[] synchronousMs = new long[RUNS];
+        LatencyHistogram timeToInteractive = Metrics.histogram("startup.customer_tti");
+
+        for (int run = 0; run < RUNS; run++) {
+            // Подготовленные заранее данные не используются: каждый запуск загружает схему заново
+            StartupCoordinator.getInstance(context).invalidate();
+            timeToInteractive.reset();
+            long start = SystemClock.elapsedRealtime();
+            ActivityScenario<CustomerActivity> scenario = ActivityScenario.launch(CustomerActivity.class);
+            launchMs[run] = SystemClock.elapsedRealtime() - start;
+            while (timeToInteractive.snapshot().getCount() == 0) {
+                assertTrue("Экран покупателя не получил данные схемы",
+                        SystemClock.elapsedRealtime() - start < READY_TIMEOUT_MS);
+                SystemClock.sleep(2);
+            }
+            preparedMs[run] = SystemClock.elapsedRealtime() - start;
+            scenario.close();
+
+            synchronousMs[run] = launchMs[run] + loadOnMainThread();
+        }
+
+        long prepared = median(preparedMs);
+        long synchronous = median(synchronousMs);
+        Log.i(TAG, "time to interactive: main-thread load " + synchronous + " ms, " +
+                "prepared in background " + prepared + " ms (activity launch " + median(launchMs) + " ms)");
+        assertTrue("Подготовка в фоне не должна быть медленнее загрузки в главном потоке",
+                prepared <= synchronous);
+    }
+
+    /**
+     * Загружает данные экрана так, как это делал onCreate до подготовки в фоне.
+     * @return Время загрузки в главном потоке, мс
+     */
+    private long loadOnMainThread() {
+        final long[] elapsed = new long[1];
+        final boolean[] loaded = new boolean[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                long start = SystemClock.elapsedRealtime();
+                StoreDbHelper dbHelper = StoreDbHelper.getInstance(context);
+                SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+                Bitmap original = BitmapFactory.decodeFile(dbHelper.getStoreMapPath(mapId));
+                Bitmap mutable = original != null ? original.copy(original.getConfig(), true) : null;
+                elapsed[0] = SystemClock.elapsedRealtime() - start;
+
+                loaded[0] = registry.size() > 0 && mutable != null;
+                if (mutable != null) {
+                    mutable.recycle();
+                    original.recycle();
+                }
+            }
+        });
+        assertTrue("Схема не загрузилась в главном потоке", loaded[0]);
+        return elapsed[0];
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -5,15 +5,32 @@ import android.content.Context;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.example.storefinder.analytics.AnalyticsStore;
+import com.example.storefinder.analytics.QueryStats;
+import com.example.storefinder.analytics.SearchEvent;
+import com.example.storefinder.analytics.SectionDemand;
+import com.example.storefinder.catalog.ColumnarProductStore;
+import com.example.storefinder.database.SearchPage;
+import com.example.storefinder.database.SearchResultCache;
 import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.importer.FloorPlanParser;
+import com.example.storefinder.importer.ImportResult;
+import com.example.storefinder.importer.SectionLayoutParser;
+import com.example.storefinder.invalidation.InvalidationTracker;
+import com.example.storefinder.models.FloorPlan;
 import com.example.storefinder.models.Product;
+import com.example.storefinder.models.SectionRegistry;
 import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.sync.CatalogDeltaHandler;
+import com.example.storefinder.sync.CatalogStore;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -89,6 +106,40 @@ public class StoreDbHelperTest {
         assertEquals("Section 1", sections.get(0).getName());
     }
 
+    /**
+     * Тест на реестр разделов: загрузка из базы и обновление при добавлении раздела.
+     */
+    @Test
+    public void testSectionRegistry() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection section1 = new StoreSection(0, "Registry 1", 10.0f, 20.0f);
+        long sectionId1 = dbHelper.addSection(section1, mapId);
+
+        SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+        assertEquals(1, registry.size());
+        int index1 = registry.indexOf(sectionId1);
+        assertEquals("Registry 1", registry.getName(index1));
+        assertEquals(10.0f, registry.getX(index1), 0.0f);
+
+        // Новый раздел попадает в копию реестра; прежний экземпляр не меняется
+        StoreSection section2 = new StoreSection(0, "Registry 2", 300.0f, 400.0f);
+        long sectionId2 = dbHelper.addSection(section2, mapId);
+        SectionRegistry updated = dbHelper.getSectionRegistry(mapId);
+        assertNotSame(registry, updated);
+        assertEquals(1, registry.size());
+        assertEquals(SectionRegistry.NOT_FOUND, registry.indexOf(sectionId2));
+        assertEquals(2, updated.size());
+        assertEquals(400.0f, updated.getY(updated.indexOf(sectionId2)), 0.0f);
+        registry = updated;
+        index1 = registry.indexOf(sectionId1);
+
+        // Поиск раздела по касанию рядом с меткой
+        assertEquals(index1, registry.hitTest(12.0f, 18.0f, 30.0f));
+        assertEquals(SectionRegistry.NOT_FOUND, registry.hitTest(150.0f, 150.0f, 30.0f));
+        assertEquals(SectionRegistry.NOT_FOUND, registry.indexOf(-42));
+    }
+
     /**
      * Тест на добавление и получение товаров.
      */
@@ -128,6 +179,11 @@ public class StoreDbHelperTest {
 
         // Проверяем имя первого товара
         assertEquals("Product 1", products.get(0).getName());
+
+        // Товар без раздела и товар без слов в названии не добавляются
+        assertEquals(-1, dbHelper.addProduct(new Product(0, "Product 3", sectionId + 1000)));
+        assertEquals(-1, dbHelper.addProduct(new Product(0, "и, на", sectionId)));
+        assertEquals(2, dbHelper.getProductsBySection(sectionId).size());
     }
 
     /**
@@ -181,6 +237,207 @@ public class StoreDbHelperTest {
         assertTrue(foundAppleJuice);
     }
 
+    /**
+     * Тест на ранжирование и постраничную выдачу результатов поиска.
+     */
+    @Test
+    public void testSearchProductsRankingAndPaging() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection section = new StoreSection();
+        section.setName("Ranking Section");
+        section.setX(100.0f);
+        section.setY(100.0f);
+        long sectionId = dbHelper.addSection(section, mapId);
+
+        // Добавляем товары в порядке, обратном ожидаемому ранжированию
+        String[] names = {"Big rankword", "Rankword extra", "Rankword"};
+        for (String name : names) {
+            dbHelper.addProduct(new Product(0, name, sectionId));
+        }
+
+        List<Product> results = dbHelper.searchProducts("rankword");
+        assertEquals(3, results.size());
+        assertEquals("Rankword", results.get(0).getName());
+        assertEquals("Rankword extra", results.get(1).getName());
+        assertEquals("Big rankword", results.get(2).getName());
+        assertEquals(3, dbHelper.countProducts("rankword"));
+
+        // Вторая страница продолжает первую без пропусков и повторов
+        List<Product> firstPage = dbHelper.searchProducts("rankword", 0, 2);
+        List<Product> secondPage = dbHelper.searchProducts("rankword", 2, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals(1, secondPage.size());
+        assertEquals("Big rankword", secondPage.get(0).getName());
+
+        // Страница по ключу последнего результата совпадает со страницей по номеру
+        SearchPage keyedFirst = dbHelper.searchPage("rankword", StoreDbHelper.ALL_MAPS, 0, 2);
+        SearchPage keyedSecond = dbHelper.searchProductsAfter("rankword", StoreDbHelper.ALL_MAPS,
+                keyedFirst.getLastKey(), 2);
+        assertEquals(1, keyedSecond.getProducts().size());
+        assertEquals(secondPage.get(0).getId(), keyedSecond.getProducts().get(0).getId());
+        assertTrue(dbHelper.searchProductsAfter("rankword", StoreDbHelper.ALL_MAPS,
+                keyedSecond.getLastKey(), 2).getProducts().isEmpty());
+    }
+
+    /**
+     * Тест на глубокую выдачу: количество не ограничивается, а страница далеко за первой тысячей
+     * по номеру и по ключу с пропуском совпадает со страницей, до которой дошли по ключам подряд.
+     */
+    @Test
+    public void testSearchDeepPages() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        dbHelper.addSection(new StoreSection(0, "Deep", 10, 10), mapId);
+        int total = 2600;
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < total; i++) {
+            csv.append("Deepword ").append(i).append(",Deep\n");
+        }
+        assertEquals(total, dbHelper.importProductsFromCSV(csv.toString(), mapId));
+        assertEquals(total, dbHelper.countProducts("deepword", mapId));
+
+        int limit = StoreDbHelper.DEFAULT_SEARCH_LIMIT;
+        int offset = 2500;
+        SearchPage walked = dbHelper.searchPage("deepword", mapId, 0, limit);
+        for (int position = limit; position < offset; position += limit) {
+            walked = dbHelper.searchProductsAfter("deepword", mapId, walked.getLastKey(), limit);
+        }
+        SearchPage byOffset = dbHelper.searchPage("deepword", mapId, offset, limit);
+        SearchPage bySkip = dbHelper.searchProductsAfter("deepword", mapId,
+                dbHelper.searchPage("deepword", mapId, 0, limit).getLastKey(), offset - limit, limit);
+        walked = dbHelper.searchProductsAfter("deepword", mapId, walked.getLastKey(), limit);
+
+        assertEquals(limit, walked.getProducts().size());
+        assertEquals(ids(walked.getProducts()), ids(byOffset.getProducts()));
+        assertEquals(ids(walked.getProducts()), ids(bySkip.getProducts()));
+        assertTrue(dbHelper.searchPage("deepword", mapId, total, limit).getProducts().isEmpty());
+    }
+
+    private static List<Long> ids(List<Product> products) {
+        List<Long> ids = new ArrayList<>();
+        for (Product product : products) {
+            ids.add(product.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Тест на поиск с учетом русской морфологии и буквы "ё".
+     */
+    @Test
+    public void testSearchProductsRussianMorphology() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection section = new StoreSection();
+        section.setName("Молочный отдел");
+        section.setX(100.0f);
+        section.setY(100.0f);
+        long sectionId = dbHelper.addSection(section, mapId);
+
+        dbHelper.addProduct(new Product(0, "Молоко Простоквашино", sectionId));
+        dbHelper.addProduct(new Product(0, "Творожок Ёжик", sectionId));
+
+        List<Product> milk = dbHelper.searchProducts("молока простоквашино");
+        assertEquals(1, milk.size());
+        assertEquals("Молоко Простоквашино", milk.get(0).getName());
+
+        List<Product> curd = dbHelper.searchProducts("ежик");
+        assertEquals(1, curd.size());
+        assertEquals("Творожок Ёжик", curd.get(0).getName());
+    }
+
+    /**
+     * Тест на поиск товаров по синонимам, импортированным из CSV.
+     */
+    @Test
+    public void testImportAliasesAndSearch() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection section = new StoreSection();
+        section.setName("Напитки и хозтовары");
+        section.setX(100.0f);
+        section.setY(100.0f);
+        long sectionId = dbHelper.addSection(section, mapId);
+
+        dbHelper.addProduct(new Product(0, "Coca-Cola", sectionId));
+        dbHelper.addProduct(new Product(0, "Туалетная бумага", sectionId));
+
+        String csvData = "Coca-Cola,кола\nТуалетная бумага,туалетка,бумажка\nНет такого товара,синоним";
+        int count = dbHelper.importAliasesFromCSV(csvData, mapId);
+        assertEquals(3, count);
+
+        // Повторный импорт не создает дубликатов
+        assertEquals(0, dbHelper.importAliasesFromCSV(csvData, mapId));
+
+        List<Product> cola = dbHelper.searchProducts("колы");
+        assertEquals(1, cola.size());
+        assertEquals("Coca-Cola", cola.get(0).getName());
+
+        List<Product> paper = dbHelper.searchProducts("туалетка");
+        assertEquals(1, paper.size());
+        assertEquals("Туалетная бумага", paper.get(0).getName());
+
+        // Поиск по названию продолжает работать
+        assertEquals(1, dbHelper.searchProducts("туалетная").size());
+    }
+
+    /**
+     * Тест на выборки по схеме: поиск, синонимы и хранилище товаров схемы
+     * видят только товары своей схемы, даже с тем же названием.
+     */
+    @Test
+    public void testQueriesScopedByProductMap() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        long otherMapId = dbHelper.saveStoreMap("Other Map", "/test/path/other.jpg");
+        long sectionId = dbHelper.addSection(new StoreSection(0, "Напитки", 100.0f, 100.0f), mapId);
+        long otherSectionId = dbHelper.addSection(new StoreSection(0, "Напитки", 100.0f, 100.0f), otherMapId);
+        long productId = dbHelper.addProduct(new Product(0, "Coca-Cola", sectionId));
+        long otherProductId = dbHelper.addProduct(new Product(0, "Coca-Cola", otherSectionId));
+
+        assertEquals(1, dbHelper.importAliasesFromCSV("Coca-Cola,кола", mapId));
+
+        List<Product> found = dbHelper.searchProducts("кола", mapId, 0, StoreDbHelper.DEFAULT_SEARCH_LIMIT);
+        assertEquals(1, found.size());
+        assertEquals(productId, found.get(0).getId());
+        assertTrue(dbHelper.searchProducts("кола", otherMapId, 0, StoreDbHelper.DEFAULT_SEARCH_LIMIT).isEmpty());
+
+        List<Product> other = dbHelper.searchProducts("coca", otherMapId, 0, StoreDbHelper.DEFAULT_SEARCH_LIMIT);
+        assertEquals(1, other.size());
+        assertEquals(otherProductId, other.get(0).getId());
+
+        ColumnarProductStore store = dbHelper.loadProductStore(mapId);
+        assertEquals(1, store.size());
+        assertEquals(productId, store.getId(0));
+    }
+
+    /**
+     * Тест на кэширование результатов поиска и их сброс при добавлении товара.
+     */
+    @Test
+    public void testSearchCacheHitsAndInvalidation() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection section = new StoreSection();
+        section.setName("Cache Section");
+        section.setX(100.0f);
+        section.setY(100.0f);
+        long sectionId = dbHelper.addSection(section, mapId);
+
+        dbHelper.addProduct(new Product(0, "Cacheword one", sectionId));
+        assertEquals(1, dbHelper.searchProducts("cacheword", mapId, 0, 10).size());
+
+        // Повторный запрос обслуживается из кэша
+        long hitsBefore = dbHelper.getSearchCacheStats().hits;
+        assertEquals(1, dbHelper.searchProducts("Cacheword", mapId, 0, 10).size());
+        SearchResultCache.Stats stats = dbHelper.getSearchCacheStats();
+        assertEquals(hitsBefore + 1, stats.hits);
+
+        // Новый товар в той же схеме сбрасывает закэшированный результат
+        dbHelper.addProduct(new Product(0, "Cacheword two", sectionId));
+        assertEquals(2, dbHelper.searchProducts("cacheword", mapId, 0, 10).size());
+        assertEquals(2, dbHelper.countProducts("cacheword", mapId));
+    }
+
     /**
      * Тест на импорт товаров из CSV-строки.
      */
@@ -226,4 +483,376 @@ public class StoreDbHelperTest {
         assertTrue(foundBanana);
         assertTrue(foundOrange);
     }
-}
\ No newline at end of file
+
+    /**
+     * Тест на применение полного каталога и дельты с сервера синхронизации.
+     */
+    @Test
+    public void testApplyCatalogDelta() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        CatalogStore store = dbHelper.getCatalogStore(mapId);
+        assertEquals(0, store.getSyncVersion());
+
+        CatalogDeltaHandler full = store.openDelta("\"v1\"");
+        full.begin(1, true);
+        full.upsertSection("s1", "Dairy", 10, 20);
+        full.upsertSection("s2", "Bakery", 30, 40);
+        full.upsertProduct("p1", "Syncmilk", "s1", Arrays.asList("Syncmoloko"));
+        full.upsertProduct("p2", "Synckefir", "s1", null);
+        full.upsertProduct("p3", "Syncbread", "s2", null);
+        full.end();
+
+        assertEquals(1, store.getSyncVersion());
+        assertEquals("\"v1\"", store.getSyncEtag());
+        assertEquals(2, dbHelper.getSectionRegistry(mapId).size());
+        assertEquals(1, dbHelper.searchProducts("syncmoloko", mapId, 0, 10).size());
+        List<Product> kefir = dbHelper.searchProducts("synckefir", mapId, 0, 10);
+        assertEquals(1, kefir.size());
+        dbHelper.incrementProductPopularity(kefir.get(0).getId());
+
+        // Дельта переименовывает и переносит товар, удаляет другой и раздел
+        CatalogDeltaHandler delta = store.openDelta("\"v2\"");
+        delta.begin(2, false);
+        delta.upsertSection("s3", "Drinks", 50, 60);
+        delta.upsertProduct("p2", "Synckefir light", "s3", null);
+        delta.removeProduct("p1");
+        delta.removeSection("s2");
+        delta.end();
+
+        assertEquals(2, store.getSyncVersion());
+        assertTrue(dbHelper.searchProducts("syncmoloko", mapId, 0, 10).isEmpty());
+        assertTrue(dbHelper.searchProducts("syncbread", mapId, 0, 10).isEmpty());
+        List<Product> renamed = dbHelper.searchProducts("synckefir", mapId, 0, 10);
+        assertEquals(1, renamed.size());
+        assertEquals("Synckefir light", renamed.get(0).getName());
+        assertEquals(kefir.get(0).getId(), renamed.get(0).getId());
+        assertEquals(1, renamed.get(0).getPopularity());
+
+        SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+        assertEquals(2, registry.size());
+        int drinks = registry.indexOf(renamed.get(0).getSectionId());
+        assertTrue(drinks != SectionRegistry.NOT_FOUND);
+        assertEquals("Drinks", registry.getName(drinks));
+
+        // Полный каталог удаляет записи, которых в нем нет, но не трогает добавленные оператором
+        StoreSection manual = new StoreSection();
+        manual.setName("Manual");
+        manual.setX(1);
+        manual.setY(1);
+        long manualSectionId = dbHelper.addSection(manual, mapId);
+        dbHelper.addProduct(new Product(0, "Syncmanual", manualSectionId));
+
+        CatalogDeltaHandler snapshot = store.openDelta("\"v3\"");
+        snapshot.begin(3, true);
+        snapshot.upsertSection("s1", "Dairy", 10, 20);
+        snapshot.upsertProduct("p4", "Syncyogurt", "s1", null);
+        snapshot.end();
+
+        assertTrue(dbHelper.searchProducts("synckefir", mapId, 0, 10).isEmpty());
+        assertEquals(1, dbHelper.searchProducts("syncyogurt", mapId, 0, 10).size());
+        assertEquals(1, dbHelper.searchProducts("syncmanual", mapId, 0, 10).size());
+        assertEquals(2, dbHelper.getSectionRegistry(mapId).size());
+
+        // Товар с неизвестным разделом пропускается, версия не сохраняется
+        CatalogDeltaHandler orphan = store.openDelta("\"v4\"");
+        orphan.begin(4, false);
+        assertFalse(orphan.upsertProduct("p9", "Syncorphan", "s9", null));
+        assertTrue(orphan.upsertProduct("p4", "Syncyogurt light", "s1", null));
+        orphan.end();
+        assertEquals(3, store.getSyncVersion());
+        assertEquals("\"v3\"", store.getSyncEtag());
+        assertTrue(dbHelper.searchProducts("syncorphan", mapId, 0, 10).isEmpty());
+
+        // Товар без слов в названии пропускается, но версия сохраняется: повтор дельты не поможет
+        CatalogDeltaHandler blank = store.openDelta("\"v5\"");
+        blank.begin(5, false);
+        assertFalse(blank.upsertProduct("p10", "...", "s1", null));
+        blank.end();
+        assertEquals(5, store.getSyncVersion());
+
+        // Синхронизация из файла не удаляет товары синхронизации каталога
+        ImportResult csvSync = dbHelper.importProductsFromCSV("Syncmanual,Manual", mapId, true);
+        assertEquals(0, csvSync.getDeleted());
+        assertEquals(1, dbHelper.searchProducts("syncyogurt", mapId, 0, 10).size());
+    }
+
+    /**
+     * Тест на повторный импорт: товары обновляются по названию, а не добавляются снова.
+     */
+    @Test
+    public void testImportProductsUpsertAndSync() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+
+        StoreSection fruits = new StoreSection();
+        fruits.setName("Fruits");
+        long fruitsId = dbHelper.addSection(fruits, mapId);
+        StoreSection exotic = new StoreSection();
+        exotic.setName("Exotic");
+        long exoticId = dbHelper.addSection(exotic, mapId);
+
+        ImportResult first = dbHelper.importProductsFromCSV(
+                "Apple,Fruits\nBanana,Fruits\nOrange,Fruits\nCherry,Unknown", mapId, false);
+        assertEquals(3, first.getInserted());
+        assertEquals(1, first.getSkipped());
+        List<Product> banana = dbHelper.searchProducts("banana", mapId, 0, 10);
+        dbHelper.incrementProductPopularity(banana.get(0).getId());
+
+        // Тот же файл не создает дубликатов
+        ImportResult repeated = dbHelper.importProductsFromCSV(
+                "Apple,Fruits\nBanana,Fruits\nOrange,Fruits", mapId, false);
+        assertEquals(0, repeated.getInserted());
+        assertEquals(3, repeated.getUnchanged());
+        assertEquals(3, dbHelper.getProductsBySection(fruitsId).size());
+
+        // Перенос в другой раздел обновляет товар и сохраняет популярность
+        ImportResult moved = dbHelper.importProductsFromCSV("BANANA,Exotic\nKiwi,Exotic", mapId, false);
+        assertEquals(1, moved.getUpdated());
+        assertEquals(1, moved.getInserted());
+        List<Product> movedBanana = dbHelper.searchProducts("banana", mapId, 0, 10);
+        assertEquals(1, movedBanana.size());
+        assertEquals(banana.get(0).getId(), movedBanana.get(0).getId());
+        assertEquals("BANANA", movedBanana.get(0).getName());
+        assertEquals(exoticId, movedBanana.get(0).getSectionId());
+        assertEquals(1, movedBanana.get(0).getPopularity());
+
+        // Синхронизация удаляет товары, которых нет в файле
+        ImportResult synced = dbHelper.importProductsFromCSV("Apple,Fruits\nKiwi,Exotic", mapId, true);
+        assertEquals(2, synced.getUnchanged());
+        assertEquals(2, synced.getDeleted());
+        assertTrue(dbHelper.searchProducts("banana", mapId, 0, 10).isEmpty());
+        assertEquals(1, dbHelper.getProductsBySection(fruitsId).size());
+
+        // Опечатка в разделе пропускает строку, но не удаляет товар
+        ImportResult typo = dbHelper.importProductsFromCSV("Apple,Friuts\nKiwi,Exotic", mapId, true);
+        assertEquals(1, typo.getSkipped());
+        assertEquals(0, typo.getDeleted());
+        assertEquals(1, dbHelper.searchProducts("apple", mapId, 0, 10).size());
+
+        // Вручную добавленный дубликат отклоняется уникальным индексом
+        assertEquals(-1, dbHelper.addProduct(new Product(0, "apple", exoticId)));
+    }
+
+    /**
+     * Тест на импорт штрихкодов и поиск товара по штрихкоду
+     */
+    @Test
+    public void testFindProductByBarcode() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        StoreSection dairy = new StoreSection();
+        dairy.setName("Dairy");
+        long dairyId = dbHelper.addSection(dairy, mapId);
+
+        ImportResult imported = dbHelper.importProductsFromCSV(
+                "Milk,Dairy,4600000000017\nKefir,Dairy, 4600000000024 \nCheese,Dairy", mapId, false);
+        assertEquals(3, imported.getInserted());
+
+        Product milk = dbHelper.findProductByBarcode("4600000000017", mapId);
+        assertNotNull(milk);
+        assertEquals("Milk", milk.getName());
+        assertEquals(dairyId, milk.getSectionId());
+        assertEquals("Kefir", dbHelper.findProductByBarcode("4600000000024\r", mapId).getName());
+        assertNull(dbHelper.findProductByBarcode("4600000000031", mapId));
+        assertNull(dbHelper.findProductByBarcode("4600000000017", mapId + 1));
+
+        // Строка без штрихкода сохраняет прежний; штрихкод, указанный у другого товара, переходит к нему
+        ImportResult reassigned = dbHelper.importProductsFromCSV(
+                "Milk,Dairy\nCheese,Dairy,4600000000024", mapId, false);
+        assertEquals(1, reassigned.getUnchanged());
+        assertEquals(1, reassigned.getUpdated());
+        assertEquals(milk.getId(), dbHelper.findProductByBarcode("4600000000017", mapId).getId());
+        assertEquals("Cheese", dbHelper.findProductByBarcode("4600000000024", mapId).getName());
+    }
+
+    /**
+     * Тест на запись журнала поиска пачками и сводку по запросам
+     */
+    @Test
+    public void testAnalyticsStoreAggregates() {
+        AnalyticsStore store = dbHelper.getAnalyticsStore();
+        store.append(Arrays.asList(
+                SearchEvent.search(1000, "Молоко", 12),
+                SearchEvent.select(1500, "Молоко", 7),
+                SearchEvent.search(2000, "авокадо", 0)));
+        store.append(Arrays.asList(
+                SearchEvent.search(3000, "молоко ", 12),
+                SearchEvent.search(4000, "Авокадо", 0),
+                SearchEvent.search(5000, "хлеб", 30)));
+
+        List<QueryStats> top = dbHelper.getTopSearchQueries(10, false);
+        assertEquals(3, top.size());
+        assertEquals(2, top.get(0).getSearches());
+        List<QueryStats> zeroHits = dbHelper.getTopSearchQueries(10, true);
+        assertEquals(1, zeroHits.size());
+        assertEquals("авокад", zeroHits.get(0).getQuery());
+        assertEquals(2, zeroHits.get(0).getZeroHits());
+        for (QueryStats stats : top) {
+            if (stats.getQuery().equals("молок")) {
+                assertEquals(1, stats.getSelections());
+            }
+        }
+        assertEquals(1, dbHelper.getTopSearchQueries(1, false).size());
+    }
+
+    /**
+     * Тест на популярность товаров: выборы из пачки журнала прибавляются к счетчику товара.
+     */
+    @Test
+    public void testAnalyticsSelectionsIncrementPopularity() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        long dairyId = dbHelper.addSection(new StoreSection(0, "Dairy", 10, 10), mapId);
+        long milkId = dbHelper.addProduct(new Product(0, "Milk", dairyId));
+        long kefirId = dbHelper.addProduct(new Product(0, "Kefir", dairyId));
+
+        dbHelper.getAnalyticsStore().append(Arrays.asList(
+                SearchEvent.select(1000, "milk", milkId, dairyId),
+                SearchEvent.select(2000, "milk", milkId, dairyId),
+                SearchEvent.search(3000, "kefir", 1, dairyId)));
+
+        assertEquals(2, dbHelper.searchProducts("milk", mapId, 0, 10).get(0).getPopularity());
+        assertEquals(kefirId, dbHelper.searchProducts("kefir", mapId, 0, 10).get(0).getId());
+        assertEquals(0, dbHelper.searchProducts("kefir", mapId, 0, 10).get(0).getPopularity());
+    }
+
+    /**
+     * Тест на спрос по разделам: пачки журнала прибавляются к сохраненному спросу с затуханием.
+     */
+    @Test
+    public void testSectionDemandAccumulates() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        StoreSection section = new StoreSection();
+        section.setName("Dairy");
+        section.setX(100);
+        section.setY(100);
+        long dairyId = dbHelper.addSection(section, mapId);
+
+        long week = SectionDemand.HALF_LIFE_MS;
+        AnalyticsStore store = dbHelper.getAnalyticsStore();
+        store.append(Arrays.asList(
+                SearchEvent.search(1000, "Молоко", 12, dairyId),
+                SearchEvent.select(1000, "Молоко", 7, dairyId)));
+        store.append(Arrays.asList(
+                SearchEvent.select(1000 + week, "Кефир", 8, dairyId),
+                SearchEvent.search(1000 + week, "авокадо", 0)));
+
+        SectionDemand demand = dbHelper.getSectionDemand(mapId, 1000 + 2 * week);
+        assertEquals(1, demand.size());
+        // (0.5 + 1) / 4 + 1 / 2
+        assertEquals(0.875, demand.getScoreById(dairyId), 1e-9);
+        assertEquals(0, dbHelper.getSectionDemand(mapId + 1, 0).size());
+    }
+
+    /**
+     * Тест на массовый импорт раскладки: разделы с тем же названием обновляются.
+     */
+    @Test
+    public void testImportSections() throws Exception {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        StoreSection existing = new StoreSection();
+        existing.setName("Dairy");
+        existing.setX(1);
+        existing.setY(1);
+        long dairyId = dbHelper.addSection(existing, mapId);
+        assertEquals(1, dbHelper.getSectionRegistry(mapId).size());
+
+        StringBuilder csv = new StringBuilder("name,x,y,polygon\n");
+        csv.append("Dairy,100,200,90 190;110 190;110 210;90 210\n");
+        for (int i = 0; i < 400; i++) {
+            csv.append("Aisle ").append(i).append(',').append(i).append(',').append(2 * i).append('\n');
+        }
+        csv.append("Aisle 0,0,0\n");
+
+        ImportResult result = dbHelper.importSections(SectionLayoutParser.parse(csv.toString()), mapId);
+        assertEquals(400, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        assertEquals(1, result.getUnchanged());
+
+        List<StoreSection> sections = dbHelper.getAllSections(mapId);
+        assertEquals(401, sections.size());
+        StoreSection dairy = dbHelper.getSectionById(dairyId);
+        assertEquals(100f, dairy.getX(), 0f);
+        assertEquals(8, dairy.getPolygon().length);
+
+        // Реестр загружается заново и видит все разделы
+        SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+        assertEquals(401, registry.size());
+        assertEquals(200f, registry.getY(registry.indexOf(dairyId)), 0f);
+
+        // Повторный импорт ничего не меняет
+        ImportResult repeated = dbHelper.importSections(SectionLayoutParser.parse(csv.toString()), mapId);
+        assertEquals(0, repeated.getInserted());
+        assertEquals(0, repeated.getUpdated());
+        assertEquals(402, repeated.getUnchanged());
+    }
+
+    /**
+     * Тест на векторную схему без изображения: фигуры сохраняются и заменяются,
+     * раздел находится по точке внутри контура.
+     */
+    @Test
+    public void testInvalidationNotifiesOnlyAffectedTables() {
+        long mapId = dbHelper.saveStoreMap("Test Map", "/test/path/image.jpg");
+        long otherMapId = dbHelper.saveStoreMap("Other Map", "/test/path/other.jpg");
+        final List<Integer> sectionChanges = new ArrayList<>();
+        InvalidationTracker.Observer observer = new InvalidationTracker.Observer() {
+            @Override
+            public void onInvalidated(int tables, long changedMapId) {
+                sectionChanges.add(tables);
+            }
+        };
+        dbHelper.getInvalidationTracker().addObserver(observer, InvalidationTracker.TABLE_SECTIONS, mapId);
+
+        StoreSection section = new StoreSection();
+        section.setName("Dairy");
+        section.setX(10);
+        section.setY(20);
+        long sectionId = dbHelper.addSection(section, mapId);
+        assertEquals(1, sectionChanges.size());
+        assertEquals(InvalidationTracker.TABLE_SECTIONS, (int) sectionChanges.get(0));
+
+        // Товары и разделы другой схемы не перечитывают разделы
+        Product product = new Product();
+        product.setName("Milk");
+        product.setSectionId(sectionId);
+        dbHelper.addProduct(product);
+        dbHelper.importProductsFromCSV("Kefir,Dairy", mapId, false);
+        dbHelper.addSection(section, otherMapId);
+        assertEquals(1, sectionChanges.size());
+
+        // Реестр после добавления — новый объект, поэтому разница с прежним видна
+        assertEquals(1, dbHelper.getSectionRegistry(mapId).size());
+        dbHelper.getInvalidationTracker().removeObserver(observer);
+        dbHelper.addSection(section, mapId);
+        assertEquals(1, sectionChanges.size());
+    }
+
+    @Test
+    public void testFloorPlanRoundTrip() throws Exception {
+        String layout = "{\"width\": 400, \"height\": 300,"
+                + " \"walls\": [[[0, 0], [400, 0]], [[0, 0], [0, 300]]],"
+                + " \"shelves\": [[[10, 10], [90, 10], [90, 30], [10, 30]]],"
+                + " \"sections\": [{\"name\": \"Bakery\", \"polygon\": [[10, 10], [90, 10], [90, 30], [10, 30]]}]}";
+        long mapId = dbHelper.saveStoreMap("Vector Map", null);
+        assertNull(dbHelper.getStoreMapPath(mapId));
+        assertNull(dbHelper.getFloorPlan(mapId));
+
+        dbHelper.saveFloorPlan(mapId, FloorPlanParser.parse(layout));
+        dbHelper.importSections(SectionLayoutParser.parse(layout), mapId);
+        FloorPlan plan = dbHelper.getFloorPlan(mapId);
+        assertEquals(400f, plan.getWidth(), 0f);
+        assertEquals(2, plan.getWalls().size());
+        assertArrayEquals(new float[]{10, 10, 90, 10, 90, 30, 10, 30}, plan.getShelves().get(0), 0f);
+
+        SectionRegistry registry = dbHelper.getSectionRegistry(mapId);
+        int bakery = registry.findContaining(85, 28);
+        assertEquals("Bakery", registry.getName(bakery));
+        assertEquals(SectionRegistry.NOT_FOUND, registry.findContaining(95, 28));
+
+        // Повторное сохранение заменяет фигуры, а не дописывает их
+        FloorPlan empty = new FloorPlan(800, 600);
+        dbHelper.saveFloorPlan(mapId, empty);
+        plan = dbHelper.getFloorPlan(mapId);
+        assertEquals(800f, plan.getWidth(), 0f);
+        assertTrue(plan.getWalls().isEmpty());
+        assertTrue(plan.getShelves().isEmpty());
+    }
+}
@@ -3,33 +3,60 @@ package com.example.storefinder;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
+import android.view.KeyCharacterMap;
+import android.view.KeyEvent;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
-import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.ListView;
+import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
-
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.storefinder.adapters.CompletionAdapter;
+import com.example.storefinder.adapters.ListPageSource;
+import com.example.storefinder.adapters.PagedProductAdapter;
+import com.example.storefinder.adapters.SearchPageSource;
+import com.example.storefinder.analytics.SearchAnalytics;
+import com.example.storefinder.analytics.SearchAnalyticsLog;
 import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.invalidation.InvalidationTracker;
+import com.example.storefinder.invalidation.ObservableQuery;
+import com.example.storefinder.map.MapLayers;
+import com.example.storefinder.map.MapOverlayDrawable;
+import com.example.storefinder.map.VectorMapDrawable;
+import com.example.storefinder.memory.MemoryGovernor;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.metrics.MetricsOverlay;
+import com.example.storefinder.models.FloorPlan;
 import com.example.storefinder.models.Product;
-import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.models.SectionDiff;
+import com.example.storefinder.models.SectionRegistry;
+import com.example.storefinder.render.MapLabels;
+import com.example.storefinder.scan.ScanBurstDetector;
+import com.example.storefinder.search.CompletionTrie;
+import com.example.storefinder.shopping.ShoppingListResolver;
+import com.example.storefinder.startup.StartupCoordinator;
+import com.example.storefinder.tracing.Span;
+import com.example.storefinder.tracing.Tracer;
 
-import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Активность покупателя.
@@ -37,44 +64,136 @@ import java.util.Map;
  */
 public class CustomerActivity extends AppCompatActivity {
 
-    private EditText searchEditText;
-    private ListView productsListView;
+    private static final LatencyHistogram TIME_TO_INTERACTIVE = Metrics.histogram("startup.customer_tti");
+    private static final LatencyHistogram HIGHLIGHT_SECTION_LATENCY = Metrics.histogram("ui.highlight_section");
+    private static final LatencyHistogram HIGHLIGHT_SECTIONS_LATENCY = Metrics.histogram("ui.highlight_sections");
+    private static final LatencyHistogram SHOPPING_LIST_LATENCY = Metrics.histogram("ui.shopping_list");
+    private static final LatencyHistogram SCAN_TO_HIGHLIGHT_LATENCY = Metrics.histogram("ui.scan_to_highlight");
+    // Размеры выделения раздела в координатах исходной схемы
+    private static final float HIGHLIGHT_RADIUS = 30;
+    private static final float HIGHLIGHT_LABEL_OFFSET = 40;
+    // Количество выборов товаров, после которого подсказки перестраиваются с новыми весами
+    private static final int COMPLETION_REBUILD_SELECTIONS = 10;
+
+    private AutoCompleteTextView searchEditText;
+    private RecyclerView productsRecyclerView;
     private ImageView mapImageView;
+    private ProgressBar mapLoadingProgress;
     private Button pasteButton;
 
     private StoreDbHelper dbHelper;
-    private ArrayAdapter<Product> productAdapter;
-    private List<Product> productsList = new ArrayList<>();
-    private Bitmap originalMapBitmap;
-    private Bitmap currentMapBitmap;
+    private SearchAnalytics searchAnalytics;
+    private CompletionAdapter completionAdapter;
+    // Словарь подсказок строится вне главного потока, по одному за раз
+    private ExecutorService completionExecutor;
+    private int selectionsSinceRebuild;
+    private PagedProductAdapter productAdapter;
+    // Найденные товары перечитываются при изменении каталога схемы, разделы — при изменении разделов
+    private InvalidationTracker.Observer catalogObserver;
+    private ObservableQuery<SectionRegistry> sectionsQuery;
+    private ExecutorService queryExecutor;
+    private VectorMapDrawable vectorMap;
+    // Неизменяемая подложка схемы и слой выделенных разделов поверх нее
+    private Bitmap baseMapBitmap;
+    private MapOverlayDrawable mapOverlay;
+    // Отношение размера схемы в памяти к исходному, в котором заданы координаты разделов
+    private float mapScale = 1f;
     private long currentMapId = 1; // По умолчанию первая схема магазина
+    private SectionRegistry sectionRegistry;
+    private MetricsOverlay metricsOverlay;
+    private StartupCoordinator startupCoordinator;
+    private StartupCoordinator.Listener customerDataListener;
+    private StartupCoordinator.Listener mapRestoreListener;
+
+    // Освобождаемые при нехватке памяти схема (пока экран не виден) и словарь подсказок;
+    // они загружаются заново при возврате на экран и при следующем вводе текста
+    private MemoryGovernor.Consumer mapMemory;
+    private MemoryGovernor.Consumer completionMemory;
+    private boolean started;
+    private boolean mapReleased;
+    private boolean completionsReleased;
+
+    // Ввод с аппаратной клавиатуры: серия символов сканера уходит в поиск по штрихкоду,
+    // нажатия ручного набора задерживаются до паузы и передаются окну как обычно
+    private final ScanBurstDetector scanDetector = new ScanBurstDetector();
+    private final Handler scanHandler = new Handler(Looper.getMainLooper());
+    // Копии нажатий символов из буфера детектора, по одному на символ
+    private final List<KeyEvent> heldKeys = new ArrayList<>();
+    private final Runnable releaseTypedKeys = new Runnable() {
+        @Override
+        public void run() {
+            scanDetector.flush();
+            releaseHeldKeys();
+        }
+    };
+    private boolean scanEnterConsumed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        final long createStart = Metrics.startTimer();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_customer);
 
-        dbHelper = new StoreDbHelper(this);
+        dbHelper = StoreDbHelper.getInstance(this);
+        searchAnalytics = SearchAnalyticsLog.getInstance(this);
 
         searchEditText = findViewById(R.id.search_edit_text);
-        productsListView = findViewById(R.id.products_list_view);
+        productsRecyclerView = findViewById(R.id.products_recycler_view);
         mapImageView = findViewById(R.id.customer_map_image_view);
+        mapLoadingProgress = findViewById(R.id.map_loading_progress);
         pasteButton = findViewById(R.id.paste_button);
 
-        // Настройка адаптера для списка товаров
-        productAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, productsList);
-        productsListView.setAdapter(productAdapter);
-
-        // Загрузка карты магазина
-        String imagePath = dbHelper.getStoreMapPath(currentMapId);
-        if (imagePath != null) {
-            File imageFile = new File(imagePath);
-            if (imageFile.exists()) {
-                originalMapBitmap = BitmapFactory.decodeFile(imagePath);
-                currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
-                mapImageView.setImageBitmap(currentMapBitmap);
+        // Настройка адаптера для списка товаров: строки загружаются постранично по мере прокрутки
+        productAdapter = new PagedProductAdapter(new PagedProductAdapter.OnProductClickListener() {
+            @Override
+            public void onProductClick(Product product) {
+                long interaction = Tracer.newInteraction();
+                // Популярность товара увеличивается при записи пачки журнала, а не в главном потоке
+                searchAnalytics.recordSelection(product.getId(), product.getSectionId());
+                if (++selectionsSinceRebuild >= COMPLETION_REBUILD_SELECTIONS) {
+                    rebuildCompletions();
+                }
+                highlightProductSection(product, interaction);
             }
-        }
+        });
+        productsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        productsRecyclerView.setHasFixedSize(true);
+        productsRecyclerView.setAdapter(productAdapter);
+
+        // Разделы и схема готовятся в фоне с момента запуска процесса;
+        // до их получения вместо схемы показывается индикатор загрузки
+        customerDataListener = new StartupCoordinator.Listener() {
+            @Override
+            public void onReady(StartupCoordinator.CustomerData data) {
+                bindCustomerData(data);
+                TIME_TO_INTERACTIVE.recordSince(createStart);
+            }
+
+            @Override
+            public void onFailed(RuntimeException error) {
+                showMapLoadFailed(error);
+            }
+        };
+        mapRestoreListener = new StartupCoordinator.Listener() {
+            @Override
+            public void onReady(StartupCoordinator.CustomerData data) {
+                bindCustomerData(data);
+            }
+
+            @Override
+            public void onFailed(RuntimeException error) {
+                showMapLoadFailed(error);
+            }
+        };
+        startupCoordinator = StartupCoordinator.getInstance(this);
+        startupCoordinator.whenReady(currentMapId, customerDataListener);
+
+        // Подсказки названий по мере ввода, начиная с первого символа
+        completionAdapter = new CompletionAdapter(this);
+        searchEditText.setAdapter(completionAdapter);
+        searchEditText.setThreshold(1);
+        completionExecutor = Executors.newSingleThreadExecutor();
+        rebuildCompletions();
 
         // Настройка поиска по мере ввода текста
         searchEditText.addTextChangedListener(new TextWatcher() {
@@ -84,9 +203,16 @@ public class CustomerActivity extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (completionsReleased) {
+                    completionsReleased = false;
+                    rebuildCompletions();
+                }
                 String query = s.toString().trim();
                 if (query.length() >= 2) {
-                    searchProducts(query);
+                    long interaction = Tracer.newInteraction();
+                    Span span = Tracer.begin(interaction, "search.keystroke");
+                    searchProducts(query, interaction);
+                    span.end();
                 }
             }
 
@@ -95,15 +221,6 @@ public class CustomerActivity extends AppCompatActivity {
             }
         });
 
-        // Настройка обработчика выбора товара из списка
-        productsListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            @Override
-            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                Product selectedProduct = productsList.get(position);
-                highlightProductSection(selectedProduct);
-            }
-        });
-
         // Настройка кнопки для вставки из буфера обмена
         pasteButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -111,67 +228,365 @@ public class CustomerActivity extends AppCompatActivity {
                 pasteFromClipboard();
             }
         });
+
+        observeCatalog();
+        registerMemoryConsumers();
+        metricsOverlay = MetricsOverlay.attach(this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (mapReleased) {
+            // Схема была освобождена, пока экран не был виден; выделение раздела не восстанавливается
+            mapReleased = false;
+            mapLoadingProgress.setVisibility(View.VISIBLE);
+            startupCoordinator.whenReady(currentMapId, mapRestoreListener);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Последний запрос сохраняется, даже если покупатель больше ничего не введет
+        searchAnalytics.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        startupCoordinator.removeListener(customerDataListener);
+        startupCoordinator.removeListener(mapRestoreListener);
+        MemoryGovernor.getInstance().unregister(mapMemory);
+        MemoryGovernor.getInstance().unregister(completionMemory);
+        scanHandler.removeCallbacks(releaseTypedKeys);
+        completionExecutor.shutdown();
+        dbHelper.getInvalidationTracker().removeObserver(catalogObserver);
+        sectionsQuery.dispose();
+        queryExecutor.shutdown();
+        productAdapter.release();
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+        }
+    }
+
+    /**
+     * Регистрирует схему и словарь подсказок в учете памяти. Схема отдается,
+     * только когда экран не виден; словарь отдается при критической нехватке памяти.
+     */
+    private void registerMemoryConsumers() {
+        mapMemory = new MemoryGovernor.Consumer() {
+            @Override
+            public long getByteSize() {
+                long bytes = baseMapBitmap != null ? baseMapBitmap.getByteCount() : 0;
+                return bytes + (mapOverlay != null ? mapOverlay.getByteCount() : 0);
+            }
+
+            @Override
+            public void release() {
+                if (started || baseMapBitmap == null) return;
+                mapImageView.setImageDrawable(null);
+                baseMapBitmap = null;
+                mapOverlay = null;
+                mapReleased = true;
+            }
+        };
+        completionMemory = new MemoryGovernor.Consumer() {
+            @Override
+            public long getByteSize() {
+                CompletionTrie trie = completionAdapter.getTrie();
+                return trie != null ? trie.estimateHeapBytes() : 0;
+            }
+
+            @Override
+            public void release() {
+                completionAdapter.setTrie(null);
+                completionsReleased = true;
+            }
+        };
+        MemoryGovernor.getInstance().register("customer_map", MemoryGovernor.PRIORITY_HIDDEN_UI, mapMemory);
+        MemoryGovernor.getInstance().register("completions", MemoryGovernor.PRIORITY_INDEX, completionMemory);
+    }
+
+    /**
+     * Перестраивает словарь подсказок в фоне с текущими счетчиками популярности товаров.
+     */
+    private void rebuildCompletions() {
+        selectionsSinceRebuild = 0;
+        final long mapId = currentMapId;
+        completionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                completionAdapter.setTrie(dbHelper.buildCompletionTrie(mapId));
+            }
+        });
+    }
+
+    /**
+     * Перехватывает ввод с аппаратной клавиатуры, чтобы отличить сканер штрихкодов от ручного набора.
+     * Экранная клавиатура передает текст не через события клавиш и сюда не попадает.
+     * Серия сканера распознается независимо от того, где фокус. Нажатия символов задерживаются,
+     * пока не станет ясно, чем они были, а ручной набор затем передается окну без изменений:
+     * в поле поиска символы вставляются на место курсора, другие элементы получают свои клавиши.
+     */
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        if (event.getDeviceId() == KeyCharacterMap.VIRTUAL_KEYBOARD) {
+            return super.dispatchKeyEvent(event);
+        }
+        int keyCode = event.getKeyCode();
+        boolean enter = keyCode == KeyEvent.KEYCODE_ENTER || keyCode == KeyEvent.KEYCODE_NUMPAD_ENTER;
+        int unicodeChar = event.getUnicodeChar();
+        if (!enter && unicodeChar <= 0) {
+            // Стирание, стрелки и т.п. применяются после уже набранных символов
+            scanDetector.flush();
+            releaseHeldKeys();
+            return super.dispatchKeyEvent(event);
+        }
+
+        if (event.getAction() == KeyEvent.ACTION_UP) {
+            if (enter) {
+                boolean consumed = scanEnterConsumed;
+                scanEnterConsumed = false;
+                return consumed || super.dispatchKeyEvent(event);
+            }
+            // Отпускание символа передается вместе с его нажатием
+            return true;
+        }
+        if (event.getAction() != KeyEvent.ACTION_DOWN) {
+            return super.dispatchKeyEvent(event);
+        }
+
+        long time = event.getEventTime();
+        if (enter) {
+            String code = scanDetector.onTerminator(time);
+            if (code != null) {
+                scanHandler.removeCallbacks(releaseTypedKeys);
+                heldKeys.clear();
+                scanEnterConsumed = true;
+                showScannedProduct(code);
+                return true;
+            }
+            scanDetector.flush();
+            releaseHeldKeys();
+            return super.dispatchKeyEvent(event);
+        }
+        if (scanDetector.onCharacter((char) unicodeChar, time) != null) {
+            // Пауза перед символом: все задержанные нажатия были ручным набором
+            releaseHeldKeys();
+        }
+        // Событие может быть переиспользовано системой после обработки, поэтому сохраняется копия
+        heldKeys.add(new KeyEvent(event));
+        // Если следующий символ не пришел за время серии, это ручной набор
+        scanHandler.postDelayed(releaseTypedKeys, scanDetector.getMaxKeyInterval() + 1);
+        return true;
+    }
+
+    /**
+     * Передает окну задержанные нажатия ручного набора (нажатие и отпускание каждой клавиши).
+     * Буфер детектора с этими символами очищается вызывающим кодом.
+     */
+    private void releaseHeldKeys() {
+        scanHandler.removeCallbacks(releaseTypedKeys);
+        if (heldKeys.isEmpty()) {
+            return;
+        }
+        List<KeyEvent> keys = new ArrayList<>(heldKeys);
+        heldKeys.clear();
+        for (KeyEvent down : keys) {
+            super.dispatchKeyEvent(down);
+            super.dispatchKeyEvent(KeyEvent.changeAction(down, KeyEvent.ACTION_UP));
+        }
+    }
+
+    /**
+     * Выделяет раздел товара, найденного по отсканированному штрихкоду.
+     * Товар ищется вне главного потока; текстовый поиск и список результатов не затрагиваются.
+     * @param code Штрихкод
+     */
+    private void showScannedProduct(final String code) {
+        final long start = Metrics.startTimer();
+        final long interaction = Tracer.newInteraction();
+        final long mapId = currentMapId;
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Span span = Tracer.begin(interaction, "scan.lookup");
+                final Product product = dbHelper.findProductByBarcode(code, mapId);
+                span.end();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) return;
+                        if (product == null) {
+                            Toast.makeText(CustomerActivity.this, "Штрихкод " + code + " не найден",
+                                    Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        highlightProductSection(product, interaction);
+                        SCAN_TO_HIGHLIGHT_LATENCY.recordSince(start);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Подписывает экран на изменения каталога схемы, например импорт или синхронизацию
+     * на экране оператора. Показанный список товаров перечитывает только загруженные страницы
+     * и сохраняет прокрутку; реестр разделов заменяется, только если разделы изменились.
+     */
+    private void observeCatalog() {
+        final Runnable refreshProducts = new Runnable() {
+            @Override
+            public void run() {
+                if (!isFinishing()) {
+                    productAdapter.refresh();
+                }
+            }
+        };
+        catalogObserver = new InvalidationTracker.Observer() {
+            @Override
+            public void onInvalidated(int tables, long mapId) {
+                runOnUiThread(refreshProducts);
+            }
+        };
+        dbHelper.getInvalidationTracker().addObserver(catalogObserver,
+                InvalidationTracker.TABLE_PRODUCTS | InvalidationTracker.TABLE_ALIASES, currentMapId);
+
+        queryExecutor = Executors.newSingleThreadExecutor();
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                runOnUiThread(command);
+            }
+        };
+        final long mapId = currentMapId;
+        sectionsQuery = new ObservableQuery<SectionRegistry>(dbHelper.getInvalidationTracker(),
+                InvalidationTracker.TABLE_SECTIONS, mapId, queryExecutor, mainExecutor) {
+            @Override
+            protected SectionRegistry query() {
+                return dbHelper.getSectionRegistry(mapId);
+            }
+        };
+        sectionsQuery.observe(new ObservableQuery.Listener<SectionRegistry>() {
+            @Override
+            public void onResult(SectionRegistry previous, SectionRegistry current) {
+                // До получения данных запуска реестр задается вместе со схемой
+                if (sectionRegistry == null || SectionDiff.between(sectionRegistry, current).isEmpty()) {
+                    return;
+                }
+                sectionRegistry = current;
+                if (vectorMap != null) {
+                    vectorMap.setSections(current);
+                    vectorMap.invalidateSelf();
+                }
+            }
+        });
+    }
+
+    /**
+     * Показывает подготовленные в фоне разделы и схему магазина.
+     * @param data Данные экрана покупателя
+     */
+    private void bindCustomerData(StartupCoordinator.CustomerData data) {
+        if (isFinishing()) return;
+        sectionRegistry = data.getSectionRegistry();
+        baseMapBitmap = data.getMapBitmap();
+        mapScale = data.getMapScale();
+        FloorPlan floorPlan = data.getFloorPlan();
+        if (floorPlan != null) {
+            // Векторная схема рисуется в масштабе экрана, координаты разделов не пересчитываются
+            vectorMap = new VectorMapDrawable(floorPlan);
+            vectorMap.setSections(sectionRegistry);
+            mapOverlay = new MapOverlayDrawable(vectorMap.getIntrinsicWidth(), vectorMap.getIntrinsicHeight(), 1f);
+            mapImageView.setImageDrawable(MapLayers.compose(vectorMap, mapOverlay));
+            MapLayers.reportMemory("customer", currentMapId, vectorMap.getByteCount(), mapOverlay);
+        } else if (baseMapBitmap != null) {
+            vectorMap = null;
+            // Выделения рисуются в отдельном слое, подложка не копируется
+            mapOverlay = new MapOverlayDrawable(baseMapBitmap.getWidth(), baseMapBitmap.getHeight(), mapScale);
+            mapImageView.setImageDrawable(MapLayers.compose(getResources(), baseMapBitmap, mapOverlay));
+            MapLayers.reportMemory("customer", currentMapId, baseMapBitmap, mapOverlay);
+        }
+        mapLoadingProgress.setVisibility(View.GONE);
+
+        // Экран полностью готов к работе; время попадает в отчет системы о запуске
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
+    }
+
+    /**
+     * Убирает индикатор загрузки, если схему не удалось загрузить. Поиск по-прежнему работает,
+     * но без схемы разделы не выделяются; при возврате на экран загрузка повторяется.
+     * @param error Ошибка загрузки
+     */
+    private void showMapLoadFailed(RuntimeException error) {
+        if (isFinishing()) return;
+        error.printStackTrace();
+        mapLoadingProgress.setVisibility(View.GONE);
+        mapReleased = true;
+        Toast.makeText(this, "Не удалось загрузить схему магазина", Toast.LENGTH_LONG).show();
     }
 
     /**
      * Выполняет поиск товаров по заданному запросу.
      * @param query Поисковый запрос
+     * @param interactionId Идентификатор действия для трассировки
      */
-    private void searchProducts(String query) {
-        productsList.clear();
-        productsList.addAll(dbHelper.searchProducts(query));
-        productAdapter.notifyDataSetChanged();
+    private void searchProducts(String query, long interactionId) {
+        productAdapter.setSource(new SearchPageSource(dbHelper, query, currentMapId, searchAnalytics), interactionId);
     }
 
     /**
      * Выделяет раздел магазина с указанным товаром на схеме.
      * @param product Выбранный товар
+     * @param interactionId Идентификатор действия для трассировки
      */
-    private void highlightProductSection(Product product) {
-        if (originalMapBitmap == null) return;
+    private void highlightProductSection(Product product, long interactionId) {
+        if (mapOverlay == null) return;
+        long start = Metrics.startTimer();
 
         // Получаем информацию о разделе магазина
-        StoreSection section = dbHelper.getSectionById(product.getSectionId());
-        if (section == null) {
+        Span span = Tracer.begin(interactionId, "highlight.section_lookup");
+        int section = sectionRegistry.indexOf(product.getSectionId());
+        span.end();
+        if (section == SectionRegistry.NOT_FOUND) {
             Toast.makeText(this,
                     "Не удалось найти раздел для товара", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Сбрасываем текущую схему к оригиналу
-        currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
-        Canvas canvas = new Canvas(currentMapBitmap);
-
-        // Настройка кисти для рисования
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-
-        // Рисование увеличенного круга для выделения раздела
-        paint.setColor(Color.GREEN);
-        paint.setStyle(Paint.Style.FILL);
-        paint.setAlpha(128); // Полупрозрачный
-        canvas.drawCircle(section.getX(), section.getY(), 30, paint);
-
-        // Рисование рамки круга
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(3);
-        paint.setAlpha(255); // Полностью непрозрачный
-        canvas.drawCircle(section.getX(), section.getY(), 30, paint);
-
-        // Отображение текста с названием раздела
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.FILL);
-        paint.setTextSize(40);
-        paint.setAlpha(255);
-        canvas.drawText(section.getName() + " - " + product.getName(),
-                section.getX() + 40, section.getY(), paint);
+        // Полупрозрачный контур раздела (если он задан), круг на метке и подпись с товаром
+        span = Tracer.begin(interactionId, "highlight.draw");
+        float x = sectionRegistry.getX(section);
+        float y = sectionRegistry.getY(section);
+        String sectionName = sectionRegistry.getName(section);
+        mapOverlay.clearMarkers();
+        float[] polygon = sectionRegistry.getPolygon(section);
+        if (polygon != null) {
+            mapOverlay.addArea(polygon, withHalfAlpha(Color.GREEN));
+        }
+        mapOverlay.addMarker(x, y, HIGHLIGHT_RADIUS, withHalfAlpha(Color.GREEN),
+                MapLabels.productLabel(sectionName, product.getName()), 40, HIGHLIGHT_LABEL_OFFSET);
+        span.end();
 
-        // Обновление изображения
-        mapImageView.setImageBitmap(currentMapBitmap);
+        // Обновление изображения: перерисовывается только слой выделений
+        span = Tracer.begin(interactionId, "highlight.set_image");
+        mapOverlay.invalidateSelf();
+        span.end();
+        HIGHLIGHT_SECTION_LATENCY.recordSince(start);
 
         Toast.makeText(this,
-                "Товар " + product.getName() + " находится в разделе: " + section.getName(),
+                "Товар " + product.getName() + " находится в разделе: " + sectionName,
                 Toast.LENGTH_LONG).show();
     }
 
@@ -199,32 +614,23 @@ public class CustomerActivity extends AppCompatActivity {
      * @param text Текст из буфера обмена
      */
     private void processProductList(String text) {
-        String[] lines = text.split("\n");
-        List<Product> foundProducts = new ArrayList<>();
-        Map<Long, List<Product>> sectionProducts = new HashMap<>();
-
         // Очистка текущей схемы
-        if (originalMapBitmap != null) {
-            currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
+        if (mapOverlay != null) {
+            mapOverlay.clearMarkers();
+            mapOverlay.invalidateSelf();
         }
 
-        for (String line : lines) {
-            String productName = line.trim();
-            if (!productName.isEmpty()) {
-                List<Product> matches = dbHelper.searchProducts(productName);
-                if (!matches.isEmpty()) {
-                    Product product = matches.get(0); // Берем первое совпадение
-                    foundProducts.add(product);
-
-                    // Группировка товаров по разделам
-                    long sectionId = product.getSectionId();
-                    if (!sectionProducts.containsKey(sectionId)) {
-                        sectionProducts.put(sectionId, new ArrayList<Product>());
-                    }
-                    sectionProducts.get(sectionId).add(product);
-                }
+        ShoppingListResolver resolver = new ShoppingListResolver(new ShoppingListResolver.ProductLookup() {
+            @Override
+            public Product findBest(String name) {
+                List<Product> matches = dbHelper.searchProducts(name, currentMapId, 0, 1);
+                return matches.isEmpty() ? null : matches.get(0); // Берем первое совпадение
             }
-        }
+        });
+        long start = Metrics.startTimer();
+        ShoppingListResolver.Result result = resolver.resolve(text);
+        SHOPPING_LIST_LATENCY.recordSince(start);
+        List<Product> foundProducts = result.getFound();
 
         if (foundProducts.isEmpty()) {
             Toast.makeText(this,
@@ -233,12 +639,10 @@ public class CustomerActivity extends AppCompatActivity {
         }
 
         // Обновляем список найденных товаров
-        productsList.clear();
-        productsList.addAll(foundProducts);
-        productAdapter.notifyDataSetChanged();
+        productAdapter.setSource(new ListPageSource(foundProducts));
 
         // Выделяем все разделы магазина с найденными товарами
-        highlightMultipleSections(sectionProducts);
+        highlightMultipleSections(result.getProductsBySection());
 
         Toast.makeText(this,
                 "Найдено " + foundProducts.size() + " товаров", Toast.LENGTH_SHORT).show();
@@ -249,15 +653,8 @@ public class CustomerActivity extends AppCompatActivity {
      * @param sectionProducts Карта соответствия разделов и товаров
      */
     private void highlightMultipleSections(Map<Long, List<Product>> sectionProducts) {
-        if (originalMapBitmap == null) return;
-
-        // Сбрасываем текущую схему к оригиналу
-        currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
-        Canvas canvas = new Canvas(currentMapBitmap);
-
-        // Настройка кисти для рисования
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
+        if (mapOverlay == null) return;
+        long start = Metrics.startTimer();
 
         // Цвета для разных разделов
         int[] colors = new int[] {
@@ -266,52 +663,37 @@ public class CustomerActivity extends AppCompatActivity {
         int colorIndex = 0;
 
         // Отображаем каждый раздел на карте
+        mapOverlay.clearMarkers();
         for (Map.Entry<Long, List<Product>> entry : sectionProducts.entrySet()) {
             long sectionId = entry.getKey();
             List<Product> products = entry.getValue();
 
-            StoreSection section = dbHelper.getSectionById(sectionId);
-            if (section != null) {
+            int section = sectionRegistry.indexOf(sectionId);
+            if (section != SectionRegistry.NOT_FOUND) {
                 // Выбор цвета
                 int color = colors[colorIndex % colors.length];
                 colorIndex++;
 
-                // Рисование круга для выделения раздела
-                paint.setColor(color);
-                paint.setStyle(Paint.Style.FILL);
-                paint.setAlpha(128); // Полупрозрачный
-                canvas.drawCircle(section.getX(), section.getY(), 30, paint);
-
-                // Рисование рамки круга
-                paint.setColor(Color.BLACK);
-                paint.setStyle(Paint.Style.STROKE);
-                paint.setStrokeWidth(3);
-                paint.setAlpha(255);
-                canvas.drawCircle(section.getX(), section.getY(), 30, paint);
-
-                // Отображение текста с названием раздела
-                paint.setColor(Color.BLACK);
-                paint.setStyle(Paint.Style.FILL);
-                paint.setTextSize(30);
-                paint.setAlpha(255);
-
-                StringBuilder productList = new StringBuilder();
-                for (Product product : products) {
-                    if (productList.length() > 0) productList.append(", ");
-                    productList.append(product.getName());
+                // Подпись сокращается, чтобы не выходить за пределы экрана
+                String text = MapLabels.sectionLabel(sectionRegistry.getName(section), products);
+                float[] polygon = sectionRegistry.getPolygon(section);
+                if (polygon != null) {
+                    mapOverlay.addArea(polygon, withHalfAlpha(color));
                 }
-
-                String text = section.getName() + ": " + productList.toString();
-                // Ограничиваем длину текста, чтобы он не выходил за пределы экрана
-                if (text.length() > 25) {
-                    text = text.substring(0, 22) + "...";
-                }
-
-                canvas.drawText(text, section.getX() + 40, section.getY(), paint);
+                mapOverlay.addMarker(sectionRegistry.getX(section), sectionRegistry.getY(section),
+                        HIGHLIGHT_RADIUS, withHalfAlpha(color), text, 30, HIGHLIGHT_LABEL_OFFSET);
             }
         }
 
         // Обновление изображения
-        mapImageView.setImageBitmap(currentMapBitmap);
+        mapOverlay.invalidateSelf();
+        HIGHLIGHT_SECTIONS_LATENCY.recordSince(start);
+    }
+
+    /**
+     * @return Цвет с прозрачностью 50%
+     */
+    private static int withHalfAlpha(int color) {
+        return (color & 0x00FFFFFF) | 0x80000000;
     }
-}
\ No newline at end of file
+}
@@ -1,12 +1,16 @@
 package com.example.storefinder;
 
+import android.content.Context;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -22,14 +26,41 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.storefinder.analytics.QueryStats;
+import com.example.storefinder.analytics.SectionDemand;
+import com.example.storefinder.database.OperatorWrites;
 import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.importer.FloorPlanParser;
+import com.example.storefinder.importer.ImportResult;
+import com.example.storefinder.importer.SectionLayoutParser;
+import com.example.storefinder.invalidation.InvalidationTracker;
+import com.example.storefinder.invalidation.ObservableQuery;
+import com.example.storefinder.map.MapLayers;
+import com.example.storefinder.map.MapOverlayDrawable;
+import com.example.storefinder.map.VectorMapDrawable;
+import com.example.storefinder.memory.MemoryGovernor;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.metrics.MetricsOverlay;
+import com.example.storefinder.models.FloorPlan;
 import com.example.storefinder.models.Product;
+import com.example.storefinder.models.SectionDiff;
+import com.example.storefinder.models.SectionRegistry;
 import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.render.DemandHeatmap;
+import com.example.storefinder.startup.StartupCoordinator;
+import com.example.storefinder.sync.CatalogSyncClient;
 import com.example.storefinder.utils.FileUtils;
+import com.example.storefinder.writeback.WriteBehindQueue;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Активность для оператора магазина.
@@ -39,39 +70,96 @@ public class OperatorActivity extends AppCompatActivity {
 
     private static final int REQUEST_PICK_IMAGE = 1;
     private static final int REQUEST_IMPORT_CSV = 2;
+    private static final int REQUEST_IMPORT_ALIASES = 3;
+    // Импорт товаров с удалением товаров схемы, которых нет в файле
+    private static final int REQUEST_SYNC_CSV = 4;
+    private static final int REQUEST_IMPORT_SECTIONS = 5;
+    // Радиус метки раздела на схеме и радиус попадания касанием
+    private static final float MARKER_RADIUS = 15;
+    private static final float MARKER_HIT_RADIUS = 2 * MARKER_RADIUS;
+    private static final float MARKER_TEXT_SIZE = 30;
+    private static final float MARKER_LABEL_OFFSET = 20;
+    // Настройки синхронизации каталога с центральным сервером
+    private static final String SYNC_PREFERENCES = "catalog_sync";
+    private static final String KEY_SYNC_ENDPOINT = "endpoint";
+    // Количество запросов в каждом списке статистики поиска
+    private static final int SEARCH_STATS_LIMIT = 15;
+
+    private static final LatencyHistogram MAP_DECODE_LATENCY = Metrics.histogram("ui.map_decode");
+    private static final LatencyHistogram DRAW_SECTIONS_LATENCY = Metrics.histogram("ui.draw_sections");
+    private static final LatencyHistogram HEATMAP_BUILD_LATENCY = Metrics.histogram("ui.heatmap_build");
+    private static final LatencyHistogram FLOOR_PLAN_PARSE_LATENCY = Metrics.histogram("ui.floor_plan_parse");
 
     private ImageView mapImageView;
     private Button loadMapButton;
     private Button addSectionButton;
+    private Button importSectionsButton;
     private Button importProductsButton;
     private Button addProductButton;
-
-    private Bitmap originalMapBitmap;
-    private Bitmap currentMapBitmap;
+    private Button importAliasesButton;
+    private Button syncCatalogButton;
+    private Button searchStatsButton;
+    private Button heatmapButton;
+
+    // Неизменяемая подложка схемы в полном размере и слой меток поверх нее
+    private Bitmap baseMapBitmap;
+    private MapOverlayDrawable mapOverlay;
+    // Файл загруженной схемы, из которого она декодируется заново после освобождения памяти
+    private String mapImagePath;
+    // Векторная схема заменяет изображение, если она загружена
+    private FloorPlan floorPlan;
+    private VectorMapDrawable vectorMap;
+    // Разделы из файла векторной схемы, которые импортируются после сохранения новой схемы
+    private List<SectionLayoutParser.SectionRow> pendingPlanSections;
+    private MemoryGovernor.Consumer mapMemory;
+    private boolean started;
+    private boolean mapReleased;
     private StoreDbHelper dbHelper;
     private long currentMapId = -1;
     private List<StoreSection> sections = new ArrayList<>();
+    private SectionRegistry sectionRegistry;
+    // Тепловая карта спроса в низком разрешении или null, если она скрыта
+    private Bitmap heatmapBitmap;
+    private Rect heatmapBounds;
+    private MetricsOverlay metricsOverlay;
+    // Синхронизация и импорт раскладки выполняются вне главного потока, по одной операции за раз
+    private ExecutorService catalogExecutor;
+    // Реестр разделов текущей схемы, который перечитывается только при изменении разделов
+    private ObservableQuery<SectionRegistry> sectionsQuery;
+    private ExecutorService queryExecutor;
+    // Правки, добавленные вручную, записываются группами; результаты ожидаются отдельным потоком
+    private WriteBehindQueue writes;
+    private ExecutorService writeResultExecutor;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_operator);
 
-        dbHelper = new StoreDbHelper(this);
+        dbHelper = StoreDbHelper.getInstance(this);
+        writes = OperatorWrites.getInstance(this);
+        writeResultExecutor = Executors.newSingleThreadExecutor();
 
         mapImageView = findViewById(R.id.map_image_view);
         loadMapButton = findViewById(R.id.load_map_button);
         addSectionButton = findViewById(R.id.add_section_button);
+        importSectionsButton = findViewById(R.id.import_sections_button);
         importProductsButton = findViewById(R.id.import_products_button);
         addProductButton = findViewById(R.id.add_product_button);
+        importAliasesButton = findViewById(R.id.import_aliases_button);
+        syncCatalogButton = findViewById(R.id.sync_catalog_button);
+        searchStatsButton = findViewById(R.id.search_stats_button);
+        heatmapButton = findViewById(R.id.heatmap_button);
 
         // Настройка слушателей для кнопок
         loadMapButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                // Изображение схемы или векторная схема в JSON
                 Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
                 intent.addCategory(Intent.CATEGORY_OPENABLE);
-                intent.setType("image/*");
+                intent.setType("*/*");
+                intent.putExtra(Intent.EXTRA_MIME_TYPES, new String[]{"image/*", "application/json"});
                 startActivityForResult(intent, REQUEST_PICK_IMAGE);
             }
         });
@@ -79,7 +167,7 @@ public class OperatorActivity extends AppCompatActivity {
         addSectionButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if (originalMapBitmap == null) {
+                if (mapOverlay == null) {
                     Toast.makeText(OperatorActivity.this,
                             "Сначала загрузите схему магазина", Toast.LENGTH_SHORT).show();
                     return;
@@ -89,7 +177,37 @@ public class OperatorActivity extends AppCompatActivity {
             }
         });
 
+        importSectionsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (currentMapId == -1) {
+                    Toast.makeText(OperatorActivity.this,
+                            "Сначала загрузите схему магазина", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                // Раскладка в CSV или JSON, формат определяется по содержимому
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType("*/*");
+                startActivityForResult(intent, REQUEST_IMPORT_SECTIONS);
+            }
+        });
+
         importProductsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (currentMapId == -1) {
+                    Toast.makeText(OperatorActivity.this,
+                            "Сначала загрузите схему магазина", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                showImportModeDialog();
+            }
+        });
+
+        importAliasesButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 if (currentMapId == -1) {
@@ -101,7 +219,34 @@ public class OperatorActivity extends AppCompatActivity {
                 Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
                 intent.addCategory(Intent.CATEGORY_OPENABLE);
                 intent.setType("text/*");
-                startActivityForResult(intent, REQUEST_IMPORT_CSV);
+                startActivityForResult(intent, REQUEST_IMPORT_ALIASES);
+            }
+        });
+
+        syncCatalogButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (currentMapId == -1) {
+                    Toast.makeText(OperatorActivity.this,
+                            "Сначала загрузите схему магазина", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+
+                showSyncCatalogDialog();
+            }
+        });
+
+        searchStatsButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showSearchStatsDialog();
+            }
+        });
+
+        heatmapButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                toggleHeatmap();
             }
         });
 
@@ -114,7 +259,7 @@ public class OperatorActivity extends AppCompatActivity {
                     return;
                 }
 
-                showAddProductDialog();
+                showAddProductDialog(-1);
             }
         });
 
@@ -122,23 +267,105 @@ public class OperatorActivity extends AppCompatActivity {
         mapImageView.setOnTouchListener(new View.OnTouchListener() {
             @Override
             public boolean onTouch(View v, MotionEvent event) {
-                if (event.getAction() == MotionEvent.ACTION_DOWN && originalMapBitmap != null) {
+                if (event.getAction() == MotionEvent.ACTION_DOWN && mapOverlay != null) {
                     float touchX = event.getX();
                     float touchY = event.getY();
 
-                    // Пересчет координат касания с учетом размера изображения
-                    float scaleX = (float) originalMapBitmap.getWidth() / mapImageView.getWidth();
-                    float scaleY = (float) originalMapBitmap.getHeight() / mapImageView.getHeight();
+                    // Пересчет координат касания с учетом размера схемы (слой меток совпадает с ней по размеру)
+                    float scaleX = (float) mapOverlay.getIntrinsicWidth() / mapImageView.getWidth();
+                    float scaleY = (float) mapOverlay.getIntrinsicHeight() / mapImageView.getHeight();
 
                     float actualX = touchX * scaleX;
                     float actualY = touchY * scaleY;
 
-                    showAddSectionDialog(actualX, actualY);
+                    // Касание контура или метки раздела открывает добавление товара в этот раздел
+                    int hit = SectionRegistry.NOT_FOUND;
+                    if (sectionRegistry != null) {
+                        hit = sectionRegistry.findContaining(actualX, actualY);
+                        if (hit == SectionRegistry.NOT_FOUND) {
+                            hit = sectionRegistry.hitTest(actualX, actualY, MARKER_HIT_RADIUS);
+                        }
+                    }
+                    if (hit != SectionRegistry.NOT_FOUND) {
+                        showAddProductDialog(sectionRegistry.getId(hit));
+                    } else {
+                        showAddSectionDialog(actualX, actualY);
+                    }
                     return true;
                 }
                 return false;
             }
         });
+
+        // Полноразмерная схема отдается, пока экран не виден
+        mapMemory = new MemoryGovernor.Consumer() {
+            @Override
+            public long getByteSize() {
+                long bytes = baseMapBitmap != null ? baseMapBitmap.getByteCount() : 0;
+                return bytes + (mapOverlay != null ? mapOverlay.getByteCount() : 0);
+            }
+
+            @Override
+            public void release() {
+                if (started || baseMapBitmap == null || mapImagePath == null) return;
+                mapImageView.setImageDrawable(null);
+                baseMapBitmap = null;
+                mapOverlay = null;
+                mapReleased = true;
+            }
+        };
+        MemoryGovernor.getInstance().register("operator_map", MemoryGovernor.PRIORITY_HIDDEN_UI, mapMemory);
+
+        metricsOverlay = MetricsOverlay.attach(this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (mapReleased) {
+            mapReleased = false;
+            long decodeStart = Metrics.startTimer();
+            baseMapBitmap = MapLayers.decodeBase(mapImagePath);
+            MAP_DECODE_LATENCY.recordSince(decodeStart);
+            if (sectionRegistry != null && baseMapBitmap != null) {
+                showMap();
+                redrawMap();
+            }
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Добавленные вручную разделы и товары фиксируются до того, как процесс может быть завершен;
+        // запись идет в потоке очереди, главный поток ее не ждет
+        writes.requestFlush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        MemoryGovernor.getInstance().unregister(mapMemory);
+        if (metricsOverlay != null) {
+            metricsOverlay.detach();
+        }
+        if (catalogExecutor != null) {
+            catalogExecutor.shutdown();
+        }
+        if (sectionsQuery != null) {
+            sectionsQuery.dispose();
+        }
+        if (queryExecutor != null) {
+            queryExecutor.shutdown();
+        }
+        writeResultExecutor.shutdown();
     }
 
     @Override
@@ -148,9 +375,27 @@ public class OperatorActivity extends AppCompatActivity {
         if (resultCode == RESULT_OK) {
             if (requestCode == REQUEST_PICK_IMAGE && data != null) {
                 Uri imageUri = data.getData();
+                String type = getContentResolver().getType(imageUri);
+                if (type != null && !type.startsWith("image/")) {
+                    pickFloorPlan(imageUri);
+                    return;
+                }
                 try {
-                    originalMapBitmap = MediaStore.Images.Media.getBitmap(getContentResolver(), imageUri);
-                    String imagePath = FileUtils.saveImageToInternalStorage(this, originalMapBitmap);
+                    long decodeStart = Metrics.startTimer();
+                    Bitmap picked = MediaStore.Images.Media.getBitmap(getContentResolver(), imageUri);
+                    String imagePath = FileUtils.saveImageToInternalStorage(this, picked);
+                    mapImagePath = imagePath;
+                    floorPlan = null;
+                    pendingPlanSections = null;
+                    // Полноцветная копия из галереи нужна только для сохранения файла схемы
+                    Bitmap base = MapLayers.decodeBase(imagePath);
+                    if (base != null) {
+                        picked.recycle();
+                        baseMapBitmap = base;
+                    } else {
+                        baseMapBitmap = picked;
+                    }
+                    MAP_DECODE_LATENCY.recordSince(decodeStart);
 
                     // Запрос имени схемы магазина
                     showSaveMapDialog(imagePath);
@@ -160,18 +405,34 @@ public class OperatorActivity extends AppCompatActivity {
                             "Не удалось загрузить изображение: " + e.getMessage(),
                             Toast.LENGTH_SHORT).show();
                 }
-            } else if (requestCode == REQUEST_IMPORT_CSV && data != null) {
+            } else if ((requestCode == REQUEST_IMPORT_CSV || requestCode == REQUEST_SYNC_CSV) && data != null) {
                 Uri csvUri = data.getData();
                 try {
                     String csvContent = FileUtils.readTextFromUri(this, csvUri);
-                    int importedCount = dbHelper.importProductsFromCSV(csvContent, currentMapId);
+                    ImportResult result = dbHelper.importProductsFromCSV(csvContent, currentMapId,
+                            requestCode == REQUEST_SYNC_CSV);
 
+                    // Разделы и метки обновляются запросом разделов, только если импорт их затронул
+                    Toast.makeText(this,
+                            "Импорт товаров: " + result,
+                            Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    e.printStackTrace();
                     Toast.makeText(this,
-                            "Успешно импортировано товаров: " + importedCount,
+                            "Ошибка чтения файла: " + e.getMessage(),
                             Toast.LENGTH_SHORT).show();
+                }
+            } else if (requestCode == REQUEST_IMPORT_SECTIONS && data != null) {
+                importSectionLayout(data.getData());
+            } else if (requestCode == REQUEST_IMPORT_ALIASES && data != null) {
+                Uri csvUri = data.getData();
+                try {
+                    String csvContent = FileUtils.readTextFromUri(this, csvUri);
+                    int importedCount = dbHelper.importAliasesFromCSV(csvContent, currentMapId);
 
-                    // Обновить список разделов с новыми товарами
-                    loadSections();
+                    Toast.makeText(this,
+                            "Успешно импортировано синонимов: " + importedCount,
+                            Toast.LENGTH_SHORT).show();
                 } catch (IOException e) {
                     e.printStackTrace();
                     Toast.makeText(this,
@@ -184,7 +445,7 @@ public class OperatorActivity extends AppCompatActivity {
 
     /**
      * Показывает диалог для сохранения схемы магазина.
-     * @param imagePath Путь к сохраненному изображению
+     * @param imagePath Путь к сохраненному изображению или null для векторной схемы
      */
     private void showSaveMapDialog(final String imagePath) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
@@ -208,16 +469,31 @@ public class OperatorActivity extends AppCompatActivity {
 
                 currentMapId = dbHelper.saveStoreMap(mapName, imagePath);
                 if (currentMapId != -1) {
+                    observeSections();
+                    if (pendingPlanSections != null) {
+                        dbHelper.saveFloorPlan(currentMapId, floorPlan);
+                        dbHelper.importSections(pendingPlanSections, currentMapId);
+                        pendingPlanSections = null;
+                    }
+                    sectionRegistry = dbHelper.getSectionRegistry(currentMapId);
+                    // Заранее декодированная схема для экрана покупателя устарела
+                    StartupCoordinator.getInstance(OperatorActivity.this).invalidate();
+
                     Toast.makeText(OperatorActivity.this,
                             "Схема успешно сохранена", Toast.LENGTH_SHORT).show();
 
                     // Отображение загруженной схемы
-                    currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
-                    mapImageView.setImageBitmap(currentMapBitmap);
+                    heatmapBitmap = null;
+                    showMap();
+                    loadSections();
 
                     // Активация кнопок для работы со схемой
                     addSectionButton.setEnabled(true);
+                    importSectionsButton.setEnabled(true);
                     importProductsButton.setEnabled(true);
+                    importAliasesButton.setEnabled(true);
+                    syncCatalogButton.setEnabled(true);
+                    heatmapButton.setEnabled(true);
                 } else {
                     Toast.makeText(OperatorActivity.this,
                             "Не удалось сохранить схему", Toast.LENGTH_SHORT).show();
@@ -228,6 +504,267 @@ public class OperatorActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Показывает выбор режима импорта товаров и открывает выбор CSV-файла.
+     * В обоих режимах уже сохраненные товары обновляются; при замене каталога
+     * товары схемы, которых нет в файле, удаляются.
+     */
+    private void showImportModeDialog() {
+        CharSequence[] modes = {"Добавить и обновить товары", "Заменить каталог схемы"};
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Импорт товаров");
+        builder.setItems(modes, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+                intent.addCategory(Intent.CATEGORY_OPENABLE);
+                intent.setType("text/*");
+                startActivityForResult(intent, which == 0 ? REQUEST_IMPORT_CSV : REQUEST_SYNC_CSV);
+            }
+        });
+        builder.create().show();
+    }
+
+    /**
+     * Показывает самые частые запросы покупателей и запросы, по которым ничего не нашлось.
+     * Сводка ведется журналом поиска и обновляется с задержкой до интервала его записи.
+     */
+    private void showSearchStatsDialog() {
+        List<QueryStats> top = dbHelper.getTopSearchQueries(SEARCH_STATS_LIMIT, false);
+        List<QueryStats> zeroHits = dbHelper.getTopSearchQueries(SEARCH_STATS_LIMIT, true);
+        if (top.isEmpty()) {
+            Toast.makeText(this, "Покупатели еще ничего не искали", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<CharSequence> lines = new ArrayList<>(top.size() + zeroHits.size() + 1);
+        for (QueryStats stats : top) {
+            lines.add(stats.getQuery() + " — " + stats.getSearches() + ", выбрано " + stats.getSelections());
+        }
+        if (!zeroHits.isEmpty()) {
+            lines.add("Ничего не найдено:");
+            for (QueryStats stats : zeroHits) {
+                lines.add(stats.getQuery() + " — " + stats.getZeroHits());
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Частые запросы");
+        builder.setItems(lines.toArray(new CharSequence[0]), null);
+        builder.create().show();
+    }
+
+    /**
+     * Показывает или скрывает тепловую карту спроса на разделы поверх схемы.
+     * Карта строится один раз при включении по накопленным счетчикам спроса в разрешении
+     * ячеек сетки и при каждой перерисовке схемы только растягивается, поэтому ее стоимость
+     * не зависит от количества событий и почти не зависит от количества разделов.
+     */
+    private void toggleHeatmap() {
+        if (heatmapBitmap != null) {
+            heatmapBitmap = null;
+            redrawMap();
+            return;
+        }
+        if (mapOverlay == null) {
+            return;
+        }
+
+        long start = Metrics.startTimer();
+        SectionDemand demand = dbHelper.getSectionDemand(currentMapId, System.currentTimeMillis());
+        if (demand.size() == 0) {
+            Toast.makeText(this, "Покупатели еще не искали товары на этой схеме", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        DemandHeatmap heatmap = DemandHeatmap.rasterize(sectionRegistry, demand,
+                mapOverlay.getIntrinsicWidth(), mapOverlay.getIntrinsicHeight(),
+                DemandHeatmap.DEFAULT_CELL_SIZE, DemandHeatmap.DEFAULT_RADIUS);
+        heatmapBitmap = Bitmap.createBitmap(heatmap.getPixels(), heatmap.getWidth(), heatmap.getHeight(),
+                Bitmap.Config.ARGB_8888);
+        heatmapBounds = new Rect(0, 0, heatmap.getWidth() * heatmap.getCellSize(),
+                heatmap.getHeight() * heatmap.getCellSize());
+        HEATMAP_BUILD_LATENCY.recordSince(start);
+        redrawMap();
+    }
+
+    /**
+     * Показывает диалог синхронизации каталога схемы с центральным сервером.
+     * Адрес сервера запоминается до следующей синхронизации.
+     */
+    private void showSyncCatalogDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        View view = LayoutInflater.from(this).inflate(R.layout.dialog_sync_catalog, null);
+        builder.setView(view);
+
+        final SharedPreferences preferences = getSharedPreferences(SYNC_PREFERENCES, Context.MODE_PRIVATE);
+        final EditText endpointEditText = view.findViewById(R.id.sync_endpoint_edit_text);
+        endpointEditText.setText(preferences.getString(KEY_SYNC_ENDPOINT, ""));
+        Button startButton = view.findViewById(R.id.start_sync_button);
+
+        final AlertDialog dialog = builder.create();
+        dialog.show();
+
+        startButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                String endpoint = endpointEditText.getText().toString().trim();
+                if (endpoint.isEmpty()) {
+                    endpointEditText.setError("Введите адрес сервера");
+                    return;
+                }
+
+                preferences.edit().putString(KEY_SYNC_ENDPOINT, endpoint).apply();
+                syncCatalog(endpoint);
+                dialog.dismiss();
+            }
+        });
+    }
+
+    /**
+     * @return Поток синхронизации и импорта раскладки
+     */
+    private ExecutorService catalogExecutor() {
+        if (catalogExecutor == null) {
+            catalogExecutor = Executors.newSingleThreadExecutor();
+        }
+        return catalogExecutor;
+    }
+
+    /**
+     * Импортирует раскладку разделов в фоновом потоке одной транзакцией.
+     * Новые метки рисуются один раз, когда запрос разделов получит изменения импорта.
+     * Если файл описывает и векторную схему (размеры, стены, стеллажи), она не заменяет
+     * текущую схему сама: оператор выбирает это явно ({@link #confirmFloorPlan}).
+     * @param layoutUri Файл раскладки (CSV или JSON)
+     */
+    private void importSectionLayout(final Uri layoutUri) {
+        importSectionsButton.setEnabled(false);
+        final long mapId = currentMapId;
+        catalogExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                FloorPlan plan = null;
+                try {
+                    String layout = FileUtils.readTextFromUri(OperatorActivity.this, layoutUri);
+                    ImportResult result = dbHelper.importSections(SectionLayoutParser.parse(layout), mapId);
+                    long parseStart = Metrics.startTimer();
+                    plan = FloorPlanParser.parse(layout);
+                    FLOOR_PLAN_PARSE_LATENCY.recordSince(parseStart);
+                    // Заранее подготовленный реестр разделов для экрана покупателя устарел
+                    StartupCoordinator.getInstance(OperatorActivity.this).invalidate();
+                    message = "Импорт разделов: " + result;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    message = "Ошибка чтения раскладки: " + e.getMessage();
+                }
+
+                final String text = message;
+                final FloorPlan importedPlan = plan;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        importSectionsButton.setEnabled(true);
+                        Toast.makeText(OperatorActivity.this, text, Toast.LENGTH_LONG).show();
+                        if (importedPlan != null && mapId == currentMapId) {
+                            confirmFloorPlan(importedPlan, mapId);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Спрашивает оператора, заменить ли схему векторной схемой из файла раскладки,
+     * и сохраняет ее в фоновом потоке.
+     * @param plan Векторная схема из файла
+     * @param mapId Идентификатор схемы магазина
+     */
+    private void confirmFloorPlan(final FloorPlan plan, final long mapId) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Векторная схема");
+        builder.setMessage("Файл раскладки содержит векторную схему магазина. "
+                + "Заменить ею текущую схему?");
+        builder.setPositiveButton("Заменить", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                catalogExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dbHelper.saveFloorPlan(mapId, plan);
+                        // Заранее декодированная схема для экрана покупателя устарела
+                        StartupCoordinator.getInstance(OperatorActivity.this).invalidate();
+                        runOnUiThread(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (isFinishing() || mapId != currentMapId) {
+                                    return;
+                                }
+                                floorPlan = plan;
+                                baseMapBitmap = null;
+                                showMap();
+                                redrawMap();
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        builder.setNegativeButton("Оставить текущую", null);
+        builder.create().show();
+    }
+
+    /**
+     * Загружает и применяет изменения каталога схемы в фоновом потоке.
+     * Поиск покупателя при этом не блокируется: изменения записываются короткими транзакциями.
+     * @param endpoint Адрес дельт каталога на сервере
+     */
+    private void syncCatalog(String endpoint) {
+        syncCatalogButton.setEnabled(false);
+        final long mapId = currentMapId;
+        final CatalogSyncClient client = new CatalogSyncClient(endpoint);
+        catalogExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    CatalogSyncClient.Result result = client.sync(dbHelper.getCatalogStore(mapId));
+                    message = result.isModified()
+                            ? "Каталог обновлен до версии " + result.getVersion()
+                                    + ": разделов " + result.getUpsertedSections()
+                                    + " (-" + result.getRemovedSections() + ")"
+                                    + ", товаров " + result.getUpsertedProducts()
+                                    + " (-" + result.getRemovedProducts() + ")"
+                                    + (result.getSkippedProducts() > 0
+                                            ? ". Пропущено товаров с неизвестным разделом: "
+                                                    + result.getSkippedProducts()
+                                                    + ", синхронизация будет повторена"
+                                            : "")
+                            : "Каталог не изменился";
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    message = "Ошибка синхронизации: " + e.getMessage();
+                }
+
+                final String text = message;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        syncCatalogButton.setEnabled(true);
+                        Toast.makeText(OperatorActivity.this, text, Toast.LENGTH_LONG).show();
+                    }
+                });
+            }
+        });
+    }
+
     /**
      * Показывает диалог для добавления раздела магазина.
      */
@@ -283,20 +820,9 @@ public class OperatorActivity extends AppCompatActivity {
                 section.setX(sectionX);
                 section.setY(sectionY);
 
-                long sectionId = dbHelper.addSection(section, currentMapId);
-                if (sectionId != -1) {
-                    section.setId(sectionId);
-                    sections.add(section);
-
-                    Toast.makeText(OperatorActivity.this,
-                            "Раздел успешно добавлен", Toast.LENGTH_SHORT).show();
-
-                    // Отрисовка метки раздела на схеме
-                    drawSectionMarker(section);
-                } else {
-                    Toast.makeText(OperatorActivity.this,
-                            "Не удалось добавить раздел", Toast.LENGTH_SHORT).show();
-                }
+                // Метка раздела появится на схеме, когда запрос разделов получит изменение
+                reportWrite(writes.submit(dbHelper.sectionWrite(section, currentMapId)),
+                        "Раздел успешно добавлен", "Не удалось добавить раздел");
 
                 dialog.dismiss();
             }
@@ -305,8 +831,9 @@ public class OperatorActivity extends AppCompatActivity {
 
     /**
      * Показывает диалог для добавления товара.
+     * @param preselectedSectionId Раздел, выбранный по умолчанию, или -1
      */
-    private void showAddProductDialog() {
+    private void showAddProductDialog(long preselectedSectionId) {
         AlertDialog.Builder builder = new AlertDialog.Builder(this);
         View view = LayoutInflater.from(this).inflate(R.layout.dialog_add_product, null);
         builder.setView(view);
@@ -320,6 +847,12 @@ public class OperatorActivity extends AppCompatActivity {
                 android.R.layout.simple_spinner_item, sections);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         sectionSpinner.setAdapter(adapter);
+        for (int i = 0; i < sections.size(); i++) {
+            if (sections.get(i).getId() == preselectedSectionId) {
+                sectionSpinner.setSelection(i);
+                break;
+            }
+        }
 
         final AlertDialog dialog = builder.create();
         dialog.show();
@@ -344,14 +877,9 @@ public class OperatorActivity extends AppCompatActivity {
                 product.setName(productName);
                 product.setSectionId(selectedSection.getId());
 
-                long productId = dbHelper.addProduct(product);
-                if (productId != -1) {
-                    Toast.makeText(OperatorActivity.this,
-                            "Товар успешно добавлен", Toast.LENGTH_SHORT).show();
-                } else {
-                    Toast.makeText(OperatorActivity.this,
-                            "Не удалось добавить товар", Toast.LENGTH_SHORT).show();
-                }
+                // Диалог закрывается сразу: товары, добавленные подряд, записываются одной транзакцией
+                reportWrite(writes.submit(dbHelper.productWrite(product)),
+                        "Товар успешно добавлен", "Не удалось добавить товар");
 
                 dialog.dismiss();
             }
@@ -359,57 +887,200 @@ public class OperatorActivity extends AppCompatActivity {
     }
 
     /**
-     * Отрисовывает метку раздела на схеме магазина.
-     * @param section Раздел магазина
+     * Показывает итог отложенной правки после фиксации ее пачки.
+     * @param result Идентификатор добавленной строки или -1
+     * @param success Сообщение об успехе
+     * @param failure Сообщение об ошибке
      */
-    private void drawSectionMarker(StoreSection section) {
-        if (currentMapBitmap == null) return;
-
-        // Создание копии текущего bitmap для рисования
-        Bitmap newBitmap = currentMapBitmap.copy(currentMapBitmap.getConfig(), true);
-        Canvas canvas = new Canvas(newBitmap);
-
-        // Настройка кисти для рисования
-        Paint paint = new Paint();
-        paint.setAntiAlias(true);
-
-        // Рисование круга
-        paint.setColor(Color.RED);
-        paint.setStyle(Paint.Style.FILL);
-        canvas.drawCircle(section.getX(), section.getY(), 15, paint);
-
-        // Рисование рамки круга
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.STROKE);
-        paint.setStrokeWidth(3);
-        canvas.drawCircle(section.getX(), section.getY(), 15, paint);
-
-        // Отображение текста с названием раздела
-        paint.setColor(Color.BLACK);
-        paint.setStyle(Paint.Style.FILL);
-        paint.setTextSize(30);
-        canvas.drawText(section.getName(), section.getX() + 20, section.getY(), paint);
-
-        // Обновление изображения
-        currentMapBitmap = newBitmap;
-        mapImageView.setImageBitmap(currentMapBitmap);
+    private void reportWrite(final Future<Long> result, final String success, final String failure) {
+        writeResultExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean added;
+                try {
+                    added = result.get() != -1;
+                } catch (InterruptedException e) {
+                    return;
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    added = false;
+                }
+                final String text = added ? success : failure;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!isFinishing()) {
+                            Toast.makeText(OperatorActivity.this, text, Toast.LENGTH_SHORT).show();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     /**
-     * Загружает список разделов магазина из базы данных.
+     * Показывает подложку схемы (векторную, если она загружена) с пустым слоем меток.
      */
-    private void loadSections() {
-        sections = dbHelper.getAllSections(currentMapId);
+    private void showMap() {
+        if (floorPlan != null) {
+            vectorMap = new VectorMapDrawable(floorPlan);
+            mapOverlay = new MapOverlayDrawable(vectorMap.getIntrinsicWidth(), vectorMap.getIntrinsicHeight(), 1f);
+            mapImageView.setImageDrawable(MapLayers.compose(vectorMap, mapOverlay));
+            return;
+        }
+        vectorMap = null;
+        mapOverlay = new MapOverlayDrawable(baseMapBitmap.getWidth(), baseMapBitmap.getHeight(), 1f);
+        mapImageView.setImageDrawable(MapLayers.compose(getResources(), baseMapBitmap, mapOverlay));
+    }
+
+    /**
+     * Открывает векторную схему из JSON-файла как новую схему магазина без изображения.
+     * Разделы из того же файла импортируются после сохранения схемы.
+     * @param uri Файл схемы
+     */
+    private void pickFloorPlan(Uri uri) {
+        try {
+            String layout = FileUtils.readTextFromUri(this, uri);
+            long start = Metrics.startTimer();
+            FloorPlan plan = FloorPlanParser.parse(layout);
+            FLOOR_PLAN_PARSE_LATENCY.recordSince(start);
+            if (plan == null) {
+                Toast.makeText(this,
+                        "Файл не содержит векторной схемы: нужны поля width и height", Toast.LENGTH_LONG).show();
+                return;
+            }
+            pendingPlanSections = SectionLayoutParser.parse(layout);
+            floorPlan = plan;
+            baseMapBitmap = null;
+            mapImagePath = null;
+
+            // Запрос имени схемы магазина
+            showSaveMapDialog(null);
+        } catch (IOException e) {
+            e.printStackTrace();
+            Toast.makeText(this,
+                    "Ошибка чтения схемы: " + e.getMessage(),
+                    Toast.LENGTH_SHORT).show();
+        }
+    }
 
-        if (originalMapBitmap != null) {
-            // Перерисовываем схему с метками всех разделов
-            currentMapBitmap = originalMapBitmap.copy(originalMapBitmap.getConfig(), true);
+    /**
+     * Добавляет метку раздела в слой меток.
+     * @param name Название раздела
+     * @param x Координата X на схеме
+     * @param y Координата Y на схеме
+     */
+    private void addSectionMarker(String name, float x, float y) {
+        mapOverlay.addMarker(x, y, MARKER_RADIUS, Color.RED, name, MARKER_TEXT_SIZE, MARKER_LABEL_OFFSET);
+    }
 
-            for (StoreSection section : sections) {
-                drawSectionMarker(section);
+    /**
+     * Подписывает экран на изменения разделов текущей схемы вместо прежней подписки.
+     * Изменения товаров и синонимов запрос не перечитывают.
+     */
+    private void observeSections() {
+        if (sectionsQuery != null) {
+            sectionsQuery.dispose();
+        }
+        if (queryExecutor == null) {
+            queryExecutor = Executors.newSingleThreadExecutor();
+        }
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        Executor mainExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        };
+        final long mapId = currentMapId;
+        sectionsQuery = new ObservableQuery<SectionRegistry>(dbHelper.getInvalidationTracker(),
+                InvalidationTracker.TABLE_SECTIONS, mapId, queryExecutor, mainExecutor) {
+            @Override
+            protected SectionRegistry query() {
+                return dbHelper.getSectionRegistry(mapId);
             }
+        };
+        sectionsQuery.observe(new ObservableQuery.Listener<SectionRegistry>() {
+            @Override
+            public void onResult(SectionRegistry previous, SectionRegistry current) {
+                if (!isFinishing()) {
+                    applySections(current);
+                }
+            }
+        });
+    }
 
-            mapImageView.setImageBitmap(currentMapBitmap);
+    /**
+     * Применяет перечитанный реестр разделов: сравнивает его с показанным и перерисовывает
+     * только то, что изменилось. Новые разделы дорисовываются к слою меток, при изменении
+     * или удалении разделов слой собирается заново.
+     * @param registry Перечитанный реестр
+     */
+    private void applySections(SectionRegistry registry) {
+        SectionDiff diff = SectionDiff.between(sectionRegistry, registry);
+        if (diff.isEmpty()) {
+            return;
+        }
+        sectionRegistry = registry;
+        sections = new ArrayList<>(registry.size());
+        for (int i = 0; i < registry.size(); i++) {
+            sections.add(registry.toSection(i));
+        }
+        if (mapOverlay == null) {
+            return;
+        }
+        if (!diff.isAppendOnly()) {
+            redrawMap();
+            return;
+        }
+        long start = Metrics.startTimer();
+        for (int i : diff.getAdded()) {
+            addSectionMarker(registry.getName(i), registry.getX(i), registry.getY(i));
+        }
+        mapOverlay.invalidateSelf();
+        if (vectorMap != null) {
+            vectorMap.setSections(registry);
+            vectorMap.invalidateSelf();
+        }
+        DRAW_SECTIONS_LATENCY.recordSince(start);
+    }
+
+    /**
+     * Загружает список разделов магазина из реестра разделов схемы.
+     */
+    private void loadSections() {
+        sectionRegistry = dbHelper.getSectionRegistry(currentMapId);
+        sections = new ArrayList<>(sectionRegistry.size());
+        for (int i = 0; i < sectionRegistry.size(); i++) {
+            sections.add(sectionRegistry.toSection(i));
+        }
+        redrawMap();
+    }
+
+    /**
+     * Перерисовывает схему с тепловой картой (если она включена) и метками всех разделов.
+     */
+    private void redrawMap() {
+        if (mapOverlay != null) {
+            // Слой меток собирается заново, подложка не копируется и не перерисовывается
+            long start = Metrics.startTimer();
+            mapOverlay.clearMarkers();
+            mapOverlay.setHeatmap(heatmapBitmap, heatmapBounds);
+            for (int i = 0; i < sectionRegistry.size(); i++) {
+                addSectionMarker(sectionRegistry.getName(i), sectionRegistry.getX(i), sectionRegistry.getY(i));
+            }
+            mapOverlay.invalidateSelf();
+            long baseBytes;
+            if (vectorMap != null) {
+                // Контуры разделов входят в векторную подложку
+                vectorMap.setSections(sectionRegistry);
+                vectorMap.invalidateSelf();
+                baseBytes = vectorMap.getByteCount();
+            } else {
+                baseBytes = baseMapBitmap != null ? baseMapBitmap.getByteCount() : 0;
+            }
+            MapLayers.reportMemory("operator", currentMapId, baseBytes, mapOverlay);
+            DRAW_SECTIONS_LATENCY.recordSince(start);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package com.example.storefinder;
+
+import android.app.Application;
+
+import com.example.storefinder.memory.MemoryGovernor;
+import com.example.storefinder.metrics.DebugMetrics;
+import com.example.storefinder.startup.StartupCoordinator;
+import com.example.storefinder.tracing.PerfTracing;
+
+/**
+ * Приложение. Включает сбор метрик и журнал задержек и сразу после запуска процесса
+ * начинает готовить данные экрана покупателя, пока пользователь выбирает роль.
+ * Сигналы системы о нехватке памяти передаются в {@link MemoryGovernor}.
+ */
+public class StoreFinderApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Метрики собираются только в отладочных сборках
+        DebugMetrics.install(this);
+        // Журнал задержек поиска и выделения разделов ведется во всех сборках
+        PerfTracing.install(this);
+
+        StartupCoordinator.getInstance(this).prepare(StartupCoordinator.DEFAULT_MAP_ID);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        MemoryGovernor.getInstance().onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+        MemoryGovernor.getInstance().onTrimMemory(MemoryGovernor.TRIM_MEMORY_COMPLETE);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.storefinder.adapters;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.search.CompletionTrie;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Адаптер подсказок поля поиска: названия товаров, начинающиеся с введенного текста,
+ * по убыванию популярности. Подсказки выбираются из {@link CompletionTrie},
+ * который перестраивается в фоне и подменяется через {@link #setTrie(CompletionTrie)}.
+ */
+public class CompletionAdapter extends ArrayAdapter<String> {
+    public static final int MAX_SUGGESTIONS = 10;
+
+    private static final LatencyHistogram COMPLETE_LATENCY = Metrics.histogram("ui.complete");
+
+    private volatile CompletionTrie trie;
+    private final Filter filter = new CompletionFilter();
+
+    public CompletionAdapter(Context context) {
+        super(context, android.R.layout.simple_dropdown_item_1line);
+    }
+
+    /**
+     * Подменяет словарь подсказок. Может вызываться из любого потока.
+     * @param newTrie Новый словарь
+     */
+    public void setTrie(CompletionTrie newTrie) {
+        trie = newTrie;
+    }
+
+    /**
+     * @return Текущий словарь подсказок или null, если он еще не построен или освобожден
+     */
+    public CompletionTrie getTrie() {
+        return trie;
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Фильтр подсказок; выбор выполняется в фоновом потоке фильтрации.
+     */
+    private final class CompletionFilter extends Filter {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            FilterResults results = new FilterResults();
+            CompletionTrie current = trie;
+            if (current == null || constraint == null) {
+                return results;
+            }
+            long start = Metrics.startTimer();
+            List<CompletionTrie.Completion> completions = current.complete(constraint.toString(), MAX_SUGGESTIONS);
+            List<String> texts = new ArrayList<>(completions.size());
+            for (CompletionTrie.Completion completion : completions) {
+                texts.add(completion.getText());
+            }
+            COMPLETE_LATENCY.recordSince(start);
+            results.values = texts;
+            results.count = texts.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            clear();
+            if (results.values != null) {
+                addAll((List<String>) results.values);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.storefinder.adapters;
+
+import com.example.storefinder.models.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Источник страниц поверх уже готового списка товаров
+ * (например, результата разбора списка из буфера обмена).
+ */
+public class ListPageSource implements PagedProductAdapter.PageSource {
+    private final List<Product> products;
+
+    public ListPageSource(List<Product> products) {
+        this.products = new ArrayList<>(products);
+    }
+
+    @Override
+    public int count() {
+        return products.size();
+    }
+
+    @Override
+    public List<Product> loadPage(int offset, int limit) {
+        int end = Math.min(products.size(), offset + limit);
+        return new ArrayList<>(products.subList(Math.min(offset, end), end));
+    }
+}
@@ -0,0 +1,345 @@
+package com.example.storefinder.adapters;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.storefinder.models.Product;
+import com.example.storefinder.tracing.Span;
+import com.example.storefinder.tracing.Tracer;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Адаптер списка товаров с постраничной ленивой загрузкой.
+ * В памяти хранятся только страницы рядом с видимой областью списка,
+ * поэтому объем памяти не зависит от количества найденных товаров.
+ */
+public class PagedProductAdapter extends RecyclerView.Adapter<PagedProductAdapter.ProductViewHolder> {
+
+    /**
+     * Источник данных для постраничной загрузки.
+     * Методы вызываются в фоновом потоке.
+     */
+    public interface PageSource {
+        /**
+         * @return Общее количество элементов
+         */
+        int count();
+
+        /**
+         * Загружает страницу элементов.
+         * @param offset Позиция первого элемента страницы
+         * @param limit Максимальное количество элементов
+         * @return Элементы страницы
+         */
+        List<Product> loadPage(int offset, int limit);
+    }
+
+    /**
+     * Обработчик выбора товара в списке.
+     */
+    public interface OnProductClickListener {
+        void onProductClick(Product product);
+    }
+
+    public static final int PAGE_SIZE = 50;
+    // Количество страниц, которые держатся в памяти одновременно
+    private static final int MAX_CACHED_PAGES = 6;
+    // Расстояние до края страницы, при котором начинается загрузка соседней
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<List<Product>> pages = new SparseArray<>();
+    private final SparseArray<Boolean> pendingPages = new SparseArray<>();
+    private final OnProductClickListener clickListener;
+
+    private PageSource source;
+    private int itemCount;
+    // Номер поколения данных; ответы для устаревшего источника отбрасываются
+    private int generation;
+    // Обновление текущего источника уже поставлено в очередь
+    private boolean refreshPending;
+
+    public PagedProductAdapter(OnProductClickListener clickListener) {
+        this.clickListener = clickListener;
+    }
+
+    /**
+     * Устанавливает новый источник данных. Количество элементов и первая
+     * страница загружаются в фоне, после чего список обновляется.
+     * @param newSource Источник данных или null для очистки списка
+     */
+    public void setSource(PageSource newSource) {
+        setSource(newSource, 0);
+    }
+
+    /**
+     * Устанавливает новый источник данных и трассирует загрузку первой страницы
+     * (search.query), ожидание главного потока (search.dispatch) и обновление
+     * списка (search.adapter_update) как этапы указанного действия.
+     * @param newSource Источник данных или null для очистки списка
+     * @param interactionId Идентификатор действия {@link Tracer} или 0
+     */
+    public void setSource(final PageSource newSource, final long interactionId) {
+        final int requestGeneration = ++generation;
+        source = newSource;
+        pages.clear();
+        pendingPages.clear();
+        refreshPending = false;
+
+        if (newSource == null) {
+            itemCount = 0;
+            notifyDataSetChanged();
+            return;
+        }
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                Span querySpan = Tracer.begin(interactionId, "search.query");
+                final int count = newSource.count();
+                final List<Product> firstPage = count > 0
+                        ? newSource.loadPage(0, PAGE_SIZE) : null;
+                querySpan.end();
+
+                final long postedAt = interactionId != 0 ? System.nanoTime() : 0;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration != generation) return;
+                        if (postedAt != 0) {
+                            Tracer.record(interactionId, "search.dispatch", postedAt, System.nanoTime() - postedAt);
+                        }
+                        Span updateSpan = Tracer.begin(interactionId, "search.adapter_update");
+                        itemCount = count;
+                        if (firstPage != null) {
+                            pages.put(0, firstPage);
+                        }
+                        notifyDataSetChanged();
+                        updateSpan.end();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Перечитывает текущий источник после изменения данных в базе: заново загружаются только
+     * страницы, которые сейчас в памяти, а список уведомляется лишь об изменившихся позициях,
+     * поэтому прокрутка и видимые элементы сохраняются. Повторные вызовы до завершения
+     * обновления объединяются в одно.
+     */
+    public void refresh() {
+        if (source == null || refreshPending) {
+            return;
+        }
+        refreshPending = true;
+        final int requestGeneration = ++generation;
+        final PageSource requestSource = source;
+        final int[] pageIndexes = new int[pages.size()];
+        for (int i = 0; i < pageIndexes.length; i++) {
+            pageIndexes[i] = pages.keyAt(i);
+        }
+        // Загрузки страниц для прежнего поколения отбрасываются
+        pendingPages.clear();
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int count = requestSource.count();
+                final SparseArray<List<Product>> freshPages = new SparseArray<>();
+                for (int pageIndex : pageIndexes) {
+                    int offset = pageIndex * PAGE_SIZE;
+                    if (offset < count) {
+                        freshPages.put(pageIndex, requestSource.loadPage(offset, PAGE_SIZE));
+                    }
+                }
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration != generation) return;
+                        refreshPending = false;
+                        applyRefresh(count, freshPages);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Заменяет загруженные страницы свежими и уведомляет список о разнице.
+     * @param count Новое количество элементов
+     * @param freshPages Перечитанные страницы
+     */
+    private void applyRefresh(int count, SparseArray<List<Product>> freshPages) {
+        int oldCount = itemCount;
+        int common = Math.min(oldCount, count);
+        for (int i = 0; i < freshPages.size(); i++) {
+            int pageIndex = freshPages.keyAt(i);
+            List<Product> freshPage = freshPages.valueAt(i);
+            int offset = pageIndex * PAGE_SIZE;
+            for (int j = 0; j < freshPage.size() && offset + j < common; j++) {
+                if (!PagedProductAdapter.sameContent(getItem(offset + j), freshPage.get(j))) {
+                    notifyItemChanged(offset + j);
+                }
+            }
+        }
+        // Страницы, которые не перечитывались, загрузятся заново при прокрутке
+        pages.clear();
+        for (int i = 0; i < freshPages.size(); i++) {
+            pages.put(freshPages.keyAt(i), freshPages.valueAt(i));
+        }
+        itemCount = count;
+        if (count > oldCount) {
+            notifyItemRangeInserted(oldCount, count - oldCount);
+        } else if (count < oldCount) {
+            notifyItemRangeRemoved(count, oldCount - count);
+        }
+    }
+
+    private static boolean sameContent(Product a, Product b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.getId() == b.getId() && a.getSectionId() == b.getSectionId() && a.getName().equals(b.getName());
+    }
+
+    /**
+     * Возвращает товар в указанной позиции, если его страница уже загружена.
+     * @param position Позиция в списке
+     * @return Товар или null
+     */
+    public Product getItem(int position) {
+        List<Product> page = pages.get(position / PAGE_SIZE);
+        int index = position % PAGE_SIZE;
+        return page != null && index < page.size() ? page.get(index) : null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    @Override
+    public ProductViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        return new ProductViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ProductViewHolder holder, int position) {
+        int pageIndex = position / PAGE_SIZE;
+        Product product = getItem(position);
+        holder.bind(product);
+
+        if (product == null) {
+            requestPage(pageIndex);
+        }
+
+        // Предзагрузка соседних страниц при приближении к краю текущей
+        int indexInPage = position % PAGE_SIZE;
+        if (indexInPage >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            requestPage(pageIndex + 1);
+        } else if (indexInPage < PREFETCH_DISTANCE && pageIndex > 0) {
+            requestPage(pageIndex - 1);
+        }
+    }
+
+    /**
+     * Освобождает фоновый поток загрузки. Вызывается при уничтожении экрана.
+     */
+    public void release() {
+        generation++;
+        loader.shutdownNow();
+    }
+
+    private void requestPage(final int pageIndex) {
+        final int offset = pageIndex * PAGE_SIZE;
+        if (source == null || offset >= itemCount ||
+                pages.get(pageIndex) != null || pendingPages.get(pageIndex) != null) {
+            return;
+        }
+
+        pendingPages.put(pageIndex, Boolean.TRUE);
+        final PageSource requestSource = source;
+        final int requestGeneration = generation;
+
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<Product> page = requestSource.loadPage(offset, PAGE_SIZE);
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (requestGeneration != generation) return;
+                        pendingPages.remove(pageIndex);
+                        pages.put(pageIndex, page);
+                        evictDistantPages(pageIndex);
+                        notifyItemRangeChanged(offset, Math.min(PAGE_SIZE, itemCount - offset));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Удаляет из памяти страницы, наиболее удаленные от последней загруженной.
+     * @param anchorPage Номер последней загруженной страницы
+     */
+    private void evictDistantPages(int anchorPage) {
+        while (pages.size() > MAX_CACHED_PAGES) {
+            int farthestIndex = 0;
+            int farthestDistance = -1;
+            for (int i = 0; i < pages.size(); i++) {
+                int distance = Math.abs(pages.keyAt(i) - anchorPage);
+                if (distance > farthestDistance) {
+                    farthestDistance = distance;
+                    farthestIndex = i;
+                }
+            }
+            pages.removeAt(farthestIndex);
+        }
+    }
+
+    /**
+     * Элемент списка товаров.
+     */
+    class ProductViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        private final TextView textView;
+
+        ProductViewHolder(View itemView) {
+            super(itemView);
+            textView = itemView.findViewById(android.R.id.text1);
+            itemView.setOnClickListener(this);
+        }
+
+        void bind(Product product) {
+            // Пока страница загружается, показываем заглушку
+            textView.setText(product != null ? product.getName() : "…");
+        }
+
+        @Override
+        public void onClick(View v) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || clickListener == null) return;
+
+            Product product = getItem(position);
+            if (product != null) {
+                clickListener.onProductClick(product);
+            }
+        }
+    }
+}
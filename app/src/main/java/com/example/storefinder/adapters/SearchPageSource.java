@@ -0,0 +1,96 @@
+package com.example.storefinder.adapters;
+
+import com.example.storefinder.analytics.SearchAnalytics;
+import com.example.storefinder.analytics.SearchEvent;
+import com.example.storefinder.database.SearchPage;
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.search.SearchRanking;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Источник страниц результатов поиска товаров в базе данных.
+ * Запрос передается в журнал поиска, если он задан: вместе с количеством найденных
+ * товаров и разделом первого из них, поэтому запрос учитывается при загрузке первой страницы.
+ * <p>
+ * Для каждой загруженной страницы запоминается ключ ее последнего результата: следующая
+ * страница при прокрутке выбирается по этому ключу, без повторного отбора всех предыдущих.
+ * При переходе через несколько страниц (быстрая прокрутка) страница отсчитывается от ближайшего
+ * известного ключа перед ней. Количество результатов не ограничивается: память на страницу
+ * не зависит от ее номера.
+ */
+public class SearchPageSource implements PagedProductAdapter.PageSource {
+    private final StoreDbHelper dbHelper;
+    private final String query;
+    private final long mapId;
+    private final SearchAnalytics analytics;
+    private int count;
+    private boolean recorded;
+    // Ключ результата, предшествующего позиции; сбрасывается при перечитывании количества
+    private final TreeMap<Integer, SearchRanking.Key> keysBefore = new TreeMap<>();
+
+    public SearchPageSource(StoreDbHelper dbHelper, String query, long mapId) {
+        this(dbHelper, query, mapId, null);
+    }
+
+    /**
+     * @param dbHelper База данных
+     * @param query Поисковый запрос
+     * @param mapId Идентификатор схемы магазина
+     * @param analytics Журнал поиска или null
+     */
+    public SearchPageSource(StoreDbHelper dbHelper, String query, long mapId, SearchAnalytics analytics) {
+        this.dbHelper = dbHelper;
+        this.query = query;
+        this.mapId = mapId;
+        this.analytics = analytics;
+    }
+
+    @Override
+    public int count() {
+        count = dbHelper.countProducts(query, mapId);
+        if (count == 0) {
+            // Первая страница для пустого результата не запрашивается
+            record(SearchEvent.NO_SECTION);
+        }
+        // Данные могли измениться: запомненные ключи страниц больше не действительны
+        synchronized (keysBefore) {
+            keysBefore.clear();
+        }
+        return count;
+    }
+
+    @Override
+    public List<Product> loadPage(int offset, int limit) {
+        Map.Entry<Integer, SearchRanking.Key> before;
+        synchronized (keysBefore) {
+            before = keysBefore.floorEntry(offset);
+        }
+        SearchPage page = before != null
+                ? dbHelper.searchProductsAfter(query, mapId, before.getValue(), offset - before.getKey(), limit)
+                : dbHelper.searchPage(query, mapId, offset, limit);
+        List<Product> products = page.getProducts();
+        if (page.getLastKey() != null) {
+            synchronized (keysBefore) {
+                keysBefore.put(offset + products.size(), page.getLastKey());
+            }
+        }
+        if (offset == 0 && !products.isEmpty()) {
+            record(products.get(0).getSectionId());
+        }
+        return products;
+    }
+
+    /**
+     * Учитывает запрос в журнале один раз: первая страница может загружаться повторно.
+     */
+    private synchronized void record(long sectionId) {
+        if (analytics != null && !recorded) {
+            recorded = true;
+            analytics.recordSearch(query, count, sectionId);
+        }
+    }
+}
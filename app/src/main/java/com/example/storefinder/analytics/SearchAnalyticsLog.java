@@ -0,0 +1,34 @@
+package com.example.storefinder.analytics;
+
+import android.content.Context;
+
+import com.example.storefinder.database.StoreDbHelper;
+
+/**
+ * Журнал поиска покупателей на устройстве: события пишутся в таблицы
+ * search_events и search_query_stats базы магазина пачками раз в {@link #FLUSH_INTERVAL_MS}.
+ * Буфер рассчитан на {@link #CAPACITY} событий; при заполнении события теряются,
+ * а не задерживают поиск.
+ */
+public final class SearchAnalyticsLog {
+    private static final int CAPACITY = 1024;
+    private static final long FLUSH_INTERVAL_MS = 10000;
+
+    private static SearchAnalytics analytics;
+
+    private SearchAnalyticsLog() {
+    }
+
+    /**
+     * Возвращает журнал поиска, запуская поток записи при первом обращении.
+     * @param context Контекст
+     * @return Журнал поиска
+     */
+    public static synchronized SearchAnalytics getInstance(Context context) {
+        if (analytics == null) {
+            StoreDbHelper dbHelper = StoreDbHelper.getInstance(context.getApplicationContext());
+            analytics = new SearchAnalytics(dbHelper.getAnalyticsStore(), CAPACITY, FLUSH_INTERVAL_MS);
+        }
+        return analytics;
+    }
+}
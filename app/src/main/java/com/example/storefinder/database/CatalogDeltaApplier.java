@@ -0,0 +1,402 @@
+package com.example.storefinder.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.storefinder.invalidation.InvalidationTracker;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.search.ProductMatcher;
+import com.example.storefinder.search.RussianNormalizer;
+import com.example.storefinder.search.SearchRanking;
+import com.example.storefinder.sync.CatalogDeltaHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Применение дельты каталога с сервера к таблицам {@link StoreDbHelper}.
+ * Изменения записываются пачками по {@link #BATCH_SIZE} в отдельных транзакциях,
+ * чтобы поиск из других потоков не ждал окончания всей синхронизации.
+ * Товары находятся по внешнему идентификатору через индекс, поэтому стоимость
+ * применения пропорциональна числу изменений, а не размеру каталога.
+ * Из кэша результатов поиска удаляются только запросы, под которые подходят
+ * старые или новые названия измененных товаров; реестр разделов обновляется точечно.
+ */
+class CatalogDeltaApplier implements CatalogDeltaHandler {
+    private static final int BATCH_SIZE = 500;
+    // При большем числе измененных товаров кэш схемы очищается целиком:
+    // проверка каждого запроса обошлась бы дороже повторного поиска
+    private static final int MAX_TRACKED_PRODUCTS = 2000;
+
+    private static final LatencyHistogram APPLY_LATENCY = Metrics.histogram("sync.apply");
+
+    // Товар схемы вместе с прежними нормализованными текстами: по внешнему идентификатору
+    // или по естественному ключу (нормализованному названию)
+    private static final String[] FIND_PRODUCT_COLUMNS = {StoreDbHelper.COLUMN_PRODUCT_ID,
+            StoreDbHelper.COLUMN_PRODUCT_NAME_NORM, StoreDbHelper.COLUMN_PRODUCT_ALIASES_NORM};
+    private static final String BY_EXTERNAL_ID = StoreDbHelper.COLUMN_PRODUCT_EXTERNAL_ID + " = ? AND " +
+            StoreDbHelper.COLUMN_PRODUCT_MAP_ID + " = ?";
+    private static final String BY_NAME_NORM = StoreDbHelper.COLUMN_PRODUCT_NAME_NORM + " = ? AND " +
+            StoreDbHelper.COLUMN_PRODUCT_MAP_ID + " = ?";
+
+    private final StoreDbHelper dbHelper;
+    private final SQLiteDatabase db;
+    private final long mapId;
+    private final String etag;
+
+    // Внешние идентификаторы разделов схемы; разделов немного, поэтому они загружаются сразу
+    private final Map<String, Long> sectionIds = new HashMap<>();
+    // Измененные разделы для реестра; null означает удаленный раздел
+    private final Map<Long, StoreSection> sectionChanges = new LinkedHashMap<>();
+    // Нормализованные название и синонимы измененных товаров (до и после изменения)
+    private final List<String[]> changedProducts = new ArrayList<>();
+    private boolean invalidateWholeMap;
+    // Товары дельты, которые не удалось применить; с ними версия каталога не сохраняется
+    private int skippedProducts;
+
+    private long version;
+    private boolean fullSnapshot;
+    private long start;
+    private boolean inBatch;
+    private int batchSize;
+    private SQLiteStatement insertTerm;
+    private SQLiteStatement insertAlias;
+
+    CatalogDeltaApplier(StoreDbHelper dbHelper, SQLiteDatabase db, long mapId, String etag) {
+        this.dbHelper = dbHelper;
+        this.db = db;
+        this.mapId = mapId;
+        this.etag = etag;
+    }
+
+    @Override
+    public void begin(long version, boolean fullSnapshot) {
+        this.version = version;
+        this.fullSnapshot = fullSnapshot;
+        start = Metrics.startTimer();
+        insertTerm = StoreDbHelper.compileTermInsert(db);
+        insertAlias = db.compileStatement("INSERT OR IGNORE INTO " + StoreDbHelper.TABLE_PRODUCT_ALIASES +
+                " (" + StoreDbHelper.COLUMN_ALIAS_PRODUCT_ID + ", " + StoreDbHelper.COLUMN_ALIAS_TEXT +
+                ", " + StoreDbHelper.COLUMN_ALIAS_NORM + ") VALUES (?, ?, ?)");
+
+        Cursor cursor = db.query(StoreDbHelper.TABLE_SECTIONS,
+                new String[]{StoreDbHelper.COLUMN_SECTION_ID, StoreDbHelper.COLUMN_SECTION_EXTERNAL_ID},
+                StoreDbHelper.COLUMN_SECTION_MAP_ID + " = ? AND " +
+                        StoreDbHelper.COLUMN_SECTION_EXTERNAL_ID + " IS NOT NULL",
+                new String[]{String.valueOf(mapId)}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                sectionIds.put(cursor.getString(1), cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (fullSnapshot) {
+            invalidateWholeMap = true;
+        }
+    }
+
+    @Override
+    public void upsertSection(String externalId, String name, float x, float y) {
+        beginBatch();
+        ContentValues values = new ContentValues();
+        values.put(StoreDbHelper.COLUMN_SECTION_NAME, name);
+        values.put(StoreDbHelper.COLUMN_SECTION_X, x);
+        values.put(StoreDbHelper.COLUMN_SECTION_Y, y);
+        values.put(StoreDbHelper.COLUMN_SECTION_SYNC_VERSION, version);
+
+        Long sectionId = sectionIds.get(externalId);
+        if (sectionId != null) {
+            db.update(StoreDbHelper.TABLE_SECTIONS, values, StoreDbHelper.COLUMN_SECTION_ID + " = ?",
+                    new String[]{String.valueOf(sectionId)});
+        } else {
+            values.put(StoreDbHelper.COLUMN_SECTION_MAP_ID, mapId);
+            values.put(StoreDbHelper.COLUMN_SECTION_EXTERNAL_ID, externalId);
+            sectionId = db.insert(StoreDbHelper.TABLE_SECTIONS, null, values);
+            sectionIds.put(externalId, sectionId);
+        }
+        sectionChanges.put(sectionId, new StoreSection(sectionId, name, x, y));
+        endChange();
+    }
+
+    @Override
+    public void removeSection(String externalId) {
+        Long sectionId = sectionIds.remove(externalId);
+        if (sectionId == null) {
+            return;
+        }
+        beginBatch();
+        deleteSection(sectionId);
+        endChange();
+    }
+
+    @Override
+    public boolean upsertProduct(String externalId, String name, String sectionExternalId, List<String> aliases) {
+        Long sectionId = sectionIds.get(sectionExternalId);
+        if (sectionId == null) {
+            // Раздел неизвестен: версия не сохраняется, чтобы следующая синхронизация запросила товар снова
+            skippedProducts++;
+            return false;
+        }
+        List<String> terms = RussianNormalizer.tokens(name);
+        if (terms.isEmpty()) {
+            // Название без слов не найти поиском, а пустой естественный ключ заняли бы все такие
+            // товары схемы. Повторный запрос дельты этого не исправит, поэтому версия сохраняется
+            return false;
+        }
+        beginBatch();
+        String nameNorm = ProductMatcher.joinTerms(terms);
+
+        ContentValues values = new ContentValues();
+        values.put(StoreDbHelper.COLUMN_PRODUCT_NAME, name);
+        values.put(StoreDbHelper.COLUMN_PRODUCT_SECTION_ID, sectionId);
+        values.put(StoreDbHelper.COLUMN_PRODUCT_NAME_NORM, nameNorm);
+        values.put(StoreDbHelper.COLUMN_PRODUCT_SYNC_VERSION, version);
+
+        long productId = findProduct(BY_EXTERNAL_ID, externalId);
+        // Товар с тем же названием, добавленный оператором или импортом, занимает
+        // естественный ключ: новый товар сервера принимает его, измененный вытесняет
+        long sameName = findProduct(BY_NAME_NORM, nameNorm);
+        if (sameName != -1 && sameName != productId) {
+            if (productId == -1) {
+                productId = sameName;
+                values.put(StoreDbHelper.COLUMN_PRODUCT_EXTERNAL_ID, externalId);
+            } else {
+                deleteProducts(StoreDbHelper.COLUMN_PRODUCT_ID + " = ?",
+                        new String[]{String.valueOf(sameName)});
+            }
+        }
+        boolean existing = productId != -1;
+        if (existing) {
+            db.update(StoreDbHelper.TABLE_PRODUCTS, values, StoreDbHelper.COLUMN_PRODUCT_ID + " = ?",
+                    new String[]{String.valueOf(productId)});
+        } else {
+            values.put(StoreDbHelper.COLUMN_PRODUCT_EXTERNAL_ID, externalId);
+            values.put(StoreDbHelper.COLUMN_PRODUCT_MAP_ID, mapId);
+            productId = db.insert(StoreDbHelper.TABLE_PRODUCTS, null, values);
+        }
+
+        if (aliases != null) {
+            if (existing) {
+                db.delete(StoreDbHelper.TABLE_PRODUCT_ALIASES, StoreDbHelper.COLUMN_ALIAS_PRODUCT_ID + " = ?",
+                        new String[]{String.valueOf(productId)});
+            }
+            for (String alias : aliases) {
+                String aliasNorm = RussianNormalizer.normalize(alias);
+                if (aliasNorm.isEmpty()) continue;
+                insertAlias.bindLong(1, productId);
+                insertAlias.bindString(2, alias);
+                insertAlias.bindString(3, aliasNorm);
+                insertAlias.executeInsert();
+            }
+        }
+
+        String aliasesNorm = null;
+        if (existing || aliases != null) {
+            // Слова названия и синонимов пересобираются только для этого товара
+            aliasesNorm = StoreDbHelper.reindexProductAliases(db, insertTerm, productId);
+        } else {
+            StoreDbHelper.insertTerms(insertTerm, productId, terms);
+        }
+        trackProduct(nameNorm, aliasesNorm);
+        endChange();
+        return true;
+    }
+
+    @Override
+    public void removeProduct(String externalId) {
+        beginBatch();
+        long productId = findProduct(BY_EXTERNAL_ID, externalId);
+        if (productId != -1) {
+            deleteProducts(StoreDbHelper.COLUMN_PRODUCT_ID + " = ?",
+                    new String[]{String.valueOf(productId)});
+        }
+        endChange();
+    }
+
+    @Override
+    public void end() {
+        beginBatch();
+        // Если часть товаров пропущена, дельта применена не полностью: полный каталог не удаляет
+        // прежние записи, а версия и ETag остаются прежними, чтобы сервер прислал дельту снова
+        if (skippedProducts == 0) {
+            if (fullSnapshot) {
+                removeStaleRows();
+            }
+            StoreDbHelper.saveSyncState(db, mapId, version, etag);
+        }
+        commitBatch();
+        closeStatements();
+        updateCaches();
+        APPLY_LATENCY.recordSince(start);
+    }
+
+    @Override
+    public void abort() {
+        if (inBatch) {
+            // Незавершенная пачка откатывается, предыдущие уже записаны
+            db.endTransaction();
+            inBatch = false;
+        }
+        closeStatements();
+        dbHelper.getSearchCache().invalidateMap(mapId);
+        dbHelper.invalidateSectionRegistry(mapId);
+        // Зафиксированные до ошибки пачки могли изменить любые таблицы каталога
+        dbHelper.getInvalidationTracker().notifyChanged(InvalidationTracker.TABLE_SECTIONS
+                | InvalidationTracker.TABLE_PRODUCTS | InvalidationTracker.TABLE_ALIASES, mapId);
+    }
+
+    /**
+     * Находит товар схемы и запоминает его прежние нормализованные название
+     * и синонимы для очистки кэша.
+     * @param where {@link #BY_EXTERNAL_ID} или {@link #BY_NAME_NORM}
+     * @param key Внешний идентификатор или нормализованное название
+     * @return Идентификатор товара или -1
+     */
+    private long findProduct(String where, String key) {
+        Cursor cursor = db.query(StoreDbHelper.TABLE_PRODUCTS, FIND_PRODUCT_COLUMNS, where,
+                new String[]{key, String.valueOf(mapId)}, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return -1;
+            }
+            trackProduct(cursor.getString(1), cursor.getString(2));
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteSection(long sectionId) {
+        String[] args = {String.valueOf(sectionId)};
+        deleteProducts(StoreDbHelper.COLUMN_PRODUCT_SECTION_ID + " = ?", args);
+        db.delete(StoreDbHelper.TABLE_SECTIONS, StoreDbHelper.COLUMN_SECTION_ID + " = ?", args);
+        sectionChanges.put(sectionId, null);
+        invalidateWholeMap = true;
+    }
+
+    /**
+     * Удаляет товары вместе с их синонимами и словами поискового индекса.
+     */
+    private void deleteProducts(String where, String[] args) {
+        String productIds = "SELECT " + StoreDbHelper.COLUMN_PRODUCT_ID + " FROM " +
+                StoreDbHelper.TABLE_PRODUCTS + " WHERE " + where;
+        db.delete(StoreDbHelper.TABLE_PRODUCT_TERMS,
+                StoreDbHelper.COLUMN_TERM_PRODUCT_ID + " IN (" + productIds + ")", args);
+        db.delete(StoreDbHelper.TABLE_PRODUCT_ALIASES,
+                StoreDbHelper.COLUMN_ALIAS_PRODUCT_ID + " IN (" + productIds + ")", args);
+        db.delete(StoreDbHelper.TABLE_PRODUCTS, where, args);
+    }
+
+    /**
+     * Удаляет синхронизированные записи, которых не было в полном каталоге:
+     * у всех полученных записей версия уже обновлена до текущей.
+     */
+    private void removeStaleRows() {
+        String[] args = {String.valueOf(mapId), String.valueOf(version)};
+        List<Long> staleSections = new ArrayList<>();
+        Cursor cursor = db.query(StoreDbHelper.TABLE_SECTIONS, new String[]{StoreDbHelper.COLUMN_SECTION_ID},
+                StoreDbHelper.COLUMN_SECTION_MAP_ID + " = ? AND " + StoreDbHelper.COLUMN_SECTION_EXTERNAL_ID +
+                        " IS NOT NULL AND " + StoreDbHelper.COLUMN_SECTION_SYNC_VERSION + " < ?",
+                args, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                staleSections.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        for (long sectionId : staleSections) {
+            deleteSection(sectionId);
+        }
+
+        deleteProducts(StoreDbHelper.COLUMN_PRODUCT_MAP_ID + " = ?" +
+                " AND " + StoreDbHelper.COLUMN_PRODUCT_EXTERNAL_ID + " IS NOT NULL" +
+                " AND " + StoreDbHelper.COLUMN_PRODUCT_SYNC_VERSION + " < ?", args);
+    }
+
+    private void trackProduct(String nameNorm, String aliasesNorm) {
+        if (invalidateWholeMap) {
+            return;
+        }
+        if (changedProducts.size() == MAX_TRACKED_PRODUCTS) {
+            invalidateWholeMap = true;
+            changedProducts.clear();
+            return;
+        }
+        changedProducts.add(new String[]{nameNorm, aliasesNorm});
+    }
+
+    private void updateCaches() {
+        SearchResultCache searchCache = dbHelper.getSearchCache();
+        if (invalidateWholeMap) {
+            searchCache.invalidateMap(mapId);
+        } else if (!changedProducts.isEmpty()) {
+            searchCache.invalidateQueries(mapId, new SearchResultCache.QueryFilter() {
+                @Override
+                public boolean matches(String normalizedQuery) {
+                    List<String> queryTerms = Arrays.asList(normalizedQuery.split(" "));
+                    for (String[] product : changedProducts) {
+                        if (ProductMatcher.bestMatchTier(product[0], product[1], queryTerms, null)
+                                != SearchRanking.NO_MATCH) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
+        }
+        int tables = 0;
+        if (invalidateWholeMap || !changedProducts.isEmpty()) {
+            tables |= InvalidationTracker.TABLE_PRODUCTS | InvalidationTracker.TABLE_ALIASES;
+        }
+        if (!sectionChanges.isEmpty()) {
+            dbHelper.applySectionChanges(mapId, sectionChanges);
+            tables |= InvalidationTracker.TABLE_SECTIONS;
+        }
+        if (tables != 0) {
+            dbHelper.getInvalidationTracker().notifyChanged(tables, mapId);
+        }
+    }
+
+    private void beginBatch() {
+        if (!inBatch) {
+            db.beginTransaction();
+            inBatch = true;
+        }
+    }
+
+    private void endChange() {
+        if (++batchSize >= BATCH_SIZE) {
+            commitBatch();
+        }
+    }
+
+    private void commitBatch() {
+        if (inBatch) {
+            db.setTransactionSuccessful();
+            db.endTransaction();
+            inBatch = false;
+        }
+        batchSize = 0;
+    }
+
+    private void closeStatements() {
+        if (insertTerm != null) {
+            insertTerm.close();
+            insertTerm = null;
+        }
+        if (insertAlias != null) {
+            insertAlias.close();
+            insertAlias = null;
+        }
+    }
+}
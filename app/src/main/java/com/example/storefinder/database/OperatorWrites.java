@@ -0,0 +1,33 @@
+package com.example.storefinder.database;
+
+import android.content.Context;
+
+import com.example.storefinder.writeback.WriteBehindQueue;
+
+/**
+ * Очередь правок оператора на устройстве: разделы и товары, добавленные вручную,
+ * записываются в базу магазина группами — все правки за {@link #MAX_DELAY_MS} мс
+ * (но не больше {@link #MAX_BATCH}) одной транзакцией.
+ */
+public final class OperatorWrites {
+    private static final int MAX_BATCH = 64;
+    private static final long MAX_DELAY_MS = 10;
+
+    private static WriteBehindQueue queue;
+
+    private OperatorWrites() {
+    }
+
+    /**
+     * Возвращает очередь правок, запуская поток записи при первом обращении.
+     * @param context Контекст
+     * @return Очередь правок
+     */
+    public static synchronized WriteBehindQueue getInstance(Context context) {
+        if (queue == null) {
+            StoreDbHelper dbHelper = StoreDbHelper.getInstance(context.getApplicationContext());
+            queue = new WriteBehindQueue(dbHelper.getWriteStore(), MAX_BATCH, MAX_DELAY_MS);
+        }
+        return queue;
+    }
+}
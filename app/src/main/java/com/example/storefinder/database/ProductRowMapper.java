@@ -0,0 +1,34 @@
+package com.example.storefinder.database;
+
+import android.database.Cursor;
+
+import com.example.storefinder.models.Product;
+
+/**
+ * Преобразует строки таблицы товаров в объекты {@link Product}.
+ * Столбец популярности необязателен.
+ */
+public class ProductRowMapper extends RowMapper<Product> {
+    private int idIndex;
+    private int nameIndex;
+    private int sectionIdIndex;
+    private int popularityIndex;
+
+    @Override
+    protected void resolveColumns(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_PRODUCT_ID);
+        nameIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_PRODUCT_NAME);
+        sectionIdIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_PRODUCT_SECTION_ID);
+        popularityIndex = cursor.getColumnIndex(StoreDbHelper.COLUMN_PRODUCT_POPULARITY);
+    }
+
+    @Override
+    protected Product map(Cursor cursor) {
+        Product product = new Product(cursor.getLong(idIndex), cursor.getString(nameIndex),
+                cursor.getLong(sectionIdIndex));
+        if (popularityIndex >= 0) {
+            product.setPopularity(cursor.getInt(popularityIndex));
+        }
+        return product;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.storefinder.database;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Преобразует строки курсора в объекты модели.
+ * Индексы столбцов определяются один раз для каждого курсора,
+ * а не при чтении каждой строки.
+ * Экземпляр хранит состояние привязки, поэтому создается на каждый запрос.
+ * @param <T> Тип объекта модели
+ */
+public abstract class RowMapper<T> {
+    private Cursor boundCursor;
+
+    /**
+     * Определяет индексы нужных столбцов в курсоре.
+     * @param cursor Курсор с результатом запроса
+     */
+    protected abstract void resolveColumns(Cursor cursor);
+
+    /**
+     * Создает объект из текущей строки курсора.
+     * @param cursor Курсор, установленный на строку
+     * @return Объект модели
+     */
+    protected abstract T map(Cursor cursor);
+
+    /**
+     * Преобразует текущую строку курсора.
+     * @param cursor Курсор, установленный на строку
+     * @return Объект модели
+     */
+    public final T mapRow(Cursor cursor) {
+        if (cursor != boundCursor) {
+            resolveColumns(cursor);
+            boundCursor = cursor;
+        }
+        return map(cursor);
+    }
+
+    /**
+     * Преобразует все строки курсора и закрывает его.
+     * @param cursor Курсор с результатом запроса
+     * @return Список объектов модели
+     */
+    public final List<T> mapAll(Cursor cursor) {
+        try {
+            List<T> result = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                result.add(mapRow(cursor));
+            }
+            return result;
+        } finally {
+            cursor.close();
+            boundCursor = null;
+        }
+    }
+
+    /**
+     * Преобразует первую строку курсора и закрывает его.
+     * @param cursor Курсор с результатом запроса
+     * @return Объект модели или null, если строк нет
+     */
+    public final T mapFirst(Cursor cursor) {
+        try {
+            return cursor.moveToFirst() ? mapRow(cursor) : null;
+        } finally {
+            cursor.close();
+            boundCursor = null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.storefinder.database;
+
+import com.example.storefinder.models.Product;
+import com.example.storefinder.search.SearchRanking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница результатов поиска вместе с ключом ранжирования последнего результата.
+ * Ключ передается в {@link StoreDbHelper#searchProductsAfter}, чтобы выбрать
+ * следующую страницу, не отбирая заново все предыдущие результаты.
+ */
+public final class SearchPage {
+    static final SearchPage EMPTY = new SearchPage(Collections.<Product>emptyList(),
+            Collections.<SearchRanking.Key>emptyList());
+
+    // Товары и их ключи в порядке ранжирования, по одному ключу на товар
+    final List<Product> products;
+    final List<SearchRanking.Key> keys;
+
+    SearchPage(List<Product> products, List<SearchRanking.Key> keys) {
+        this.products = products;
+        this.keys = keys;
+    }
+
+    /**
+     * @return Товары страницы в порядке ранжирования
+     */
+    public List<Product> getProducts() {
+        return products;
+    }
+
+    /**
+     * @return Ключ последнего товара страницы или null, если страница пуста
+     */
+    public SearchRanking.Key getLastKey() {
+        return keys.isEmpty() ? null : keys.get(keys.size() - 1);
+    }
+
+    /**
+     * Возвращает часть страницы.
+     * @param from Позиция первого элемента
+     * @param to Позиция после последнего элемента
+     * @return Новая страница
+     */
+    SearchPage slice(int from, int to) {
+        int end = Math.min(to, products.size());
+        if (from >= end) {
+            return EMPTY;
+        }
+        return new SearchPage(new ArrayList<>(products.subList(from, end)),
+                new ArrayList<>(keys.subList(from, end)));
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.storefinder.database;
+
+import com.example.storefinder.models.Product;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU-кэш результатов поиска товаров.
+ * Ключ - пара (схема магазина, нормализованный запрос), значение - лучшие результаты
+ * запроса и общее количество совпадений. Записи схемы удаляются при изменении ее данных.
+ * <p>
+ * Поиск ранжирует результаты без блокировки кэша, поэтому очистка может произойти между
+ * ранжированием и сохранением результата. Чтобы устаревший результат не попал в кэш,
+ * у каждой схемы есть поколение, которое увеличивается при каждой очистке ее записей:
+ * поиск читает поколение до ранжирования, а {@link #put} отбрасывает запись, если оно изменилось.
+ */
+public class SearchResultCache {
+
+    /**
+     * Снимок статистики кэша.
+     */
+    public static final class Stats {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+        // Результаты, не сохраненные из-за очистки схемы во время ранжирования
+        public final long discarded;
+        public final int size;
+
+        Stats(long hits, long misses, long evictions, long invalidations, long discarded, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.discarded = discarded;
+            this.size = size;
+        }
+
+        /**
+         * @return Доля попаданий в кэш от 0 до 1
+         */
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses + ", hitRate=" +
+                    String.format(java.util.Locale.ROOT, "%.3f", getHitRate()) +
+                    ", evictions=" + evictions + ", invalidations=" + invalidations +
+                    ", discarded=" + discarded + ", size=" + size;
+        }
+    }
+
+    /**
+     * Условие выборочной очистки кэша.
+     */
+    public interface QueryFilter {
+        boolean matches(String normalizedQuery);
+    }
+
+    /**
+     * Закэшированный результат запроса.
+     */
+    static final class Entry {
+        // Лучшие результаты в порядке ранжирования вместе с их ключами
+        final SearchPage ranked;
+        // Глубина выборки: если результатов меньше, значит найдены все совпадения
+        final int depth;
+        // Общее количество совпадений или -1, если еще не подсчитано
+        int count = -1;
+
+        Entry(SearchPage ranked, int depth) {
+            this.ranked = ranked;
+            this.depth = depth;
+        }
+
+        /**
+         * Проверяет, можно ли ответить на запрос страницы из этой записи.
+         * @param end Позиция после последнего элемента страницы
+         * @return true, если страница полностью покрывается записью
+         */
+        boolean covers(int end) {
+            return end <= depth || ranked.products.size() < depth;
+        }
+    }
+
+    private static final class Key {
+        final long mapId;
+        final String query;
+
+        Key(long mapId, String query) {
+            this.mapId = mapId;
+            this.query = query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return mapId == other.mapId && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (mapId ^ (mapId >>> 32)) + query.hashCode();
+        }
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Entry> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    // Поколения схем; поколение всего кэша прибавляется к поколению каждой схемы
+    private final Map<Long, Long> generations = new HashMap<>();
+    private long globalGeneration;
+    private long discardedPuts;
+
+    /**
+     * @param maxEntries Максимальное количество запросов в кэше
+     */
+    public SearchResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        // Порядок доступа: первым вытесняется давно не использованный запрос
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > SearchResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Возвращает запись для запроса и учитывает попадание или промах.
+     * @param mapId Идентификатор схемы магазина
+     * @param normalizedQuery Нормализованный запрос
+     * @param end Позиция после последнего нужного результата
+     * @return Запись, покрывающая нужные результаты, или null
+     */
+    synchronized Entry get(long mapId, String normalizedQuery, int end) {
+        Entry entry = entries.get(new Key(mapId, normalizedQuery));
+        if (entry != null && entry.covers(end)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Возвращает запись для запроса без учета статистики.
+     */
+    synchronized Entry peek(long mapId, String normalizedQuery) {
+        return entries.get(new Key(mapId, normalizedQuery));
+    }
+
+    /**
+     * Возвращает поколение схемы. Читается до ранжирования и передается в {@link #put}.
+     * @param mapId Идентификатор схемы магазина или {@link StoreDbHelper#ALL_MAPS}
+     * @return Поколение
+     */
+    synchronized long generation(long mapId) {
+        Long generation = generations.get(mapId);
+        return globalGeneration + (generation != null ? generation : 0);
+    }
+
+    /**
+     * Сохраняет результат запроса, если записи схемы не очищались после чтения поколения.
+     * @param mapId Идентификатор схемы магазина
+     * @param normalizedQuery Нормализованный запрос
+     * @param entry Результат
+     * @param generation Поколение схемы, прочитанное до ранжирования
+     * @return true, если результат сохранен
+     */
+    synchronized boolean put(long mapId, String normalizedQuery, Entry entry, long generation) {
+        if (generation(mapId) != generation) {
+            discardedPuts++;
+            return false;
+        }
+        entries.put(new Key(mapId, normalizedQuery), entry);
+        return true;
+    }
+
+    private void advanceGeneration(long mapId) {
+        Long generation = generations.get(mapId);
+        generations.put(mapId, (generation != null ? generation : 0) + 1);
+    }
+
+    /**
+     * Удаляет результаты, которые могли измениться после записи в схему магазина.
+     * Запросы по всем схемам сразу ({@link StoreDbHelper#ALL_MAPS}) удаляются всегда.
+     * @param mapId Идентификатор измененной схемы
+     */
+    public synchronized void invalidateMap(long mapId) {
+        advanceGeneration(mapId);
+        advanceGeneration(StoreDbHelper.ALL_MAPS);
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            Key key = iterator.next();
+            if (key.mapId == mapId || key.mapId == StoreDbHelper.ALL_MAPS) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Удаляет результаты запросов схемы, для которых выполняется условие.
+     * Используется, когда известно, какие товары изменились, чтобы не терять
+     * результаты остальных запросов.
+     * @param mapId Идентификатор измененной схемы
+     * @param filter Условие по нормализованному запросу
+     */
+    public synchronized void invalidateQueries(long mapId, QueryFilter filter) {
+        // Ранжируемый сейчас запрос может подходить под условие, поэтому поколение меняется всегда
+        advanceGeneration(mapId);
+        advanceGeneration(StoreDbHelper.ALL_MAPS);
+        Iterator<Key> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            Key key = iterator.next();
+            if ((key.mapId == mapId || key.mapId == StoreDbHelper.ALL_MAPS) && filter.matches(key.query)) {
+                iterator.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Полностью очищает кэш.
+     */
+    public synchronized void invalidateAll() {
+        globalGeneration++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    /**
+     * Оценивает объем кучи, занимаемый закэшированными результатами.
+     * @return Размер в байтах
+     */
+    public synchronized long estimateHeapBytes() {
+        // Заголовки и поля объектов: элемент LinkedHashMap, ключ, запись, страница, два списка;
+        // товар с названием и его ключ ранжирования
+        final int entryOverhead = 48 + 24 + 24 + 16 + 2 * 40;
+        final int productOverhead = 40 + 40 + 4 + 32;
+        long total = 0;
+        for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+            total += entryOverhead + 40 + 2L * entry.getKey().query.length();
+            for (Product product : entry.getValue().ranked.products) {
+                total += productOverhead + 2L * product.getName().length();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return Снимок текущей статистики кэша
+     */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, discardedPuts, entries.size());
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.storefinder.database;
+
+import android.database.Cursor;
+
+import com.example.storefinder.importer.SectionLayoutParser;
+import com.example.storefinder.models.StoreSection;
+
+/**
+ * Преобразует строки таблицы разделов в объекты {@link StoreSection}.
+ */
+public class SectionRowMapper extends RowMapper<StoreSection> {
+    private int idIndex;
+    private int nameIndex;
+    private int xIndex;
+    private int yIndex;
+    private int polygonIndex;
+
+    @Override
+    protected void resolveColumns(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_SECTION_ID);
+        nameIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_SECTION_NAME);
+        xIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_SECTION_X);
+        yIndex = cursor.getColumnIndexOrThrow(StoreDbHelper.COLUMN_SECTION_Y);
+        polygonIndex = cursor.getColumnIndex(StoreDbHelper.COLUMN_SECTION_POLYGON);
+    }
+
+    @Override
+    protected StoreSection map(Cursor cursor) {
+        StoreSection section = new StoreSection(cursor.getLong(idIndex), cursor.getString(nameIndex),
+                cursor.getFloat(xIndex), cursor.getFloat(yIndex));
+        if (polygonIndex >= 0 && !cursor.isNull(polygonIndex)) {
+            section.setPolygon(SectionLayoutParser.parsePolygon(cursor.getString(polygonIndex)));
+        }
+        return section;
+    }
+}
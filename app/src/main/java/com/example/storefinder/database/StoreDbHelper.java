@@ -5,20 +5,54 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 
+import com.example.storefinder.analytics.AnalyticsStore;
+import com.example.storefinder.analytics.QueryStats;
+import com.example.storefinder.analytics.SearchEvent;
+import com.example.storefinder.analytics.SectionDemand;
+import com.example.storefinder.catalog.ColumnarProductStore;
+import com.example.storefinder.importer.CsvImportParser;
+import com.example.storefinder.importer.ImportResult;
+import com.example.storefinder.importer.SectionLayoutParser;
+import com.example.storefinder.invalidation.InvalidationTracker;
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.memory.MemoryGovernor;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.models.FloorPlan;
 import com.example.storefinder.models.Product;
+import com.example.storefinder.models.SectionRegistry;
 import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.scan.Barcodes;
+import com.example.storefinder.search.CompletionTrie;
+import com.example.storefinder.search.ProductMatcher;
+import com.example.storefinder.search.RussianNormalizer;
+import com.example.storefinder.search.SearchRanking;
+import com.example.storefinder.search.TopKCollector;
+import com.example.storefinder.sync.CatalogDeltaHandler;
+import com.example.storefinder.sync.CatalogStore;
+import com.example.storefinder.writeback.WriteBehindQueue;
+import com.example.storefinder.writeback.WriteStore;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Вспомогательный класс для работы с базой данных приложения.
  * Отвечает за создание таблиц и выполнение CRUD операций.
+ * Соединение с базой данных остается открытым до вызова {@link #close()},
+ * поэтому методы можно безопасно вызывать из фоновых потоков.
  */
 public class StoreDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "store.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 12;
 
     // Таблица схем магазинов
     private static final String TABLE_STORE_MAPS = "store_maps";
@@ -27,21 +61,165 @@ public class StoreDbHelper extends SQLiteOpenHelper {
     private static final String COLUMN_MAP_IMAGE_PATH = "image_path";
 
     // Таблица разделов магазина
-    private static final String TABLE_SECTIONS = "sections";
-    private static final String COLUMN_SECTION_ID = "id";
-    private static final String COLUMN_SECTION_NAME = "name";
-    private static final String COLUMN_SECTION_X = "x";
-    private static final String COLUMN_SECTION_Y = "y";
-    private static final String COLUMN_SECTION_MAP_ID = "map_id";
+    static final String TABLE_SECTIONS = "sections";
+    static final String COLUMN_SECTION_ID = "id";
+    static final String COLUMN_SECTION_NAME = "name";
+    static final String COLUMN_SECTION_X = "x";
+    static final String COLUMN_SECTION_Y = "y";
+    static final String COLUMN_SECTION_MAP_ID = "map_id";
+    // Идентификатор раздела на сервере каталога и версия, в которой раздел был получен
+    static final String COLUMN_SECTION_EXTERNAL_ID = "external_id";
+    static final String COLUMN_SECTION_SYNC_VERSION = "sync_version";
+    // Контур раздела в формате SectionLayoutParser.formatPolygon или NULL
+    static final String COLUMN_SECTION_POLYGON = "polygon";
 
     // Таблица товаров
-    private static final String TABLE_PRODUCTS = "products";
-    private static final String COLUMN_PRODUCT_ID = "id";
-    private static final String COLUMN_PRODUCT_NAME = "name";
-    private static final String COLUMN_PRODUCT_SECTION_ID = "section_id";
+    static final String TABLE_PRODUCTS = "products";
+    static final String COLUMN_PRODUCT_ID = "id";
+    static final String COLUMN_PRODUCT_NAME = "name";
+    static final String COLUMN_PRODUCT_SECTION_ID = "section_id";
+    static final String COLUMN_PRODUCT_POPULARITY = "popularity";
+    static final String COLUMN_PRODUCT_NAME_NORM = "name_norm";
+    // Нормализованные синонимы товара, разделенные символом ProductMatcher.ALIAS_SEPARATOR
+    static final String COLUMN_PRODUCT_ALIASES_NORM = "aliases_norm";
+    // Идентификатор товара на сервере каталога и версия, в которой товар был получен
+    static final String COLUMN_PRODUCT_EXTERNAL_ID = "external_id";
+    static final String COLUMN_PRODUCT_SYNC_VERSION = "sync_version";
+    // Схема товара (копия схемы раздела) для естественного ключа (map_id, name_norm)
+    static final String COLUMN_PRODUCT_MAP_ID = "map_id";
+    // Штрихкод или артикул товара (см. Barcodes.normalize), уникальный в пределах схемы
+    static final String COLUMN_PRODUCT_BARCODE = "barcode";
+
+    // Таблица синонимов товаров
+    static final String TABLE_PRODUCT_ALIASES = "product_aliases";
+    private static final String COLUMN_ALIAS_ID = "id";
+    static final String COLUMN_ALIAS_PRODUCT_ID = "product_id";
+    static final String COLUMN_ALIAS_TEXT = "alias";
+    static final String COLUMN_ALIAS_NORM = "alias_norm";
+
+    // Поисковый индекс: нормализованные слова названий товаров
+    static final String TABLE_PRODUCT_TERMS = "product_terms";
+    private static final String COLUMN_TERM = "term";
+    static final String COLUMN_TERM_PRODUCT_ID = "product_id";
+
+    // Состояние синхронизации каталога схемы с сервером
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COLUMN_SYNC_MAP_ID = "map_id";
+    private static final String COLUMN_SYNC_VERSION = "version";
+    private static final String COLUMN_SYNC_ETAG = "etag";
+
+    // Журнал поиска покупателей (только дописывается) и сводка по запросам
+    private static final String TABLE_SEARCH_EVENTS = "search_events";
+    private static final String COLUMN_EVENT_ID = "id";
+    private static final String COLUMN_EVENT_TIME = "time";
+    private static final String COLUMN_EVENT_TYPE = "type";
+    private static final String COLUMN_EVENT_QUERY = "query";
+    private static final String COLUMN_EVENT_RESULTS = "result_count";
+    private static final String COLUMN_EVENT_PRODUCT_ID = "product_id";
+    private static final String TABLE_QUERY_STATS = "search_query_stats";
+    private static final String COLUMN_STATS_QUERY = "query";
+    private static final String COLUMN_STATS_SEARCHES = "searches";
+    private static final String COLUMN_STATS_ZERO_HITS = "zero_hits";
+    private static final String COLUMN_STATS_SELECTIONS = "selections";
+    private static final String COLUMN_STATS_LAST_TIME = "last_time";
+    // Спрос на разделы, затухающий со временем (см. SectionDemand)
+    private static final String TABLE_SECTION_DEMAND = "section_demand";
+    private static final String COLUMN_DEMAND_SECTION_ID = "section_id";
+    private static final String COLUMN_DEMAND_SCORE = "score";
+    private static final String COLUMN_DEMAND_TIME = "updated";
+    // Векторная схема магазина: размеры схемы и ее фигуры (стены и стеллажи)
+    private static final String TABLE_FLOOR_PLANS = "floor_plans";
+    private static final String COLUMN_PLAN_MAP_ID = "map_id";
+    private static final String COLUMN_PLAN_WIDTH = "width";
+    private static final String COLUMN_PLAN_HEIGHT = "height";
+    private static final String TABLE_PLAN_SHAPES = "floor_plan_shapes";
+    private static final String COLUMN_SHAPE_ID = "id";
+    private static final String COLUMN_SHAPE_MAP_ID = "map_id";
+    // FloorPlan.KIND_WALL или FloorPlan.KIND_SHELF
+    private static final String COLUMN_SHAPE_KIND = "kind";
+    // Вершины в формате SectionLayoutParser.formatPolygon
+    private static final String COLUMN_SHAPE_POINTS = "points";
+
+    // Верхняя граница диапазона для поиска слов по префиксу
+    private static final String PREFIX_UPPER_BOUND = "\uffff";
+
+    // Проекции запросов: выбираются только столбцы, нужные преобразователям строк
+    private static final String[] SECTION_PROJECTION = {
+            COLUMN_SECTION_ID, COLUMN_SECTION_NAME, COLUMN_SECTION_X, COLUMN_SECTION_Y, COLUMN_SECTION_POLYGON};
+    private static final String[] PRODUCT_PROJECTION = {
+            COLUMN_PRODUCT_ID, COLUMN_PRODUCT_NAME, COLUMN_PRODUCT_SECTION_ID, COLUMN_PRODUCT_POPULARITY};
+
+    // Размер страницы результатов поиска по умолчанию
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+    // Значение mapId для поиска по всем схемам магазина
+    public static final long ALL_MAPS = -1;
+
+    // Количество запросов в кэше результатов и глубина кэшируемой выдачи
+    private static final int SEARCH_CACHE_SIZE = 256;
+    private static final int CACHED_RESULT_DEPTH = 4 * DEFAULT_SEARCH_LIMIT;
+    // Наибольшее количество ключей в куче за один проход; глубже страницы достигаются шагами по ключу
+    private static final int MAX_RANKED_KEYS = 20 * DEFAULT_SEARCH_LIMIT;
+
+    // Метрики горячих участков (см. Metrics)
+    private static final LatencyHistogram SEARCH_LATENCY = Metrics.histogram("db.search");
+    private static final LatencyHistogram COUNT_LATENCY = Metrics.histogram("db.count");
+    private static final LatencyHistogram BARCODE_LATENCY = Metrics.histogram("db.barcode_lookup");
+    private static final LatencyHistogram ANALYTICS_WRITE_LATENCY = Metrics.histogram("db.analytics_append");
+    private static final LatencyHistogram COMPLETION_BUILD_LATENCY = Metrics.histogram("db.completion_build");
+    private static final LatencyHistogram ADD_PRODUCT_LATENCY = Metrics.histogram("db.add_product");
+    private static final LatencyHistogram IMPORT_PRODUCTS_LATENCY = Metrics.histogram("db.import_products");
+    private static final LatencyHistogram IMPORT_ALIASES_LATENCY = Metrics.histogram("db.import_aliases");
+    private static final LatencyHistogram IMPORT_SECTIONS_LATENCY = Metrics.histogram("db.import_sections");
+    private static final LatencyHistogram SAVE_FLOOR_PLAN_LATENCY = Metrics.histogram("db.save_floor_plan");
+    private static final LatencyHistogram LOAD_FLOOR_PLAN_LATENCY = Metrics.histogram("db.load_floor_plan");
+    private static final Counter IMPORTED_PRODUCTS = Metrics.counter("db.import_products.rows");
+    private static final Counter DELETED_PRODUCTS = Metrics.counter("db.import_products.deleted");
+
+    private static StoreDbHelper instance;
+
+    private final SearchResultCache searchCache = new SearchResultCache(SEARCH_CACHE_SIZE);
+    // Загруженные реестры разделов по идентификатору схемы
+    private final Map<Long, SectionRegistry> sectionRegistries = new HashMap<>();
+    private final InvalidationTracker invalidationTracker = new InvalidationTracker();
 
     public StoreDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Возвращает общий для всего приложения экземпляр помощника.
+     * Экраны используют один экземпляр, чтобы разделять соединение и кэши.
+     * @param context Контекст
+     * @return Экземпляр помощника для файла store.db
+     */
+    public static synchronized StoreDbHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new StoreDbHelper(context.getApplicationContext());
+            // Кэш результатов заполняется заново первыми же запросами
+            final SearchResultCache cache = instance.searchCache;
+            MemoryGovernor.getInstance().register("search_results", MemoryGovernor.PRIORITY_CACHE,
+                    new MemoryGovernor.Consumer() {
+                @Override
+                public long getByteSize() {
+                    return cache.estimateHeapBytes();
+                }
+
+                @Override
+                public void release() {
+                    cache.invalidateAll();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Создает помощник для базы данных с указанным именем.
+     * @param context Контекст приложения
+     * @param databaseName Имя файла базы данных или null для базы в памяти (используется в тестах)
+     */
+    public StoreDbHelper(Context context, String databaseName) {
+        super(context, databaseName, null, DATABASE_VERSION);
     }
 
     @Override
@@ -60,6 +238,9 @@ public class StoreDbHelper extends SQLiteOpenHelper {
                 COLUMN_SECTION_X + " REAL, " +
                 COLUMN_SECTION_Y + " REAL, " +
                 COLUMN_SECTION_MAP_ID + " INTEGER, " +
+                COLUMN_SECTION_EXTERNAL_ID + " TEXT, " +
+                COLUMN_SECTION_SYNC_VERSION + " INTEGER, " +
+                COLUMN_SECTION_POLYGON + " TEXT, " +
                 "FOREIGN KEY(" + COLUMN_SECTION_MAP_ID + ") REFERENCES " +
                 TABLE_STORE_MAPS + "(" + COLUMN_MAP_ID + "))";
         db.execSQL(createSectionTable);
@@ -69,18 +250,328 @@ public class StoreDbHelper extends SQLiteOpenHelper {
                 COLUMN_PRODUCT_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_PRODUCT_NAME + " TEXT, " +
                 COLUMN_PRODUCT_SECTION_ID + " INTEGER, " +
+                COLUMN_PRODUCT_POPULARITY + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_PRODUCT_NAME_NORM + " TEXT, " +
+                COLUMN_PRODUCT_ALIASES_NORM + " TEXT, " +
+                COLUMN_PRODUCT_EXTERNAL_ID + " TEXT, " +
+                COLUMN_PRODUCT_SYNC_VERSION + " INTEGER, " +
+                COLUMN_PRODUCT_MAP_ID + " INTEGER, " +
+                COLUMN_PRODUCT_BARCODE + " TEXT, " +
                 "FOREIGN KEY(" + COLUMN_PRODUCT_SECTION_ID + ") REFERENCES " +
                 TABLE_SECTIONS + "(" + COLUMN_SECTION_ID + "))";
         db.execSQL(createProductTable);
+
+        createSearchIndexTable(db);
+        createAliasTable(db);
+        createLookupIndexes(db);
+        createSyncTables(db);
+        createProductKeyIndex(db);
+        createBarcodeIndex(db);
+        createAnalyticsTables(db);
+        createSectionDemandTable(db);
+        createFloorPlanTables(db);
+    }
+
+    /**
+     * Создает уникальный индекс штрихкодов схемы: поиск по штрихкоду читает одну запись индекса.
+     * Товары без штрихкода (NULL) ограничением не затрагиваются.
+     * @param db База данных
+     */
+    private void createBarcodeIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX idx_products_barcode ON " + TABLE_PRODUCTS +
+                " (" + COLUMN_PRODUCT_MAP_ID + ", " + COLUMN_PRODUCT_BARCODE + ")");
+    }
+
+    /**
+     * Создает уникальный индекс по естественному ключу товара: схема и нормализованное название.
+     * Повторный импорт того же файла находит товары по этому ключу и не создает дубликатов.
+     * @param db База данных
+     */
+    private void createProductKeyIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX idx_products_key ON " + TABLE_PRODUCTS +
+                " (" + COLUMN_PRODUCT_MAP_ID + ", " + COLUMN_PRODUCT_NAME_NORM + ")");
+    }
+
+    /**
+     * Создает таблицу состояния синхронизации и индексы по внешним идентификаторам.
+     * @param db База данных
+     */
+    private void createSyncTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " (" +
+                COLUMN_SYNC_MAP_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_SYNC_VERSION + " INTEGER NOT NULL, " +
+                COLUMN_SYNC_ETAG + " TEXT)");
+        db.execSQL("CREATE UNIQUE INDEX idx_sections_external ON " + TABLE_SECTIONS +
+                " (" + COLUMN_SECTION_MAP_ID + ", " + COLUMN_SECTION_EXTERNAL_ID + ")");
+        db.execSQL("CREATE INDEX idx_products_external ON " + TABLE_PRODUCTS +
+                " (" + COLUMN_PRODUCT_EXTERNAL_ID + ")");
+    }
+
+    /**
+     * Создает таблицы журнала поиска. Журнал не связан внешними ключами с товарами:
+     * события удаленных товаров остаются в истории.
+     * @param db База данных
+     */
+    private void createAnalyticsTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SEARCH_EVENTS + " (" +
+                COLUMN_EVENT_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_EVENT_TIME + " INTEGER NOT NULL, " +
+                COLUMN_EVENT_TYPE + " INTEGER NOT NULL, " +
+                COLUMN_EVENT_QUERY + " TEXT, " +
+                COLUMN_EVENT_RESULTS + " INTEGER, " +
+                COLUMN_EVENT_PRODUCT_ID + " INTEGER)");
+        db.execSQL("CREATE TABLE " + TABLE_QUERY_STATS + " (" +
+                COLUMN_STATS_QUERY + " TEXT PRIMARY KEY, " +
+                COLUMN_STATS_SEARCHES + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_STATS_ZERO_HITS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_STATS_SELECTIONS + " INTEGER NOT NULL DEFAULT 0, " +
+                COLUMN_STATS_LAST_TIME + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Создает таблицу спроса на разделы. Значение приведено к моменту последнего обновления
+     * строки; строки удаленных разделов не участвуют в выборке по схеме.
+     * @param db База данных
+     */
+    private void createSectionDemandTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_SECTION_DEMAND + " (" +
+                COLUMN_DEMAND_SECTION_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_DEMAND_SCORE + " REAL NOT NULL, " +
+                COLUMN_DEMAND_TIME + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * Создает таблицы векторной схемы. Контуры разделов хранятся в таблице разделов.
+     * @param db База данных
+     */
+    private void createFloorPlanTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_FLOOR_PLANS + " (" +
+                COLUMN_PLAN_MAP_ID + " INTEGER PRIMARY KEY, " +
+                COLUMN_PLAN_WIDTH + " REAL NOT NULL, " +
+                COLUMN_PLAN_HEIGHT + " REAL NOT NULL, " +
+                "FOREIGN KEY(" + COLUMN_PLAN_MAP_ID + ") REFERENCES " +
+                TABLE_STORE_MAPS + "(" + COLUMN_MAP_ID + "))");
+        db.execSQL("CREATE TABLE " + TABLE_PLAN_SHAPES + " (" +
+                COLUMN_SHAPE_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_SHAPE_MAP_ID + " INTEGER NOT NULL, " +
+                COLUMN_SHAPE_KIND + " INTEGER NOT NULL, " +
+                COLUMN_SHAPE_POINTS + " TEXT NOT NULL, " +
+                "FOREIGN KEY(" + COLUMN_SHAPE_MAP_ID + ") REFERENCES " +
+                TABLE_STORE_MAPS + "(" + COLUMN_MAP_ID + "))");
+        db.execSQL("CREATE INDEX idx_plan_shapes_map ON " + TABLE_PLAN_SHAPES +
+                " (" + COLUMN_SHAPE_MAP_ID + ")");
+    }
+
+    /**
+     * Создает индексы для выборки разделов схемы и товаров раздела.
+     * @param db База данных
+     */
+    private void createLookupIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_sections_map ON " + TABLE_SECTIONS +
+                " (" + COLUMN_SECTION_MAP_ID + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_products_section ON " + TABLE_PRODUCTS +
+                " (" + COLUMN_PRODUCT_SECTION_ID + ")");
+    }
+
+    /**
+     * Создает таблицу синонимов товаров.
+     * @param db База данных
+     */
+    private void createAliasTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PRODUCT_ALIASES + " (" +
+                COLUMN_ALIAS_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_ALIAS_PRODUCT_ID + " INTEGER NOT NULL, " +
+                COLUMN_ALIAS_TEXT + " TEXT NOT NULL, " +
+                COLUMN_ALIAS_NORM + " TEXT NOT NULL, " +
+                "UNIQUE(" + COLUMN_ALIAS_PRODUCT_ID + ", " + COLUMN_ALIAS_NORM + "), " +
+                "FOREIGN KEY(" + COLUMN_ALIAS_PRODUCT_ID + ") REFERENCES " +
+                TABLE_PRODUCTS + "(" + COLUMN_PRODUCT_ID + "))");
+    }
+
+    /**
+     * Создает таблицу поискового индекса по словам названий товаров.
+     * @param db База данных
+     */
+    private void createSearchIndexTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PRODUCT_TERMS + " (" +
+                COLUMN_TERM + " TEXT NOT NULL, " +
+                COLUMN_TERM_PRODUCT_ID + " INTEGER NOT NULL, " +
+                "FOREIGN KEY(" + COLUMN_TERM_PRODUCT_ID + ") REFERENCES " +
+                TABLE_PRODUCTS + "(" + COLUMN_PRODUCT_ID + "))");
+        db.execSQL("CREATE INDEX idx_product_terms_term ON " + TABLE_PRODUCT_TERMS +
+                " (" + COLUMN_TERM + ", " + COLUMN_TERM_PRODUCT_ID + ")");
+        db.execSQL("CREATE INDEX idx_product_terms_product ON " + TABLE_PRODUCT_TERMS +
+                " (" + COLUMN_TERM_PRODUCT_ID + ")");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // При обновлении схемы базы данных удаляем старые таблицы и создаем новые
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PRODUCTS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SECTIONS);
-        db.execSQL("DROP TABLE IF EXISTS " + TABLE_STORE_MAPS);
-        onCreate(db);
+        // Миграции выполняются последовательно, чтобы сохранить данные оператора
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " +
+                    COLUMN_PRODUCT_POPULARITY + " INTEGER NOT NULL DEFAULT 0");
+        }
+        if (oldVersion < 3) {
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " +
+                    COLUMN_PRODUCT_NAME_NORM + " TEXT");
+            createSearchIndexTable(db);
+            rebuildSearchIndex(db);
+        }
+        if (oldVersion < 4) {
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " +
+                    COLUMN_PRODUCT_ALIASES_NORM + " TEXT");
+            createAliasTable(db);
+        }
+        if (oldVersion < 5) {
+            createLookupIndexes(db);
+        }
+        if (oldVersion < 6) {
+            db.execSQL("ALTER TABLE " + TABLE_SECTIONS + " ADD COLUMN " + COLUMN_SECTION_EXTERNAL_ID + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_SECTIONS + " ADD COLUMN " + COLUMN_SECTION_SYNC_VERSION + " INTEGER");
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_PRODUCT_EXTERNAL_ID + " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_PRODUCT_SYNC_VERSION + " INTEGER");
+            createSyncTables(db);
+        }
+        if (oldVersion < 7) {
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_PRODUCT_MAP_ID + " INTEGER");
+            db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_PRODUCT_MAP_ID + " = (SELECT " +
+                    COLUMN_SECTION_MAP_ID + " FROM " + TABLE_SECTIONS + " WHERE " + COLUMN_SECTION_ID +
+                    " = " + TABLE_PRODUCTS + "." + COLUMN_PRODUCT_SECTION_ID + ")");
+            mergeDuplicateProducts(db);
+            createProductKeyIndex(db);
+        }
+        if (oldVersion < 8) {
+            db.execSQL("ALTER TABLE " + TABLE_SECTIONS + " ADD COLUMN " + COLUMN_SECTION_POLYGON + " TEXT");
+        }
+        if (oldVersion < 9) {
+            db.execSQL("ALTER TABLE " + TABLE_PRODUCTS + " ADD COLUMN " + COLUMN_PRODUCT_BARCODE + " TEXT");
+            createBarcodeIndex(db);
+        }
+        if (oldVersion < 10) {
+            createAnalyticsTables(db);
+        }
+        if (oldVersion < 11) {
+            createSectionDemandTable(db);
+        }
+        if (oldVersion < 12) {
+            createFloorPlanTables(db);
+        }
+    }
+
+    /**
+     * Объединяет товары схемы с одинаковым нормализованным названием, которые накопились
+     * от повторных импортов. Остается товар с наименьшим идентификатором; он получает
+     * суммарную популярность и синонимы дубликатов.
+     * @param db База данных (вызывается внутри транзакции миграции)
+     */
+    private void mergeDuplicateProducts(SQLiteDatabase db) {
+        Map<Long, Long> keepers = new LinkedHashMap<>();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_MAP_ID + ", " +
+                COLUMN_PRODUCT_NAME_NORM + " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_PRODUCT_MAP_ID +
+                " IS NOT NULL AND " + COLUMN_PRODUCT_NAME_NORM + " IS NOT NULL ORDER BY " +
+                COLUMN_PRODUCT_MAP_ID + ", " + COLUMN_PRODUCT_NAME_NORM + ", " + COLUMN_PRODUCT_ID, null);
+        try {
+            long keeperId = -1;
+            long keeperMapId = 0;
+            String keeperName = null;
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(0);
+                long mapId = cursor.getLong(1);
+                String name = cursor.getString(2);
+                if (keeperId != -1 && mapId == keeperMapId && name.equals(keeperName)) {
+                    keepers.put(id, keeperId);
+                } else {
+                    keeperId = id;
+                    keeperMapId = mapId;
+                    keeperName = name;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (keepers.isEmpty()) {
+            return;
+        }
+
+        Set<Long> merged = new LinkedHashSet<>();
+        for (Map.Entry<Long, Long> entry : keepers.entrySet()) {
+            Object[] args = {entry.getKey(), entry.getValue()};
+            String[] duplicate = {String.valueOf(entry.getKey())};
+            db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_PRODUCT_POPULARITY + " = " +
+                    COLUMN_PRODUCT_POPULARITY + " + (SELECT " + COLUMN_PRODUCT_POPULARITY + " FROM " +
+                    TABLE_PRODUCTS + " WHERE " + COLUMN_PRODUCT_ID + " = ?) WHERE " + COLUMN_PRODUCT_ID + " = ?",
+                    args);
+            db.execSQL("UPDATE OR IGNORE " + TABLE_PRODUCT_ALIASES + " SET " + COLUMN_ALIAS_PRODUCT_ID +
+                    " = ? WHERE " + COLUMN_ALIAS_PRODUCT_ID + " = ?",
+                    new Object[]{entry.getValue(), entry.getKey()});
+            db.delete(TABLE_PRODUCT_ALIASES, COLUMN_ALIAS_PRODUCT_ID + " = ?", duplicate);
+            db.delete(TABLE_PRODUCT_TERMS, COLUMN_TERM_PRODUCT_ID + " = ?", duplicate);
+            db.delete(TABLE_PRODUCTS, COLUMN_PRODUCT_ID + " = ?", duplicate);
+            merged.add(entry.getValue());
+        }
+
+        SQLiteStatement insertTerm = compileTermInsert(db);
+        try {
+            for (long productId : merged) {
+                reindexProductAliases(db, insertTerm, productId);
+            }
+        } finally {
+            insertTerm.close();
+        }
+    }
+
+    /**
+     * Заново строит нормализованные названия и поисковый индекс для всех товаров.
+     * @param db База данных (вызывается внутри транзакции миграции)
+     */
+    private void rebuildSearchIndex(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLE_PRODUCT_TERMS);
+
+        SQLiteStatement updateNorm = db.compileStatement("UPDATE " + TABLE_PRODUCTS +
+                " SET " + COLUMN_PRODUCT_NAME_NORM + " = ? WHERE " + COLUMN_PRODUCT_ID + " = ?");
+        SQLiteStatement insertTerm = compileTermInsert(db);
+
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_NAME +
+                " FROM " + TABLE_PRODUCTS, null);
+        try {
+            while (cursor.moveToNext()) {
+                long productId = cursor.getLong(0);
+                List<String> terms = RussianNormalizer.tokens(cursor.getString(1));
+
+                updateNorm.bindString(1, ProductMatcher.joinTerms(terms));
+                updateNorm.bindLong(2, productId);
+                updateNorm.executeUpdateDelete();
+
+                insertTerms(insertTerm, productId, terms);
+            }
+        } finally {
+            cursor.close();
+            updateNorm.close();
+            insertTerm.close();
+        }
+    }
+
+    static SQLiteStatement compileTermInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE_PRODUCT_TERMS + " (" +
+                COLUMN_TERM + ", " + COLUMN_TERM_PRODUCT_ID + ") VALUES (?, ?)");
+    }
+
+    /**
+     * Записывает слова названия товара в поисковый индекс (каждое слово один раз).
+     * @param insertTerm Скомпилированный запрос вставки слова
+     * @param productId Идентификатор товара
+     * @param terms Нормализованные слова названия
+     */
+    static void insertTerms(SQLiteStatement insertTerm, long productId, List<String> terms) {
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            if (terms.subList(0, i).contains(term)) {
+                continue;
+            }
+            insertTerm.bindString(1, term);
+            insertTerm.bindLong(2, productId);
+            insertTerm.executeInsert();
+        }
     }
 
     /**
@@ -96,32 +587,108 @@ public class StoreDbHelper extends SQLiteOpenHelper {
         values.put(COLUMN_MAP_IMAGE_PATH, imagePath);
 
         long id = db.insert(TABLE_STORE_MAPS, null, values);
-        db.close();
+        if (id != -1) {
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_MAPS, id);
+        }
         return id;
     }
 
     /**
      * Получает путь к изображению схемы магазина.
      * @param mapId Идентификатор схемы
-     * @return Путь к файлу изображения
+     * @return Путь к файлу изображения или null, если у схемы только векторный план
      */
     public String getStoreMapPath(long mapId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        String imagePath = null;
-
         Cursor cursor = db.query(TABLE_STORE_MAPS,
                 new String[]{COLUMN_MAP_IMAGE_PATH},
                 COLUMN_MAP_ID + "=?",
                 new String[]{String.valueOf(mapId)},
                 null, null, null);
 
-        if (cursor != null && cursor.moveToFirst()) {
-            imagePath = cursor.getString(cursor.getColumnIndex(COLUMN_MAP_IMAGE_PATH));
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Сохраняет векторную схему магазина, заменяя прежнюю.
+     * @param mapId Идентификатор схемы
+     * @param plan Векторная схема
+     */
+    public void saveFloorPlan(long mapId, FloorPlan plan) {
+        long start = Metrics.startTimer();
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement insertShape = db.compileStatement("INSERT INTO " + TABLE_PLAN_SHAPES + " (" +
+                COLUMN_SHAPE_MAP_ID + ", " + COLUMN_SHAPE_KIND + ", " + COLUMN_SHAPE_POINTS + ") VALUES (?, ?, ?)");
+        try {
+            db.delete(TABLE_PLAN_SHAPES, COLUMN_SHAPE_MAP_ID + " = ?", new String[]{String.valueOf(mapId)});
+            ContentValues values = new ContentValues();
+            values.put(COLUMN_PLAN_MAP_ID, mapId);
+            values.put(COLUMN_PLAN_WIDTH, plan.getWidth());
+            values.put(COLUMN_PLAN_HEIGHT, plan.getHeight());
+            db.insertWithOnConflict(TABLE_FLOOR_PLANS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+
+            insertShape.bindLong(1, mapId);
+            insertShape.bindLong(2, FloorPlan.KIND_WALL);
+            for (float[] wall : plan.getWalls()) {
+                insertShape.bindString(3, SectionLayoutParser.formatPolygon(wall));
+                insertShape.executeInsert();
+            }
+            insertShape.bindLong(2, FloorPlan.KIND_SHELF);
+            for (float[] shelf : plan.getShelves()) {
+                insertShape.bindString(3, SectionLayoutParser.formatPolygon(shelf));
+                insertShape.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertShape.close();
+            db.endTransaction();
+        }
+        invalidationTracker.notifyChanged(InvalidationTracker.TABLE_FLOOR_PLANS, mapId);
+        SAVE_FLOOR_PLAN_LATENCY.recordSince(start);
+    }
+
+    /**
+     * Загружает векторную схему магазина.
+     * @param mapId Идентификатор схемы
+     * @return Векторная схема или null, если у схемы ее нет
+     */
+    public FloorPlan getFloorPlan(long mapId) {
+        long start = Metrics.startTimer();
+        SQLiteDatabase db = this.getReadableDatabase();
+        String[] args = {String.valueOf(mapId)};
+        FloorPlan plan;
+        Cursor cursor = db.query(TABLE_FLOOR_PLANS, new String[]{COLUMN_PLAN_WIDTH, COLUMN_PLAN_HEIGHT},
+                COLUMN_PLAN_MAP_ID + " = ?", args, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            plan = new FloorPlan(cursor.getFloat(0), cursor.getFloat(1));
+        } finally {
             cursor.close();
         }
 
-        db.close();
-        return imagePath;
+        cursor = db.query(TABLE_PLAN_SHAPES, new String[]{COLUMN_SHAPE_KIND, COLUMN_SHAPE_POINTS},
+                COLUMN_SHAPE_MAP_ID + " = ?", args, null, null, COLUMN_SHAPE_ID);
+        try {
+            while (cursor.moveToNext()) {
+                int kind = cursor.getInt(0);
+                // Стены начинаются с двух вершин, стеллажи сохранены только с трех и более
+                float[] points = SectionLayoutParser.parsePoints(cursor.getString(1), 2);
+                if (points != null && (kind == FloorPlan.KIND_WALL || kind == FloorPlan.KIND_SHELF)) {
+                    plan.addShape(kind, points);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        LOAD_FLOOR_PLAN_LATENCY.recordSince(start);
+        return plan;
     }
 
     /**
@@ -131,16 +698,147 @@ public class StoreDbHelper extends SQLiteOpenHelper {
      * @return Идентификатор добавленного раздела
      */
     public long addSection(StoreSection section, long mapId) {
-        SQLiteDatabase db = this.getWritableDatabase();
+        long id = insertSection(this.getWritableDatabase(), section, mapId);
+        sectionAdded(id, section, mapId);
+        return id;
+    }
+
+    /**
+     * Создает правку для {@link WriteBehindQueue}, добавляющую раздел магазина.
+     * @param section Объект раздела магазина
+     * @param mapId Идентификатор схемы магазина
+     * @return Правка; ее результат — идентификатор добавленного раздела или -1
+     */
+    public WriteBehindQueue.Write<Long> sectionWrite(final StoreSection section, final long mapId) {
+        return new WriteBehindQueue.Write<Long>() {
+            @Override
+            protected Long apply() {
+                return insertSection(getWritableDatabase(), section, mapId);
+            }
+
+            @Override
+            protected void committed(Long id) {
+                sectionAdded(id, section, mapId);
+            }
+        };
+    }
+
+    private static long insertSection(SQLiteDatabase db, StoreSection section, long mapId) {
         ContentValues values = new ContentValues();
         values.put(COLUMN_SECTION_NAME, section.getName());
         values.put(COLUMN_SECTION_X, section.getX());
         values.put(COLUMN_SECTION_Y, section.getY());
         values.put(COLUMN_SECTION_MAP_ID, mapId);
+        values.put(COLUMN_SECTION_POLYGON, SectionLayoutParser.formatPolygon(section.getPolygon()));
+        return db.insert(TABLE_SECTIONS, null, values);
+    }
 
-        long id = db.insert(TABLE_SECTIONS, null, values);
-        db.close();
-        return id;
+    /**
+     * Обновляет кэши после фиксации нового раздела.
+     */
+    private void sectionAdded(long id, StoreSection section, long mapId) {
+        searchCache.invalidateMap(mapId);
+        if (id != -1) {
+            // Реестр заменяется копией: подписчики сравнивают прежний реестр с новым
+            StoreSection added = new StoreSection(id, section.getName(), section.getX(), section.getY());
+            added.setPolygon(section.getPolygon());
+            applySectionChanges(mapId, Collections.singletonMap(id, added));
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, mapId);
+        }
+    }
+
+    /**
+     * Импортирует раскладку разделов схемы одной транзакцией.
+     * Раздел определяется названием в пределах схемы: существующие разделы получают
+     * новые координаты и контур, а не добавляются повторно. Реестр разделов схемы
+     * загружается заново один раз после импорта.
+     * @param rows Разделы из файла раскладки (см. {@link SectionLayoutParser})
+     * @param mapId Идентификатор схемы магазина
+     * @return Количество добавленных, обновленных и неизмененных разделов
+     */
+    public ImportResult importSections(List<SectionLayoutParser.SectionRow> rows, long mapId) {
+        long start = Metrics.startTimer();
+        long startNanos = System.nanoTime();
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        int skipped = 0;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement insertSection = db.compileStatement("INSERT INTO " + TABLE_SECTIONS + " (" +
+                COLUMN_SECTION_NAME + ", " + COLUMN_SECTION_X + ", " + COLUMN_SECTION_Y + ", " +
+                COLUMN_SECTION_POLYGON + ", " + COLUMN_SECTION_MAP_ID + ") VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement updateSection = db.compileStatement("UPDATE " + TABLE_SECTIONS + " SET " +
+                COLUMN_SECTION_X + " = ?, " + COLUMN_SECTION_Y + " = ?, " + COLUMN_SECTION_POLYGON +
+                " = ? WHERE " + COLUMN_SECTION_ID + " = ?");
+
+        try {
+            Map<String, StoreSection> sections = new HashMap<>();
+            for (StoreSection section : getAllSections(mapId)) {
+                // При совпадении названий обновляется первый раздел, как и при импорте товаров
+                if (!sections.containsKey(section.getName())) {
+                    sections.put(section.getName(), section);
+                }
+            }
+
+            for (SectionLayoutParser.SectionRow row : rows) {
+                if (!row.isValid()) {
+                    skipped++;
+                    continue;
+                }
+                String polygon = SectionLayoutParser.formatPolygon(row.getPolygon());
+                StoreSection section = sections.get(row.getName());
+                if (section == null) {
+                    insertSection.bindString(1, row.getName());
+                    insertSection.bindDouble(2, row.getX());
+                    insertSection.bindDouble(3, row.getY());
+                    bindNullable(insertSection, 4, polygon);
+                    insertSection.bindLong(5, mapId);
+                    section = new StoreSection(insertSection.executeInsert(), row.getName(), row.getX(), row.getY());
+                    section.setPolygon(row.getPolygon());
+                    sections.put(row.getName(), section);
+                    inserted++;
+                } else if (section.getX() == row.getX() && section.getY() == row.getY()
+                        && equalsNullable(SectionLayoutParser.formatPolygon(section.getPolygon()), polygon)) {
+                    unchanged++;
+                } else {
+                    updateSection.bindDouble(1, row.getX());
+                    updateSection.bindDouble(2, row.getY());
+                    bindNullable(updateSection, 3, polygon);
+                    updateSection.bindLong(4, section.getId());
+                    updateSection.executeUpdateDelete();
+                    section.setX(row.getX());
+                    section.setY(row.getY());
+                    section.setPolygon(row.getPolygon());
+                    updated++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertSection.close();
+            updateSection.close();
+            db.endTransaction();
+        }
+
+        if (inserted + updated > 0) {
+            searchCache.invalidateMap(mapId);
+            invalidateSectionRegistry(mapId);
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, mapId);
+        }
+        IMPORT_SECTIONS_LATENCY.recordSince(start);
+        return new ImportResult(inserted, updated, unchanged, 0, skipped, System.nanoTime() - startNanos);
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    private static boolean equalsNullable(String a, String b) {
+        return a == null ? b == null : a.equals(b);
     }
 
     /**
@@ -149,198 +847,1268 @@ public class StoreDbHelper extends SQLiteOpenHelper {
      * @return Список разделов
      */
     public List<StoreSection> getAllSections(long mapId) {
-        List<StoreSection> sectionList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_SECTIONS +
-                " WHERE " + COLUMN_SECTION_MAP_ID + " = " + mapId;
-
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+        Cursor cursor = db.query(TABLE_SECTIONS, SECTION_PROJECTION,
+                COLUMN_SECTION_MAP_ID + " = ?", new String[]{String.valueOf(mapId)},
+                null, null, COLUMN_SECTION_ID);
+        return new SectionRowMapper().mapAll(cursor);
+    }
 
-        if (cursor.moveToFirst()) {
-            do {
-                StoreSection section = new StoreSection();
-                section.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_SECTION_ID)));
-                section.setName(cursor.getString(cursor.getColumnIndex(COLUMN_SECTION_NAME)));
-                section.setX(cursor.getFloat(cursor.getColumnIndex(COLUMN_SECTION_X)));
-                section.setY(cursor.getFloat(cursor.getColumnIndex(COLUMN_SECTION_Y)));
+    /**
+     * Возвращает реестр разделов схемы магазина. Реестр загружается из базы данных
+     * один раз и далее обновляется при добавлении разделов через {@link #addSection}.
+     * @param mapId Идентификатор схемы магазина
+     * @return Реестр разделов
+     */
+    public SectionRegistry getSectionRegistry(long mapId) {
+        synchronized (sectionRegistries) {
+            SectionRegistry registry = sectionRegistries.get(mapId);
+            if (registry != null) {
+                return registry;
+            }
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_SECTION_ID + ", " + COLUMN_SECTION_NAME + ", " +
+                        COLUMN_SECTION_X + ", " + COLUMN_SECTION_Y + ", " + COLUMN_SECTION_POLYGON +
+                        " FROM " + TABLE_SECTIONS + " WHERE " + COLUMN_SECTION_MAP_ID + " = ?",
+                new String[]{String.valueOf(mapId)});
 
-                sectionList.add(section);
-            } while (cursor.moveToNext());
+        SectionRegistry loaded;
+        try {
+            loaded = new SectionRegistry(mapId, cursor.getCount());
+            while (cursor.moveToNext()) {
+                float[] polygon = cursor.isNull(4) ? null : SectionLayoutParser.parsePolygon(cursor.getString(4));
+                loaded.put(cursor.getLong(0), cursor.getString(1), cursor.getFloat(2), cursor.getFloat(3), polygon);
+            }
+        } finally {
+            cursor.close();
         }
 
-        cursor.close();
-        db.close();
-        return sectionList;
+        synchronized (sectionRegistries) {
+            // Реестр мог быть загружен параллельно другим потоком
+            SectionRegistry registry = sectionRegistries.get(mapId);
+            if (registry == null) {
+                sectionRegistries.put(mapId, loaded);
+                registry = loaded;
+            }
+            return registry;
+        }
     }
 
     /**
      * Добавляет новый товар в базу данных.
      * @param product Объект товара
-     * @return Идентификатор добавленного товара
+     * @return Идентификатор добавленного товара или -1, если товар с таким названием уже есть в схеме,
+     *         раздел товара не найден или в названии нет слов
      */
     public long addProduct(Product product) {
+        long start = Metrics.startTimer();
+        long mapId = findMapIdBySection(product.getSectionId());
+        if (mapId == ALL_MAPS) {
+            return -1;
+        }
         SQLiteDatabase db = this.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COLUMN_PRODUCT_NAME, product.getName());
-        values.put(COLUMN_PRODUCT_SECTION_ID, product.getSectionId());
 
-        long id = db.insert(TABLE_PRODUCTS, null, values);
-        db.close();
+        long id;
+        db.beginTransaction();
+        try {
+            id = insertProduct(db, product, mapId);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        productAdded(id, mapId);
+        ADD_PRODUCT_LATENCY.recordSince(start);
         return id;
     }
 
     /**
-     * Получает список всех товаров в указанном разделе магазина.
-     * @param sectionId Идентификатор раздела
-     * @return Список товаров
+     * Создает правку для {@link WriteBehindQueue}, добавляющую товар.
+     * @param product Объект товара
+     * @return Правка; ее результат — идентификатор добавленного товара или -1,
+     *         если товар с таким названием уже есть в схеме, раздел не найден или в названии нет слов
      */
-    public List<Product> getProductsBySection(long sectionId) {
-        List<Product> productList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS +
-                " WHERE " + COLUMN_PRODUCT_SECTION_ID + " = " + sectionId;
+    public WriteBehindQueue.Write<Long> productWrite(final Product product) {
+        return new WriteBehindQueue.Write<Long>() {
+            private long mapId;
 
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
+            @Override
+            protected Long apply() {
+                mapId = findMapIdBySection(product.getSectionId());
+                return insertProduct(getWritableDatabase(), product, mapId);
+            }
 
-        if (cursor.moveToFirst()) {
-            do {
-                Product product = new Product();
-                product.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_PRODUCT_ID)));
-                product.setName(cursor.getString(cursor.getColumnIndex(COLUMN_PRODUCT_NAME)));
-                product.setSectionId(cursor.getLong(cursor.getColumnIndex(COLUMN_PRODUCT_SECTION_ID)));
+            @Override
+            protected void committed(Long id) {
+                productAdded(id, mapId);
+            }
+        };
+    }
 
-                productList.add(product);
-            } while (cursor.moveToNext());
+    /**
+     * Добавляет строку товара и слова его названия. Вызывается внутри транзакции.
+     * Товар без схемы или без слов в названии не добавляется: его не найти поиском,
+     * а пустое нормализованное название заняло бы естественный ключ схемы.
+     * @return Идентификатор товара или -1
+     */
+    private static long insertProduct(SQLiteDatabase db, Product product, long mapId) {
+        List<String> terms = RussianNormalizer.tokens(product.getName());
+        if (mapId == ALL_MAPS || terms.isEmpty()) {
+            return -1;
         }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PRODUCT_NAME, product.getName());
+        values.put(COLUMN_PRODUCT_SECTION_ID, product.getSectionId());
+        values.put(COLUMN_PRODUCT_NAME_NORM, ProductMatcher.joinTerms(terms));
+        values.put(COLUMN_PRODUCT_MAP_ID, mapId);
 
-        cursor.close();
-        db.close();
-        return productList;
+        long id = db.insert(TABLE_PRODUCTS, null, values);
+        if (id != -1) {
+            SQLiteStatement insertTerm = compileTermInsert(db);
+            try {
+                insertTerms(insertTerm, id, terms);
+            } finally {
+                insertTerm.close();
+            }
+        }
+        return id;
     }
 
     /**
-     * Ищет товары по названию (частичное совпадение).
-     * @param query Поисковый запрос
-     * @return Список найденных товаров
+     * Обновляет кэши после фиксации нового товара.
      */
-    public List<Product> searchProducts(String query) {
-        List<Product> productList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_PRODUCTS +
-                " WHERE " + COLUMN_PRODUCT_NAME + " LIKE '%" + query + "%'";
-
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                Product product = new Product();
-                product.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_PRODUCT_ID)));
-                product.setName(cursor.getString(cursor.getColumnIndex(COLUMN_PRODUCT_NAME)));
-                product.setSectionId(cursor.getLong(cursor.getColumnIndex(COLUMN_PRODUCT_SECTION_ID)));
-
-                productList.add(product);
-            } while (cursor.moveToNext());
+    private void productAdded(long id, long mapId) {
+        if (id != -1) {
+            searchCache.invalidateMap(mapId);
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS, mapId);
         }
-
-        cursor.close();
-        db.close();
-        return productList;
     }
 
     /**
-     * Получает информацию о разделе магазина по идентификатору.
+     * Определяет схему магазина, к которой относится раздел.
      * @param sectionId Идентификатор раздела
-     * @return Объект раздела магазина
+     * @return Идентификатор схемы или {@link #ALL_MAPS}, если раздел не найден
      */
-    public StoreSection getSectionById(long sectionId) {
+    private long findMapIdBySection(long sectionId) {
         SQLiteDatabase db = this.getReadableDatabase();
-        StoreSection section = null;
-
-        Cursor cursor = db.query(TABLE_SECTIONS,
-                new String[]{COLUMN_SECTION_ID, COLUMN_SECTION_NAME, COLUMN_SECTION_X, COLUMN_SECTION_Y},
-                COLUMN_SECTION_ID + "=?",
-                new String[]{String.valueOf(sectionId)},
-                null, null, null);
-
-        if (cursor != null && cursor.moveToFirst()) {
-            section = new StoreSection();
-            section.setId(cursor.getLong(cursor.getColumnIndex(COLUMN_SECTION_ID)));
-            section.setName(cursor.getString(cursor.getColumnIndex(COLUMN_SECTION_NAME)));
-            section.setX(cursor.getFloat(cursor.getColumnIndex(COLUMN_SECTION_X)));
-            section.setY(cursor.getFloat(cursor.getColumnIndex(COLUMN_SECTION_Y)));
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_SECTION_MAP_ID + " FROM " + TABLE_SECTIONS +
+                " WHERE " + COLUMN_SECTION_ID + " = ?", new String[]{String.valueOf(sectionId)});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : ALL_MAPS;
+        } finally {
             cursor.close();
         }
-
-        db.close();
-        return section;
     }
 
     /**
-     * Импортирует список товаров из строки (CSV формат).
+     * Находит товар по штрихкоду или артикулу. Поиск идет по уникальному индексу
+     * и не затрагивает поисковый индекс названий, поэтому занимает доли миллисекунды
+     * и при миллионе товаров.
+     * @param barcode Штрихкод, например прочитанный сканером
+     * @param mapId Идентификатор схемы магазина
+     * @return Товар или null, если штрихкод не найден
+     */
+    public Product findProductByBarcode(String barcode, long mapId) {
+        String code = Barcodes.normalize(barcode);
+        if (code == null) {
+            return null;
+        }
+        long start = Metrics.startTimer();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PRODUCTS, PRODUCT_PROJECTION,
+                COLUMN_PRODUCT_MAP_ID + " = ? AND " + COLUMN_PRODUCT_BARCODE + " = ?",
+                new String[]{String.valueOf(mapId), code}, null, null, null);
+        Product product = new ProductRowMapper().mapFirst(cursor);
+        BARCODE_LATENCY.recordSince(start);
+        return product;
+    }
+
+    /**
+     * Получает список всех товаров в указанном разделе магазина.
+     * @param sectionId Идентификатор раздела
+     * @return Список товаров
+     */
+    public List<Product> getProductsBySection(long sectionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PRODUCTS, PRODUCT_PROJECTION,
+                COLUMN_PRODUCT_SECTION_ID + " = ?", new String[]{String.valueOf(sectionId)},
+                null, null, COLUMN_PRODUCT_ID);
+        return new ProductRowMapper().mapAll(cursor);
+    }
+
+    /**
+     * Загружает все товары схемы магазина в компактное столбцовое хранилище.
+     * Строки читаются из курсора потоком, объекты {@link Product} не создаются.
+     * @param mapId Идентификатор схемы магазина
+     * @return Хранилище товаров схемы
+     */
+    public ColumnarProductStore loadProductStore(long mapId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_SECTION_ID +
+                        ", " + COLUMN_PRODUCT_NAME + " FROM " + TABLE_PRODUCTS +
+                        " WHERE " + COLUMN_PRODUCT_MAP_ID + " = ?",
+                new String[]{String.valueOf(mapId)});
+
+        try {
+            int count = cursor.getCount();
+            // Средняя длина названия на русском около 24 символов, то есть ~48 байт UTF-8
+            ColumnarProductStore store = new ColumnarProductStore(count, count * 48);
+            while (cursor.moveToNext()) {
+                store.add(cursor.getLong(0), cursor.getLong(1), cursor.getString(2));
+            }
+            store.trimToSize();
+            return store;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Ищет товары по названию (частичное совпадение) во всех схемах магазина.
+     * Возвращает первую страницу результатов, отсортированных по релевантности.
+     * @param query Поисковый запрос
+     * @return Список найденных товаров
+     */
+    public List<Product> searchProducts(String query) {
+        return searchProducts(query, ALL_MAPS, 0, DEFAULT_SEARCH_LIMIT);
+    }
+
+    /**
+     * Ищет товары по названию во всех схемах магазина.
+     * @see #searchProducts(String, long, int, int)
+     */
+    public List<Product> searchProducts(String query, int offset, int limit) {
+        return searchProducts(query, ALL_MAPS, offset, limit);
+    }
+
+    /**
+     * Ищет товары по названию и возвращает страницу результатов.
+     * @see #searchPage(String, long, int, int)
+     */
+    public List<Product> searchProducts(String query, long mapId, int offset, int limit) {
+        return searchPage(query, mapId, offset, limit).getProducts();
+    }
+
+    /**
+     * Ищет товары по названию и возвращает страницу результатов,
+     * отсортированных по релевантности (см. {@link SearchRanking}).
+     * Запрос нормализуется тем же способом, что и названия при записи, поэтому
+     * "молока" находит "Молоко"; кандидаты выбираются по индексу слов
+     * (совпадение с начала слова). Для отбора используется ограниченная куча ключей
+     * ранжирования размером offset + limit, а товары загружаются только для самой страницы.
+     * Первые {@link #CACHED_RESULT_DEPTH} результатов запроса кэшируются. Более глубокие
+     * результаты отбираются шагами по ключу (не больше {@link #MAX_RANKED_KEYS} ключей в куче),
+     * поэтому память не зависит от номера страницы; если ключ предыдущей страницы известен,
+     * быстрее выбрать следующую по нему ({@link #searchProductsAfter}).
+     * @param query Поисковый запрос
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @param offset Количество пропускаемых лучших результатов
+     * @param limit Максимальный размер страницы
+     * @return Страница найденных товаров
+     */
+    public SearchPage searchPage(String query, long mapId, int offset, int limit) {
+        long start = Metrics.startTimer();
+        try {
+            List<String> queryTerms = RussianNormalizer.tokens(query);
+            if (queryTerms.isEmpty() || limit <= 0) {
+                return SearchPage.EMPTY;
+            }
+            String normalizedQuery = ProductMatcher.joinTerms(queryTerms);
+            int end = offset + limit;
+
+            // Поколение читается до ранжирования: результат, обогнанный записью, не кэшируется
+            long generation = searchCache.generation(mapId);
+            SearchResultCache.Entry entry = searchCache.get(mapId, normalizedQuery, end);
+            if (entry == null) {
+                if (end > CACHED_RESULT_DEPTH) {
+                    // Глубокие страницы не кэшируются, чтобы ограничить размер кэша
+                    return rankPage(queryTerms, normalizedQuery, mapId, null, offset, limit);
+                }
+                entry = new SearchResultCache.Entry(
+                        loadPage(rankKeys(queryTerms, normalizedQuery, mapId, null, CACHED_RESULT_DEPTH)),
+                        CACHED_RESULT_DEPTH);
+                searchCache.put(mapId, normalizedQuery, entry, generation);
+            }
+            return entry.ranked.slice(offset, end);
+        } finally {
+            SEARCH_LATENCY.recordSince(start);
+        }
+    }
+
+    /**
+     * Возвращает страницу результатов, следующих за ключом последнего результата
+     * предыдущей страницы. В куче держится только limit ключей, поэтому стоимость
+     * страницы не зависит от ее глубины.
+     * @param query Поисковый запрос
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @param after Ключ последнего уже показанного результата ({@link SearchPage#getLastKey()})
+     * @param limit Максимальный размер страницы
+     * @return Страница найденных товаров
+     */
+    public SearchPage searchProductsAfter(String query, long mapId, SearchRanking.Key after, int limit) {
+        return searchProductsAfter(query, mapId, after, 0, limit);
+    }
+
+    /**
+     * Возвращает страницу результатов, отстоящую на skip результатов от ключа, например
+     * при переходе прокруткой через несколько страниц от последней загруженной.
+     * @param query Поисковый запрос
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @param after Ключ уже показанного результата ({@link SearchPage#getLastKey()})
+     * @param skip Количество пропускаемых результатов после ключа
+     * @param limit Максимальный размер страницы
+     * @return Страница найденных товаров
+     */
+    public SearchPage searchProductsAfter(String query, long mapId, SearchRanking.Key after, int skip, int limit) {
+        long start = Metrics.startTimer();
+        try {
+            List<String> queryTerms = RussianNormalizer.tokens(query);
+            if (queryTerms.isEmpty() || limit <= 0) {
+                return SearchPage.EMPTY;
+            }
+            String normalizedQuery = ProductMatcher.joinTerms(queryTerms);
+            return rankPage(queryTerms, normalizedQuery, mapId, after, skip, limit);
+        } finally {
+            SEARCH_LATENCY.recordSince(start);
+        }
+    }
+
+    /**
+     * Отбирает страницу, пропуская skip результатов после ключа. Пропуск глубже
+     * {@link #MAX_RANKED_KEYS} выполняется шагами: каждый шаг отбирает очередные ключи
+     * и продолжает с последнего, поэтому в куче не больше {@link #MAX_RANKED_KEYS} + limit ключей.
+     */
+    private SearchPage rankPage(List<String> queryTerms, String normalizedQuery, long mapId,
+                                SearchRanking.Key after, int skip, int limit) {
+        while (skip >= MAX_RANKED_KEYS) {
+            List<SearchRanking.Key> skipped = rankKeys(queryTerms, normalizedQuery, mapId, after, MAX_RANKED_KEYS);
+            if (skipped.size() < MAX_RANKED_KEYS) {
+                // Результатов меньше, чем нужно пропустить
+                return SearchPage.EMPTY;
+            }
+            after = skipped.get(skipped.size() - 1);
+            skip -= MAX_RANKED_KEYS;
+        }
+        List<SearchRanking.Key> ranked = rankKeys(queryTerms, normalizedQuery, mapId, after, skip + limit);
+        return loadPage(ranked.subList(Math.min(skip, ranked.size()), ranked.size()));
+    }
+
+    /**
+     * Подсчитывает количество товаров во всех схемах, подходящих под поисковый запрос.
+     * @param query Поисковый запрос
+     * @return Количество найденных товаров
+     */
+    public int countProducts(String query) {
+        return countProducts(query, ALL_MAPS);
+    }
+
+    /**
+     * Подсчитывает количество товаров, подходящих под поисковый запрос.
+     * @param query Поисковый запрос
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @return Количество найденных товаров
+     */
+    public int countProducts(String query, long mapId) {
+        long start = Metrics.startTimer();
+        try {
+            List<String> queryTerms = RussianNormalizer.tokens(query);
+            if (queryTerms.isEmpty()) {
+                return 0;
+            }
+            String normalizedQuery = ProductMatcher.joinTerms(queryTerms);
+
+            SearchResultCache.Entry entry = searchCache.peek(mapId, normalizedQuery);
+            if (entry != null && entry.count >= 0) {
+                return entry.count;
+            }
+
+            int count = 0;
+            Cursor cursor = queryCandidates(queryTerms, mapId);
+            try {
+                while (cursor.moveToNext()) {
+                    if (ProductMatcher.bestMatchTier(cursor.getString(3), cursor.getString(4),
+                            queryTerms, null) != SearchRanking.NO_MATCH) {
+                        count++;
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (entry != null) {
+                entry.count = count;
+            }
+            return count;
+        } finally {
+            COUNT_LATENCY.recordSince(start);
+        }
+    }
+
+    /**
+     * Возвращает учет изменений, на который подписываются наблюдаемые запросы экранов.
+     * Записи уведомляют его после фиксации транзакции. Рост популярности товара
+     * не считается изменением: порядок видимых результатов не меняется под рукой покупателя.
+     * @return Учет изменений
+     */
+    public InvalidationTracker getInvalidationTracker() {
+        return invalidationTracker;
+    }
+
+    /**
+     * Возвращает статистику кэша результатов поиска.
+     * @return Снимок статистики
+     */
+    public SearchResultCache.Stats getSearchCacheStats() {
+        return searchCache.getStats();
+    }
+
+    /**
+     * Отбирает ключи лучших результатов запроса с помощью ограниченной кучи.
+     * Названия товаров при этом не читаются: для ранжирования нужна только их длина.
+     * @param queryTerms Нормализованные слова запроса
+     * @param normalizedQuery Нормализованный запрос
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @param after Ключ, после которого отбираются результаты, или null
+     * @param depth Количество отбираемых результатов
+     * @return Ключи в порядке ранжирования
+     */
+    private List<SearchRanking.Key> rankKeys(List<String> queryTerms, String normalizedQuery,
+                                             long mapId, SearchRanking.Key after, int depth) {
+        TopKCollector<SearchRanking.Key> collector =
+                new TopKCollector<>(depth, SearchRanking.KEY_ORDER);
+
+        Cursor cursor = queryCandidates(queryTerms, mapId);
+        try {
+            while (cursor.moveToNext()) {
+                int tier = ProductMatcher.bestMatchTier(cursor.getString(3), cursor.getString(4),
+                        queryTerms, normalizedQuery);
+                if (tier == SearchRanking.NO_MATCH) {
+                    continue;
+                }
+
+                SearchRanking.Key key = new SearchRanking.Key(tier, cursor.getInt(1), cursor.getInt(2),
+                        cursor.getLong(0));
+                // Результаты до ключа предыдущей страницы уже показаны
+                if (after == null || SearchRanking.KEY_ORDER.compare(key, after) > 0) {
+                    collector.offer(key);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return collector.toSortedList();
+    }
+
+    /**
+     * Загружает товары для ключей одним запросом в порядке ключей.
+     * Товары, удаленные после ранжирования, пропускаются.
+     * @param keys Ключи в порядке ранжирования
+     * @return Страница товаров
+     */
+    private SearchPage loadPage(List<SearchRanking.Key> keys) {
+        if (keys.isEmpty()) {
+            return SearchPage.EMPTY;
+        }
+        // Идентификаторы - числа, поэтому подставляются в запрос без ограничения на число параметров
+        StringBuilder selection = new StringBuilder(COLUMN_PRODUCT_ID).append(" IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                selection.append(',');
+            }
+            selection.append(keys.get(i).getId());
+        }
+        selection.append(')');
+
+        Cursor cursor = getReadableDatabase().query(TABLE_PRODUCTS, PRODUCT_PROJECTION,
+                selection.toString(), null, null, null, null);
+        Map<Long, Product> byId = new HashMap<>();
+        for (Product product : new ProductRowMapper().mapAll(cursor)) {
+            byId.put(product.getId(), product);
+        }
+
+        List<Product> products = new ArrayList<>(keys.size());
+        List<SearchRanking.Key> loadedKeys = new ArrayList<>(keys.size());
+        for (SearchRanking.Key key : keys) {
+            Product product = byId.get(key.getId());
+            if (product != null) {
+                products.add(product);
+                loadedKeys.add(key);
+            }
+        }
+        return new SearchPage(products, loadedKeys);
+    }
+
+    /**
+     * Выбирает по индексу товары, у которых есть слово, начинающееся с самого
+     * длинного (самого избирательного) слова запроса. Слова синонимов
+     * хранятся в том же индексе, поэтому число синонимов не влияет на число запросов.
+     * Столбцы результата: id, длина name, popularity, name_norm, aliases_norm.
+     * @param queryTerms Нормализованные слова запроса
+     * @param mapId Идентификатор схемы магазина или {@link #ALL_MAPS}
+     * @return Курсор с кандидатами
+     */
+    private Cursor queryCandidates(List<String> queryTerms, long mapId) {
+        String driver = ProductMatcher.driverTerm(queryTerms);
+
+        String selectQuery = "SELECT DISTINCT p." + COLUMN_PRODUCT_ID + ", length(p." + COLUMN_PRODUCT_NAME +
+                "), p." + COLUMN_PRODUCT_POPULARITY +
+                ", p." + COLUMN_PRODUCT_NAME_NORM + ", p." + COLUMN_PRODUCT_ALIASES_NORM +
+                " FROM " + TABLE_PRODUCT_TERMS + " t JOIN " + TABLE_PRODUCTS + " p ON p." +
+                COLUMN_PRODUCT_ID + " = t." + COLUMN_TERM_PRODUCT_ID;
+        String[] args;
+        if (mapId == ALL_MAPS) {
+            selectQuery += " WHERE t." + COLUMN_TERM + " >= ? AND t." + COLUMN_TERM + " < ?";
+            args = new String[]{driver, driver + PREFIX_UPPER_BOUND};
+        } else {
+            // Схема товара хранится в самой строке товара, соединение с разделами не нужно
+            selectQuery += " WHERE t." + COLUMN_TERM + " >= ? AND t." + COLUMN_TERM + " < ?" +
+                    " AND p." + COLUMN_PRODUCT_MAP_ID + " = ?";
+            args = new String[]{driver, driver + PREFIX_UPPER_BOUND, String.valueOf(mapId)};
+        }
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        return db.rawQuery(selectQuery, args);
+    }
+
+    /**
+     * Увеличивает счетчик популярности товара. Выборы товаров покупателем учитываются
+     * не здесь, а пачкой при записи журнала поиска ({@link #getAnalyticsStore()}).
+     * @param productId Идентификатор товара
+     */
+    public void incrementProductPopularity(long productId) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("UPDATE " + TABLE_PRODUCTS + " SET " + COLUMN_PRODUCT_POPULARITY + " = " +
+                COLUMN_PRODUCT_POPULARITY + " + 1 WHERE " + COLUMN_PRODUCT_ID + " = ?",
+                new Object[]{productId});
+    }
+
+    /**
+     * Строит словарь автодополнения названий товаров схемы с весами по популярности.
+     * Читает только названия и счетчики, поэтому выполняется в фоновом потоке за один проход.
+     * @param mapId Идентификатор схемы магазина
+     * @return Словарь автодополнения
+     */
+    public CompletionTrie buildCompletionTrie(long mapId) {
+        long start = Metrics.startTimer();
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        Cursor cursor = getReadableDatabase().query(TABLE_PRODUCTS,
+                new String[]{COLUMN_PRODUCT_NAME, COLUMN_PRODUCT_POPULARITY},
+                COLUMN_PRODUCT_MAP_ID + " = ?", new String[]{String.valueOf(mapId)},
+                null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                builder.add(cursor.getString(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        CompletionTrie trie = builder.build();
+        COMPLETION_BUILD_LATENCY.recordSince(start);
+        return trie;
+    }
+
+    /**
+     * Получает информацию о разделе магазина по идентификатору.
+     * @param sectionId Идентификатор раздела
+     * @return Объект раздела магазина
+     */
+    public StoreSection getSectionById(long sectionId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_SECTIONS, SECTION_PROJECTION,
+                COLUMN_SECTION_ID + "=?",
+                new String[]{String.valueOf(sectionId)},
+                null, null, null);
+        return new SectionRowMapper().mapFirst(cursor);
+    }
+
+    /**
+     * Импортирует список товаров из строки (CSV формат).
+     * Товары, уже сохраненные в схеме, обновляются, а не добавляются повторно
+     * (см. {@link #importProductsFromCSV(String, long, boolean)}).
      * @param csvData Строка с данными в формате "название товара,раздел магазина"
      * @param mapId Идентификатор схемы магазина
      * @return Количество успешно импортированных товаров
      */
     public int importProductsFromCSV(String csvData, long mapId) {
-        int importedCount = 0;
+        return importProductsFromCSV(csvData, mapId, false).getImportedCount();
+    }
+
+    /**
+     * Импортирует список товаров из строки (CSV формат) с обновлением существующих.
+     * Товар определяется естественным ключом: схема и нормализованное название. Ключи
+     * существующих товаров загружаются одним запросом, поэтому для каждой строки выполняется
+     * не больше одной вставки или обновления, а строки без изменений не пишутся вовсе.
+     * Популярность и синонимы обновленных товаров сохраняются.
+     * @param csvData Строка с данными в формате "название товара,раздел магазина"
+     * @param mapId Идентификатор схемы магазина
+     * @param deleteMissing true для синхронизации: товары схемы, которых нет в файле, удаляются.
+     *                      Товар из пропущенной строки (например, с опечаткой в разделе) считается
+     *                      присутствующим и не удаляется; товары синхронизации каталога
+     *                      (с внешним идентификатором) этим импортом не удаляются
+     * @return Количество добавленных, обновленных, неизмененных и удаленных товаров
+     */
+    public ImportResult importProductsFromCSV(String csvData, long mapId, boolean deleteMissing) {
+        long start = Metrics.startTimer();
+        long startNanos = System.nanoTime();
+        int inserted = 0;
+        int updated = 0;
+        int unchanged = 0;
+        int deleted = 0;
+        int skipped = 0;
         SQLiteDatabase db = this.getWritableDatabase();
         db.beginTransaction();
+        SQLiteStatement insertProduct = db.compileStatement("INSERT INTO " + TABLE_PRODUCTS + " (" +
+                COLUMN_PRODUCT_NAME + ", " + COLUMN_PRODUCT_SECTION_ID + ", " + COLUMN_PRODUCT_NAME_NORM +
+                ", " + COLUMN_PRODUCT_MAP_ID + ", " + COLUMN_PRODUCT_BARCODE + ") VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement updateProduct = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " +
+                COLUMN_PRODUCT_NAME + " = ?, " + COLUMN_PRODUCT_SECTION_ID + " = ?, " +
+                COLUMN_PRODUCT_BARCODE + " = ? WHERE " + COLUMN_PRODUCT_ID + " = ?");
+        SQLiteStatement clearBarcode = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " +
+                COLUMN_PRODUCT_BARCODE + " = NULL WHERE " + COLUMN_PRODUCT_ID + " = ?");
+        SQLiteStatement insertTerm = compileTermInsert(db);
 
         try {
-            String[] lines = csvData.split("\n");
-            for (String line : lines) {
-                String[] parts = line.split(",");
-                if (parts.length >= 2) {
-                    String productName = parts[0].trim();
-                    String sectionName = parts[1].trim();
-
-                    // Найти или создать раздел
-                    long sectionId = findSectionByName(sectionName, mapId);
-                    if (sectionId == -1) {
-                        // Если раздел не существует, пропускаем этот товар
-                        continue;
+            Map<String, Long> sectionIds = loadSectionIdsByName(db, mapId);
+            Map<String, ImportedProduct> products = loadImportedProducts(db, mapId);
+            Map<String, ImportedProduct> byBarcode = new HashMap<>();
+            for (ImportedProduct product : products.values()) {
+                if (product.barcode != null) {
+                    byBarcode.put(product.barcode, product);
+                }
+            }
+
+            for (CsvImportParser.ProductRow row : CsvImportParser.parseProducts(csvData)) {
+                String productName = row.getProductName();
+                Long sectionId = sectionIds.get(row.getSectionName());
+                List<String> terms = RussianNormalizer.tokens(productName);
+                if (terms.isEmpty()) {
+                    // Название без слов: товар не найти поиском
+                    skipped++;
+                    continue;
+                }
+                String nameNorm = ProductMatcher.joinTerms(terms);
+                ImportedProduct product = products.get(nameNorm);
+                if (sectionId == null) {
+                    // Неизвестный раздел: строка пропускается, но товар в файле есть и не удаляется
+                    if (product != null) {
+                        product.seen = true;
                     }
+                    skipped++;
+                    continue;
+                }
 
-                    // Добавить новый товар
-                    ContentValues values = new ContentValues();
-                    values.put(COLUMN_PRODUCT_NAME, productName);
-                    values.put(COLUMN_PRODUCT_SECTION_ID, sectionId);
+                // Штрихкод без значения в файле у существующего товара не меняется
+                String barcode = row.getBarcode() != null ? row.getBarcode()
+                        : product != null ? product.barcode : null;
+                if (barcode != null) {
+                    // Штрихкод переходит к товару из файла: у прежнего владельца он сбрасывается
+                    ImportedProduct owner = byBarcode.get(barcode);
+                    if (owner != null && owner != product) {
+                        clearBarcode.bindLong(1, owner.id);
+                        clearBarcode.executeUpdateDelete();
+                        owner.barcode = null;
+                    }
+                }
+
+                if (product == null) {
+                    // Новый товар вместе с его словами в поисковом индексе
+                    insertProduct.bindString(1, productName);
+                    insertProduct.bindLong(2, sectionId);
+                    insertProduct.bindString(3, nameNorm);
+                    insertProduct.bindLong(4, mapId);
+                    bindNullable(insertProduct, 5, barcode);
+                    long productId = insertProduct.executeInsert();
+                    insertTerms(insertTerm, productId, terms);
+                    product = new ImportedProduct(productId, productName, sectionId, barcode);
+                    products.put(nameNorm, product);
+                    inserted++;
+                } else if (product.sectionId == sectionId && product.name.equals(productName)
+                        && equalsNullable(product.barcode, barcode)) {
+                    unchanged++;
+                } else {
+                    // Нормализованное название совпадает, поэтому слова в индексе не меняются
+                    updateProduct.bindString(1, productName);
+                    updateProduct.bindLong(2, sectionId);
+                    bindNullable(updateProduct, 3, barcode);
+                    updateProduct.bindLong(4, product.id);
+                    updateProduct.executeUpdateDelete();
+                    product.name = productName;
+                    product.sectionId = sectionId;
+                    product.barcode = barcode;
+                    updated++;
+                }
+                if (barcode != null) {
+                    byBarcode.put(barcode, product);
+                }
+                product.seen = true;
+            }
+
+            if (deleteMissing) {
+                deleted = deleteUnseenProducts(db, products.values());
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertProduct.close();
+            updateProduct.close();
+            clearBarcode.close();
+            insertTerm.close();
+            db.endTransaction();
+        }
+
+        if (inserted + updated + deleted > 0) {
+            searchCache.invalidateMap(mapId);
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS, mapId);
+        }
+        IMPORT_PRODUCTS_LATENCY.recordSince(start);
+        IMPORTED_PRODUCTS.add(inserted + updated);
+        DELETED_PRODUCTS.add(deleted);
+        return new ImportResult(inserted, updated, unchanged, deleted, skipped, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Товар схемы при импорте: сохраненные значения и отметка о том, что он есть в файле.
+     */
+    private static final class ImportedProduct {
+        final long id;
+        String name;
+        long sectionId;
+        String barcode;
+        // Товар синхронизации каталога: его удаляет только она
+        boolean external;
+        boolean seen;
+
+        ImportedProduct(long id, String name, long sectionId, String barcode) {
+            this.id = id;
+            this.name = name;
+            this.sectionId = sectionId;
+            this.barcode = barcode;
+        }
+    }
+
+    /**
+     * Загружает товары схемы по нормализованному названию.
+     * @param db База данных
+     * @param mapId Идентификатор схемы магазина
+     * @return Соответствие нормализованного названия товару
+     */
+    private Map<String, ImportedProduct> loadImportedProducts(SQLiteDatabase db, long mapId) {
+        Cursor cursor = db.query(TABLE_PRODUCTS,
+                new String[]{COLUMN_PRODUCT_ID, COLUMN_PRODUCT_NAME, COLUMN_PRODUCT_SECTION_ID,
+                        COLUMN_PRODUCT_NAME_NORM, COLUMN_PRODUCT_BARCODE, COLUMN_PRODUCT_EXTERNAL_ID},
+                COLUMN_PRODUCT_MAP_ID + " = ?", new String[]{String.valueOf(mapId)}, null, null, null);
+        try {
+            Map<String, ImportedProduct> result = new HashMap<>(Math.max(16, cursor.getCount() * 4 / 3 + 1));
+            while (cursor.moveToNext()) {
+                ImportedProduct product = new ImportedProduct(cursor.getLong(0), cursor.getString(1),
+                        cursor.getLong(2), cursor.getString(4));
+                product.external = !cursor.isNull(5);
+                result.put(cursor.getString(3), product);
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Удаляет товары, которых не было в файле, вместе с синонимами и словами поискового индекса.
+     * Товары синхронизации каталога не удаляются.
+     * @param db База данных
+     * @param products Товары схемы после импорта
+     * @return Количество удаленных товаров
+     */
+    private int deleteUnseenProducts(SQLiteDatabase db, Iterable<ImportedProduct> products) {
+        SQLiteStatement deleteTerms = db.compileStatement("DELETE FROM " + TABLE_PRODUCT_TERMS +
+                " WHERE " + COLUMN_TERM_PRODUCT_ID + " = ?");
+        SQLiteStatement deleteAliases = db.compileStatement("DELETE FROM " + TABLE_PRODUCT_ALIASES +
+                " WHERE " + COLUMN_ALIAS_PRODUCT_ID + " = ?");
+        SQLiteStatement deleteProduct = db.compileStatement("DELETE FROM " + TABLE_PRODUCTS +
+                " WHERE " + COLUMN_PRODUCT_ID + " = ?");
+        int deleted = 0;
+        try {
+            for (ImportedProduct product : products) {
+                if (product.seen || product.external) continue;
+                deleteTerms.bindLong(1, product.id);
+                deleteTerms.executeUpdateDelete();
+                deleteAliases.bindLong(1, product.id);
+                deleteAliases.executeUpdateDelete();
+                deleteProduct.bindLong(1, product.id);
+                deleted += deleteProduct.executeUpdateDelete();
+            }
+        } finally {
+            deleteTerms.close();
+            deleteAliases.close();
+            deleteProduct.close();
+        }
+        return deleted;
+    }
+
+    /**
+     * Импортирует синонимы товаров из строки (CSV формат).
+     * Слова синонимов сразу записываются в поисковый индекс товара,
+     * поэтому при поиске синонимы не требуют дополнительных запросов.
+     * @param csvData Строка с данными в формате "название товара,синоним[,синоним...]"
+     * @param mapId Идентификатор схемы магазина
+     * @return Количество добавленных синонимов
+     */
+    public int importAliasesFromCSV(String csvData, long mapId) {
+        long start = Metrics.startTimer();
+        int importedCount = 0;
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.beginTransaction();
+        SQLiteStatement insertAlias = db.compileStatement("INSERT OR IGNORE INTO " +
+                TABLE_PRODUCT_ALIASES + " (" + COLUMN_ALIAS_PRODUCT_ID + ", " + COLUMN_ALIAS_TEXT +
+                ", " + COLUMN_ALIAS_NORM + ") VALUES (?, ?, ?)");
 
-                    db.insert(TABLE_PRODUCTS, null, values);
-                    importedCount++;
+        try {
+            Map<String, List<Long>> productsByName = loadProductIdsByNormalizedName(db, mapId);
+            Set<Long> touchedProducts = new LinkedHashSet<>();
+
+            for (CsvImportParser.AliasRow row : CsvImportParser.parseAliases(csvData)) {
+                List<Long> productIds = productsByName.get(RussianNormalizer.normalize(row.getProductName()));
+                if (productIds == null) {
+                    // Если товар не найден, пропускаем строку
+                    continue;
+                }
+
+                for (String alias : row.getAliases()) {
+                    String aliasNorm = RussianNormalizer.normalize(alias);
+                    if (aliasNorm.isEmpty()) continue;
+
+                    for (long productId : productIds) {
+                        insertAlias.bindLong(1, productId);
+                        insertAlias.bindString(2, alias);
+                        insertAlias.bindString(3, aliasNorm);
+                        if (insertAlias.executeInsert() != -1) {
+                            importedCount++;
+                            touchedProducts.add(productId);
+                        }
+                    }
                 }
             }
 
+            // Пересобираем поисковый индекс только для затронутых товаров
+            SQLiteStatement insertTerm = compileTermInsert(db);
+            try {
+                for (long productId : touchedProducts) {
+                    reindexProductAliases(db, insertTerm, productId);
+                }
+            } finally {
+                insertTerm.close();
+            }
+
             db.setTransactionSuccessful();
         } finally {
+            insertAlias.close();
             db.endTransaction();
-            db.close();
         }
 
+        searchCache.invalidateMap(mapId);
+        if (importedCount > 0) {
+            // Синонимы дублируются в строке товара (aliases_norm)
+            invalidationTracker.notifyChanged(InvalidationTracker.TABLE_ALIASES | InvalidationTracker.TABLE_PRODUCTS,
+                    mapId);
+        }
+        IMPORT_ALIASES_LATENCY.recordSince(start);
         return importedCount;
     }
 
     /**
-     * Находит раздел по имени для указанной схемы магазина.
-     * @param sectionName Название раздела
+     * Загружает идентификаторы товаров схемы, сгруппированные по нормализованному названию.
+     * @param db База данных
      * @param mapId Идентификатор схемы магазина
-     * @return Идентификатор раздела или -1, если раздел не найден
+     * @return Соответствие нормализованного названия идентификаторам товаров
      */
-    private long findSectionByName(String sectionName, long mapId) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        long sectionId = -1;
+    private Map<String, List<Long>> loadProductIdsByNormalizedName(SQLiteDatabase db, long mapId) {
+        Map<String, List<Long>> result = new HashMap<>();
+        // Выборка идет по индексу (map_id, name_norm), без соединения с разделами
+        Cursor cursor = db.rawQuery("SELECT " + COLUMN_PRODUCT_ID + ", " + COLUMN_PRODUCT_NAME_NORM +
+                        " FROM " + TABLE_PRODUCTS + " WHERE " + COLUMN_PRODUCT_MAP_ID + " = ?",
+                new String[]{String.valueOf(mapId)});
+        try {
+            while (cursor.moveToNext()) {
+                String name = cursor.getString(1);
+                List<Long> ids = result.get(name);
+                if (ids == null) {
+                    ids = new ArrayList<>(1);
+                    result.put(name, ids);
+                }
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
 
-        Cursor cursor = db.query(TABLE_SECTIONS,
-                new String[]{COLUMN_SECTION_ID},
-                COLUMN_SECTION_NAME + "=? AND " + COLUMN_SECTION_MAP_ID + "=?",
-                new String[]{sectionName, String.valueOf(mapId)},
-                null, null, null);
+    /**
+     * Обновляет предвычисленные синонимы товара и его слова в поисковом индексе.
+     * @param db База данных
+     * @param insertTerm Скомпилированный запрос вставки слова
+     * @param productId Идентификатор товара
+     * @return Нормализованные синонимы товара через {@link ProductMatcher#ALIAS_SEPARATOR}
+     */
+    static String reindexProductAliases(SQLiteDatabase db, SQLiteStatement insertTerm, long productId) {
+        String[] args = {String.valueOf(productId)};
+        List<String> terms = new ArrayList<>();
+        StringBuilder aliasesNorm = new StringBuilder();
+
+        Cursor nameCursor = db.rawQuery("SELECT " + COLUMN_PRODUCT_NAME_NORM + " FROM " +
+                TABLE_PRODUCTS + " WHERE " + COLUMN_PRODUCT_ID + " = ?", args);
+        try {
+            if (nameCursor.moveToFirst() && nameCursor.getString(0) != null) {
+                addTerms(terms, nameCursor.getString(0));
+            }
+        } finally {
+            nameCursor.close();
+        }
+
+        Cursor aliasCursor = db.rawQuery("SELECT " + COLUMN_ALIAS_NORM + " FROM " +
+                TABLE_PRODUCT_ALIASES + " WHERE " + COLUMN_ALIAS_PRODUCT_ID + " = ?", args);
+        try {
+            while (aliasCursor.moveToNext()) {
+                String aliasNorm = aliasCursor.getString(0);
+                if (aliasesNorm.length() > 0) aliasesNorm.append(ProductMatcher.ALIAS_SEPARATOR);
+                aliasesNorm.append(aliasNorm);
+                addTerms(terms, aliasNorm);
+            }
+        } finally {
+            aliasCursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_PRODUCT_ALIASES_NORM, aliasesNorm.toString());
+        db.update(TABLE_PRODUCTS, values, COLUMN_PRODUCT_ID + " = ?", args);
+
+        db.delete(TABLE_PRODUCT_TERMS, COLUMN_TERM_PRODUCT_ID + " = ?", args);
+        insertTerms(insertTerm, productId, terms);
+        return aliasesNorm.toString();
+    }
+
+    private static void addTerms(List<String> terms, String normalizedText) {
+        if (normalizedText.isEmpty()) return;
+        for (String term : normalizedText.split(" ")) {
+            terms.add(term);
+        }
+    }
+
+    /**
+     * Возвращает каталог схемы для синхронизации с сервером
+     * (см. {@link com.example.storefinder.sync.CatalogSyncClient}).
+     * Синхронизированные разделы и товары хранятся вместе с добавленными оператором
+     * и отличаются только заполненным внешним идентификатором.
+     * @param mapId Идентификатор схемы магазина
+     * @return Каталог схемы
+     */
+    public CatalogStore getCatalogStore(final long mapId) {
+        return new CatalogStore() {
+            @Override
+            public long getSyncVersion() {
+                Cursor cursor = querySyncState(mapId);
+                try {
+                    return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+                } finally {
+                    cursor.close();
+                }
+            }
 
-        if (cursor != null && cursor.moveToFirst()) {
-            sectionId = cursor.getLong(cursor.getColumnIndex(COLUMN_SECTION_ID));
+            @Override
+            public String getSyncEtag() {
+                Cursor cursor = querySyncState(mapId);
+                try {
+                    return cursor.moveToFirst() ? cursor.getString(1) : null;
+                } finally {
+                    cursor.close();
+                }
+            }
+
+            @Override
+            public CatalogDeltaHandler openDelta(String etag) {
+                return new CatalogDeltaApplier(StoreDbHelper.this, getWritableDatabase(), mapId, etag);
+            }
+        };
+    }
+
+    /**
+     * Возвращает хранилище правок для {@link WriteBehindQueue}: правки пачки
+     * ({@link #sectionWrite}, {@link #productWrite}) выполняются одной транзакцией,
+     * то есть с одной синхронизацией журнала на диск вместо одной на строку.
+     * @return Хранилище правок
+     */
+    public WriteStore getWriteStore() {
+        return new WriteStore() {
+            @Override
+            public void runInTransaction(Runnable body) {
+                SQLiteDatabase db = getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    body.run();
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        };
+    }
+
+    /**
+     * Возвращает хранилище журнала поиска для {@link com.example.storefinder.analytics.SearchAnalytics}.
+     * Пачка событий дописывается в журнал и прибавляется к сводке запросов одной транзакцией;
+     * сводка, спрос на разделы и популярность выбранных товаров обновляются по приращениям,
+     * журнал при этом не перечитывается.
+     * @return Хранилище журнала поиска
+     */
+    public AnalyticsStore getAnalyticsStore() {
+        return new AnalyticsStore() {
+            @Override
+            public void append(List<SearchEvent> events) {
+                long start = Metrics.startTimer();
+                SQLiteDatabase db = getWritableDatabase();
+                SQLiteStatement insertEvent = db.compileStatement("INSERT INTO " + TABLE_SEARCH_EVENTS + " (" +
+                        COLUMN_EVENT_TIME + ", " + COLUMN_EVENT_TYPE + ", " + COLUMN_EVENT_QUERY + ", " +
+                        COLUMN_EVENT_RESULTS + ", " + COLUMN_EVENT_PRODUCT_ID + ") VALUES (?, ?, ?, ?, ?)");
+                SQLiteStatement updateStats = db.compileStatement("UPDATE " + TABLE_QUERY_STATS + " SET " +
+                        COLUMN_STATS_SEARCHES + " = " + COLUMN_STATS_SEARCHES + " + ?, " +
+                        COLUMN_STATS_ZERO_HITS + " = " + COLUMN_STATS_ZERO_HITS + " + ?, " +
+                        COLUMN_STATS_SELECTIONS + " = " + COLUMN_STATS_SELECTIONS + " + ?, " +
+                        COLUMN_STATS_LAST_TIME + " = ? WHERE " + COLUMN_STATS_QUERY + " = ?");
+                SQLiteStatement insertStats = db.compileStatement("INSERT INTO " + TABLE_QUERY_STATS + " (" +
+                        COLUMN_STATS_SEARCHES + ", " + COLUMN_STATS_ZERO_HITS + ", " + COLUMN_STATS_SELECTIONS +
+                        ", " + COLUMN_STATS_LAST_TIME + ", " + COLUMN_STATS_QUERY + ") VALUES (?, ?, ?, ?, ?)");
+                SQLiteStatement addPopularity = db.compileStatement("UPDATE " + TABLE_PRODUCTS + " SET " +
+                        COLUMN_PRODUCT_POPULARITY + " = " + COLUMN_PRODUCT_POPULARITY + " + ? WHERE " +
+                        COLUMN_PRODUCT_ID + " = ?");
+                long lastTime = events.get(events.size() - 1).getTimeMillis();
+                SectionDemand demand = SectionDemand.fromEvents(events);
+                db.beginTransaction();
+                try {
+                    for (SearchEvent event : events) {
+                        insertEvent.bindLong(1, event.getTimeMillis());
+                        insertEvent.bindLong(2, event.getType());
+                        bindNullable(insertEvent, 3, event.getQuery());
+                        if (event.getType() == SearchEvent.TYPE_SEARCH) {
+                            insertEvent.bindLong(4, event.getResultCount());
+                            insertEvent.bindNull(5);
+                        } else {
+                            insertEvent.bindNull(4);
+                            insertEvent.bindLong(5, event.getProductId());
+                        }
+                        insertEvent.executeInsert();
+                    }
+                    for (QueryStats delta : QueryStats.aggregate(events).values()) {
+                        bindQueryStats(updateStats, delta, lastTime);
+                        if (updateStats.executeUpdateDelete() == 0) {
+                            // Запрос встретился впервые
+                            bindQueryStats(insertStats, delta, lastTime);
+                            insertStats.executeInsert();
+                        }
+                    }
+                    addSectionDemand(db, demand);
+                    for (Map.Entry<Long, Integer> selections : countSelections(events).entrySet()) {
+                        addPopularity.bindLong(1, selections.getValue());
+                        addPopularity.bindLong(2, selections.getKey());
+                        addPopularity.executeUpdateDelete();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                    insertEvent.close();
+                    updateStats.close();
+                    insertStats.close();
+                    addPopularity.close();
+                }
+                ANALYTICS_WRITE_LATENCY.recordSince(start);
+            }
+        };
+    }
+
+    /**
+     * Считает выборы каждого товара в пачке событий журнала поиска.
+     * @param events События журнала
+     * @return Соответствие идентификатора товара количеству его выборов
+     */
+    private static Map<Long, Integer> countSelections(List<SearchEvent> events) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (SearchEvent event : events) {
+            if (event.getType() != SearchEvent.TYPE_SELECT) continue;
+            Integer count = counts.get(event.getProductId());
+            counts.put(event.getProductId(), count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Прибавляет прирост спроса к сохраненным значениям, приводя их ко времени прироста.
+     * @param db База данных (вызывается внутри транзакции записи журнала)
+     * @param delta Прирост спроса по разделам
+     */
+    private static void addSectionDemand(SQLiteDatabase db, SectionDemand delta) {
+        if (delta.size() == 0) {
+            return;
+        }
+        long time = delta.getReferenceTime();
+        String[] args = new String[1];
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < delta.size(); i++) {
+            double score = delta.getScore(i);
+            args[0] = String.valueOf(delta.getSectionId(i));
+            Cursor cursor = db.query(TABLE_SECTION_DEMAND, new String[]{COLUMN_DEMAND_SCORE, COLUMN_DEMAND_TIME},
+                    COLUMN_DEMAND_SECTION_ID + " = ?", args, null, null, null);
+            try {
+                if (cursor.moveToFirst()) {
+                    score += SectionDemand.decay(cursor.getDouble(0), cursor.getLong(1), time);
+                }
+            } finally {
+                cursor.close();
+            }
+            values.put(COLUMN_DEMAND_SECTION_ID, delta.getSectionId(i));
+            values.put(COLUMN_DEMAND_SCORE, score);
+            values.put(COLUMN_DEMAND_TIME, time);
+            db.insertWithOnConflict(TABLE_SECTION_DEMAND, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+    }
+
+    /**
+     * Возвращает спрос на разделы схемы, приведенный к заданному моменту.
+     * @param mapId Идентификатор схемы магазина
+     * @param nowMillis Момент, к которому приводится спрос
+     * @return Спрос на разделы, по которым были поиски или выборы товаров
+     */
+    public SectionDemand getSectionDemand(long mapId, long nowMillis) {
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT d." + COLUMN_DEMAND_SECTION_ID +
+                ", d." + COLUMN_DEMAND_SCORE + ", d." + COLUMN_DEMAND_TIME +
+                " FROM " + TABLE_SECTION_DEMAND + " d JOIN " + TABLE_SECTIONS + " s ON s." + COLUMN_SECTION_ID +
+                " = d." + COLUMN_DEMAND_SECTION_ID + " WHERE s." + COLUMN_SECTION_MAP_ID + " = ?",
+                new String[]{String.valueOf(mapId)});
+        try {
+            SectionDemand demand = new SectionDemand(nowMillis, cursor.getCount());
+            while (cursor.moveToNext()) {
+                demand.add(cursor.getLong(0), cursor.getDouble(1), cursor.getLong(2));
+            }
+            return demand;
+        } finally {
             cursor.close();
         }
+    }
 
-        return sectionId;
+    private static void bindQueryStats(SQLiteStatement statement, QueryStats delta, long lastTime) {
+        statement.bindLong(1, delta.getSearches());
+        statement.bindLong(2, delta.getZeroHits());
+        statement.bindLong(3, delta.getSelections());
+        statement.bindLong(4, lastTime);
+        statement.bindString(5, delta.getQuery());
+    }
+
+    /**
+     * Возвращает самые частые запросы покупателей из сводки журнала поиска.
+     * @param limit Количество запросов
+     * @param zeroHitsOnly true, чтобы выбрать запросы, по которым ничего не находилось
+     * @return Запросы в порядке убывания числа поисков (или поисков без результата)
+     */
+    public List<QueryStats> getTopSearchQueries(int limit, boolean zeroHitsOnly) {
+        String order = zeroHitsOnly ? COLUMN_STATS_ZERO_HITS : COLUMN_STATS_SEARCHES;
+        Cursor cursor = getReadableDatabase().query(TABLE_QUERY_STATS,
+                new String[]{COLUMN_STATS_QUERY, COLUMN_STATS_SEARCHES, COLUMN_STATS_ZERO_HITS,
+                        COLUMN_STATS_SELECTIONS},
+                zeroHitsOnly ? COLUMN_STATS_ZERO_HITS + " > 0" : null, null, null, null,
+                order + " DESC, " + COLUMN_STATS_LAST_TIME + " DESC", String.valueOf(limit));
+        List<QueryStats> result = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                result.add(new QueryStats(cursor.getString(0), cursor.getInt(1), cursor.getInt(2),
+                        cursor.getInt(3)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    private Cursor querySyncState(long mapId) {
+        return getReadableDatabase().query(TABLE_SYNC_STATE,
+                new String[]{COLUMN_SYNC_VERSION, COLUMN_SYNC_ETAG},
+                COLUMN_SYNC_MAP_ID + " = ?", new String[]{String.valueOf(mapId)},
+                null, null, null);
+    }
+
+    /**
+     * Сохраняет версию каталога схемы (вызывается внутри транзакции применения дельты).
+     */
+    static void saveSyncState(SQLiteDatabase db, long mapId, long version, String etag) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SYNC_MAP_ID, mapId);
+        values.put(COLUMN_SYNC_VERSION, version);
+        values.put(COLUMN_SYNC_ETAG, etag);
+        db.insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    SearchResultCache getSearchCache() {
+        return searchCache;
+    }
+
+    /**
+     * Применяет изменения разделов к загруженному реестру схемы. Реестр читается
+     * из главного потока без блокировок, поэтому изменения записываются в копию,
+     * которая затем заменяет прежний реестр.
+     * @param mapId Идентификатор схемы магазина
+     * @param changes Измененные разделы по идентификатору; null означает удаленный раздел
+     */
+    void applySectionChanges(long mapId, Map<Long, StoreSection> changes) {
+        synchronized (sectionRegistries) {
+            SectionRegistry registry = sectionRegistries.get(mapId);
+            if (registry == null) {
+                return;
+            }
+            SectionRegistry updated = new SectionRegistry(mapId, registry.size() + changes.size());
+            for (int i = 0; i < registry.size(); i++) {
+                long id = registry.getId(i);
+                if (changes.containsKey(id) && changes.get(id) == null) continue;
+                updated.put(id, registry.getName(i), registry.getX(i), registry.getY(i), registry.getPolygon(i));
+            }
+            for (StoreSection section : changes.values()) {
+                if (section != null) {
+                    updated.put(section.getId(), section.getName(), section.getX(), section.getY(),
+                            section.getPolygon());
+                }
+            }
+            sectionRegistries.put(mapId, updated);
+        }
+    }
+
+    /**
+     * Удаляет реестр схемы из памяти; при следующем обращении он загрузится из базы данных.
+     * @param mapId Идентификатор схемы магазина
+     */
+    void invalidateSectionRegistry(long mapId) {
+        synchronized (sectionRegistries) {
+            sectionRegistries.remove(mapId);
+        }
+    }
+
+    /**
+     * Загружает идентификаторы разделов схемы по названию.
+     * @param db База данных
+     * @param mapId Идентификатор схемы магазина
+     * @return Соответствие названия раздела его идентификатору
+     */
+    private Map<String, Long> loadSectionIdsByName(SQLiteDatabase db, long mapId) {
+        Map<String, Long> result = new HashMap<>();
+        Cursor cursor = db.query(TABLE_SECTIONS,
+                new String[]{COLUMN_SECTION_ID, COLUMN_SECTION_NAME},
+                COLUMN_SECTION_MAP_ID + " = ?", new String[]{String.valueOf(mapId)},
+                null, null, COLUMN_SECTION_ID);
+        try {
+            while (cursor.moveToNext()) {
+                // При совпадении названий используется первый раздел, как и раньше
+                if (!result.containsKey(cursor.getString(1))) {
+                    result.put(cursor.getString(1), cursor.getLong(0));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+package com.example.storefinder.map;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Path;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.os.Build;
+
+import com.example.storefinder.metrics.Metrics;
+
+/**
+ * Слои изображения схемы: неизменяемая подложка в экономном формате и {@link MapOverlayDrawable}
+ * с метками поверх нее. Раньше схема хранилась в ARGB_8888 вместе с изменяемой копией для меток
+ * (8 байт на пиксель); подложка в RGB_565 занимает 2 байта на пиксель, а аппаратная подложка
+ * хранится только в памяти графического процессора. Векторная схема ({@link VectorMapDrawable})
+ * заменяет растровую подложку целиком.
+ */
+public final class MapLayers {
+
+    private MapLayers() {
+    }
+
+    /**
+     * Формат декодирования подложки. Для изображений с прозрачностью декодер сам выбирает
+     * ARGB_8888 вместо RGB_565, поэтому прозрачные области схемы не становятся черными.
+     * @param allowHardware true, если изображение уменьшено до размера экрана: аппаратное
+     *                      изображение больше максимального размера текстуры не отображается
+     * @return Формат подложки
+     */
+    public static Bitmap.Config baseConfig(boolean allowHardware) {
+        if (allowHardware && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            return Bitmap.Config.HARDWARE;
+        }
+        return Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Декодирует подложку схемы из файла в полном размере.
+     * @param imagePath Путь к файлу схемы
+     * @return Неизменяемое изображение или null, если файл не читается
+     */
+    public static Bitmap decodeBase(String imagePath) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = MapLayers.baseConfig(false);
+        return BitmapFactory.decodeFile(imagePath, options);
+    }
+
+    /**
+     * Составляет изображение схемы для ImageView из подложки и слоя меток.
+     * @param resources Ресурсы экрана
+     * @param base Подложка
+     * @param overlay Слой меток того же размера
+     * @return Составное изображение; изменения слоя видны после его invalidateSelf()
+     */
+    public static Drawable compose(Resources resources, Bitmap base, MapOverlayDrawable overlay) {
+        return MapLayers.compose(new BitmapDrawable(resources, base), overlay);
+    }
+
+    /**
+     * Составляет изображение схемы для ImageView из произвольной подложки и слоя меток.
+     * @param base Подложка, например {@link VectorMapDrawable}
+     * @param overlay Слой меток того же размера
+     * @return Составное изображение
+     */
+    public static Drawable compose(Drawable base, MapOverlayDrawable overlay) {
+        return new LayerDrawable(new Drawable[]{base, overlay});
+    }
+
+    /**
+     * Записывает объем памяти, занятой схемой на экране, в метрику memory.&lt;экран&gt;_map.&lt;схема&gt;.
+     * @param screen Экран: customer или operator
+     * @param mapId Идентификатор схемы
+     * @param base Подложка или null
+     * @param overlay Слой меток или null
+     * @return Объем памяти в байтах
+     */
+    public static long reportMemory(String screen, long mapId, Bitmap base, MapOverlayDrawable overlay) {
+        return MapLayers.reportMemory(screen, mapId, base != null ? base.getByteCount() : 0, overlay);
+    }
+
+    /**
+     * Записывает объем памяти, занятой схемой на экране, в метрику memory.&lt;экран&gt;_map.&lt;схема&gt;.
+     * @param screen Экран: customer или operator
+     * @param mapId Идентификатор схемы
+     * @param baseBytes Память подложки в байтах
+     * @param overlay Слой меток или null
+     * @return Объем памяти в байтах
+     */
+    public static long reportMemory(String screen, long mapId, long baseBytes, MapOverlayDrawable overlay) {
+        long bytes = baseBytes + (overlay != null ? overlay.getByteCount() : 0);
+        Metrics.counter("memory." + screen + "_map." + mapId).set(bytes);
+        return bytes;
+    }
+
+    /**
+     * Добавляет в контур ломаную или замкнутый многоугольник.
+     * @param path Контур
+     * @param points Вершины (x0, y0, x1, y1, ...)
+     * @param closed true для многоугольника
+     */
+    static void appendPath(Path path, float[] points, boolean closed) {
+        path.moveTo(points[0], points[1]);
+        for (int i = 2; i + 1 < points.length; i += 2) {
+            path.lineTo(points[i], points[i + 1]);
+        }
+        if (closed) {
+            path.close();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.storefinder.map;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Изменяемый слой поверх схемы магазина: метки и выделенные контуры разделов, тепловая карта.
+ * Слой не хранит изображения размером со схему: метки рисуются при отрисовке
+ * на холсте представления, поэтому их изменение не требует копии схемы.
+ * Координаты меток задаются в системе исходной схемы и умножаются на масштаб слоя.
+ */
+public class MapOverlayDrawable extends Drawable {
+    private static final float STROKE_WIDTH = 3;
+
+    private static final class Marker {
+        final float x;
+        final float y;
+        final float radius;
+        final int fillColor;
+        final String label;
+        final float textSize;
+        final float labelOffset;
+
+        Marker(float x, float y, float radius, int fillColor, String label, float textSize, float labelOffset) {
+            this.x = x;
+            this.y = y;
+            this.radius = radius;
+            this.fillColor = fillColor;
+            this.label = label;
+            this.textSize = textSize;
+            this.labelOffset = labelOffset;
+        }
+    }
+
+    private static final class Area {
+        final Path path;
+        final int fillColor;
+
+        Area(Path path, int fillColor) {
+            this.path = path;
+            this.fillColor = fillColor;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final float scale;
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // Растягивание с фильтрацией сглаживает ячейки тепловой карты
+    private final Paint heatmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final List<Marker> markers = new ArrayList<>();
+    private final List<Area> areas = new ArrayList<>();
+    private Bitmap heatmap;
+    private Rect heatmapBounds;
+
+    /**
+     * @param width Ширина изображения схемы в пикселях
+     * @param height Высота изображения схемы в пикселях
+     * @param scale Отношение размера изображения к исходной схеме, в которой заданы координаты
+     */
+    public MapOverlayDrawable(int width, int height, float scale) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        paint.setStrokeWidth(STROKE_WIDTH);
+    }
+
+    /**
+     * Добавляет метку раздела: круг с черной рамкой и подпись справа от него.
+     * Изменения видны после {@link #invalidateSelf()}.
+     * @param x Координата X центра на исходной схеме
+     * @param y Координата Y центра на исходной схеме
+     * @param radius Радиус круга
+     * @param fillColor Цвет круга с прозрачностью
+     * @param label Подпись или null
+     * @param textSize Размер подписи
+     * @param labelOffset Смещение подписи от центра по X
+     */
+    public void addMarker(float x, float y, float radius, int fillColor, String label, float textSize,
+                          float labelOffset) {
+        markers.add(new Marker(x, y, radius, fillColor, label, textSize, labelOffset));
+    }
+
+    /**
+     * Выделяет контур раздела: заливка с черной рамкой под метками.
+     * Изменения видны после {@link #invalidateSelf()}.
+     * @param polygon Вершины контура на исходной схеме (x0, y0, x1, y1, ...)
+     * @param fillColor Цвет заливки с прозрачностью
+     */
+    public void addArea(float[] polygon, int fillColor) {
+        Path path = new Path();
+        MapLayers.appendPath(path, polygon, true);
+        areas.add(new Area(path, fillColor));
+    }
+
+    /**
+     * Удаляет все метки и выделенные контуры.
+     */
+    public void clearMarkers() {
+        markers.clear();
+        areas.clear();
+    }
+
+    /**
+     * Задает тепловую карту, которая растягивается на прямоугольник исходной схемы под метками.
+     * @param bitmap Тепловая карта в низком разрешении или null, чтобы скрыть ее
+     * @param bounds Прямоугольник на исходной схеме, который покрывает карта
+     */
+    public void setHeatmap(Bitmap bitmap, Rect bounds) {
+        heatmap = bitmap;
+        heatmapBounds = bounds;
+    }
+
+    /**
+     * @return Память, занятая слоем (тепловой картой), в байтах
+     */
+    public long getByteCount() {
+        return heatmap != null ? heatmap.getByteCount() : 0;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        // Слой растягивается вместе со схемой, если представление задало другие границы
+        canvas.scale(scale * bounds.width() / width, scale * bounds.height() / height);
+
+        if (heatmap != null) {
+            canvas.drawBitmap(heatmap, null, heatmapBounds, heatmapPaint);
+        }
+        for (int i = 0; i < areas.size(); i++) {
+            Area area = areas.get(i);
+            paint.setColor(area.fillColor);
+            paint.setStyle(Paint.Style.FILL);
+            canvas.drawPath(area.path, paint);
+
+            paint.setColor(Color.BLACK);
+            paint.setStyle(Paint.Style.STROKE);
+            canvas.drawPath(area.path, paint);
+        }
+        for (int i = 0; i < markers.size(); i++) {
+            Marker marker = markers.get(i);
+            paint.setColor(marker.fillColor);
+            paint.setStyle(Paint.Style.FILL);
+            canvas.drawCircle(marker.x, marker.y, marker.radius, paint);
+
+            paint.setColor(Color.BLACK);
+            paint.setStyle(Paint.Style.STROKE);
+            canvas.drawCircle(marker.x, marker.y, marker.radius, paint);
+
+            if (marker.label != null) {
+                paint.setStyle(Paint.Style.FILL);
+                paint.setTextSize(marker.textSize);
+                canvas.drawText(marker.label, marker.x + marker.labelOffset, marker.y, paint);
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return width;
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return height;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        // Прозрачность меток задается их цветами
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
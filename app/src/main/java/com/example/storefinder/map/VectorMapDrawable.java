@@ -0,0 +1,126 @@
+package com.example.storefinder.map;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+
+import com.example.storefinder.models.FloorPlan;
+import com.example.storefinder.models.SectionRegistry;
+
+/**
+ * Подложка векторной схемы: стены, стеллажи и контуры разделов.
+ * Фигуры переводятся в контуры {@link Path} один раз и при отрисовке масштабируются
+ * холстом под границы представления, поэтому схема четкая при любом увеличении
+ * и не занимает памяти под пиксели.
+ */
+public class VectorMapDrawable extends Drawable {
+    private static final int FLOOR_COLOR = Color.WHITE;
+    private static final int WALL_COLOR = 0xFF424242;
+    private static final int SHELF_FILL_COLOR = 0xFFE0E0E0;
+    private static final int SHELF_STROKE_COLOR = 0xFF9E9E9E;
+    private static final int SECTION_STROKE_COLOR = 0x803F51B5;
+    // Толщина линий в единицах схемы
+    private static final float WALL_WIDTH = 6;
+    private static final float OUTLINE_WIDTH = 2;
+
+    private final FloorPlan plan;
+    private final RectF floor;
+    private final Path walls = new Path();
+    private final Path shelves = new Path();
+    private final Path sections = new Path();
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    /**
+     * @param plan Векторная схема
+     */
+    public VectorMapDrawable(FloorPlan plan) {
+        this.plan = plan;
+        this.floor = new RectF(0, 0, plan.getWidth(), plan.getHeight());
+        for (float[] wall : plan.getWalls()) {
+            MapLayers.appendPath(walls, wall, false);
+        }
+        for (float[] shelf : plan.getShelves()) {
+            MapLayers.appendPath(shelves, shelf, true);
+        }
+    }
+
+    /**
+     * Задает контуры разделов, которые рисуются поверх стеллажей.
+     * Изменения видны после {@link #invalidateSelf()}.
+     * @param registry Реестр разделов схемы
+     */
+    public void setSections(SectionRegistry registry) {
+        sections.reset();
+        for (int i = 0; i < registry.size(); i++) {
+            float[] polygon = registry.getPolygon(i);
+            if (polygon != null) {
+                MapLayers.appendPath(sections, polygon, true);
+            }
+        }
+    }
+
+    /**
+     * @return Память, занятая вершинами схемы, в байтах
+     */
+    public long getByteCount() {
+        return plan.estimateHeapBytes();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        Rect bounds = getBounds();
+        int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(bounds.width() / plan.getWidth(), bounds.height() / plan.getHeight());
+
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(FLOOR_COLOR);
+        canvas.drawRect(floor, paint);
+
+        paint.setColor(SHELF_FILL_COLOR);
+        canvas.drawPath(shelves, paint);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(OUTLINE_WIDTH);
+        paint.setColor(SHELF_STROKE_COLOR);
+        canvas.drawPath(shelves, paint);
+
+        paint.setColor(SECTION_STROKE_COLOR);
+        canvas.drawPath(sections, paint);
+
+        paint.setStrokeWidth(WALL_WIDTH);
+        paint.setColor(WALL_COLOR);
+        canvas.drawPath(walls, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return Math.round(plan.getWidth());
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return Math.round(plan.getHeight());
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        // Подложка непрозрачна, как и растровая схема
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.OPAQUE;
+    }
+}
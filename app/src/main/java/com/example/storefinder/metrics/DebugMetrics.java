@@ -0,0 +1,86 @@
+package com.example.storefinder.metrics;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Включение метрик в отладочных сборках и периодическая запись отчета
+ * {@link Metrics#report()} в файл metrics.txt во внутренней памяти приложения.
+ * В релизных сборках метрики остаются выключенными и поток записи не создается.
+ */
+public final class DebugMetrics {
+    private static final String TAG = "DebugMetrics";
+    private static final String DUMP_FILE_NAME = "metrics.txt";
+    private static final long DUMP_PERIOD_SECONDS = 30;
+
+    private static ScheduledExecutorService dumpExecutor;
+
+    private DebugMetrics() {
+    }
+
+    /**
+     * Включает сбор метрик, если приложение собрано в отладочном режиме,
+     * и запускает периодическую запись отчета. Повторные вызовы ничего не делают.
+     * @param context Контекст
+     */
+    public static synchronized void install(Context context) {
+        if (dumpExecutor != null) {
+            return;
+        }
+        boolean debuggable = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        if (!debuggable) {
+            return;
+        }
+
+        Metrics.setEnabled(true);
+        final File dumpFile = new File(context.getApplicationContext().getFilesDir(), DUMP_FILE_NAME);
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-dump");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        dumpExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                dump(dumpFile);
+            }
+        }, DUMP_PERIOD_SECONDS, DUMP_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Записывает отчет во временный файл и переименовывает его,
+     * чтобы при чтении файл никогда не оказывался записанным наполовину.
+     * @param dumpFile Файл отчета
+     */
+    static void dump(File dumpFile) {
+        File tmpFile = new File(dumpFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8")) {
+            writer.write("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date()) + "\n");
+            writer.write(Metrics.report());
+        } catch (IOException e) {
+            Log.w(TAG, "Не удалось записать метрики", e);
+            return;
+        }
+        if (!tmpFile.renameTo(dumpFile)) {
+            Log.w(TAG, "Не удалось переименовать " + tmpFile);
+        }
+    }
+}
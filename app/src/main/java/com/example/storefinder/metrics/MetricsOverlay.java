@@ -0,0 +1,64 @@
+package com.example.storefinder.metrics;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/**
+ * Отладочная панель поверх экрана с текущим отчетом {@link Metrics#report()}.
+ * Панель не перехватывает касания и обновляется раз в секунду до вызова {@link #detach()}.
+ */
+public class MetricsOverlay {
+    private static final long REFRESH_PERIOD_MS = 1000;
+
+    private final TextView textView;
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            textView.setText(Metrics.report());
+            textView.postDelayed(this, REFRESH_PERIOD_MS);
+        }
+    };
+
+    private MetricsOverlay(TextView textView) {
+        this.textView = textView;
+    }
+
+    /**
+     * Добавляет панель на экран активности.
+     * @param activity Активность
+     * @return Панель или null, если сбор метрик выключен
+     */
+    public static MetricsOverlay attach(Activity activity) {
+        if (!Metrics.isEnabled()) {
+            return null;
+        }
+        ViewGroup content = activity.findViewById(android.R.id.content);
+        TextView textView = new TextView(activity);
+        textView.setTypeface(Typeface.MONOSPACE);
+        textView.setTextSize(9);
+        textView.setTextColor(Color.WHITE);
+        textView.setBackgroundColor(Color.argb(160, 0, 0, 0));
+        textView.setPadding(8, 4, 8, 4);
+        textView.setClickable(false);
+        textView.setFocusable(false);
+        content.addView(textView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+                Gravity.BOTTOM | Gravity.END));
+
+        MetricsOverlay overlay = new MetricsOverlay(textView);
+        textView.post(overlay.refresh);
+        return overlay;
+    }
+
+    /**
+     * Останавливает обновление панели.
+     */
+    public void detach() {
+        textView.removeCallbacks(refresh);
+    }
+}
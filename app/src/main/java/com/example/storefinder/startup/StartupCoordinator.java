@@ -0,0 +1,365 @@
+package com.example.storefinder.startup;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.map.MapLayers;
+import com.example.storefinder.memory.MemoryGovernor;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+import com.example.storefinder.models.FloorPlan;
+import com.example.storefinder.models.SectionRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подготовка данных экрана покупателя в фоне с момента запуска процесса.
+ * Открытие базы данных (вместе с возможной миграцией) и загрузка реестра разделов
+ * выполняются параллельно с декодированием схемы, уменьшенной до размера экрана, или с загрузкой
+ * векторной схемы, если она есть: тогда изображение не декодируется.
+ * Экран покупателя получает готовые данные через {@link #whenReady}, а до этого
+ * показывает индикатор загрузки вместо схемы.
+ * <p>
+ * Подготовленные данные отдаются один раз: следующий экран запускает новую загрузку,
+ * поэтому изменения схемы оператором не теряются. Неудачная загрузка тоже не сохраняется:
+ * ожидающие экраны получают ошибку, а следующий запрос данных загружает их заново.
+ */
+public final class StartupCoordinator {
+    /** Схема, которую открывает экран покупателя по умолчанию. */
+    public static final long DEFAULT_MAP_ID = 1;
+
+    private static final LatencyHistogram DB_OPEN_LATENCY = Metrics.histogram("startup.db_open");
+    private static final LatencyHistogram SECTION_REGISTRY_LATENCY = Metrics.histogram("startup.section_registry");
+    private static final LatencyHistogram MAP_DECODE_LATENCY = Metrics.histogram("startup.map_decode");
+    private static final LatencyHistogram PREPARE_LATENCY = Metrics.histogram("startup.prepare");
+
+    // Потоки завершаются после простоя, чтобы не держать их после запуска
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    /**
+     * Получатель подготовленных данных. Вызывается в главном потоке.
+     */
+    public interface Listener {
+        void onReady(CustomerData data);
+
+        /**
+         * Вызывается, если данные схемы не удалось загрузить (например, база повреждена).
+         * @param error Ошибка загрузки
+         */
+        void onFailed(RuntimeException error);
+    }
+
+    /**
+     * Данные экрана покупателя.
+     */
+    public static final class CustomerData {
+        private final SectionRegistry sectionRegistry;
+        private final FloorPlan floorPlan;
+        private final Bitmap mapBitmap;
+        private final float mapScale;
+
+        CustomerData(SectionRegistry sectionRegistry, FloorPlan floorPlan, Bitmap mapBitmap, float mapScale) {
+            this.sectionRegistry = sectionRegistry;
+            this.floorPlan = floorPlan;
+            this.mapBitmap = mapBitmap;
+            this.mapScale = mapScale;
+        }
+
+        public SectionRegistry getSectionRegistry() {
+            return sectionRegistry;
+        }
+
+        /**
+         * @return Векторная схема или null, если у схемы только изображение
+         */
+        public FloorPlan getFloorPlan() {
+            return floorPlan;
+        }
+
+        /**
+         * @return Неизменяемое изображение схемы или null, если схема не загружена или векторная
+         */
+        public Bitmap getMapBitmap() {
+            return mapBitmap;
+        }
+
+        /**
+         * @return Отношение размера декодированного изображения к исходному;
+         *         координаты разделов нужно умножать на это значение
+         */
+        public float getMapScale() {
+            return mapScale;
+        }
+    }
+
+    private static StartupCoordinator instance;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor;
+
+    // Текущая загрузка; доступ под блокировкой this
+    private Load currentLoad;
+
+    private StartupCoordinator(Context context) {
+        this.context = context;
+        executor = new ThreadPoolExecutor(2, 2, THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "startup-prepare");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        // Подготовленная заранее схема не нужна, если ее никто не ждет: экран загрузит ее сам
+        MemoryGovernor.getInstance().register("startup_prepared", MemoryGovernor.PRIORITY_CACHE,
+                new MemoryGovernor.Consumer() {
+            @Override
+            public long getByteSize() {
+                return getPreparedBytes();
+            }
+
+            @Override
+            public void release() {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * @return Размер подготовленного и еще не отданного экрану изображения схемы в байтах
+     */
+    private synchronized long getPreparedBytes() {
+        if (currentLoad == null || currentLoad.data == null || currentLoad.data.mapBitmap == null) {
+            return 0;
+        }
+        return currentLoad.data.mapBitmap.getByteCount();
+    }
+
+    public static synchronized StartupCoordinator getInstance(Context context) {
+        if (instance == null) {
+            instance = new StartupCoordinator(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Начинает подготовку данных схемы, если она еще не начата.
+     * @param mapId Идентификатор схемы
+     */
+    public synchronized void prepare(long mapId) {
+        if (currentLoad == null || currentLoad.mapId != mapId) {
+            currentLoad = startLoad(mapId);
+        }
+    }
+
+    /**
+     * Передает получателю данные схемы, как только они будут готовы.
+     * Если подготовка не начата, она запускается.
+     * @param mapId Идентификатор схемы
+     * @param listener Получатель
+     */
+    public synchronized void whenReady(long mapId, Listener listener) {
+        prepare(mapId);
+        currentLoad.listeners.add(listener);
+        if (currentLoad.data != null || currentLoad.error != null) {
+            deliver(currentLoad);
+        }
+    }
+
+    /**
+     * Отменяет ожидание данных, например при закрытии экрана до окончания загрузки.
+     * @param listener Получатель
+     */
+    public synchronized void removeListener(Listener listener) {
+        if (currentLoad != null) {
+            currentLoad.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Отбрасывает подготовленные заранее данные после изменения схемы.
+     * Загрузка, которую уже ждет экран, не прерывается.
+     */
+    public synchronized void invalidate() {
+        if (currentLoad != null && currentLoad.listeners.isEmpty()) {
+            currentLoad = null;
+        }
+    }
+
+    private Load startLoad(final long mapId) {
+        final Load load = new Load(mapId);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean mapStarted = false;
+                try {
+                    final StoreDbHelper dbHelper = StoreDbHelper.getInstance(context);
+                    long dbStart = Metrics.startTimer();
+                    dbHelper.getReadableDatabase();
+                    DB_OPEN_LATENCY.recordSince(dbStart);
+
+                    // Схема загружается во втором потоке, пока загружаются разделы
+                    final String imagePath = dbHelper.getStoreMapPath(mapId);
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                load.floorPlan = dbHelper.getFloorPlan(mapId);
+                                if (load.floorPlan == null) {
+                                    decodeMap(load, imagePath);
+                                }
+                            } catch (RuntimeException e) {
+                                fail(load, e);
+                            }
+                            complete(load);
+                        }
+                    });
+                    mapStarted = true;
+
+                    long registryStart = Metrics.startTimer();
+                    load.sectionRegistry = dbHelper.getSectionRegistry(mapId);
+                    SECTION_REGISTRY_LATENCY.recordSince(registryStart);
+                } catch (RuntimeException e) {
+                    fail(load, e);
+                    if (!mapStarted) {
+                        // Схема не загружалась: ее часть загрузки тоже завершена
+                        complete(load);
+                    }
+                }
+                complete(load);
+            }
+        });
+        return load;
+    }
+
+    /**
+     * Декодирует схему с прореживанием до размера экрана: полноразмерная схема
+     * на экране все равно уменьшается, а ее декодирование дольше и занимает больше памяти.
+     * Уменьшенная схема помещается в текстуру, поэтому на Android 8+ она декодируется
+     * в аппаратное изображение.
+     */
+    private void decodeMap(Load load, String imagePath) {
+        if (imagePath == null) {
+            return;
+        }
+        long start = Metrics.startTimer();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(imagePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return;
+        }
+
+        DisplayMetrics display = context.getResources().getDisplayMetrics();
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight,
+                display.widthPixels, display.heightPixels);
+        options.inJustDecodeBounds = false;
+        // Схема на экране не меняется, метки рисуются отдельным слоем
+        options.inPreferredConfig = MapLayers.baseConfig(true);
+        Bitmap bitmap = BitmapFactory.decodeFile(imagePath, options);
+        if (bitmap != null) {
+            load.mapBitmap = bitmap;
+            load.mapScale = bitmap.getWidth() / (float) options.outWidth;
+        }
+        MAP_DECODE_LATENCY.recordSince(start);
+    }
+
+    /**
+     * Подбирает наибольший множитель прореживания (степень двойки), при котором
+     * изображение остается не меньше экрана хотя бы по одной стороне.
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth || height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Запоминает первую ошибку загрузки; остальные части загрузки завершаются как обычно.
+     */
+    private synchronized void fail(Load load, RuntimeException error) {
+        if (load.error == null) {
+            load.error = error;
+        }
+    }
+
+    private synchronized void complete(Load load) {
+        if (--load.pendingParts > 0) {
+            return;
+        }
+        if (load.error != null) {
+            if (load.mapBitmap != null) {
+                load.mapBitmap.recycle();
+                load.mapBitmap = null;
+            }
+            if (load == currentLoad) {
+                // Неудачная загрузка не остается текущей, иначе следующие экраны ждали бы ее вечно
+                if (load.listeners.isEmpty()) {
+                    currentLoad = null;
+                } else {
+                    deliver(load);
+                }
+            }
+            return;
+        }
+        load.data = new CustomerData(load.sectionRegistry, load.floorPlan, load.mapBitmap, load.mapScale);
+        load.mapBitmap = null;
+        PREPARE_LATENCY.recordSince(load.startNanos);
+        if (load == currentLoad && !load.listeners.isEmpty()) {
+            deliver(load);
+        }
+    }
+
+    private void deliver(Load load) {
+        final CustomerData data = load.data;
+        final RuntimeException error = load.error;
+        for (final Listener listener : load.listeners) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (error != null) {
+                        listener.onFailed(error);
+                    } else {
+                        listener.onReady(data);
+                    }
+                }
+            });
+        }
+        load.listeners.clear();
+        // Данные отданы экрану; следующий экран загрузит свежие
+        currentLoad = null;
+    }
+
+    private static final class Load {
+        final long mapId;
+        final long startNanos = Metrics.startTimer();
+        final List<Listener> listeners = new ArrayList<>();
+        int pendingParts = 2;
+        SectionRegistry sectionRegistry;
+        FloorPlan floorPlan;
+        Bitmap mapBitmap;
+        float mapScale = 1f;
+        CustomerData data;
+        RuntimeException error;
+
+        Load(long mapId) {
+            this.mapId = mapId;
+        }
+    }
+}
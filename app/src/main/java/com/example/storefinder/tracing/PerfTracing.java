@@ -0,0 +1,68 @@
+package com.example.storefinder.tracing;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Trace;
+
+import java.io.File;
+
+/**
+ * Журнал производительности на устройстве: участки {@link Tracer} пишутся
+ * в trace.log с ротацией (не больше {@link #MAX_FILES} файлов по {@link #MAX_FILE_BYTES})
+ * и дублируются в системную трассировку для просмотра в Systrace/Perfetto.
+ * Журнал включен и в релизных сборках: по нему подтверждаются сроки отклика в магазинах.
+ * <p>
+ * Журнал хранится в files/trace внешнего каталога приложения, откуда его можно забрать
+ * без root: adb pull /sdcard/Android/data/com.example.storefinder/files/trace
+ */
+public final class PerfTracing {
+    private static final String DIRECTORY_NAME = "trace";
+    private static final long MAX_FILE_BYTES = 512 * 1024;
+    private static final int MAX_FILES = 4;
+
+    private static TraceLog traceLog;
+
+    private PerfTracing() {
+    }
+
+    /**
+     * Включает трассировку. Повторные вызовы ничего не делают.
+     * @param context Контекст
+     */
+    public static synchronized void install(Context context) {
+        if (traceLog != null) {
+            return;
+        }
+        traceLog = new TraceLog(logDirectory(context.getApplicationContext()), MAX_FILE_BYTES, MAX_FILES);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Tracer.setSystemTrace(new AndroidSystemTrace());
+        }
+        Tracer.setSink(traceLog);
+    }
+
+    private static File logDirectory(Context context) {
+        // До Android 4.4 запись во внешний каталог требует разрешения
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            File external = context.getExternalFilesDir(DIRECTORY_NAME);
+            if (external != null) {
+                return external;
+            }
+        }
+        return new File(context.getFilesDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * Системная трассировка через android.os.Trace (Android 4.3 и выше).
+     */
+    private static final class AndroidSystemTrace implements Tracer.SystemTrace {
+        @Override
+        public void beginSection(String name) {
+            Trace.beginSection(name);
+        }
+
+        @Override
+        public void endSection() {
+            Trace.endSection();
+        }
+    }
+}
@@ -4,6 +4,9 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
 
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -18,6 +21,10 @@ import java.util.UUID;
  */
 public class FileUtils {
 
+    private static final LatencyHistogram SAVE_IMAGE_LATENCY = Metrics.histogram("file.save_image");
+    private static final LatencyHistogram READ_TEXT_LATENCY = Metrics.histogram("file.read_text");
+    private static final LatencyHistogram COPY_LATENCY = Metrics.histogram("file.copy");
+
     /**
      * Сохраняет изображение во внутреннюю память приложения.
      * @param context Контекст приложения
@@ -26,12 +33,14 @@ public class FileUtils {
      * @throws IOException Если возникла ошибка при записи файла
      */
     public static String saveImageToInternalStorage(Context context, Bitmap bitmap) throws IOException {
+        long start = Metrics.startTimer();
         String filename = "store_map_" + UUID.randomUUID().toString() + ".png";
         File file = new File(context.getFilesDir(), filename);
 
         try (FileOutputStream out = new FileOutputStream(file)) {
             bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
         }
+        SAVE_IMAGE_LATENCY.recordSince(start);
 
         return file.getAbsolutePath();
     }
@@ -44,6 +53,7 @@ public class FileUtils {
      * @throws IOException Если возникла ошибка при чтении файла
      */
     public static String readTextFromUri(Context context, Uri uri) throws IOException {
+        long start = Metrics.startTimer();
         StringBuilder stringBuilder = new StringBuilder();
 
         try (InputStream inputStream = context.getContentResolver().openInputStream(uri);
@@ -54,6 +64,7 @@ public class FileUtils {
                 stringBuilder.append('\n');
             }
         }
+        READ_TEXT_LATENCY.recordSince(start);
 
         return stringBuilder.toString();
     }
@@ -65,6 +76,7 @@ public class FileUtils {
      * @throws IOException Если возникла ошибка при копировании
      */
     public static void copyFile(File source, File destination) throws IOException {
+        long start = Metrics.startTimer();
         try (InputStream in = new java.io.FileInputStream(source);
              OutputStream out = new FileOutputStream(destination)) {
 
@@ -74,5 +86,6 @@ public class FileUtils {
                 out.write(buffer, 0, length);
             }
         }
+        COPY_LATENCY.recordSince(start);
     }
 }
\ No newline at end of file
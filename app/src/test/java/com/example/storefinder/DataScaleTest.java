@@ -0,0 +1,179 @@
+package com.example.storefinder;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.example.storefinder.database.StoreDbHelper;
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.importer.ImportResult;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.shopping.ShoppingListResolver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Регрессионные тесты производительности на каталогах разного размера:
+ * импорт CSV, поиск и сопоставление списка покупок должны укладываться в бюджеты
+ * по времени и по объему выделенной памяти. Выполняются на JVM (Robolectric, SQLite).
+ * Каталог на 1 млн товаров проверяется только с -Pstorefinder.scaleTests=full.
+ * Бюджеты - самые медленные значения из нескольких прогонов этого теста с запасом в два раза
+ * по времени и в полтора раза по памяти (объем выделенной памяти от прогона к прогону меняется мало).
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DataScaleTest {
+
+    private static final int SECTION_COUNT = 200;
+    private static final int QUERY_COUNT = 40;
+    private static final int LIST_LINES = 50;
+    private static final int FULL_SCALE = 1000000;
+
+    @ParameterizedRobolectricTestRunner.Parameters(name = "{0} products")
+    public static List<Object[]> scales() {
+        // Размер каталога, бюджеты: импорт (мс), самый медленный запрос (мс),
+        // память на запрос (байт), список покупок (мс).
+        // Худший из прогонов (8 прогонов для 10 и 100 тыс., 2 для 1 млн):
+        // 10 тыс. - 2,1 с, 196 мс, 13,8 МиБ, 1,5 с; 100 тыс. - 6,7 с, 1,0 с, 60 МиБ, 14,9 с;
+        // 1 млн - 44,7 с, 3,7 с, 91 МиБ, 87 с
+        return Arrays.asList(new Object[][]{
+                {10000, 4200L, 400L, 21L << 20, 3100L},
+                {100000, 13500L, 2100L, 90L << 20, 30000L},
+                {FULL_SCALE, 90000L, 7500L, 140L << 20, 175000L},
+        });
+    }
+
+    private final int productCount;
+    private final long importBudgetMs;
+    private final long searchBudgetMs;
+    private final long searchAllocationBudget;
+    private final long listBudgetMs;
+
+    private StoreDbHelper dbHelper;
+    private CatalogGenerator.Catalog catalog;
+    private long mapId;
+
+    public DataScaleTest(int productCount, long importBudgetMs, long searchBudgetMs,
+                         long searchAllocationBudget, long listBudgetMs) {
+        this.productCount = productCount;
+        this.importBudgetMs = importBudgetMs;
+        this.searchBudgetMs = searchBudgetMs;
+        this.searchAllocationBudget = searchAllocationBudget;
+        this.listBudgetMs = listBudgetMs;
+    }
+
+    @Before
+    public void createDb() {
+        assumeTrue("1M-product scale runs only with -Pstorefinder.scaleTests=full",
+                productCount < FULL_SCALE || "full".equals(System.getProperty("storefinder.scaleTests")));
+
+        Context context = ApplicationProvider.getApplicationContext();
+        dbHelper = new StoreDbHelper(context, null);
+        catalog = new CatalogGenerator(42).generate(SECTION_COUNT, productCount);
+
+        mapId = dbHelper.saveStoreMap("Scale Map", "/scale/map.png");
+        for (StoreSection section : catalog.getSections()) {
+            // Идентификаторы разделов в пустой базе совпадают со сгенерированными
+            assertEquals(section.getId(), dbHelper.addSection(section, mapId));
+        }
+    }
+
+    @After
+    public void closeDb() {
+        if (dbHelper != null) {
+            dbHelper.close();
+        }
+    }
+
+    /**
+     * Импорт, поиск и список покупок проверяются на одной базе, чтобы не импортировать каталог трижды.
+     */
+    @Test
+    public void staysWithinBudgets() {
+        checkImport();
+        checkSearch();
+        checkShoppingList();
+    }
+
+    private void checkImport() {
+        String csv = catalog.toProductCsv();
+
+        ImportResult result = dbHelper.importProductsFromCSV(csv, mapId, false);
+        long elapsedMs = result.getElapsedMillis();
+
+        // Повторяющиеся названия каталога обновляют уже добавленный товар
+        assertEquals(productCount + " products: " + result, productCount, result.getImportedCount());
+        assertEquals(productCount + " products: " + result, 0, result.getSkipped());
+        assertTrue(productCount + " products: import took " + elapsedMs + " ms, budget " + importBudgetMs +
+                " (" + result + ")", elapsedMs <= importBudgetMs);
+    }
+
+    private void checkSearch() {
+        long slowestMs = 0;
+        long maxAllocated = 0;
+        int nonEmpty = 0;
+
+        // Каждый запрос выполняется впервые, поэтому кэш результатов не влияет на замер
+        for (String query : catalog.sampleQueries(QUERY_COUNT)) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            List<Product> page = dbHelper.searchProducts(query, mapId, 0, StoreDbHelper.DEFAULT_SEARCH_LIMIT);
+            long elapsedMs = (System.nanoTime() - start) / 1000000;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            slowestMs = Math.max(slowestMs, elapsedMs);
+            maxAllocated = Math.max(maxAllocated, allocated);
+            if (!page.isEmpty()) nonEmpty++;
+            assertTrue(page.size() <= StoreDbHelper.DEFAULT_SEARCH_LIMIT);
+        }
+
+        assertTrue(productCount + " products: only " + nonEmpty + " of " + QUERY_COUNT +
+                " sample queries found products", nonEmpty >= QUERY_COUNT / 2);
+        assertTrue(productCount + " products: slowest search took " + slowestMs + " ms, budget " +
+                searchBudgetMs, slowestMs <= searchBudgetMs);
+        assertTrue(productCount + " products: search allocated " + (maxAllocated >> 10) + " KiB, budget " +
+                (searchAllocationBudget >> 10) + " KiB", maxAllocated <= searchAllocationBudget);
+    }
+
+    private void checkShoppingList() {
+        ShoppingListResolver resolver = new ShoppingListResolver(new ShoppingListResolver.ProductLookup() {
+            @Override
+            public Product findBest(String name) {
+                List<Product> matches = dbHelper.searchProducts(name, mapId, 0, 1);
+                return matches.isEmpty() ? null : matches.get(0);
+            }
+        });
+        String list = catalog.shoppingList(LIST_LINES, 0.1);
+
+        long start = System.nanoTime();
+        ShoppingListResolver.Result result = resolver.resolve(list);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        assertFalse(productCount + " products: nothing from the shopping list was found",
+                result.getFound().isEmpty());
+        assertTrue(productCount + " products: shopping list of " + LIST_LINES + " lines took " + elapsedMs +
+                " ms, budget " + listBudgetMs, elapsedMs <= listBudgetMs);
+    }
+
+    /**
+     * Объем памяти, выделенной текущим потоком (HotSpot).
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
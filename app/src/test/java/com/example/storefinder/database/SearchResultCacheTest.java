@@ -0,0 +1,50 @@
+package com.example.storefinder.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты кэша результатов поиска: результат, обогнанный очисткой схемы, не сохраняется.
+ */
+public class SearchResultCacheTest {
+
+    /**
+     * Тест на очистку схемы между ранжированием и сохранением результата.
+     */
+    @Test
+    public void testPutAfterInvalidationIsDiscarded() {
+        SearchResultCache cache = new SearchResultCache(16);
+        long generation = cache.generation(1);
+        // Запись в схему завершилась, пока запрос ранжировался
+        cache.invalidateMap(1);
+        assertFalse(cache.put(1, "молоко", entry(), generation));
+        assertNull(cache.peek(1, "молоко"));
+        assertEquals(1, cache.getStats().discarded);
+
+        assertTrue(cache.put(1, "молоко", entry(), cache.generation(1)));
+        assertNotNull(cache.peek(1, "молоко"));
+    }
+
+    /**
+     * Тест на поколения: очистка другой схемы не мешает сохранению,
+     * а запросы по всем схемам устаревают при очистке любой схемы и всего кэша.
+     */
+    @Test
+    public void testGenerationsPerMap() {
+        SearchResultCache cache = new SearchResultCache(16);
+        long first = cache.generation(1);
+        long all = cache.generation(StoreDbHelper.ALL_MAPS);
+        cache.invalidateMap(2);
+        assertTrue(cache.put(1, "хлеб", entry(), first));
+        assertFalse(cache.put(StoreDbHelper.ALL_MAPS, "хлеб", entry(), all));
+
+        first = cache.generation(1);
+        cache.invalidateAll();
+        assertFalse(cache.put(1, "хлеб", entry(), first));
+    }
+
+    private static SearchResultCache.Entry entry() {
+        return new SearchResultCache.Entry(SearchPage.EMPTY, 10);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.models.SectionRegistry;
+import com.example.storefinder.models.StoreSection;
+import com.example.storefinder.search.InMemoryProductIndex;
+
+import java.util.List;
+
+/**
+ * Каталоги для бенчмарков на основе {@link CatalogGenerator}.
+ * Одно и то же зерно во всех бенчмарках, поэтому результаты разных запусков сопоставимы.
+ */
+final class CatalogFixture {
+
+    static final long SEED = 42;
+    static final int SECTION_COUNT = 200;
+    static final int QUERY_COUNT = 64;
+
+    private CatalogFixture() {
+    }
+
+    static CatalogGenerator.Catalog catalog(int productCount) {
+        return new CatalogGenerator(SEED).generate(SECTION_COUNT, productCount);
+    }
+
+    static InMemoryProductIndex index(List<Product> products) {
+        InMemoryProductIndex index = new InMemoryProductIndex();
+        for (Product product : products) {
+            index.add(product);
+        }
+        index.build();
+        return index;
+    }
+
+    /**
+     * Разделы схемы, расставленные по сетке.
+     * @param count Количество разделов
+     * @return Реестр разделов
+     */
+    static SectionRegistry sections(int count) {
+        List<StoreSection> sections = new CatalogGenerator(SEED).generate(count, 0).getSections();
+        SectionRegistry registry = new SectionRegistry(1, count);
+        for (StoreSection section : sections) {
+            registry.put(section.getId(), section.getName(), section.getX(), section.getY());
+        }
+        return registry;
+    }
+}
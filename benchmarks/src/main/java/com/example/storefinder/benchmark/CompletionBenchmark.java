@@ -0,0 +1,75 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.search.CompletionTrie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подсказки поля поиска: 10 лучших дополнений введенного начала названия
+ * (от одного до четырех символов, как при наборе) и перестроение словаря.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class CompletionBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private List<Product> products;
+    private CompletionTrie trie;
+    private String[] prefixes;
+    private int prefixIndex;
+
+    @Setup
+    public void buildTrie() {
+        CatalogGenerator.Catalog catalog = CatalogFixture.catalog(catalogSize);
+        products = catalog.getProducts();
+        trie = build();
+        String[] queries = catalog.sampleQueries(CatalogFixture.QUERY_COUNT);
+        prefixes = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            prefixes[i] = queries[i].substring(0, Math.min(queries[i].length(), 1 + i % 4));
+        }
+    }
+
+    private CompletionTrie build() {
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        for (Product product : products) {
+            builder.add(product.getName(), product.getPopularity());
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public void completeTop10(Blackhole blackhole) {
+        String prefix = prefixes[prefixIndex];
+        prefixIndex = (prefixIndex + 1) % prefixes.length;
+        blackhole.consume(trie.complete(prefix, 10));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public CompletionTrie rebuild() {
+        return build();
+    }
+}
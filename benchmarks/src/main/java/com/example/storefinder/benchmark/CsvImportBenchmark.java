@@ -0,0 +1,68 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.importer.CsvImportParser;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.search.InMemoryProductIndex;
+import com.example.storefinder.search.ProductMatcher;
+import com.example.storefinder.search.RussianNormalizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Процессорная часть импорта CSV без базы данных: разбор строк,
+ * нормализация названий и построение индекса слов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class CsvImportBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private String csv;
+
+    @Setup
+    public void generateCsv() {
+        csv = CatalogFixture.catalog(catalogSize).toProductCsv();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        blackhole.consume(CsvImportParser.parseProducts(csv));
+    }
+
+    @Benchmark
+    public void parseAndNormalize(Blackhole blackhole) {
+        for (CsvImportParser.ProductRow row : CsvImportParser.parseProducts(csv)) {
+            blackhole.consume(ProductMatcher.joinTerms(RussianNormalizer.tokens(row.getProductName())));
+        }
+    }
+
+    @Benchmark
+    public void parseAndIndex(Blackhole blackhole) {
+        InMemoryProductIndex index = new InMemoryProductIndex();
+        long id = 1;
+        for (CsvImportParser.ProductRow row : CsvImportParser.parseProducts(csv)) {
+            index.add(new Product(id++, row.getProductName(), 1));
+        }
+        index.build();
+        blackhole.consume(index);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.importer.FloorPlanParser;
+import com.example.storefinder.importer.SectionLayoutParser;
+import com.example.storefinder.models.FloorPlan;
+import com.example.storefinder.models.SectionRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Загрузка схемы магазина 4000 x 3000: декодирование PNG против разбора векторной схемы
+ * с теми же стеллажами и построения индекса контуров разделов.
+ * Изображение после декодирования занимает 48 МБ (ARGB), векторная схема — десятки килобайт;
+ * распределение памяти видно с профилировщиком -prof gc.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloorPlanBenchmark {
+
+    private static final int WIDTH = 4000;
+    private static final int HEIGHT = 3000;
+    private static final int SHELF_COLUMNS = 20;
+    private static final int SHELF_ROWS = 25;
+
+    private byte[] png;
+    private String layout;
+
+    @Setup
+    public void prepare() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, WIDTH, HEIGHT);
+
+        StringBuilder shelves = new StringBuilder();
+        StringBuilder sections = new StringBuilder();
+        for (int row = 0; row < SHELF_ROWS; row++) {
+            for (int column = 0; column < SHELF_COLUMNS; column++) {
+                int left = 100 + column * 190;
+                int top = 100 + row * 110;
+                String polygon = "[[" + left + ", " + top + "], [" + (left + 150) + ", " + top + "], ["
+                        + (left + 150) + ", " + (top + 60) + "], [" + left + ", " + (top + 60) + "]]";
+                if (shelves.length() > 0) {
+                    shelves.append(", ");
+                    sections.append(", ");
+                }
+                shelves.append(polygon);
+                sections.append("{\"name\": \"Раздел ").append(row * SHELF_COLUMNS + column)
+                        .append("\", \"polygon\": ").append(polygon).append('}');
+
+                graphics.setColor(Color.LIGHT_GRAY);
+                graphics.fillRect(left, top, 150, 60);
+                graphics.setColor(Color.GRAY);
+                graphics.drawRect(left, top, 150, 60);
+                graphics.setColor(Color.BLACK);
+                graphics.drawString("Раздел " + (row * SHELF_COLUMNS + column), left + 10, top + 35);
+            }
+        }
+        graphics.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        png = out.toByteArray();
+        layout = "{\"width\": " + WIDTH + ", \"height\": " + HEIGHT + ","
+                + " \"walls\": [[[0, 0], [" + WIDTH + ", 0], [" + WIDTH + ", " + HEIGHT + "], [0, " + HEIGHT
+                + "], [0, 0]]], \"shelves\": [" + shelves + "], \"sections\": [" + sections + "]}";
+    }
+
+    @Benchmark
+    public BufferedImage decodePng() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public int loadVectorPlan() throws IOException {
+        FloorPlan plan = FloorPlanParser.parse(layout);
+        List<SectionLayoutParser.SectionRow> rows = SectionLayoutParser.parse(layout);
+        SectionRegistry registry = new SectionRegistry(1, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            SectionLayoutParser.SectionRow row = rows.get(i);
+            registry.put(i + 1, row.getName(), row.getX(), row.getY(), row.getPolygon());
+        }
+        // Первый поиск строит индекс контуров
+        return plan.getShelves().size() + registry.findContaining(WIDTH / 2f, HEIGHT / 2f);
+    }
+}
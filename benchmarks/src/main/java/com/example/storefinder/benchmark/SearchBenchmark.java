@@ -0,0 +1,67 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.search.InMemoryProductIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск товаров с той же семантикой, что и StoreDbHelper.searchProducts:
+ * первая страница результатов и подсчет совпадений.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class SearchBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    private InMemoryProductIndex index;
+    private String[] queries;
+    private int queryIndex;
+
+    @Setup
+    public void buildIndex() {
+        CatalogGenerator.Catalog catalog = CatalogFixture.catalog(catalogSize);
+        index = CatalogFixture.index(catalog.getProducts());
+        queries = catalog.sampleQueries(CatalogFixture.QUERY_COUNT);
+    }
+
+    private String nextQuery() {
+        String query = queries[queryIndex];
+        queryIndex = (queryIndex + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public void searchFirstPage(Blackhole blackhole) {
+        blackhole.consume(index.search(nextQuery(), 0, 50));
+    }
+
+    @Benchmark
+    public void searchDeepPage(Blackhole blackhole) {
+        blackhole.consume(index.search(nextQuery(), 150, 50));
+    }
+
+    @Benchmark
+    public void countMatches(Blackhole blackhole) {
+        blackhole.consume(index.count(nextQuery()));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.models.SectionRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Поиск раздела по идентификатору (выделение раздела товара)
+ * и по точке касания (нажатие оператора на схему).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SectionLookupBenchmark {
+
+    private static final int PROBES = 1024;
+
+    @Param({"100", "1000", "10000"})
+    public int sectionCount;
+
+    private SectionRegistry registry;
+    private long[] probeIds;
+    private float[] probeX;
+    private float[] probeY;
+    private int probe;
+
+    @Setup
+    public void prepare() {
+        registry = CatalogFixture.sections(sectionCount);
+        Random random = new Random(3);
+        probeIds = new long[PROBES];
+        probeX = new float[PROBES];
+        probeY = new float[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probeIds[i] = 1 + random.nextInt(sectionCount);
+            probeX[i] = random.nextFloat() * 2000f;
+            probeY[i] = random.nextFloat() * 2000f;
+        }
+    }
+
+    @Benchmark
+    public int indexOfId() {
+        probe = (probe + 1) & (PROBES - 1);
+        return registry.indexOf(probeIds[probe]);
+    }
+
+    @Benchmark
+    public int hitTestPoint() {
+        probe = (probe + 1) & (PROBES - 1);
+        return registry.hitTest(probeX[probe], probeY[probe], 30);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.storefinder.benchmark;
+
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.models.Product;
+import com.example.storefinder.search.InMemoryProductIndex;
+import com.example.storefinder.shopping.ShoppingListResolver;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сопоставление списка покупок из буфера обмена с каталогом
+ * (как в CustomerActivity: лучший результат поиска для каждой строки).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ShoppingListBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int catalogSize;
+
+    @Param({"10", "50"})
+    public int listLines;
+
+    private ShoppingListResolver resolver;
+    private String shoppingList;
+
+    @Setup
+    public void prepare() {
+        CatalogGenerator.Catalog catalog = CatalogFixture.catalog(catalogSize);
+        final InMemoryProductIndex index = CatalogFixture.index(catalog.getProducts());
+        resolver = new ShoppingListResolver(new ShoppingListResolver.ProductLookup() {
+            @Override
+            public Product findBest(String name) {
+                List<Product> matches = index.search(name, 0, 1);
+                return matches.isEmpty() ? null : matches.get(0);
+            }
+        });
+        shoppingList = catalog.shoppingList(listLines, 0.1);
+    }
+
+    @Benchmark
+    public void resolve(Blackhole blackhole) {
+        blackhole.consume(resolver.resolve(shoppingList));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.storefinder.analytics;
+
+import java.util.List;
+
+/**
+ * Хранилище журнала поиска.
+ * Вызывается только потоком записи {@link SearchAnalytics}, поэтому может обращаться к диску.
+ */
+public interface AnalyticsStore {
+    /**
+     * Дописывает пачку событий и прибавляет их к сводке запросов ({@link QueryStats#aggregate(List)}).
+     * Пачка должна записываться целиком (например, одной транзакцией).
+     * @param events События в порядке поступления
+     */
+    void append(List<SearchEvent> events);
+}
@@ -0,0 +1,80 @@
+package com.example.storefinder.analytics;
+
+import com.example.storefinder.search.RussianNormalizer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сводка по одному поисковому запросу: сколько раз его искали, сколько раз
+ * ничего не нашли и сколько раз выбрали товар из результатов.
+ * Запросы сравниваются в нормализованном виде ({@link RussianNormalizer#normalize(String)}),
+ * поэтому "Молоко" и "молока " учитываются вместе.
+ */
+public final class QueryStats {
+    private final String query;
+    private int searches;
+    private int zeroHits;
+    private int selections;
+
+    public QueryStats(String query, int searches, int zeroHits, int selections) {
+        this.query = query;
+        this.searches = searches;
+        this.zeroHits = zeroHits;
+        this.selections = selections;
+    }
+
+    /**
+     * Сворачивает пачку событий в приращения сводки по запросам. Хранилище прибавляет
+     * их к сохраненным значениям, не перечитывая журнал событий.
+     * @param events События в порядке поступления
+     * @return Приращения по нормализованным запросам в порядке первого появления
+     */
+    public static Map<String, QueryStats> aggregate(List<SearchEvent> events) {
+        Map<String, QueryStats> deltas = new LinkedHashMap<>();
+        for (SearchEvent event : events) {
+            if (event.getQuery() == null) continue;
+            String key = RussianNormalizer.normalize(event.getQuery());
+            if (key.isEmpty()) continue;
+            QueryStats stats = deltas.get(key);
+            if (stats == null) {
+                stats = new QueryStats(key, 0, 0, 0);
+                deltas.put(key, stats);
+            }
+            if (event.getType() == SearchEvent.TYPE_SELECT) {
+                stats.selections++;
+            } else {
+                stats.searches++;
+                if (event.isZeroResult()) {
+                    stats.zeroHits++;
+                }
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * @return Нормализованный запрос
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    public int getSearches() {
+        return searches;
+    }
+
+    public int getZeroHits() {
+        return zeroHits;
+    }
+
+    public int getSelections() {
+        return selections;
+    }
+
+    @Override
+    public String toString() {
+        return query + ": " + searches + " (без результатов " + zeroHits + ", выбрано " + selections + ")";
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.storefinder.analytics;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал поисковых запросов и выбранных товаров.
+ * События складываются в кольцевой буфер фиксированного размера и записываются
+ * отдельным потоком пачками не чаще одного раза в заданный интервал, поэтому
+ * поиск не ждет диска и не платит за транзакцию на каждое событие.
+ * При переполнении буфера новые события отбрасываются (вызывающий поток никогда
+ * не блокируется) и учитываются в {@link #getDroppedCount()}.
+ * <p>
+ * При наборе текста поиск выполняется на каждую клавишу; чтобы в журнал не попадали
+ * "мо", "мол", "моло", запрос, продолжающий предыдущий, заменяет его, если между ними
+ * прошло меньше {@link #TYPING_PAUSE_MS}. Последний запрос уходит в буфер при следующем
+ * запросе, выборе товара или вызове {@link #flush()}.
+ */
+public class SearchAnalytics implements Closeable {
+    public static final long TYPING_PAUSE_MS = 2000;
+
+    private static final int MAX_BATCH = 256;
+
+    private static final LatencyHistogram FLUSH_LATENCY = Metrics.histogram("analytics.flush");
+    private static final Counter DROPPED_EVENTS = Metrics.counter("analytics.dropped");
+
+    private final AnalyticsStore store;
+    private final long flushIntervalMs;
+    private final BlockingQueue<SearchEvent> queue;
+    private final int wakeThreshold;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Object signal = new Object();
+    private final Thread writerThread;
+
+    // Защищены signal
+    private boolean flushRequested;
+    private boolean closed;
+
+    // Защищены this: запрос, который еще может быть продолжен
+    private SearchEvent pendingSearch;
+    private String lastQuery;
+
+    /**
+     * Создает журнал и запускает поток записи.
+     * @param store Хранилище событий
+     * @param capacity Размер буфера событий
+     * @param flushIntervalMs Интервал, за который накапливается пачка событий
+     */
+    public SearchAnalytics(AnalyticsStore store, int capacity, long flushIntervalMs) {
+        this.store = store;
+        this.flushIntervalMs = flushIntervalMs;
+        queue = new ArrayBlockingQueue<>(capacity);
+        // Заполненный на три четверти буфер записывается, не дожидаясь интервала
+        wakeThreshold = Math.max(1, capacity / 4);
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "search-analytics");
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    /**
+     * Учитывает выполненный поиск. Может вызываться из любого потока.
+     * @param query Запрос
+     * @param resultCount Количество найденных товаров
+     * @param sectionId Раздел первого найденного товара или {@link SearchEvent#NO_SECTION}
+     */
+    public void recordSearch(String query, int resultCount, long sectionId) {
+        recordSearch(query, resultCount, sectionId, System.currentTimeMillis());
+    }
+
+    synchronized void recordSearch(String query, int resultCount, long sectionId, long timeMillis) {
+        query = query.trim();
+        if (query.isEmpty()) return;
+        SearchEvent pending = pendingSearch;
+        if (pending != null && !(continues(pending.getQuery(), query)
+                && timeMillis - pending.getTimeMillis() < TYPING_PAUSE_MS)) {
+            enqueue(pending);
+        }
+        pendingSearch = SearchEvent.search(timeMillis, query, resultCount, sectionId);
+        lastQuery = query;
+    }
+
+    /**
+     * Учитывает выбор товара из результатов последнего запроса.
+     * @param productId Идентификатор товара
+     * @param sectionId Раздел товара
+     */
+    public void recordSelection(long productId, long sectionId) {
+        recordSelection(productId, sectionId, System.currentTimeMillis());
+    }
+
+    synchronized void recordSelection(long productId, long sectionId, long timeMillis) {
+        commitPendingSearch();
+        enqueue(SearchEvent.select(timeMillis, lastQuery, productId, sectionId));
+    }
+
+    /**
+     * Отправляет последний запрос в буфер и просит поток записи сохранить буфер,
+     * не дожидаясь интервала. Вызывается, например, при уходе с экрана поиска.
+     */
+    public void flush() {
+        synchronized (this) {
+            commitPendingSearch();
+        }
+        wakeWriter();
+    }
+
+    /**
+     * @return Количество событий, потерянных из-за переполнения буфера или ошибок записи
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Записывает оставшиеся события и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            commitPendingSearch();
+        }
+        synchronized (signal) {
+            closed = true;
+            signal.notifyAll();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void commitPendingSearch() {
+        if (pendingSearch != null) {
+            enqueue(pendingSearch);
+            pendingSearch = null;
+        }
+    }
+
+    private void enqueue(SearchEvent event) {
+        if (!queue.offer(event)) {
+            dropped.incrementAndGet();
+            DROPPED_EVENTS.increment();
+            return;
+        }
+        if (queue.remainingCapacity() < wakeThreshold) {
+            wakeWriter();
+        }
+    }
+
+    private void wakeWriter() {
+        synchronized (signal) {
+            flushRequested = true;
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * @return true, если запрос получен из предыдущего дописыванием или стиранием символов
+     */
+    private static boolean continues(String previous, String query) {
+        return query.regionMatches(true, 0, previous, 0, Math.min(previous.length(), query.length()));
+    }
+
+    private void writeLoop() {
+        List<SearchEvent> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            boolean closing;
+            synchronized (signal) {
+                if (!flushRequested && !closed) {
+                    try {
+                        signal.wait(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                flushRequested = false;
+                closing = closed;
+            }
+            while (queue.drainTo(batch, MAX_BATCH) > 0) {
+                write(batch);
+                batch.clear();
+            }
+            if (closing) break;
+        }
+    }
+
+    private void write(List<SearchEvent> batch) {
+        long start = Metrics.startTimer();
+        try {
+            store.append(batch);
+        } catch (RuntimeException e) {
+            // Журнал поиска не должен влиять на работу приложения: пачка теряется
+            dropped.addAndGet(batch.size());
+            DROPPED_EVENTS.add(batch.size());
+        }
+        FLUSH_LATENCY.recordSince(start);
+    }
+}
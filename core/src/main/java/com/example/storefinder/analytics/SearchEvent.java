@@ -0,0 +1,104 @@
+package com.example.storefinder.analytics;
+
+/**
+ * Событие журнала поиска: выполненный запрос (с количеством найденных товаров)
+ * или выбор товара из результатов запроса. Событие помнит раздел магазина, к которому
+ * оно относится: раздел выбранного товара или раздел первого найденного товара.
+ */
+public final class SearchEvent {
+    public static final int TYPE_SEARCH = 0;
+    public static final int TYPE_SELECT = 1;
+    public static final long NO_SECTION = 0;
+
+    private final int type;
+    private final long timeMillis;
+    private final String query;
+    private final int resultCount;
+    private final long productId;
+    private final long sectionId;
+
+    private SearchEvent(int type, long timeMillis, String query, int resultCount, long productId, long sectionId) {
+        this.type = type;
+        this.timeMillis = timeMillis;
+        this.query = query;
+        this.resultCount = resultCount;
+        this.productId = productId;
+        this.sectionId = sectionId;
+    }
+
+    /**
+     * @param timeMillis Время запроса (мс от эпохи)
+     * @param query Запрос в том виде, в котором его ввел покупатель
+     * @param resultCount Количество найденных товаров
+     * @return Событие запроса
+     */
+    public static SearchEvent search(long timeMillis, String query, int resultCount) {
+        return search(timeMillis, query, resultCount, NO_SECTION);
+    }
+
+    /**
+     * @param timeMillis Время запроса (мс от эпохи)
+     * @param query Запрос в том виде, в котором его ввел покупатель
+     * @param resultCount Количество найденных товаров
+     * @param sectionId Раздел первого найденного товара или {@link #NO_SECTION}
+     * @return Событие запроса
+     */
+    public static SearchEvent search(long timeMillis, String query, int resultCount, long sectionId) {
+        return new SearchEvent(TYPE_SEARCH, timeMillis, query, resultCount, 0, sectionId);
+    }
+
+    /**
+     * @param timeMillis Время выбора (мс от эпохи)
+     * @param query Запрос, по которому найден товар, или null
+     * @param productId Идентификатор выбранного товара
+     * @return Событие выбора товара
+     */
+    public static SearchEvent select(long timeMillis, String query, long productId) {
+        return select(timeMillis, query, productId, NO_SECTION);
+    }
+
+    /**
+     * @param timeMillis Время выбора (мс от эпохи)
+     * @param query Запрос, по которому найден товар, или null
+     * @param productId Идентификатор выбранного товара
+     * @param sectionId Раздел выбранного товара или {@link #NO_SECTION}
+     * @return Событие выбора товара
+     */
+    public static SearchEvent select(long timeMillis, String query, long productId, long sectionId) {
+        return new SearchEvent(TYPE_SELECT, timeMillis, query, 0, productId, sectionId);
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int getResultCount() {
+        return resultCount;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    /**
+     * @return Раздел, к которому относится событие, или {@link #NO_SECTION}
+     */
+    public long getSectionId() {
+        return sectionId;
+    }
+
+    /**
+     * @return true для запроса, по которому ничего не найдено
+     */
+    public boolean isZeroResult() {
+        return type == TYPE_SEARCH && resultCount == 0;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.storefinder.analytics;
+
+import com.example.storefinder.utils.LongIntHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Спрос на разделы магазина: сумма весов поисков и выборов товаров, затухающая со временем
+ * с периодом полураспада {@link #HALF_LIFE_MS}.
+ * <p>
+ * Все значения приведены к одному моменту {@link #getReferenceTime()}: событие с весом w
+ * в момент t дает w * 2^((t - reference) / H). Поэтому новое событие просто прибавляется
+ * к счетчику, а старые события не нужно хранить и пересчитывать.
+ */
+public class SectionDemand {
+    public static final long HALF_LIFE_MS = 7L * 24 * 60 * 60 * 1000;
+    // Поиск, первым результатом которого оказался товар раздела, весит меньше выбора товара
+    public static final double SEARCH_WEIGHT = 0.5;
+    public static final double SELECT_WEIGHT = 1;
+
+    private final long referenceTime;
+    private final LongIntHashMap indexById;
+    private long[] sectionIds;
+    private double[] scores;
+    private int size;
+
+    /**
+     * @param referenceTime Момент, к которому приводятся значения (мс от эпохи)
+     * @param expectedSize Ожидаемое количество разделов
+     */
+    public SectionDemand(long referenceTime, int expectedSize) {
+        int capacity = Math.max(8, expectedSize);
+        this.referenceTime = referenceTime;
+        indexById = new LongIntHashMap(capacity);
+        sectionIds = new long[capacity];
+        scores = new double[capacity];
+    }
+
+    /**
+     * Собирает прирост спроса по пачке событий журнала поиска, приведенный ко времени
+     * последнего события. События без раздела пропускаются.
+     * @param events События в порядке записи
+     * @return Прирост спроса по разделам
+     */
+    public static SectionDemand fromEvents(List<SearchEvent> events) {
+        long reference = events.isEmpty() ? 0 : events.get(events.size() - 1).getTimeMillis();
+        SectionDemand demand = new SectionDemand(reference, 16);
+        for (SearchEvent event : events) {
+            if (event.getSectionId() == SearchEvent.NO_SECTION) continue;
+            double weight = event.getType() == SearchEvent.TYPE_SELECT
+                    ? SectionDemand.SELECT_WEIGHT : SectionDemand.SEARCH_WEIGHT;
+            demand.add(event.getSectionId(), weight, event.getTimeMillis());
+        }
+        return demand;
+    }
+
+    /**
+     * Пересчитывает значение спроса к другому моменту времени.
+     * @param score Спрос на момент fromMillis
+     * @param fromMillis Момент, к которому приведен спрос
+     * @param toMillis Момент, к которому нужно привести спрос
+     * @return Спрос на момент toMillis
+     */
+    public static double decay(double score, long fromMillis, long toMillis) {
+        return score * Math.pow(2, (double) (fromMillis - toMillis) / SectionDemand.HALF_LIFE_MS);
+    }
+
+    /**
+     * Учитывает событие или сохраненный ранее спрос.
+     * @param sectionId Идентификатор раздела
+     * @param weight Вес события или спрос на момент timeMillis
+     * @param timeMillis Время события (мс от эпохи)
+     */
+    public void add(long sectionId, double weight, long timeMillis) {
+        int index = indexById.get(sectionId);
+        if (index == LongIntHashMap.NO_VALUE) {
+            if (size == sectionIds.length) {
+                sectionIds = Arrays.copyOf(sectionIds, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            index = size++;
+            sectionIds[index] = sectionId;
+            indexById.put(sectionId, index);
+        }
+        scores[index] += decay(weight, timeMillis, referenceTime);
+    }
+
+    public long getReferenceTime() {
+        return referenceTime;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getSectionId(int index) {
+        return sectionIds[index];
+    }
+
+    /**
+     * @param index Индекс раздела от 0 до {@link #size()}
+     * @return Спрос на момент {@link #getReferenceTime()}
+     */
+    public double getScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * @param sectionId Идентификатор раздела
+     * @return Спрос на момент {@link #getReferenceTime()} или 0, если событий не было
+     */
+    public double getScoreById(long sectionId) {
+        int index = indexById.get(sectionId);
+        return index == LongIntHashMap.NO_VALUE ? 0 : scores[index];
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.storefinder.catalog;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Компактное хранилище товаров в памяти для каталогов на миллионы позиций.
+ * Вместо объектов {@link com.example.storefinder.models.Product} данные лежат в столбцах:
+ * массивы идентификаторов и разделов, а названия - в одном байтовом массиве UTF-8
+ * со смещениями. Доступ к строкам выполняется через переиспользуемый {@link ProductView}.
+ */
+public class ColumnarProductStore {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private long[] ids;
+    private long[] sectionIds;
+    // Смещение начала названия i-го товара; nameOffsets[size] - конец последнего названия
+    private int[] nameOffsets;
+    private byte[] nameArena;
+    private int size;
+
+    public ColumnarProductStore() {
+        this(1024, 32 * 1024);
+    }
+
+    /**
+     * @param expectedProducts Ожидаемое количество товаров
+     * @param expectedNameBytes Ожидаемый суммарный размер названий в байтах UTF-8
+     */
+    public ColumnarProductStore(int expectedProducts, int expectedNameBytes) {
+        int capacity = Math.max(16, expectedProducts);
+        ids = new long[capacity];
+        sectionIds = new long[capacity];
+        nameOffsets = new int[capacity + 1];
+        nameArena = new byte[Math.max(256, expectedNameBytes)];
+    }
+
+    /**
+     * Добавляет товар в хранилище.
+     * @param id Идентификатор товара
+     * @param sectionId Идентификатор раздела
+     * @param name Название товара
+     * @return Индекс товара в хранилище
+     */
+    public int add(long id, long sectionId, String name) {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        if (size == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            sectionIds = Arrays.copyOf(sectionIds, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+        }
+
+        int start = nameOffsets[size];
+        int end = start + nameBytes.length;
+        if (end > nameArena.length) {
+            nameArena = Arrays.copyOf(nameArena, Math.max(end, nameArena.length * 2));
+        }
+        System.arraycopy(nameBytes, 0, nameArena, start, nameBytes.length);
+
+        ids[size] = id;
+        sectionIds[size] = sectionId;
+        nameOffsets[size + 1] = end;
+        return size++;
+    }
+
+    /**
+     * Освобождает неиспользуемый запас в массивах после загрузки.
+     */
+    public void trimToSize() {
+        ids = Arrays.copyOf(ids, size);
+        sectionIds = Arrays.copyOf(sectionIds, size);
+        nameOffsets = Arrays.copyOf(nameOffsets, size + 1);
+        nameArena = Arrays.copyOf(nameArena, nameOffsets[size]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public long getSectionId(int index) {
+        return sectionIds[index];
+    }
+
+    /**
+     * Декодирует название товара. Создает новую строку, поэтому в циклах
+     * по всему каталогу лучше сравнивать байты через {@link #nameStartsWith}.
+     * @param index Индекс товара
+     * @return Название товара
+     */
+    public String getName(int index) {
+        int start = nameOffsets[index];
+        return new String(nameArena, start, nameOffsets[index + 1] - start, UTF_8);
+    }
+
+    /**
+     * Проверяет, начинается ли название товара с заданной последовательности байтов UTF-8.
+     * Не создает объектов.
+     * @param index Индекс товара
+     * @param prefix Префикс в кодировке UTF-8
+     * @return true, если название начинается с префикса
+     */
+    public boolean nameStartsWith(int index, byte[] prefix) {
+        int start = nameOffsets[index];
+        if (nameOffsets[index + 1] - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (nameArena[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Направляет представление на товар с указанным индексом.
+     * @param index Индекс товара
+     * @param view Переиспользуемое представление
+     * @return То же представление
+     */
+    public ProductView view(int index, ProductView view) {
+        view.moveTo(this, index);
+        return view;
+    }
+
+    /**
+     * Оценивает объем кучи, занимаемый хранилищем (с учетом заголовков массивов).
+     * @return Размер в байтах
+     */
+    public long estimateHeapBytes() {
+        final int arrayHeader = 16;
+        return 4 * arrayHeader
+                + 8L * ids.length
+                + 8L * sectionIds.length
+                + 4L * nameOffsets.length
+                + nameArena.length;
+    }
+}
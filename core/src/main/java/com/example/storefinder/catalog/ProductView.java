@@ -0,0 +1,39 @@
+package com.example.storefinder.catalog;
+
+/**
+ * Переиспользуемое представление (flyweight) одной строки {@link ColumnarProductStore}.
+ * Позволяет обходить каталог без создания объекта на каждый товар.
+ */
+public final class ProductView {
+    private ColumnarProductStore store;
+    private int index = -1;
+
+    void moveTo(ColumnarProductStore store, int index) {
+        this.store = store;
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return store.getId(index);
+    }
+
+    public long getSectionId() {
+        return store.getSectionId(index);
+    }
+
+    /**
+     * @return Название товара (декодируется при каждом вызове)
+     */
+    public String getName() {
+        return store.getName(index);
+    }
+
+    @Override
+    public String toString() {
+        return index < 0 ? "" : getName();
+    }
+}
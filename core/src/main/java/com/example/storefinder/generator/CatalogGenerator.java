@@ -0,0 +1,236 @@
+package com.example.storefinder.generator;
+
+import com.example.storefinder.models.Product;
+import com.example.storefinder.models.StoreSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Детерминированный генератор синтетических каталогов магазина для тестов и бенчмарков.
+ * Названия товаров составляются из русских наименований, характеристик, вариантов, марок и фасовки;
+ * популярные категории, наименования и марки встречаются чаще (длинный хвост),
+ * часть товаров повторяет уже сгенерированные названия (в том числе в других разделах).
+ * Одинаковые зерно и размеры всегда дают один и тот же каталог.
+ */
+public class CatalogGenerator {
+
+    // Размер схемы магазина, по которой расставляются разделы
+    public static final float MAP_SIZE = 2000f;
+
+    // Категории: название раздела, единица фасовки и наименования товаров
+    private static final String[][] CATEGORIES = {
+            {"Молочные продукты", "мл", "Молоко", "Кефир", "Сметана", "Йогурт", "Творог", "Ряженка", "Сыр"},
+            {"Хлеб и выпечка", "г", "Хлеб", "Батон", "Багет", "Булочка", "Лаваш", "Сушки"},
+            {"Фрукты", "г", "Яблоки", "Груши", "Бананы", "Апельсины", "Мандарины", "Виноград"},
+            {"Овощи", "г", "Картофель", "Морковь", "Огурцы", "Помидоры", "Капуста", "Лук репчатый"},
+            {"Бакалея", "г", "Гречка", "Рис", "Макароны", "Мука", "Сахар", "Соль", "Овсяные хлопья"},
+            {"Напитки", "мл", "Сок", "Вода минеральная", "Чай", "Кофе", "Морс", "Квас"},
+            {"Кондитерские изделия", "г", "Печенье", "Конфеты", "Шоколад", "Пряники", "Зефир", "Вафли"},
+            {"Мясо и птица", "г", "Курица", "Говядина", "Свинина", "Фарш", "Колбаса", "Сосиски"},
+            {"Бытовая химия", "мл", "Порошок стиральный", "Средство для посуды", "Мыло", "Шампунь"}
+    };
+    private static final int FIRST_NOUN = 2;
+
+    private static final String[] ATTRIBUTES = {
+            "домашний", "отборный", "классический", "свежий", "ароматный", "натуральный",
+            "фермерский", "детский", "цельнозерновой", "сливочный", "обезжиренный", "ванильный",
+            "копченый", "органический"};
+    private static final String[] BRANDS = {
+            "Простоквашино", "Весёлый молочник", "Добрый", "Ёлочка", "Агуша", "Савушкин",
+            "Вкусвилл", "Мираторг", "Черкизово", "Красная цена", "Global Village", "Каждый день"};
+    private static final String[] VARIANTS = {
+            "с клубникой", "с черникой", "с ванилью", "с орехами", "с изюмом", "с зеленью",
+            "со специями", "без сахара", "без глютена", "в вакуумной упаковке", "по-домашнему",
+            "высший сорт", "первый сорт", "в подарочной упаковке", "эконом", "премиум"};
+    // Товары из списков покупок, которых нет ни в одной категории
+    private static final String[] MISSING_ITEMS = {
+            "Устрицы", "Трюфели", "Омары", "Маракуйя", "Кускус", "Саго"};
+
+    private final long seed;
+    private double duplicateShare = 0.02;
+
+    /**
+     * @param seed Зерно генератора случайных чисел
+     */
+    public CatalogGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Задает долю товаров, повторяющих название ранее сгенерированного товара.
+     * @param duplicateShare Доля от 0 до 1 (по умолчанию 0.02)
+     * @return Этот генератор
+     */
+    public CatalogGenerator setDuplicateShare(double duplicateShare) {
+        this.duplicateShare = duplicateShare;
+        return this;
+    }
+
+    /**
+     * Генерирует каталог. Идентификаторы разделов и товаров начинаются с 1
+     * в порядке генерации, как при записи в пустую базу данных.
+     * @param sectionCount Количество разделов
+     * @param productCount Количество товаров
+     * @return Каталог
+     */
+    public Catalog generate(int sectionCount, int productCount) {
+        Random random = new Random(seed);
+
+        List<StoreSection> sections = new ArrayList<>(sectionCount);
+        int columns = (int) Math.ceil(Math.sqrt(sectionCount));
+        float step = MAP_SIZE / Math.max(1, columns);
+        for (int i = 0; i < sectionCount; i++) {
+            int category = i % CATEGORIES.length;
+            int copy = i / CATEGORIES.length;
+            String name = CATEGORIES[category][0] + (copy > 0 ? " " + (copy + 1) : "");
+            sections.add(new StoreSection(i + 1, name,
+                    (i % columns) * step + step / 2, (i / columns) * step + step / 2));
+        }
+
+        List<Product> products = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            int category = zipf(random, Math.min(CATEGORIES.length, sectionCount));
+            String name;
+            if (!products.isEmpty() && random.nextDouble() < duplicateShare) {
+                name = products.get(random.nextInt(products.size())).getName();
+            } else {
+                name = productName(random, CATEGORIES[category]);
+            }
+
+            // Случайный раздел этой категории
+            int copies = (sectionCount - category + CATEGORIES.length - 1) / CATEGORIES.length;
+            long sectionId = category + (long) random.nextInt(copies) * CATEGORIES.length + 1;
+
+            Product product = new Product(i + 1, name, sectionId);
+            // Популярность с длинным хвостом: большинство товаров почти не выбирают
+            product.setPopularity((int) (1000 * Math.pow(random.nextDouble(), 4)));
+            products.add(product);
+        }
+        return new Catalog(sections, products, new Random(seed + 1));
+    }
+
+    private static String productName(Random random, String[] category) {
+        StringBuilder name = new StringBuilder();
+        name.append(category[FIRST_NOUN + zipf(random, category.length - FIRST_NOUN)]);
+        if (random.nextInt(10) < 7) {
+            name.append(' ').append(ATTRIBUTES[zipf(random, ATTRIBUTES.length)]);
+        }
+        if (random.nextInt(10) < 4) {
+            name.append(' ').append(VARIANTS[random.nextInt(VARIANTS.length)]);
+        }
+        name.append(' ').append(BRANDS[zipf(random, BRANDS.length)]);
+        if (random.nextInt(10) < 8) {
+            name.append(' ').append(10 * (1 + random.nextInt(300))).append(' ').append(category[1]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Выбирает индекс от 0 до n - 1 так, что меньшие индексы встречаются чаще
+     * (вероятность примерно обратно пропорциональна номеру).
+     */
+    private static int zipf(Random random, int n) {
+        // Обратная функция распределения для плотности 1/x на [1, n + 1)
+        double x = Math.exp(random.nextDouble() * Math.log(n + 1));
+        return Math.min(n - 1, (int) x - 1);
+    }
+
+    /**
+     * Сгенерированный каталог.
+     * Списки покупок и запросы тоже детерминированы при одинаковом порядке вызовов.
+     */
+    public static final class Catalog {
+        private final List<StoreSection> sections;
+        private final List<Product> products;
+        private final Random random;
+
+        Catalog(List<StoreSection> sections, List<Product> products, Random random) {
+            this.sections = sections;
+            this.products = products;
+            this.random = random;
+        }
+
+        public List<StoreSection> getSections() {
+            return sections;
+        }
+
+        public List<Product> getProducts() {
+            return products;
+        }
+
+        public String getSectionName(long sectionId) {
+            return sections.get((int) sectionId - 1).getName();
+        }
+
+        /**
+         * CSV для импорта товаров в формате "название товара,раздел магазина".
+         * @return CSV-данные
+         */
+        public String toProductCsv() {
+            StringBuilder csv = new StringBuilder(products.size() * 48);
+            for (Product product : products) {
+                csv.append(product.getName()).append(',')
+                        .append(getSectionName(product.getSectionId())).append('\n');
+            }
+            return csv.toString();
+        }
+
+        /**
+         * Список покупок, как его вставляет покупатель: наименования в разном регистре
+         * и словоформах, с повторами и строками, которых нет в каталоге.
+         * @param lines Количество строк
+         * @param missingShare Доля строк, которых нет в каталоге
+         * @return Текст списка
+         */
+        public String shoppingList(int lines, double missingShare) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < lines; i++) {
+                if (random.nextDouble() < missingShare) {
+                    text.append(MISSING_ITEMS[random.nextInt(MISSING_ITEMS.length)]);
+                } else {
+                    Product product = products.get(random.nextInt(products.size()));
+                    String[] words = product.getName().split(" ");
+                    text.append(words[0].toLowerCase());
+                    if (words.length > 1 && random.nextBoolean()) {
+                        text.append(' ').append(words[1]);
+                    }
+                }
+                text.append('\n');
+            }
+            return text.toString();
+        }
+
+        /**
+         * Поисковые запросы: наименование, начало слова, два первых слова названия
+         * и косвенная словоформа.
+         * @param count Количество запросов
+         * @return Массив запросов
+         */
+        public String[] sampleQueries(int count) {
+            String[] queries = new String[count];
+            for (int i = 0; i < count; i++) {
+                String[] words = products.get(random.nextInt(products.size())).getName().split(" ");
+                String noun = words[0].toLowerCase();
+                switch (i % 4) {
+                    case 0:
+                        queries[i] = noun;
+                        break;
+                    case 1:
+                        queries[i] = noun.substring(0, Math.min(3, noun.length()));
+                        break;
+                    case 2:
+                        queries[i] = words.length > 1 ? noun + " " + words[1].toLowerCase() : noun;
+                        break;
+                    default:
+                        // Родительный падеж для слов на -о/-а: "молока", "гречки"
+                        queries[i] = noun.endsWith("о") ? noun.substring(0, noun.length() - 1) + "а"
+                                : noun.endsWith("а") ? noun.substring(0, noun.length() - 1) + "и" : noun;
+                        break;
+                }
+            }
+            return queries;
+        }
+    }
+}
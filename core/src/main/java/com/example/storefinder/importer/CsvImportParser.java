@@ -0,0 +1,150 @@
+package com.example.storefinder.importer;
+
+import com.example.storefinder.scan.Barcodes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Разбор CSV-данных для импорта товаров и синонимов.
+ * Строки разбираются посимвольно, без регулярных выражений и промежуточных массивов,
+ * поэтому разбор не становится узким местом при импорте больших каталогов.
+ */
+public final class CsvImportParser {
+
+    private CsvImportParser() {
+    }
+
+    /**
+     * Строка импорта товара: название товара, название раздела и необязательный штрихкод.
+     */
+    public static final class ProductRow {
+        private final String productName;
+        private final String sectionName;
+        private final String barcode;
+
+        public ProductRow(String productName, String sectionName) {
+            this(productName, sectionName, null);
+        }
+
+        public ProductRow(String productName, String sectionName, String barcode) {
+            this.productName = productName;
+            this.sectionName = sectionName;
+            this.barcode = barcode;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public String getSectionName() {
+            return sectionName;
+        }
+
+        /**
+         * @return Нормализованный штрихкод или артикул (см. {@link Barcodes#normalize(String)}) или null
+         */
+        public String getBarcode() {
+            return barcode;
+        }
+    }
+
+    /**
+     * Строка импорта синонимов: название товара и его синонимы.
+     */
+    public static final class AliasRow {
+        private final String productName;
+        private final List<String> aliases;
+
+        public AliasRow(String productName, List<String> aliases) {
+            this.productName = productName;
+            this.aliases = aliases;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public List<String> getAliases() {
+            return aliases;
+        }
+    }
+
+    /**
+     * Разбирает строки формата "название товара,раздел магазина[,штрихкод]".
+     * Строки без запятой пропускаются, поля после третьего игнорируются;
+     * некорректный штрихкод не мешает импорту товара.
+     * @param csvData CSV-данные
+     * @return Строки импорта в исходном порядке
+     */
+    public static List<ProductRow> parseProducts(String csvData) {
+        List<ProductRow> rows = new ArrayList<>();
+        int lineStart = 0;
+        int length = csvData.length();
+        while (lineStart < length) {
+            int lineEnd = lineEnd(csvData, lineStart);
+            int comma = indexOf(csvData, ',', lineStart, lineEnd);
+            if (comma >= 0) {
+                int sectionEnd = indexOf(csvData, ',', comma + 1, lineEnd);
+                String barcode = null;
+                if (sectionEnd < 0) {
+                    sectionEnd = lineEnd;
+                } else {
+                    int barcodeEnd = indexOf(csvData, ',', sectionEnd + 1, lineEnd);
+                    barcode = Barcodes.normalize(csvData.substring(sectionEnd + 1,
+                            barcodeEnd < 0 ? lineEnd : barcodeEnd));
+                }
+                rows.add(new ProductRow(csvData.substring(lineStart, comma).trim(),
+                        csvData.substring(comma + 1, sectionEnd).trim(), barcode));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    /**
+     * Разбирает строки формата "название товара,синоним[,синоним...]".
+     * Пустые синонимы отбрасываются; строки без синонимов пропускаются.
+     * @param csvData CSV-данные
+     * @return Строки импорта в исходном порядке
+     */
+    public static List<AliasRow> parseAliases(String csvData) {
+        List<AliasRow> rows = new ArrayList<>();
+        int lineStart = 0;
+        int length = csvData.length();
+        while (lineStart < length) {
+            int lineEnd = lineEnd(csvData, lineStart);
+            int comma = indexOf(csvData, ',', lineStart, lineEnd);
+            if (comma >= 0) {
+                List<String> aliases = new ArrayList<>(2);
+                int fieldStart = comma + 1;
+                while (fieldStart <= lineEnd) {
+                    int fieldEnd = indexOf(csvData, ',', fieldStart, lineEnd);
+                    if (fieldEnd < 0) fieldEnd = lineEnd;
+                    String alias = csvData.substring(fieldStart, fieldEnd).trim();
+                    if (!alias.isEmpty()) {
+                        aliases.add(alias);
+                    }
+                    fieldStart = fieldEnd + 1;
+                }
+                if (!aliases.isEmpty()) {
+                    rows.add(new AliasRow(csvData.substring(lineStart, comma).trim(),
+                            Collections.unmodifiableList(aliases)));
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return rows;
+    }
+
+    private static int lineEnd(String text, int from) {
+        int end = text.indexOf('\n', from);
+        return end < 0 ? text.length() : end;
+    }
+
+    private static int indexOf(String text, char c, int from, int to) {
+        int index = text.indexOf(c, from);
+        return index >= 0 && index < to ? index : -1;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.storefinder.importer;
+
+import com.example.storefinder.models.FloorPlan;
+import com.example.storefinder.sync.JsonPullParser;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Разбор векторной схемы магазина из JSON-раскладки:
+ * <pre>
+ * {"width": 4000, "height": 3000,
+ *  "walls": [[[0, 0], [4000, 0], [4000, 3000]], ...],
+ *  "shelves": [[[100, 200], [900, 200], [900, 260], [100, 260]], ...],
+ *  "sections": [...]}
+ * </pre>
+ * Разделы с контурами из того же файла читает {@link SectionLayoutParser}, поэтому
+ * файл векторной схемы импортируется и как обычная раскладка разделов.
+ */
+public final class FloorPlanParser {
+    private static final int MIN_WALL_POINTS = 2;
+
+    private FloorPlanParser() {
+    }
+
+    /**
+     * Разбирает векторную схему. Стены меньше чем из двух вершин и стеллажи меньше
+     * чем из трех вершин пропускаются.
+     * @param text Содержимое файла
+     * @return Схема или null, если файл не содержит векторной схемы (нет размеров)
+     * @throws IOException Некорректный JSON
+     */
+    public static FloorPlan parse(String text) throws IOException {
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        if (!startsWithObject(text)) {
+            return null;
+        }
+        JsonPullParser json = new JsonPullParser(new StringReader(text));
+        float width = Float.NaN;
+        float height = Float.NaN;
+        // Размеры могут следовать после фигур, поэтому фигуры собираются во временную схему
+        FloorPlan shapes = new FloorPlan(0, 0);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "width":
+                    width = (float) json.nextDouble();
+                    break;
+                case "height":
+                    height = (float) json.nextDouble();
+                    break;
+                case "walls":
+                    readShapes(json, shapes, FloorPlan.KIND_WALL, MIN_WALL_POINTS);
+                    break;
+                case "shelves":
+                    readShapes(json, shapes, FloorPlan.KIND_SHELF, SectionLayoutParser.MIN_POLYGON_POINTS);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (!(width > 0) || !(height > 0)) {
+            return null;
+        }
+        FloorPlan plan = new FloorPlan(width, height);
+        for (float[] wall : shapes.getWalls()) {
+            plan.addShape(FloorPlan.KIND_WALL, wall);
+        }
+        for (float[] shelf : shapes.getShelves()) {
+            plan.addShape(FloorPlan.KIND_SHELF, shelf);
+        }
+        return plan;
+    }
+
+    private static void readShapes(JsonPullParser json, FloorPlan plan, int kind, int minPoints)
+            throws IOException {
+        if (json.nextNullIfPresent()) {
+            return;
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            float[] points = SectionLayoutParser.readPoints(json, minPoints);
+            if (points != null) {
+                plan.addShape(kind, points);
+            }
+        }
+        json.endArray();
+    }
+
+    private static boolean startsWithObject(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.storefinder.importer;
+
+/**
+ * Итог импорта товаров: сколько строк добавлено, изменено, осталось без изменений
+ * и сколько товаров удалено в режиме синхронизации.
+ */
+public final class ImportResult {
+    private final int inserted;
+    private final int updated;
+    private final int unchanged;
+    private final int deleted;
+    private final int skipped;
+    private final long elapsedNanos;
+
+    /**
+     * @param inserted Добавленные товары
+     * @param updated Товары, у которых изменились название или раздел
+     * @param unchanged Строки, совпавшие с уже сохраненными товарами
+     * @param deleted Товары, удаленные из-за отсутствия в файле
+     * @param skipped Строки с неизвестным разделом или пустым названием
+     * @param elapsedNanos Длительность импорта
+     */
+    public ImportResult(int inserted, int updated, int unchanged, int deleted, int skipped,
+                        long elapsedNanos) {
+        this.inserted = inserted;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.deleted = deleted;
+        this.skipped = skipped;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return Количество принятых строк файла (добавленные, измененные и неизмененные)
+     */
+    public int getImportedCount() {
+        return inserted + updated + unchanged;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * @return Скорость обработки строк файла, включая пропущенные
+     */
+    public long getRowsPerSecond() {
+        return (getImportedCount() + skipped) * 1000000000L / Math.max(1, elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "добавлено " + inserted + ", обновлено " + updated + ", без изменений " + unchanged +
+                ", удалено " + deleted + ", пропущено " + skipped + " (" + getRowsPerSecond() + " строк/с)";
+    }
+}
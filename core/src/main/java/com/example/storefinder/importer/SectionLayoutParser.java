@@ -0,0 +1,307 @@
+package com.example.storefinder.importer;
+
+import com.example.storefinder.sync.JsonPullParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор раскладки разделов магазина для массового импорта.
+ * Поддерживаются два формата:
+ * <pre>
+ * CSV:  название,x,y[,полигон]        Молочные продукты,120,340,100 320;140 320;140 360;100 360
+ * JSON: [{"name": "Молочные продукты", "x": 120, "y": 340, "polygon": [[100, 320], [140, 320], ...]}]
+ * </pre>
+ * JSON может быть и объектом с полем "sections". Если координаты метки не заданы,
+ * а полигон есть, метка ставится в среднюю точку вершин полигона.
+ */
+public final class SectionLayoutParser {
+    // Разделители вершин полигона и координат вершины в CSV и в базе данных
+    private static final char POINT_SEPARATOR = ';';
+    private static final char COORDINATE_SEPARATOR = ' ';
+    static final int MIN_POLYGON_POINTS = 3;
+
+    private SectionLayoutParser() {
+    }
+
+    /**
+     * Раздел из файла раскладки.
+     */
+    public static final class SectionRow {
+        private final String name;
+        private final float x;
+        private final float y;
+        private final float[] polygon;
+
+        /**
+         * @param name Название раздела
+         * @param x Координата X метки или NaN
+         * @param y Координата Y метки или NaN
+         * @param polygon Вершины контура (x0, y0, x1, y1, ...) или null
+         */
+        public SectionRow(String name, float x, float y, float[] polygon) {
+            this.name = name;
+            if ((Float.isNaN(x) || Float.isNaN(y)) && polygon != null) {
+                float sumX = 0;
+                float sumY = 0;
+                int points = polygon.length / 2;
+                for (int i = 0; i < points; i++) {
+                    sumX += polygon[2 * i];
+                    sumY += polygon[2 * i + 1];
+                }
+                x = sumX / points;
+                y = sumY / points;
+            }
+            this.x = x;
+            this.y = y;
+            this.polygon = polygon;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public float getX() {
+            return x;
+        }
+
+        public float getY() {
+            return y;
+        }
+
+        /**
+         * @return Вершины контура раздела (x0, y0, x1, y1, ...) или null
+         */
+        public float[] getPolygon() {
+            return polygon;
+        }
+
+        /**
+         * @return true, если у раздела есть название и координаты метки
+         */
+        public boolean isValid() {
+            return !name.isEmpty() && !Float.isNaN(x) && !Float.isNaN(y);
+        }
+    }
+
+    /**
+     * Разбирает раскладку, определяя формат по первому символу.
+     * @param text Содержимое файла
+     * @return Разделы в порядке следования в файле
+     * @throws IOException Некорректный JSON
+     */
+    public static List<SectionRow> parse(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '[' || c == '{') {
+                return parseJson(new StringReader(text));
+            }
+            if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                break;
+            }
+        }
+        return parseCsv(text);
+    }
+
+    /**
+     * Разбирает строки формата "название,x,y[,полигон]". Строки, в которых координаты
+     * не являются числами (например, заголовок), пропускаются.
+     * @param csvData CSV-данные
+     * @return Разделы в исходном порядке
+     */
+    public static List<SectionRow> parseCsv(String csvData) {
+        List<SectionRow> rows = new ArrayList<>();
+        if (csvData.startsWith("\uFEFF")) {
+            csvData = csvData.substring(1);
+        }
+        for (String line : csvData.split("\n")) {
+            String[] fields = line.split(",", 4);
+            if (fields.length < 3) continue;
+            float[] polygon = fields.length == 4 ? parsePolygon(fields[3]) : null;
+            float x = parseCoordinate(fields[1]);
+            float y = parseCoordinate(fields[2]);
+            SectionRow row = new SectionRow(fields[0].trim(), x, y, polygon);
+            if (row.isValid()) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Разбирает JSON-массив разделов (или объект с полем "sections"). Неизвестные поля пропускаются.
+     * @param reader Содержимое файла
+     * @return Разделы в исходном порядке
+     * @throws IOException Ошибка чтения или некорректный формат
+     */
+    public static List<SectionRow> parseJson(Reader reader) throws IOException {
+        JsonPullParser json = new JsonPullParser(reader);
+        List<SectionRow> rows = new ArrayList<>();
+        if (json.peekArray()) {
+            json.beginArray();
+            readSections(json, rows);
+            json.endArray();
+            return rows;
+        }
+
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("sections")) {
+                json.beginArray();
+                readSections(json, rows);
+                json.endArray();
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return rows;
+    }
+
+    private static void readSections(JsonPullParser json, List<SectionRow> rows) throws IOException {
+        while (json.hasNext()) {
+            String name = "";
+            float x = Float.NaN;
+            float y = Float.NaN;
+            float[] polygon = null;
+
+            json.beginObject();
+            while (json.hasNext()) {
+                switch (json.nextName()) {
+                    case "name":
+                        name = json.nextString().trim();
+                        break;
+                    case "x":
+                        x = (float) json.nextDouble();
+                        break;
+                    case "y":
+                        y = (float) json.nextDouble();
+                        break;
+                    case "polygon":
+                        if (!json.nextNullIfPresent()) {
+                            polygon = readPoints(json, MIN_POLYGON_POINTS);
+                        }
+                        break;
+                    default:
+                        json.skipValue();
+                }
+            }
+            json.endObject();
+
+            SectionRow row = new SectionRow(name, x, y, polygon);
+            if (row.isValid()) {
+                rows.add(row);
+            }
+        }
+    }
+
+    /**
+     * Читает массив вершин [[x, y], ...].
+     * @param json Парсер перед массивом вершин
+     * @param minPoints Наименьшее допустимое количество вершин
+     * @return Вершины (x0, y0, x1, y1, ...) или null, если вершин меньше minPoints
+     * @throws IOException Некорректный формат вершины
+     */
+    static float[] readPoints(JsonPullParser json, int minPoints) throws IOException {
+        List<Float> coordinates = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            // Вершина [x, y]; лишние элементы (например, высота) пропускаются
+            json.beginArray();
+            for (int i = 0; json.hasNext(); i++) {
+                if (i < 2) {
+                    coordinates.add((float) json.nextDouble());
+                } else {
+                    json.skipValue();
+                }
+            }
+            json.endArray();
+            if (coordinates.size() % 2 != 0) {
+                throw new IOException("Вершина контура должна содержать две координаты");
+            }
+        }
+        json.endArray();
+        return toPoints(coordinates, minPoints);
+    }
+
+    /**
+     * Разбирает контур раздела в формате "x y;x y;...".
+     * @param text Контур или пустая строка
+     * @return Вершины (x0, y0, x1, y1, ...) или null, если вершин меньше трех или формат неверный
+     */
+    public static float[] parsePolygon(String text) {
+        return parsePoints(text, MIN_POLYGON_POINTS);
+    }
+
+    /**
+     * Разбирает вершины в формате "x y;x y;..." (контур раздела или ломаную стены).
+     * @param text Вершины или пустая строка
+     * @param minPoints Наименьшее допустимое количество вершин
+     * @return Вершины (x0, y0, x1, y1, ...) или null, если вершин меньше minPoints или формат неверный
+     */
+    public static float[] parsePoints(String text, int minPoints) {
+        if (text == null) {
+            return null;
+        }
+        List<Float> coordinates = new ArrayList<>();
+        for (String point : text.split(String.valueOf(POINT_SEPARATOR))) {
+            point = point.trim();
+            if (point.isEmpty()) continue;
+            int separator = point.indexOf(COORDINATE_SEPARATOR);
+            if (separator < 0) {
+                return null;
+            }
+            float x = parseCoordinate(point.substring(0, separator));
+            float y = parseCoordinate(point.substring(separator + 1));
+            if (Float.isNaN(x) || Float.isNaN(y)) {
+                return null;
+            }
+            coordinates.add(x);
+            coordinates.add(y);
+        }
+        return toPoints(coordinates, minPoints);
+    }
+
+    /**
+     * Записывает контур раздела или ломаную стены в формате, который читает {@link #parsePoints(String, int)}.
+     * @param polygon Вершины (x0, y0, x1, y1, ...) или null
+     * @return Контур или null
+     */
+    public static String formatPolygon(float[] polygon) {
+        if (polygon == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder(polygon.length * 6);
+        for (int i = 0; i + 1 < polygon.length; i += 2) {
+            if (i > 0) text.append(POINT_SEPARATOR);
+            text.append(polygon[i]).append(COORDINATE_SEPARATOR).append(polygon[i + 1]);
+        }
+        return text.toString();
+    }
+
+    private static float[] toPoints(List<Float> coordinates, int minPoints) {
+        if (coordinates.size() < 2 * minPoints) {
+            return null;
+        }
+        float[] polygon = new float[coordinates.size()];
+        for (int i = 0; i < polygon.length; i++) {
+            polygon[i] = coordinates.get(i);
+        }
+        return polygon;
+    }
+
+    private static float parseCoordinate(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return Float.NaN;
+        }
+        try {
+            return Float.parseFloat(text);
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
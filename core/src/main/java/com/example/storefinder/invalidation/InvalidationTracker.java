@@ -0,0 +1,93 @@
+package com.example.storefinder.invalidation;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.Metrics;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Учет изменений данных по таблицам и схемам. Каждая запись в базу данных после фиксации
+ * транзакции сообщает, какие таблицы какой схемы она изменила; подписчики получают
+ * уведомление, только если изменение затрагивает их таблицы и их схему.
+ * Так экран не перечитывает разделы после импорта товаров, а результаты поиска
+ * обновляются после изменения каталога, сделанного на другом экране.
+ */
+public class InvalidationTracker {
+    public static final int TABLE_MAPS = 1;
+    public static final int TABLE_SECTIONS = 1 << 1;
+    public static final int TABLE_PRODUCTS = 1 << 2;
+    public static final int TABLE_ALIASES = 1 << 3;
+    public static final int TABLE_FLOOR_PLANS = 1 << 4;
+
+    /** Подписка на изменения всех схем или изменение, затронувшее все схемы. */
+    public static final long ALL_MAPS = -1;
+
+    private static final Counter NOTIFICATIONS = Metrics.counter("invalidation.notify");
+    private static final Counter DELIVERED = Metrics.counter("invalidation.delivered");
+
+    /**
+     * Получатель уведомлений. Вызывается в потоке, выполнившем запись, поэтому
+     * должен только запланировать работу, а не выполнять запросы.
+     */
+    public interface Observer {
+        /**
+         * @param tables Измененные таблицы (битовая маска TABLE_*)
+         * @param mapId Измененная схема или {@link #ALL_MAPS}
+         */
+        void onInvalidated(int tables, long mapId);
+    }
+
+    private static final class Subscription {
+        final Observer observer;
+        final int tables;
+        final long mapId;
+
+        Subscription(Observer observer, int tables, long mapId) {
+            this.observer = observer;
+            this.tables = tables;
+            this.mapId = mapId;
+        }
+    }
+
+    // Подписки меняются редко, а уведомления приходят из разных потоков
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Подписывает получателя на изменения таблиц схемы.
+     * @param observer Получатель
+     * @param tables Таблицы (битовая маска TABLE_*)
+     * @param mapId Схема или {@link #ALL_MAPS}
+     */
+    public void addObserver(Observer observer, int tables, long mapId) {
+        subscriptions.add(new Subscription(observer, tables, mapId));
+    }
+
+    /**
+     * Отписывает получателя от всех изменений.
+     * @param observer Получатель
+     */
+    public void removeObserver(Observer observer) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.observer == observer) {
+                subscriptions.remove(subscription);
+            }
+        }
+    }
+
+    /**
+     * Сообщает об изменении данных. Вызывается после фиксации транзакции,
+     * один раз на запись, даже если она изменила тысячи строк.
+     * @param tables Измененные таблицы (битовая маска TABLE_*)
+     * @param mapId Измененная схема или {@link #ALL_MAPS}
+     */
+    public void notifyChanged(int tables, long mapId) {
+        NOTIFICATIONS.increment();
+        for (Subscription subscription : subscriptions) {
+            if ((subscription.tables & tables) != 0 && (subscription.mapId == ALL_MAPS
+                    || mapId == ALL_MAPS || subscription.mapId == mapId)) {
+                DELIVERED.increment();
+                subscription.observer.onInvalidated(tables & subscription.tables, mapId);
+            }
+        }
+    }
+}
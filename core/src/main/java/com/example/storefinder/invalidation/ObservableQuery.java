@@ -0,0 +1,126 @@
+package com.example.storefinder.invalidation;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.Metrics;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Запрос, результат которого обновляется при изменении его таблиц.
+ * Запрос выполняется в фоне при подписке и после каждого уведомления {@link InvalidationTracker},
+ * затрагивающего его таблицы и схему. Уведомления, пришедшие до начала повторного выполнения,
+ * объединяются: импорт из тысячи записей и десяток одиночных правок подряд вызывают
+ * по одному перезапросу. Получатель видит прежний и новый результат и сам вычисляет разницу.
+ * @param <T> Тип результата
+ */
+public abstract class ObservableQuery<T> implements InvalidationTracker.Observer {
+    private static final Counter RELOADS = Metrics.counter("invalidation.query_reload");
+
+    /**
+     * Получатель результатов. Вызывается в потоке доставки (обычно главном).
+     * @param <T> Тип результата
+     */
+    public interface Listener<T> {
+        /**
+         * @param previous Прежний результат или null при первой загрузке
+         * @param current Новый результат
+         */
+        void onResult(T previous, T current);
+    }
+
+    private final InvalidationTracker tracker;
+    private final int tables;
+    private final long mapId;
+    private final Executor queryExecutor;
+    private final Executor deliveryExecutor;
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+    private volatile boolean active;
+    // Доступны только из потока доставки
+    private Listener<T> listener;
+    private T current;
+
+    /**
+     * @param tracker Учет изменений базы данных
+     * @param tables Таблицы, от которых зависит результат (битовая маска TABLE_*)
+     * @param mapId Схема или {@link InvalidationTracker#ALL_MAPS}
+     * @param queryExecutor Последовательный исполнитель запросов
+     * @param deliveryExecutor Исполнитель, в котором вызывается получатель
+     */
+    protected ObservableQuery(InvalidationTracker tracker, int tables, long mapId,
+                              Executor queryExecutor, Executor deliveryExecutor) {
+        this.tracker = tracker;
+        this.tables = tables;
+        this.mapId = mapId;
+        this.queryExecutor = queryExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+    }
+
+    /**
+     * Выполняет запрос. Вызывается в потоке запросов.
+     * @return Результат
+     */
+    protected abstract T query();
+
+    /**
+     * Подписывается на изменения и запускает первую загрузку.
+     * Вызывается из потока доставки.
+     * @param listener Получатель результатов
+     */
+    public void observe(Listener<T> listener) {
+        this.listener = listener;
+        active = true;
+        tracker.addObserver(this, tables, mapId);
+        reload();
+    }
+
+    /**
+     * Отписывается от изменений; результаты выполняющегося запроса не доставляются.
+     * Вызывается из потока доставки.
+     */
+    public void dispose() {
+        active = false;
+        tracker.removeObserver(this);
+        listener = null;
+    }
+
+    /**
+     * @return Последний доставленный результат или null
+     */
+    public T getCurrent() {
+        return current;
+    }
+
+    @Override
+    public void onInvalidated(int tables, long mapId) {
+        reload();
+    }
+
+    /**
+     * Запускает перезапрос, если он еще не запланирован.
+     */
+    public void reload() {
+        if (!active || !reloadPending.compareAndSet(false, true)) {
+            return;
+        }
+        queryExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Изменения, записанные после этой точки, запланируют еще один перезапрос
+                reloadPending.set(false);
+                if (!active) return;
+                RELOADS.increment();
+                final T result = query();
+                deliveryExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!active || listener == null) return;
+                        T previous = current;
+                        current = result;
+                        listener.onResult(previous, result);
+                    }
+                });
+            }
+        });
+    }
+}
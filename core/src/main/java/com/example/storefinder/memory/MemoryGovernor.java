@@ -0,0 +1,191 @@
+package com.example.storefinder.memory;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Учет памяти, которую можно освободить при нехватке: изображений схемы, кэшей и индексов поиска.
+ * Владельцы регистрируют свои ресурсы с приоритетом; по сигналу системы ({@code onTrimMemory})
+ * освобождаются ресурсы с приоритетом не выше порога для уровня сигнала, начиная с
+ * наименьшего приоритета, а внутри приоритета — с самых крупных. Владелец восстанавливает
+ * ресурс сам, когда он снова понадобится.
+ * <p>
+ * Уровни совпадают с константами {@code android.content.ComponentCallbacks2}.
+ */
+public class MemoryGovernor {
+    public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+    public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+    public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+    public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+    public static final int TRIM_MEMORY_BACKGROUND = 40;
+    public static final int TRIM_MEMORY_COMPLETE = 80;
+
+    /** Кэши, которые дешево заполнить заново: результаты поиска, заранее подготовленные данные. */
+    public static final int PRIORITY_CACHE = 0;
+    /** Изображения экранов, которые сейчас не видны. */
+    public static final int PRIORITY_HIDDEN_UI = 1;
+    /** Индексы, перестроение которых заметно пользователю: словарь подсказок. */
+    public static final int PRIORITY_INDEX = 2;
+
+    private static final int RELEASE_NOTHING = -1;
+
+    private static final LatencyHistogram TRIM_LATENCY = Metrics.histogram("memory.trim");
+    private static final Counter RELEASED_BYTES = Metrics.counter("memory.released_bytes");
+
+    private static final MemoryGovernor INSTANCE = new MemoryGovernor();
+
+    /**
+     * Ресурс, размер которого учитывается и который можно освободить.
+     */
+    public interface Consumer {
+        /**
+         * @return Занятая ресурсом память в байтах или 0, если ресурс уже освобожден
+         */
+        long getByteSize();
+
+        /**
+         * Освобождает ресурс. Ресурс, который сейчас нельзя отдать (например, изображение
+         * видимого экрана), остается занятым.
+         */
+        void release();
+    }
+
+    private static final class Registration {
+        final String name;
+        final int priority;
+        final Consumer consumer;
+        long byteSize;
+
+        Registration(String name, int priority, Consumer consumer) {
+            this.name = name;
+            this.priority = priority;
+            this.consumer = consumer;
+        }
+    }
+
+    // Защищен this
+    private final List<Registration> registrations = new ArrayList<>();
+
+    /**
+     * @return Учет памяти процесса
+     */
+    public static MemoryGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Регистрирует ресурс. Повторная регистрация того же ресурса не выполняется.
+     * @param name Название для отладки
+     * @param priority Приоритет: {@link #PRIORITY_CACHE}, {@link #PRIORITY_HIDDEN_UI} или {@link #PRIORITY_INDEX}
+     * @param consumer Ресурс
+     */
+    public synchronized void register(String name, int priority, Consumer consumer) {
+        for (Registration registration : registrations) {
+            if (registration.consumer == consumer) return;
+        }
+        registrations.add(new Registration(name, priority, consumer));
+    }
+
+    /**
+     * Снимает ресурс с учета, например при закрытии экрана.
+     * @param consumer Ресурс
+     */
+    public synchronized void unregister(Consumer consumer) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).consumer == consumer) {
+                registrations.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Память, занятая всеми зарегистрированными ресурсами, в байтах
+     */
+    public synchronized long getTrackedBytes() {
+        long total = 0;
+        for (Registration registration : registrations) {
+            total += registration.consumer.getByteSize();
+        }
+        return total;
+    }
+
+    /**
+     * Освобождает ресурсы по сигналу системы о нехватке памяти.
+     * Вызывается из главного потока.
+     * @param level Уровень сигнала
+     * @return Освобожденная память в байтах
+     */
+    public long onTrimMemory(int level) {
+        int maxPriority = maxPriority(level);
+        if (maxPriority == RELEASE_NOTHING) {
+            return 0;
+        }
+        long start = Metrics.startTimer();
+        List<Registration> victims = new ArrayList<>();
+        synchronized (this) {
+            for (Registration registration : registrations) {
+                if (registration.priority <= maxPriority) {
+                    registration.byteSize = registration.consumer.getByteSize();
+                    if (registration.byteSize > 0) {
+                        victims.add(registration);
+                    }
+                }
+            }
+        }
+        Collections.sort(victims, new Comparator<Registration>() {
+            @Override
+            public int compare(Registration a, Registration b) {
+                if (a.priority != b.priority) {
+                    return a.priority < b.priority ? -1 : 1;
+                }
+                return Long.compare(b.byteSize, a.byteSize);
+            }
+        });
+
+        // Владельцы освобождают ресурсы вне блокировки: они могут сами снимать регистрацию
+        long released = 0;
+        for (Registration victim : victims) {
+            victim.consumer.release();
+            released += Math.max(0, victim.byteSize - victim.consumer.getByteSize());
+        }
+        RELEASED_BYTES.add(released);
+        TRIM_LATENCY.recordSince(start);
+        return released;
+    }
+
+    /**
+     * Порог приоритета для уровня сигнала. Пока приложение на экране, сначала отдаются кэши,
+     * затем изображения скрытых экранов и только при критической нехватке — индексы.
+     * После ухода в фон ({@link #TRIM_MEMORY_UI_HIDDEN}) освобождается все, кроме индексов,
+     * а когда процесс попадает в очередь на завершение ({@link #TRIM_MEMORY_BACKGROUND}) — все.
+     */
+    static int maxPriority(int level) {
+        if (level >= MemoryGovernor.TRIM_MEMORY_BACKGROUND) return MemoryGovernor.PRIORITY_INDEX;
+        if (level >= MemoryGovernor.TRIM_MEMORY_UI_HIDDEN) return MemoryGovernor.PRIORITY_HIDDEN_UI;
+        if (level >= MemoryGovernor.TRIM_MEMORY_RUNNING_CRITICAL) return MemoryGovernor.PRIORITY_INDEX;
+        if (level >= MemoryGovernor.TRIM_MEMORY_RUNNING_LOW) return MemoryGovernor.PRIORITY_HIDDEN_UI;
+        if (level >= MemoryGovernor.TRIM_MEMORY_RUNNING_MODERATE) return MemoryGovernor.PRIORITY_CACHE;
+        return RELEASE_NOTHING;
+    }
+
+    /**
+     * @return Описание зарегистрированных ресурсов для отладки
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder("MemoryGovernor{");
+        for (int i = 0; i < registrations.size(); i++) {
+            Registration registration = registrations.get(i);
+            if (i > 0) text.append(", ");
+            text.append(registration.name).append('=').append(registration.consumer.getByteSize());
+        }
+        return text.append('}').toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.storefinder.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчик событий без блокировок.
+ */
+public class Counter {
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Увеличивает счетчик, если сбор метрик включен.
+     * @param delta Приращение
+     */
+    public void add(long delta) {
+        if (Metrics.isEnabled()) {
+            value.addAndGet(delta);
+        }
+    }
+
+    /**
+     * Заменяет значение, если сбор метрик включен. Используется для текущих величин,
+     * например объема памяти, занятой изображением схемы.
+     * @param newValue Новое значение
+     */
+    public void set(long newValue) {
+        if (Metrics.isEnabled()) {
+            value.set(newValue);
+        }
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    public void reset() {
+        value.set(0);
+    }
+}
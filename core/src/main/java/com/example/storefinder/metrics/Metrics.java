@@ -0,0 +1,122 @@
+package com.example.storefinder.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Реестр метрик горячих участков кода: счетчики и гистограммы задержек.
+ * Метрики создаются один раз (обычно в статических полях) и записываются без блокировок.
+ * Пока сбор выключен (по умолчанию), {@link #startTimer()} не читает часы,
+ * а запись сводится к проверке одного флага.
+ * <pre>
+ * long start = Metrics.startTimer();
+ * ...
+ * SEARCH_LATENCY.recordSince(start);
+ * </pre>
+ */
+public final class Metrics {
+    private static volatile boolean enabled;
+
+    private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, LatencyHistogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Запускает таймер.
+     * @return Текущее время в наносекундах или 0, если сбор метрик выключен
+     */
+    public static long startTimer() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Возвращает счетчик с указанным именем, создавая его при первом обращении.
+     * @param name Имя метрики, например "db.import.rows"
+     * @return Счетчик
+     */
+    public static Counter counter(String name) {
+        Counter counter = COUNTERS.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = COUNTERS.putIfAbsent(name, created);
+            if (counter == null) counter = created;
+        }
+        return counter;
+    }
+
+    /**
+     * Возвращает гистограмму с указанным именем, создавая ее при первом обращении.
+     * @param name Имя метрики, например "db.search"
+     * @return Гистограмма задержек
+     */
+    public static LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram(name);
+            histogram = HISTOGRAMS.putIfAbsent(name, created);
+            if (histogram == null) histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * Сбрасывает значения всех метрик.
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) {
+            counter.reset();
+        }
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Формирует текстовый отчет: по строке на метрику, в порядке имен.
+     * Пустые гистограммы и нулевые счетчики пропускаются.
+     * @return Отчет
+     */
+    public static String report() {
+        List<String> lines = new ArrayList<>();
+        for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() == 0) continue;
+            lines.add(String.format(Locale.US, "%s n=%d mean=%s p50=%s p95=%s p99=%s max=%s",
+                    snapshot.getName(), snapshot.getCount(), formatNanos(snapshot.getMeanNanos()),
+                    formatNanos(snapshot.getP50Nanos()), formatNanos(snapshot.getP95Nanos()),
+                    formatNanos(snapshot.getP99Nanos()), formatNanos(snapshot.getMaxNanos())));
+        }
+        for (Counter counter : COUNTERS.values()) {
+            if (counter.get() == 0) continue;
+            lines.add(counter.getName() + " " + counter.get());
+        }
+        Collections.sort(lines);
+
+        StringBuilder report = new StringBuilder();
+        for (String line : lines) {
+            report.append(line).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1000000) {
+            return String.format(Locale.US, "%.1fus", nanos / 1000.0);
+        }
+        return String.format(Locale.US, "%.1fms", nanos / 1000000.0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.storefinder.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Векторная схема магазина: стены и стеллажи в координатах схемы.
+ * Контуры разделов хранятся в самих разделах ({@link StoreSection#getPolygon()}).
+ * В отличие от изображения, схема занимает память пропорционально количеству вершин,
+ * а не площади, и отрисовывается без потери четкости при любом масштабе.
+ */
+public class FloorPlan {
+    /** Стена: ломаная из двух и более вершин. */
+    public static final int KIND_WALL = 1;
+    /** Стеллаж: замкнутый контур из трех и более вершин. */
+    public static final int KIND_SHELF = 2;
+
+    // Приблизительный размер заголовка массива в куче
+    private static final int ARRAY_OVERHEAD_BYTES = 16;
+
+    private final float width;
+    private final float height;
+    private final List<float[]> walls = new ArrayList<>();
+    private final List<float[]> shelves = new ArrayList<>();
+
+    /**
+     * @param width Ширина схемы в единицах координат разделов
+     * @param height Высота схемы в единицах координат разделов
+     */
+    public FloorPlan(float width, float height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Добавляет фигуру схемы.
+     * @param kind {@link #KIND_WALL} или {@link #KIND_SHELF}
+     * @param points Вершины (x0, y0, x1, y1, ...)
+     */
+    public void addShape(int kind, float[] points) {
+        if (kind == FloorPlan.KIND_WALL) {
+            walls.add(points);
+        } else if (kind == FloorPlan.KIND_SHELF) {
+            shelves.add(points);
+        } else {
+            throw new IllegalArgumentException("Неизвестный вид фигуры: " + kind);
+        }
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Стены: вершины ломаных (x0, y0, x1, y1, ...)
+     */
+    public List<float[]> getWalls() {
+        return Collections.unmodifiableList(walls);
+    }
+
+    /**
+     * @return Стеллажи: вершины контуров (x0, y0, x1, y1, ...)
+     */
+    public List<float[]> getShelves() {
+        return Collections.unmodifiableList(shelves);
+    }
+
+    /**
+     * @return Приблизительный объем памяти, занятой вершинами, в байтах
+     */
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (float[] wall : walls) {
+            bytes += ARRAY_OVERHEAD_BYTES + 4L * wall.length;
+        }
+        for (float[] shelf : shelves) {
+            bytes += ARRAY_OVERHEAD_BYTES + 4L * shelf.length;
+        }
+        return bytes;
+    }
+}
@@ -7,6 +7,7 @@ public class Product {
     private long id;
     private String name;
     private long sectionId; // Идентификатор раздела магазина
+    private int popularity; // Количество выборов товара покупателями
 
     public Product() {
     }
@@ -42,6 +43,14 @@ public class Product {
         this.sectionId = sectionId;
     }
 
+    public int getPopularity() {
+        return popularity;
+    }
+
+    public void setPopularity(int popularity) {
+        this.popularity = popularity;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,104 @@
+package com.example.storefinder.models;
+
+import java.util.Arrays;
+
+/**
+ * Разница между двумя состояниями реестра разделов одной схемы:
+ * добавленные, измененные (название, метка или контур) и удаленные разделы.
+ * Позволяет экрану дорисовать новые метки вместо перерисовки всей схемы
+ * и не перерисовывать ее вовсе, если разделы не изменились.
+ */
+public final class SectionDiff {
+    private final int[] added;
+    private final int addedCount;
+    private final int[] changed;
+    private final int changedCount;
+    private final long[] removedIds;
+    private final int removedCount;
+
+    private SectionDiff(int[] added, int addedCount, int[] changed, int changedCount,
+                        long[] removedIds, int removedCount) {
+        this.added = added;
+        this.addedCount = addedCount;
+        this.changed = changed;
+        this.changedCount = changedCount;
+        this.removedIds = removedIds;
+        this.removedCount = removedCount;
+    }
+
+    /**
+     * Сравнивает два состояния реестра по идентификаторам разделов.
+     * @param previous Прежний реестр или null (тогда все разделы считаются добавленными)
+     * @param current Новый реестр
+     * @return Разница
+     */
+    public static SectionDiff between(SectionRegistry previous, SectionRegistry current) {
+        int[] added = new int[current.size()];
+        int addedCount = 0;
+        int[] changed = new int[current.size()];
+        int changedCount = 0;
+        for (int i = 0; i < current.size(); i++) {
+            int old = previous != null ? previous.indexOf(current.getId(i)) : SectionRegistry.NOT_FOUND;
+            if (old == SectionRegistry.NOT_FOUND) {
+                added[addedCount++] = i;
+            } else if (!sameSection(previous, old, current, i)) {
+                changed[changedCount++] = i;
+            }
+        }
+
+        long[] removed = new long[previous != null ? previous.size() : 0];
+        int removedCount = 0;
+        for (int i = 0; i < removed.length; i++) {
+            if (current.indexOf(previous.getId(i)) == SectionRegistry.NOT_FOUND) {
+                removed[removedCount++] = previous.getId(i);
+            }
+        }
+        return new SectionDiff(added, addedCount, changed, changedCount, removed, removedCount);
+    }
+
+    private static boolean sameSection(SectionRegistry a, int i, SectionRegistry b, int j) {
+        return a.getX(i) == b.getX(j) && a.getY(i) == b.getY(j)
+                && a.getName(i).equals(b.getName(j))
+                && Arrays.equals(a.getPolygon(i), b.getPolygon(j));
+    }
+
+    /**
+     * @return true, если разделы не изменились
+     */
+    public boolean isEmpty() {
+        return addedCount + changedCount + removedCount == 0;
+    }
+
+    /**
+     * @return true, если разделы только добавлялись
+     */
+    public boolean isAppendOnly() {
+        return changedCount + removedCount == 0;
+    }
+
+    /**
+     * @return Индексы добавленных разделов в новом реестре
+     */
+    public int[] getAdded() {
+        return Arrays.copyOf(added, addedCount);
+    }
+
+    /**
+     * @return Индексы измененных разделов в новом реестре
+     */
+    public int[] getChanged() {
+        return Arrays.copyOf(changed, changedCount);
+    }
+
+    /**
+     * @return Идентификаторы удаленных разделов
+     */
+    public long[] getRemovedIds() {
+        return Arrays.copyOf(removedIds, removedCount);
+    }
+
+    @Override
+    public String toString() {
+        return "SectionDiff{added=" + addedCount + ", changed=" + changedCount + ", removed=" + removedCount + '}';
+    }
+}
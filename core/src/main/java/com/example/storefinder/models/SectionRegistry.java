@@ -0,0 +1,178 @@
+package com.example.storefinder.models;
+
+import com.example.storefinder.utils.LongIntHashMap;
+import com.example.storefinder.utils.PolygonIndex;
+
+import java.util.Arrays;
+
+/**
+ * Реестр разделов одной схемы магазина в памяти.
+ * Данные хранятся в параллельных массивах, поиск раздела по идентификатору
+ * выполняется через примитивную хэш-таблицу и не создает объектов.
+ * Раздел с контуром находится по точке через {@link PolygonIndex}, который строится
+ * при первом поиске и сбрасывается при изменении реестра.
+ * Реестр предназначен для использования из главного потока.
+ */
+public class SectionRegistry {
+    public static final int NOT_FOUND = LongIntHashMap.NO_VALUE;
+
+    private final long mapId;
+    private final LongIntHashMap indexById;
+    private long[] ids;
+    private float[] xs;
+    private float[] ys;
+    private String[] names;
+    private float[][] polygons;
+    private int size;
+    private PolygonIndex polygonIndex;
+
+    /**
+     * @param mapId Идентификатор схемы магазина
+     * @param expectedSize Ожидаемое количество разделов
+     */
+    public SectionRegistry(long mapId, int expectedSize) {
+        int capacity = Math.max(8, expectedSize);
+        this.mapId = mapId;
+        this.indexById = new LongIntHashMap(capacity);
+        this.ids = new long[capacity];
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.names = new String[capacity];
+        this.polygons = new float[capacity][];
+    }
+
+    /**
+     * Добавляет раздел в реестр или обновляет существующий.
+     * @param id Идентификатор раздела
+     * @param name Название раздела
+     * @param x Координата X на схеме
+     * @param y Координата Y на схеме
+     * @return Индекс раздела в реестре
+     */
+    public int put(long id, String name, float x, float y) {
+        return put(id, name, x, y, null);
+    }
+
+    /**
+     * Добавляет раздел с контуром в реестр или обновляет существующий.
+     * @param id Идентификатор раздела
+     * @param name Название раздела
+     * @param x Координата X метки на схеме
+     * @param y Координата Y метки на схеме
+     * @param polygon Вершины контура (x0, y0, x1, y1, ...) или null
+     * @return Индекс раздела в реестре
+     */
+    public int put(long id, String name, float x, float y, float[] polygon) {
+        int index = indexById.get(id);
+        if (index == NOT_FOUND) {
+            if (size == ids.length) {
+                grow();
+            }
+            index = size++;
+            ids[index] = id;
+            indexById.put(id, index);
+        }
+        names[index] = name;
+        xs[index] = x;
+        ys[index] = y;
+        polygons[index] = polygon;
+        polygonIndex = null;
+        return index;
+    }
+
+    /**
+     * Возвращает индекс раздела по идентификатору.
+     * @param id Идентификатор раздела
+     * @return Индекс или {@link #NOT_FOUND}
+     */
+    public int indexOf(long id) {
+        return indexById.get(id);
+    }
+
+    /**
+     * Находит ближайший к точке раздел в пределах заданного радиуса.
+     * @param x Координата X на схеме
+     * @param y Координата Y на схеме
+     * @param radius Радиус поиска
+     * @return Индекс раздела или {@link #NOT_FOUND}
+     */
+    public int hitTest(float x, float y, float radius) {
+        int nearest = NOT_FOUND;
+        float nearestDistance = radius * radius;
+        for (int i = 0; i < size; i++) {
+            float dx = xs[i] - x;
+            float dy = ys[i] - y;
+            float distance = dx * dx + dy * dy;
+            if (distance <= nearestDistance) {
+                nearestDistance = distance;
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Находит раздел, контур которого содержит точку. Разделы без контура не учитываются.
+     * @param x Координата X на схеме
+     * @param y Координата Y на схеме
+     * @return Индекс раздела или {@link #NOT_FOUND}
+     */
+    public int findContaining(float x, float y) {
+        if (polygonIndex == null) {
+            polygonIndex = new PolygonIndex(polygons, size);
+        }
+        int index = polygonIndex.find(x, y);
+        return index == PolygonIndex.NOT_FOUND ? NOT_FOUND : index;
+    }
+
+    public long getMapId() {
+        return mapId;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public float getX(int index) {
+        return xs[index];
+    }
+
+    public float getY(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return Вершины контура раздела (x0, y0, x1, y1, ...) или null
+     */
+    public float[] getPolygon(int index) {
+        return polygons[index];
+    }
+
+    /**
+     * Создает объект раздела для использования в адаптерах и диалогах.
+     * @param index Индекс раздела
+     * @return Новый объект раздела
+     */
+    public StoreSection toSection(int index) {
+        StoreSection section = new StoreSection(ids[index], names[index], xs[index], ys[index]);
+        section.setPolygon(polygons[index]);
+        return section;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        names = Arrays.copyOf(names, capacity);
+        polygons = Arrays.copyOf(polygons, capacity);
+    }
+}
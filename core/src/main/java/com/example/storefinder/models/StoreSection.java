@@ -11,6 +11,7 @@ public class StoreSection {
     private String name;
     private float x; // Координата X на схеме
     private float y; // Координата Y на схеме
+    private float[] polygon; // Контур раздела на схеме (x0, y0, x1, y1, ...) или null
     private List<Product> products;
 
     public StoreSection() {
@@ -58,6 +59,14 @@ public class StoreSection {
         this.y = y;
     }
 
+    public float[] getPolygon() {
+        return polygon;
+    }
+
+    public void setPolygon(float[] polygon) {
+        this.polygon = polygon;
+    }
+
     public List<Product> getProducts() {
         return products;
     }
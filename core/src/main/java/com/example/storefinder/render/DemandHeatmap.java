@@ -0,0 +1,141 @@
+package com.example.storefinder.render;
+
+import com.example.storefinder.analytics.SectionDemand;
+import com.example.storefinder.models.SectionRegistry;
+
+/**
+ * Тепловая карта спроса на разделы в низком разрешении.
+ * Каждая ячейка сетки покрывает квадрат схемы со стороной cellSize пикселей; раздел
+ * добавляет в ячейки вокруг своей метки пятно с весом, равным спросу на раздел.
+ * Результат — цвета ARGB, которые достаточно один раз растянуть на схему с фильтрацией:
+ * для схемы 2000x1500 и ячейки 16 пикселей это 125x94 точки, и 500 разделов
+ * укладываются в доли миллисекунды.
+ */
+public final class DemandHeatmap {
+    public static final int DEFAULT_CELL_SIZE = 16;
+    public static final float DEFAULT_RADIUS = 96;
+
+    // Самая горячая точка остается полупрозрачной, чтобы схема под ней читалась
+    private static final int MAX_ALPHA = 170;
+    // Холодный синий -> голубой -> зеленый -> желтый -> красный
+    private static final int[] GRADIENT = {0x0000FF, 0x00FFFF, 0x00FF00, 0xFFFF00, 0xFF0000};
+    private static final int[] PALETTE = buildPalette();
+
+    private final int width;
+    private final int height;
+    private final int cellSize;
+    private final int[] pixels;
+
+    private DemandHeatmap(int width, int height, int cellSize, int[] pixels) {
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+        this.pixels = pixels;
+    }
+
+    /**
+     * Строит тепловую карту.
+     * @param sections Разделы схемы
+     * @param demand Спрос на разделы
+     * @param mapWidth Ширина схемы в пикселях
+     * @param mapHeight Высота схемы в пикселях
+     * @param cellSize Сторона ячейки сетки в пикселях схемы
+     * @param radius Радиус пятна раздела в пикселях схемы
+     * @return Тепловая карта; без спроса все точки прозрачные
+     */
+    public static DemandHeatmap rasterize(SectionRegistry sections, SectionDemand demand,
+                                          int mapWidth, int mapHeight, int cellSize, float radius) {
+        int width = Math.max(1, (mapWidth + cellSize - 1) / cellSize);
+        int height = Math.max(1, (mapHeight + cellSize - 1) / cellSize);
+        float[] heat = new float[width * height];
+        float cellRadius = radius / cellSize;
+        float inverseRadiusSquared = 1 / (cellRadius * cellRadius);
+        int reach = (int) Math.ceil(cellRadius);
+
+        for (int i = 0; i < sections.size(); i++) {
+            float weight = (float) demand.getScoreById(sections.getId(i));
+            if (weight <= 0) continue;
+            // Центр раздела в координатах сетки, центры ячеек смещены на половину ячейки
+            float cx = sections.getX(i) / cellSize - 0.5f;
+            float cy = sections.getY(i) / cellSize - 0.5f;
+            int fromX = Math.max(0, (int) Math.floor(cx) - reach);
+            int toX = Math.min(width - 1, (int) Math.ceil(cx) + reach);
+            int fromY = Math.max(0, (int) Math.floor(cy) - reach);
+            int toY = Math.min(height - 1, (int) Math.ceil(cy) + reach);
+            for (int y = fromY; y <= toY; y++) {
+                float dy = y - cy;
+                int row = y * width;
+                for (int x = fromX; x <= toX; x++) {
+                    float dx = x - cx;
+                    float falloff = 1 - (dx * dx + dy * dy) * inverseRadiusSquared;
+                    if (falloff > 0) {
+                        // Квадрат дает гладкий край пятна без экспоненты
+                        heat[row + x] += weight * falloff * falloff;
+                    }
+                }
+            }
+        }
+
+        float max = 0;
+        for (float value : heat) {
+            if (value > max) max = value;
+        }
+        int[] pixels = new int[heat.length];
+        if (max > 0) {
+            for (int i = 0; i < heat.length; i++) {
+                if (heat[i] <= 0) continue;
+                // Корень растягивает слабый спрос, иначе видна только одна самая популярная точка
+                double level = Math.sqrt(heat[i] / max);
+                pixels[i] = PALETTE[(int) (level * (PALETTE.length - 1))];
+            }
+        }
+        return new DemandHeatmap(width, height, cellSize, pixels);
+    }
+
+    /**
+     * @return Ширина сетки в ячейках
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Высота сетки в ячейках
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return Цвета ARGB (без предварительного умножения на альфу) по строкам сетки
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    private static int[] buildPalette() {
+        int[] palette = new int[256];
+        int segments = GRADIENT.length - 1;
+        for (int i = 0; i < palette.length; i++) {
+            float position = (float) i / (palette.length - 1) * segments;
+            int segment = Math.min(segments - 1, (int) position);
+            float t = position - segment;
+            int from = GRADIENT[segment];
+            int to = GRADIENT[segment + 1];
+            int alpha = Math.round(MAX_ALPHA * (float) i / (palette.length - 1));
+            palette[i] = alpha << 24
+                    | mix(from >> 16 & 0xFF, to >> 16 & 0xFF, t) << 16
+                    | mix(from >> 8 & 0xFF, to >> 8 & 0xFF, t) << 8
+                    | mix(from & 0xFF, to & 0xFF, t);
+        }
+        return palette;
+    }
+
+    private static int mix(int from, int to, float t) {
+        return Math.round(from + (to - from) * t);
+    }
+}
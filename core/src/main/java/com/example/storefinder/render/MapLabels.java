@@ -0,0 +1,49 @@
+package com.example.storefinder.render;
+
+import com.example.storefinder.models.Product;
+
+import java.util.List;
+
+/**
+ * Подписи разделов на схеме магазина.
+ */
+public final class MapLabels {
+
+    // Максимальная длина подписи, чтобы она не выходила за пределы экрана
+    public static final int MAX_LABEL_LENGTH = 25;
+    private static final String ELLIPSIS = "...";
+
+    private MapLabels() {
+    }
+
+    /**
+     * Подпись раздела с выбранным товаром.
+     * @param sectionName Название раздела
+     * @param productName Название товара
+     * @return Текст подписи
+     */
+    public static String productLabel(String sectionName, String productName) {
+        return sectionName + " - " + productName;
+    }
+
+    /**
+     * Подпись раздела со списком найденных в нем товаров, сокращенная до {@link #MAX_LABEL_LENGTH}.
+     * @param sectionName Название раздела
+     * @param products Товары раздела
+     * @return Текст подписи
+     */
+    public static String sectionLabel(String sectionName, List<Product> products) {
+        StringBuilder text = new StringBuilder(sectionName).append(": ");
+        for (int i = 0; i < products.size(); i++) {
+            if (i > 0) text.append(", ");
+            text.append(products.get(i).getName());
+            if (text.length() > MAX_LABEL_LENGTH) break;
+        }
+
+        if (text.length() > MAX_LABEL_LENGTH) {
+            text.setLength(MAX_LABEL_LENGTH - ELLIPSIS.length());
+            text.append(ELLIPSIS);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.storefinder.scan;
+
+/**
+ * Приведение штрихкодов и артикулов к единому виду для хранения и поиска.
+ */
+public final class Barcodes {
+    // Длина самого длинного распространенного кода (GTIN-14) с запасом для артикулов
+    private static final int MAX_LENGTH = 32;
+
+    private Barcodes() {
+    }
+
+    /**
+     * Удаляет пробелы и приводит буквы к верхнему регистру.
+     * Допускаются цифры, латинские буквы, дефис и точка.
+     * @param text Штрихкод или артикул
+     * @return Нормализованный код или null, если код пустой или содержит другие символы
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder code = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ' ' || c == '\t' || c == '\r') {
+                continue;
+            }
+            if (c >= 'a' && c <= 'z') {
+                c = (char) (c - 'a' + 'A');
+            }
+            boolean allowed = (c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || c == '-' || c == '.';
+            if (!allowed) {
+                return null;
+            }
+            code.append(c);
+        }
+        return code.length() > 0 && code.length() <= MAX_LENGTH ? code.toString() : null;
+    }
+}
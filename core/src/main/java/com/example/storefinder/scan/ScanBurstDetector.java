@@ -0,0 +1,88 @@
+package com.example.storefinder.scan;
+
+/**
+ * Отличает ввод сканера штрихкодов от ручного набора на аппаратной клавиатуре.
+ * Сканер в режиме клавиатуры передает код серией символов с интервалом в несколько
+ * миллисекунд и завершает ее клавишей Enter; человек набирает не быстрее
+ * одного символа в 80-100 мс. Символы накапливаются в буфере, пока не станет
+ * ясно, чем они были: кодом (возвращается из {@link #onTerminator(long)})
+ * или ручным вводом (возвращается для передачи в поле ввода).
+ * Время передается вызывающим кодом, поэтому детектор не зависит от Android.
+ */
+public final class ScanBurstDetector {
+    public static final long DEFAULT_MAX_KEY_INTERVAL_MS = 50;
+    public static final int DEFAULT_MIN_LENGTH = 6;
+
+    private final long maxKeyIntervalMs;
+    private final int minLength;
+    private final StringBuilder buffer = new StringBuilder(32);
+    private long lastKeyTime;
+
+    public ScanBurstDetector() {
+        this(DEFAULT_MAX_KEY_INTERVAL_MS, DEFAULT_MIN_LENGTH);
+    }
+
+    /**
+     * @param maxKeyIntervalMs Наибольший интервал между символами кода
+     * @param minLength Наименьшая длина кода
+     */
+    public ScanBurstDetector(long maxKeyIntervalMs, int minLength) {
+        this.maxKeyIntervalMs = maxKeyIntervalMs;
+        this.minLength = minLength;
+    }
+
+    public long getMaxKeyInterval() {
+        return maxKeyIntervalMs;
+    }
+
+    /**
+     * Добавляет символ в буфер.
+     * @param c Символ
+     * @param timeMillis Время нажатия
+     * @return Символы, набранные до паузы (ручной ввод для поля поиска), или null
+     */
+    public String onCharacter(char c, long timeMillis) {
+        String typed = flushIfIdle(timeMillis);
+        buffer.append(c);
+        lastKeyTime = timeMillis;
+        return typed;
+    }
+
+    /**
+     * Обрабатывает Enter.
+     * @param timeMillis Время нажатия
+     * @return Код, если буфер набран сканером, иначе null (буфер остается для {@link #flush()})
+     */
+    public String onTerminator(long timeMillis) {
+        if (buffer.length() < minLength || timeMillis - lastKeyTime > maxKeyIntervalMs) {
+            return null;
+        }
+        String code = buffer.toString();
+        buffer.setLength(0);
+        return code;
+    }
+
+    /**
+     * @param timeMillis Текущее время
+     * @return Буфер, если после последнего символа прошло больше допустимого интервала, иначе null
+     */
+    public String flushIfIdle(long timeMillis) {
+        if (buffer.length() == 0 || timeMillis - lastKeyTime <= maxKeyIntervalMs) {
+            return null;
+        }
+        return flush();
+    }
+
+    /**
+     * Очищает буфер.
+     * @return Накопленные символы или null, если буфер пуст
+     */
+    public String flush() {
+        if (buffer.length() == 0) {
+            return null;
+        }
+        String text = buffer.toString();
+        buffer.setLength(0);
+        return text;
+    }
+}
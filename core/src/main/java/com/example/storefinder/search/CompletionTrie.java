@@ -0,0 +1,398 @@
+package com.example.storefinder.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Словарь автодополнения названий товаров с весами (например, числом выборов товара).
+ * Названия хранятся в сжатом префиксном дереве: цепочки узлов с одним потомком
+ * склеены в одно ребро, а узлы уложены в параллельные массивы в порядке обхода в ширину,
+ * так что потомки узла занимают непрерывный диапазон и объектов на узел не создается.
+ * В каждом узле хранится наибольший вес в его поддереве: поиск K лучших дополнений
+ * раскрывает узлы по убыванию этого веса и не заходит в поддеревья, которые
+ * не могут попасть в результат.
+ * <p>
+ * Названия сравниваются без учета регистра и различия "е"/"ё" ({@link RussianNormalizer#fold(String)});
+ * исходное написание восстанавливается по двухбитной маске на символ.
+ * Словарь неизменяем и может читаться из нескольких потоков; для обновления весов
+ * строится новый словарь через {@link Builder}.
+ */
+public final class CompletionTrie {
+    private static final int NO_KEY = -1;
+
+    // Маска написания символа названия
+    private static final int UPPER_CASE = 1;
+    private static final int YO = 2;
+
+    // Метка ребра, ведущего в узел i: labels[labelStarts[i]..labelStarts[i + 1])
+    private final char[] labels;
+    private final int[] labelStarts;
+    // Потомки узла i: узлы firstChildren[i]..firstChildren[i + 1] - 1
+    private final int[] firstChildren;
+    private final int[] maxWeights;
+    // Номер названия, которое заканчивается в узле, или NO_KEY
+    private final int[] keys;
+
+    private final int[] weights;
+    // Маска написания названия k начинается с символа spellingStarts[k]
+    private final int[] spellingStarts;
+    private final long[] spelling;
+
+    private CompletionTrie(char[] labels, int[] labelStarts, int[] firstChildren, int[] maxWeights, int[] keys,
+                           int[] weights, int[] spellingStarts, long[] spelling) {
+        this.labels = labels;
+        this.labelStarts = labelStarts;
+        this.firstChildren = firstChildren;
+        this.maxWeights = maxWeights;
+        this.keys = keys;
+        this.weights = weights;
+        this.spellingStarts = spellingStarts;
+        this.spelling = spelling;
+    }
+
+    /**
+     * Дополнение: название в исходном написании и его вес.
+     */
+    public static final class Completion {
+        private final String text;
+        private final int weight;
+
+        Completion(String text, int weight) {
+            this.text = text;
+            this.weight = weight;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * @return Количество различных названий
+     */
+    public int size() {
+        return weights.length;
+    }
+
+    /**
+     * Возвращает названия, начинающиеся с указанного текста, по убыванию веса;
+     * при равном весе - в алфавитном порядке.
+     * @param prefix Введенный текст
+     * @param limit Наибольшее количество дополнений
+     * @return Дополнения (пустой список, если ничего не найдено)
+     */
+    public List<Completion> complete(String prefix, int limit) {
+        String folded = RussianNormalizer.fold(prefix.trim());
+        if (limit <= 0 || weights.length == 0) {
+            return Collections.emptyList();
+        }
+
+        // Спуск по введенному тексту; текст может закончиться в середине ребра
+        StringBuilder base = new StringBuilder(folded.length() + 16);
+        int node = 0;
+        int matched = 0;
+        while (matched < folded.length()) {
+            int child = findChild(node, folded.charAt(matched));
+            if (child < 0) {
+                return Collections.emptyList();
+            }
+            int labelEnd = labelStarts[child + 1];
+            for (int i = labelStarts[child]; i < labelEnd; i++, matched++) {
+                if (matched < folded.length() && labels[i] != folded.charAt(matched)) {
+                    return Collections.emptyList();
+                }
+            }
+            base.append(labels, labelStarts[child], labelEnd - labelStarts[child]);
+            node = child;
+        }
+
+        List<Completion> result = new ArrayList<>(Math.min(limit, 16));
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(32, Candidate.ORDER);
+        int sequence = 0;
+        queue.add(new Candidate(node, maxWeights[node], false, null, sequence++));
+        while (!queue.isEmpty() && result.size() < limit) {
+            Candidate candidate = queue.poll();
+            if (candidate.terminal) {
+                result.add(toCompletion(candidate, base));
+                continue;
+            }
+            int current = candidate.node;
+            if (keys[current] != NO_KEY) {
+                queue.add(new Candidate(current, weights[keys[current]], true, candidate.parent, sequence++));
+            }
+            // Потомки добавляются с конца, чтобы при равных весах первым раскрывался первый по алфавиту
+            for (int child = firstChildren[current + 1] - 1; child >= firstChildren[current]; child--) {
+                queue.add(new Candidate(child, maxWeights[child], false, candidate, sequence++));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Оценивает объем кучи, занимаемый словарем (с учетом заголовков массивов).
+     * @return Размер в байтах
+     */
+    public long estimateHeapBytes() {
+        final int arrayHeader = 16;
+        return 8 * arrayHeader
+                + 2L * labels.length
+                + 4L * labelStarts.length
+                + 4L * firstChildren.length
+                + 4L * maxWeights.length
+                + 4L * keys.length
+                + 4L * weights.length
+                + 4L * spellingStarts.length
+                + 8L * spelling.length;
+    }
+
+    private int findChild(int node, char c) {
+        // Метки потомков отсортированы по первому символу
+        int low = firstChildren[node];
+        int high = firstChildren[node + 1] - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            char first = labels[labelStarts[middle]];
+            if (first < c) {
+                low = middle + 1;
+            } else if (first > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private Completion toCompletion(Candidate terminal, StringBuilder base) {
+        // Метки от узла, до которого дошел ввод, собираются по цепочке кандидатов
+        int suffixLength = 0;
+        for (Candidate c = terminal; c.parent != null; c = c.parent) {
+            suffixLength += labelLength(c.node);
+        }
+        char[] text = new char[base.length() + suffixLength];
+        base.getChars(0, base.length(), text, 0);
+        int end = text.length;
+        for (Candidate c = terminal; c.parent != null; c = c.parent) {
+            int length = labelLength(c.node);
+            end -= length;
+            System.arraycopy(labels, labelStarts[c.node], text, end, length);
+        }
+
+        int key = keys[terminal.node];
+        int start = spellingStarts[key];
+        for (int i = 0; i < text.length; i++) {
+            int bit = 2 * (start + i);
+            int mark = (int) (spelling[bit >>> 6] >>> (bit & 63)) & 3;
+            if ((mark & YO) != 0) {
+                text[i] = 'ё';
+            }
+            if ((mark & UPPER_CASE) != 0) {
+                text[i] = Character.toUpperCase(text[i]);
+            }
+        }
+        return new Completion(new String(text), weights[key]);
+    }
+
+    private int labelLength(int node) {
+        return labelStarts[node + 1] - labelStarts[node];
+    }
+
+    /**
+     * Узел или законченное название в очереди поиска.
+     */
+    private static final class Candidate {
+        static final Comparator<Candidate> ORDER = new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate a, Candidate b) {
+                if (a.weight != b.weight) {
+                    return a.weight > b.weight ? -1 : 1;
+                }
+                // Законченное название раньше узлов с тем же весом, затем - последний добавленный
+                if (a.terminal != b.terminal) {
+                    return a.terminal ? -1 : 1;
+                }
+                return Integer.compare(b.sequence, a.sequence);
+            }
+        };
+
+        final int node;
+        final int weight;
+        final boolean terminal;
+        // Кандидат родительского узла; null у узла, до которого дошел ввод
+        final Candidate parent;
+        final int sequence;
+
+        Candidate(int node, int weight, boolean terminal, Candidate parent, int sequence) {
+            this.node = node;
+            this.weight = weight;
+            this.terminal = terminal;
+            this.parent = parent;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Построитель словаря. Не потокобезопасен; обычно заполняется и строится в фоновом потоке.
+     */
+    public static final class Builder {
+        // Исходное написание и вес по приведенному названию
+        private final Map<String, String> spellings = new HashMap<>();
+        private final Map<String, Integer> keyWeights = new HashMap<>();
+
+        /**
+         * Добавляет название. Для повторяющихся без учета регистра названий сохраняется
+         * написание и вес варианта с наибольшим весом.
+         * @param name Название товара
+         * @param weight Неотрицательный вес, например число выборов товара
+         * @return Этот построитель
+         */
+        public Builder add(String name, int weight) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                return this;
+            }
+            String key = RussianNormalizer.fold(trimmed);
+            Integer previous = keyWeights.get(key);
+            if (previous == null || previous < weight) {
+                keyWeights.put(key, weight);
+                spellings.put(key, trimmed);
+            }
+            return this;
+        }
+
+        /**
+         * Строит словарь.
+         * @return Неизменяемый словарь
+         */
+        public CompletionTrie build() {
+            String[] sortedKeys = keyWeights.keySet().toArray(new String[0]);
+            Arrays.sort(sortedKeys);
+            int[] weights = new int[sortedKeys.length];
+            int[] spellingStarts = new int[sortedKeys.length];
+            int totalChars = 0;
+            for (int k = 0; k < sortedKeys.length; k++) {
+                weights[k] = keyWeights.get(sortedKeys[k]);
+                spellingStarts[k] = totalChars;
+                totalChars += sortedKeys[k].length();
+            }
+            long[] spelling = new long[(2 * totalChars + 63) / 64];
+            for (int k = 0; k < sortedKeys.length; k++) {
+                String original = spellings.get(sortedKeys[k]);
+                for (int i = 0; i < original.length(); i++) {
+                    char c = original.charAt(i);
+                    int mark = (Character.isUpperCase(c) ? UPPER_CASE : 0)
+                            | (Character.toLowerCase(c) == 'ё' ? YO : 0);
+                    int bit = 2 * (spellingStarts[k] + i);
+                    spelling[bit >>> 6] |= (long) mark << (bit & 63);
+                }
+            }
+
+            BuildNode root = sortedKeys.length > 0 ? buildNode(sortedKeys, weights, 0, sortedKeys.length, 0, 0)
+                    : new BuildNode(0, 0, 0);
+            return pack(root, sortedKeys, weights, spellingStarts, spelling);
+        }
+
+        /**
+         * Строит узел для названий [from, to), у которых совпадают первые depth символов.
+         */
+        private static BuildNode buildNode(String[] keys, int[] weights, int from, int to, int depth,
+                                           int labelStart) {
+            BuildNode node = new BuildNode(from, labelStart, depth);
+            if (keys[from].length() == depth) {
+                node.key = from;
+                node.maxWeight = weights[from];
+                from++;
+            }
+            while (from < to) {
+                char c = keys[from].charAt(depth);
+                int groupEnd = from + 1;
+                while (groupEnd < to && keys[groupEnd].charAt(depth) == c) {
+                    groupEnd++;
+                }
+                // Общее начало группы отсортированных названий совпадает с общим началом первого и последнего
+                String first = keys[from];
+                String last = keys[groupEnd - 1];
+                int common = depth + 1;
+                while (common < first.length() && common < last.length()
+                        && first.charAt(common) == last.charAt(common)) {
+                    common++;
+                }
+                BuildNode child = buildNode(keys, weights, from, groupEnd, common, depth);
+                node.children.add(child);
+                node.maxWeight = Math.max(node.maxWeight, child.maxWeight);
+                from = groupEnd;
+            }
+            return node;
+        }
+
+        private static CompletionTrie pack(BuildNode root, String[] keys, int[] weights, int[] spellingStarts,
+                                           long[] spelling) {
+            List<BuildNode> order = new ArrayList<>();
+            order.add(root);
+            int labelChars = 0;
+            for (int i = 0; i < order.size(); i++) {
+                BuildNode node = order.get(i);
+                labelChars += node.depth - node.labelStart;
+                order.addAll(node.children);
+            }
+
+            int count = order.size();
+            char[] labels = new char[labelChars];
+            int[] labelStarts = new int[count + 1];
+            int[] firstChildren = new int[count + 1];
+            int[] maxWeights = new int[count];
+            int[] nodeKeys = new int[count];
+            int labelEnd = 0;
+            int nextChild = 1;
+            for (int i = 0; i < count; i++) {
+                BuildNode node = order.get(i);
+                labelStarts[i] = labelEnd;
+                if (node.depth > node.labelStart) {
+                    keys[node.firstKey].getChars(node.labelStart, node.depth, labels, labelEnd);
+                    labelEnd += node.depth - node.labelStart;
+                }
+                firstChildren[i] = nextChild;
+                nextChild += node.children.size();
+                maxWeights[i] = node.maxWeight;
+                nodeKeys[i] = node.key;
+            }
+            labelStarts[count] = labelEnd;
+            firstChildren[count] = nextChild;
+            return new CompletionTrie(labels, labelStarts, firstChildren, maxWeights, nodeKeys,
+                    weights, spellingStarts, spelling);
+        }
+    }
+
+    /**
+     * Узел дерева во время построения. Метка узла - символы [labelStart, depth) его первого названия.
+     */
+    private static final class BuildNode {
+        final int firstKey;
+        final int labelStart;
+        final int depth;
+        final List<BuildNode> children = new ArrayList<>(2);
+        int key = NO_KEY;
+        int maxWeight;
+
+        BuildNode(int firstKey, int labelStart, int depth) {
+            this.firstKey = firstKey;
+            this.labelStart = labelStart;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.storefinder.search;
+
+import com.example.storefinder.models.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Поисковый индекс товаров в памяти с той же семантикой, что и поиск в базе данных:
+ * кандидаты выбираются по началу слова (самое длинное слово запроса),
+ * затем проверяются {@link ProductMatcher} и ранжируются по {@link SearchRanking#ORDER}.
+ * Слова хранятся в отсортированном массиве, а списки товаров для слов - в одном
+ * массиве со смещениями, поэтому выборка по началу слова - это двоичный поиск и обход диапазона.
+ * Не потокобезопасен: заполняется и читается из одного потока.
+ */
+public class InMemoryProductIndex {
+    private final List<Product> products = new ArrayList<>();
+    private final List<String> namesNorm = new ArrayList<>();
+    private final List<String> aliasesNorm = new ArrayList<>();
+
+    // Списки товаров по словам до вызова build()
+    private Map<String, int[]> pendingPostings = new HashMap<>();
+
+    // Упорядоченные слова; товары слова terms[i] - postings[offsets[i]..offsets[i + 1])
+    private String[] terms = new String[0];
+    private int[] offsets = {0};
+    private int[] postings = new int[0];
+
+    // Отметка последнего запроса для каждого товара, чтобы не проверять товар дважды
+    private int[] visitedStamp = new int[0];
+    private int stamp;
+
+    /**
+     * Добавляет товар без синонимов.
+     * @param product Товар
+     */
+    public void add(Product product) {
+        add(product, null);
+    }
+
+    /**
+     * Добавляет товар вместе с синонимами.
+     * @param product Товар
+     * @param aliases Синонимы товара или null
+     */
+    public void add(Product product, List<String> aliases) {
+        int index = products.size();
+        List<String> nameTerms = RussianNormalizer.tokens(product.getName());
+        products.add(product);
+        namesNorm.add(ProductMatcher.joinTerms(nameTerms));
+        addPostings(nameTerms, index);
+
+        String joinedAliases = null;
+        if (aliases != null && !aliases.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            for (String alias : aliases) {
+                List<String> aliasTerms = RussianNormalizer.tokens(alias);
+                if (aliasTerms.isEmpty()) continue;
+                if (builder.length() > 0) builder.append(ProductMatcher.ALIAS_SEPARATOR);
+                builder.append(ProductMatcher.joinTerms(aliasTerms));
+                addPostings(aliasTerms, index);
+            }
+            joinedAliases = builder.toString();
+        }
+        aliasesNorm.add(joinedAliases);
+    }
+
+    private void addPostings(List<String> termList, int productIndex) {
+        for (String term : termList) {
+            int[] list = pendingPostings.get(term);
+            if (list == null) {
+                // list[0] - количество элементов
+                list = new int[4];
+                pendingPostings.put(term, list);
+            } else if (list[0] + 1 == list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+                pendingPostings.put(term, list);
+            }
+            if (list[0] > 0 && list[list[0]] == productIndex) {
+                continue; // Повтор слова в том же товаре
+            }
+            list[++list[0]] = productIndex;
+        }
+    }
+
+    /**
+     * Упорядочивает слова, добавленные после предыдущего вызова.
+     * Вызывается автоматически перед поиском.
+     */
+    public void build() {
+        if (pendingPostings.isEmpty()) {
+            return;
+        }
+
+        Map<String, int[]> merged = new HashMap<>(pendingPostings);
+        for (int i = 0; i < terms.length; i++) {
+            int[] pending = merged.get(terms[i]);
+            int existing = offsets[i + 1] - offsets[i];
+            int pendingCount = pending == null ? 0 : pending[0];
+            int[] list = new int[existing + pendingCount + 1];
+            System.arraycopy(postings, offsets[i], list, 1, existing);
+            if (pending != null) {
+                System.arraycopy(pending, 1, list, existing + 1, pendingCount);
+            }
+            list[0] = existing + pendingCount;
+            merged.put(terms[i], list);
+        }
+
+        String[] sortedTerms = merged.keySet().toArray(new String[0]);
+        Arrays.sort(sortedTerms);
+        int total = 0;
+        for (int[] list : merged.values()) {
+            total += list[0];
+        }
+
+        int[] newOffsets = new int[sortedTerms.length + 1];
+        int[] newPostings = new int[total];
+        int position = 0;
+        for (int i = 0; i < sortedTerms.length; i++) {
+            int[] list = merged.get(sortedTerms[i]);
+            newOffsets[i] = position;
+            System.arraycopy(list, 1, newPostings, position, list[0]);
+            position += list[0];
+        }
+        newOffsets[sortedTerms.length] = position;
+
+        terms = sortedTerms;
+        offsets = newOffsets;
+        postings = newPostings;
+        pendingPostings = new HashMap<>();
+        visitedStamp = Arrays.copyOf(visitedStamp, products.size());
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    /**
+     * Ищет товары и возвращает страницу результатов, отсортированных по релевантности.
+     * @param query Поисковый запрос
+     * @param offset Количество пропускаемых лучших результатов
+     * @param limit Максимальный размер страницы
+     * @return Список найденных товаров
+     */
+    public List<Product> search(String query, int offset, int limit) {
+        List<Product> page = new ArrayList<>();
+        List<String> queryTerms = RussianNormalizer.tokens(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return page;
+        }
+        build();
+
+        String normalizedQuery = ProductMatcher.joinTerms(queryTerms);
+        TopKCollector<SearchRanking.Match> collector =
+                new TopKCollector<>(offset + limit, SearchRanking.ORDER);
+
+        int currentStamp = nextStamp();
+        String driver = ProductMatcher.driverTerm(queryTerms);
+        for (int t = lowerBound(driver); t < terms.length && terms[t].startsWith(driver); t++) {
+            for (int p = offsets[t]; p < offsets[t + 1]; p++) {
+                int index = postings[p];
+                if (visitedStamp[index] == currentStamp) continue;
+                visitedStamp[index] = currentStamp;
+
+                int tier = ProductMatcher.bestMatchTier(namesNorm.get(index), aliasesNorm.get(index),
+                        queryTerms, normalizedQuery);
+                if (tier != SearchRanking.NO_MATCH) {
+                    collector.offer(new SearchRanking.Match(products.get(index), tier));
+                }
+            }
+        }
+
+        List<SearchRanking.Match> ranked = collector.toSortedList();
+        for (int i = offset; i < ranked.size(); i++) {
+            page.add(ranked.get(i).getProduct());
+        }
+        return page;
+    }
+
+    /**
+     * Подсчитывает количество товаров, подходящих под поисковый запрос.
+     * @param query Поисковый запрос
+     * @return Количество найденных товаров
+     */
+    public int count(String query) {
+        List<String> queryTerms = RussianNormalizer.tokens(query);
+        if (queryTerms.isEmpty()) {
+            return 0;
+        }
+        build();
+
+        int count = 0;
+        int currentStamp = nextStamp();
+        String driver = ProductMatcher.driverTerm(queryTerms);
+        for (int t = lowerBound(driver); t < terms.length && terms[t].startsWith(driver); t++) {
+            for (int p = offsets[t]; p < offsets[t + 1]; p++) {
+                int index = postings[p];
+                if (visitedStamp[index] == currentStamp) continue;
+                visitedStamp[index] = currentStamp;
+
+                if (ProductMatcher.bestMatchTier(namesNorm.get(index), aliasesNorm.get(index),
+                        queryTerms, null) != SearchRanking.NO_MATCH) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int nextStamp() {
+        if (++stamp == 0) {
+            // Переполнение счетчика: сбрасываем отметки
+            Arrays.fill(visitedStamp, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = terms.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (terms[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.storefinder.search;
+
+import java.util.List;
+
+/**
+ * Проверка совпадения нормализованного запроса с названием товара и его синонимами.
+ * Используется и при поиске в базе данных, и в {@link InMemoryProductIndex},
+ * поэтому оба варианта поиска ранжируют результаты одинаково.
+ */
+public final class ProductMatcher {
+
+    // Разделитель нормализованных синонимов в одной строке
+    public static final char ALIAS_SEPARATOR = '|';
+
+    private ProductMatcher() {
+    }
+
+    /**
+     * Склеивает нормализованные слова в строку, разделенную пробелами.
+     * @param terms Нормализованные слова
+     * @return Нормализованный текст
+     */
+    public static String joinTerms(List<String> terms) {
+        StringBuilder builder = new StringBuilder();
+        for (String term : terms) {
+            if (builder.length() > 0) builder.append(' ');
+            builder.append(term);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Выбирает самое длинное (самое избирательное) слово запроса
+     * для выборки кандидатов по индексу слов.
+     * @param queryTerms Нормализованные слова запроса (не пустой список)
+     * @return Слово для выборки кандидатов
+     */
+    public static String driverTerm(List<String> queryTerms) {
+        String driver = queryTerms.get(0);
+        for (String term : queryTerms) {
+            if (term.length() > driver.length()) {
+                driver = term;
+            }
+        }
+        return driver;
+    }
+
+    /**
+     * Вычисляет лучший уровень совпадения запроса с названием товара или одним из его синонимов.
+     * @param normalizedName Нормализованное название товара
+     * @param aliasesNorm Нормализованные синонимы товара через {@link #ALIAS_SEPARATOR} или null
+     * @param queryTerms Нормализованные слова запроса
+     * @param normalizedQuery Нормализованный запрос или null, если уровень не нужен
+     * @return Уровень совпадения или {@link SearchRanking#NO_MATCH}
+     */
+    public static int bestMatchTier(String normalizedName, String aliasesNorm,
+                                    List<String> queryTerms, String normalizedQuery) {
+        int best = SearchRanking.NO_MATCH;
+        if (containsAllTerms(normalizedName, queryTerms)) {
+            best = textMatchTier(normalizedName, normalizedQuery);
+        }
+        if (aliasesNorm == null || best == SearchRanking.TIER_EXACT) {
+            return best;
+        }
+
+        int start = 0;
+        while (start <= aliasesNorm.length()) {
+            int end = aliasesNorm.indexOf(ALIAS_SEPARATOR, start);
+            if (end < 0) end = aliasesNorm.length();
+
+            String alias = aliasesNorm.substring(start, end);
+            if (containsAllTerms(alias, queryTerms)) {
+                int tier = textMatchTier(alias, normalizedQuery);
+                if (best == SearchRanking.NO_MATCH || tier < best) {
+                    best = tier;
+                }
+            }
+            start = end + 1;
+        }
+        return best;
+    }
+
+    private static int textMatchTier(String normalizedText, String normalizedQuery) {
+        if (normalizedQuery == null) {
+            return SearchRanking.TIER_SUBSTRING;
+        }
+        int tier = SearchRanking.matchTier(normalizedText, normalizedQuery);
+        // Все слова запроса найдены, но в другом порядке
+        return tier == SearchRanking.NO_MATCH ? SearchRanking.TIER_SUBSTRING : tier;
+    }
+
+    /**
+     * Проверяет, что для каждого слова запроса в названии есть слово с таким началом.
+     * @param normalizedName Нормализованное название товара
+     * @param queryTerms Нормализованные слова запроса
+     * @return true, если найдены все слова запроса
+     */
+    public static boolean containsAllTerms(String normalizedName, List<String> queryTerms) {
+        if (normalizedName == null || normalizedName.isEmpty()) {
+            return false;
+        }
+        for (String term : queryTerms) {
+            boolean found = false;
+            int index = normalizedName.indexOf(term);
+            while (index >= 0) {
+                if (index == 0 || normalizedName.charAt(index - 1) == ' ') {
+                    found = true;
+                    break;
+                }
+                index = normalizedName.indexOf(term, index + 1);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.storefinder.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Нормализует названия товаров и поисковые запросы на русском языке.
+ * Этапы: приведение к нижнему регистру, замена "ё" на "е", разбиение на слова,
+ * удаление стоп-слов и отсечение типичных окончаний (облегченный стемминг).
+ * Названия нормализуются один раз при записи в базу данных,
+ * запросы - при каждом поиске, после чего сравнение сводится к поиску по индексу.
+ */
+public final class RussianNormalizer {
+
+    // Минимальная длина основы слова после отсечения окончания
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "и", "в", "во", "на", "с", "со", "для", "по", "из", "к", "ко", "о", "об",
+            "от", "до", "за", "без", "а", "или", "не", "у", "при", "под", "над"));
+
+    // Окончания упорядочены по убыванию длины: отсекается самое длинное подходящее
+    private static final String[] ENDINGS = {
+            "иями", "ями", "ами", "ыми", "ими", "ого", "его", "ому", "ему", "ых", "их",
+            "ая", "яя", "ое", "ее", "ые", "ие", "ый", "ий", "ой", "ей", "ую", "юю",
+            "ам", "ям", "ах", "ях", "ом", "ем", "ов", "ев", "ью", "ия", "ии",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    private RussianNormalizer() {
+    }
+
+    /**
+     * Нормализует текст и возвращает его слова в исходном порядке.
+     * @param text Название товара или поисковый запрос
+     * @return Список нормализованных слов (может быть пустым)
+     */
+    public static List<String> tokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> tokens = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(foldChar(c));
+            } else if (word.length() > 0) {
+                String token = word.toString();
+                word.setLength(0);
+                if (!STOP_WORDS.contains(token)) {
+                    tokens.add(stem(token));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Нормализует текст в строку слов, разделенных одним пробелом.
+     * @param text Название товара или поисковый запрос
+     * @return Нормализованная строка (может быть пустой)
+     */
+    public static String normalize(String text) {
+        List<String> tokens = tokens(text);
+        if (tokens.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder builder = new StringBuilder(text.length());
+        for (String token : tokens) {
+            if (builder.length() > 0) builder.append(' ');
+            builder.append(token);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Приводит текст к нижнему регистру и заменяет "ё" на "е", сохраняя длину и остальные символы.
+     * В отличие от {@link #normalize(String)} подходит для сравнения по началу строки при вводе.
+     * @param text Текст
+     * @return Текст той же длины
+     */
+    public static String fold(String text) {
+        char[] chars = new char[text.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = foldChar(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Отсекает окончание у слова, записанного кириллицей.
+     * @param word Слово в нижнем регистре
+     * @return Основа слова
+     */
+    static String stem(String word) {
+        if (word.length() <= MIN_STEM_LENGTH || !isCyrillic(word.charAt(word.length() - 1))) {
+            return word;
+        }
+        for (String ending : ENDINGS) {
+            if (word.length() - ending.length() >= MIN_STEM_LENGTH && word.endsWith(ending)) {
+                return word.substring(0, word.length() - ending.length());
+            }
+        }
+        return word;
+    }
+
+    private static char foldChar(char c) {
+        char lower = Character.toLowerCase(c);
+        return lower == 'ё' ? 'е' : lower;
+    }
+
+    private static boolean isCyrillic(char c) {
+        return c >= 'а' && c <= 'я';
+    }
+}
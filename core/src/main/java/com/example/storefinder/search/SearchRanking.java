@@ -0,0 +1,152 @@
+package com.example.storefinder.search;
+
+import com.example.storefinder.models.Product;
+
+import java.util.Comparator;
+
+/**
+ * Правила ранжирования результатов поиска товаров.
+ * Порядок: точное совпадение, совпадение с начала названия, совпадение с начала слова,
+ * совпадение внутри слова; при равенстве - более короткое название, затем более популярный товар,
+ * затем меньший идентификатор. Порядок полностью определяется ключом {@link Key},
+ * поэтому следующую страницу можно выбрать по ключу последнего результата предыдущей.
+ */
+public final class SearchRanking {
+    public static final int TIER_EXACT = 0;
+    public static final int TIER_PREFIX = 1;
+    public static final int TIER_WORD_PREFIX = 2;
+    public static final int TIER_SUBSTRING = 3;
+    public static final int NO_MATCH = -1;
+
+    private SearchRanking() {
+    }
+
+    /**
+     * Определяет уровень совпадения названия с запросом.
+     * @param foldedName Название товара в нижнем регистре (например, после {@link RussianNormalizer})
+     * @param foldedQuery Запрос, приведенный к тому же виду
+     * @return Один из уровней TIER_* или {@link #NO_MATCH}
+     */
+    public static int matchTier(String foldedName, String foldedQuery) {
+        if (foldedQuery.isEmpty()) {
+            return NO_MATCH;
+        }
+        if (foldedName.equals(foldedQuery)) {
+            return TIER_EXACT;
+        }
+
+        int index = foldedName.indexOf(foldedQuery);
+        if (index < 0) {
+            return NO_MATCH;
+        }
+        if (index == 0) {
+            return TIER_PREFIX;
+        }
+
+        // Ищем вхождение, которое начинается с границы слова
+        while (index > 0) {
+            if (!Character.isLetterOrDigit(foldedName.charAt(index - 1))) {
+                return TIER_WORD_PREFIX;
+            }
+            index = foldedName.indexOf(foldedQuery, index + 1);
+        }
+        return TIER_SUBSTRING;
+    }
+
+    /**
+     * Товар вместе с уровнем совпадения, вычисленным для конкретного запроса.
+     */
+    public static final class Match {
+        private final Product product;
+        private final int tier;
+
+        public Match(Product product, int tier) {
+            this.product = product;
+            this.tier = tier;
+        }
+
+        public Product getProduct() {
+            return product;
+        }
+
+        public int getTier() {
+            return tier;
+        }
+    }
+
+    /**
+     * Ключ ранжирования: все, от чего зависит место результата в выдаче, без самого товара.
+     * Куча из ключей не держит названия товаров, а товары загружаются только для нужной страницы.
+     */
+    public static final class Key {
+        private final int tier;
+        private final int nameLength;
+        private final int popularity;
+        private final long id;
+
+        public Key(int tier, int nameLength, int popularity, long id) {
+            this.tier = tier;
+            this.nameLength = nameLength;
+            this.popularity = popularity;
+            this.id = id;
+        }
+
+        public int getTier() {
+            return tier;
+        }
+
+        public int getNameLength() {
+            return nameLength;
+        }
+
+        public int getPopularity() {
+            return popularity;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public String toString() {
+            return tier + "/" + nameLength + "/" + popularity + "/" + id;
+        }
+    }
+
+    /**
+     * Порядок ключей: лучший результат считается меньшим.
+     */
+    public static final Comparator<Key> KEY_ORDER = new Comparator<Key>() {
+        @Override
+        public int compare(Key a, Key b) {
+            return SearchRanking.compare(a.tier, a.nameLength, a.popularity, a.id,
+                    b.tier, b.nameLength, b.popularity, b.id);
+        }
+    };
+
+    /**
+     * Порядок результатов: лучший результат считается меньшим. Совпадает с {@link #KEY_ORDER}.
+     */
+    public static final Comparator<Match> ORDER = new Comparator<Match>() {
+        @Override
+        public int compare(Match a, Match b) {
+            return SearchRanking.compare(a.tier, a.product.getName().length(), a.product.getPopularity(),
+                    a.product.getId(), b.tier, b.product.getName().length(), b.product.getPopularity(),
+                    b.product.getId());
+        }
+    };
+
+    private static int compare(int tierA, int lengthA, int popularityA, long idA,
+                               int tierB, int lengthB, int popularityB, long idB) {
+        if (tierA != tierB) {
+            return tierA < tierB ? -1 : 1;
+        }
+        if (lengthA != lengthB) {
+            return lengthA < lengthB ? -1 : 1;
+        }
+        if (popularityA != popularityB) {
+            return popularityA > popularityB ? -1 : 1;
+        }
+        return idA < idB ? -1 : (idA == idB ? 0 : 1);
+    }
+}
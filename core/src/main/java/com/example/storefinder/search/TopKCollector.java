@@ -0,0 +1,64 @@
+package com.example.storefinder.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Отбирает K лучших элементов потока с помощью ограниченной кучи.
+ * Память и время на элемент зависят только от K, а не от размера потока.
+ * @param <T> Тип элементов
+ */
+public class TopKCollector<T> {
+    private final int capacity;
+    private final Comparator<? super T> comparator;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param capacity Максимальное количество сохраняемых элементов
+     * @param comparator Порядок элементов: меньший элемент считается лучшим
+     */
+    public TopKCollector(int capacity, Comparator<? super T> comparator) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.comparator = comparator;
+        // В вершине кучи находится худший из сохраненных элементов
+        this.heap = new PriorityQueue<>(Math.min(capacity, 256), Collections.reverseOrder(comparator));
+    }
+
+    /**
+     * Предлагает элемент коллектору.
+     * @param item Элемент
+     * @return true, если элемент попал в число лучших
+     */
+    public boolean offer(T item) {
+        if (heap.size() < capacity) {
+            heap.add(item);
+            return true;
+        }
+        if (comparator.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Возвращает сохраненные элементы, отсортированные от лучшего к худшему.
+     * @return Отсортированный список
+     */
+    public List<T> toSortedList() {
+        List<T> result = new ArrayList<>(heap);
+        Collections.sort(result, comparator);
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.storefinder.shopping;
+
+import com.example.storefinder.models.Product;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сопоставляет список покупок (по одному товару в строке) с товарами магазина
+ * и группирует найденные товары по разделам.
+ * Повторяющиеся строки ищутся один раз.
+ */
+public class ShoppingListResolver {
+
+    /**
+     * Источник лучшего совпадения для строки списка покупок.
+     */
+    public interface ProductLookup {
+        /**
+         * @param name Строка списка покупок
+         * @return Лучший найденный товар или null
+         */
+        Product findBest(String name);
+    }
+
+    /**
+     * Результат сопоставления списка покупок.
+     */
+    public static final class Result {
+        private final List<Product> found = new ArrayList<>();
+        private final Map<Long, List<Product>> productsBySection = new LinkedHashMap<>();
+        private final List<String> missing = new ArrayList<>();
+
+        /** Найденные товары в порядке строк списка. */
+        public List<Product> getFound() {
+            return found;
+        }
+
+        /** Найденные товары, сгруппированные по разделам в порядке первого появления. */
+        public Map<Long, List<Product>> getProductsBySection() {
+            return productsBySection;
+        }
+
+        /** Строки, для которых товар не найден. */
+        public List<String> getMissing() {
+            return missing;
+        }
+    }
+
+    private final ProductLookup lookup;
+
+    public ShoppingListResolver(ProductLookup lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Сопоставляет список покупок с товарами.
+     * @param text Текст списка, по одному товару в строке
+     * @return Результат сопоставления
+     */
+    public Result resolve(String text) {
+        Result result = new Result();
+        Map<String, Product> resolved = new HashMap<>();
+
+        for (String line : text.split("\n")) {
+            String productName = line.trim();
+            if (productName.isEmpty()) continue;
+
+            Product product;
+            if (resolved.containsKey(productName)) {
+                product = resolved.get(productName);
+            } else {
+                product = lookup.findBest(productName);
+                resolved.put(productName, product);
+            }
+
+            if (product == null) {
+                result.missing.add(productName);
+                continue;
+            }
+            result.found.add(product);
+
+            // Группировка товаров по разделам
+            List<Product> sectionProducts = result.productsBySection.get(product.getSectionId());
+            if (sectionProducts == null) {
+                sectionProducts = new ArrayList<>();
+                result.productsBySection.put(product.getSectionId(), sectionProducts);
+            }
+            sectionProducts.add(product);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.storefinder.sync;
+
+import java.util.List;
+
+/**
+ * Получатель изменений каталога по мере разбора ответа сервера.
+ * Изменения идентифицируются внешними идентификаторами сервера, поэтому повторное
+ * применение той же дельты (например, после прерванной синхронизации) безопасно.
+ */
+public interface CatalogDeltaHandler {
+    /**
+     * Вызывается перед первым изменением.
+     * @param version Версия каталога после применения дельты
+     * @param fullSnapshot true, если ответ содержит весь каталог: записи,
+     *                     не упомянутые в нем, нужно удалить
+     */
+    void begin(long version, boolean fullSnapshot);
+
+    void upsertSection(String externalId, String name, float x, float y);
+
+    void removeSection(String externalId);
+
+    /**
+     * Добавляет или изменяет товар.
+     * @param externalId Внешний идентификатор товара
+     * @param name Название
+     * @param sectionExternalId Внешний идентификатор раздела
+     * @param aliases Синонимы или null, если синонимы не изменились
+     * @return false, если товар не может быть применен (например, его раздел неизвестен
+     *         или в названии нет слов). Если причина может исчезнуть при следующей синхронизации
+     *         (раздел неизвестен), {@link #end()} не сохраняет новую версию, и дельта запрашивается заново
+     */
+    boolean upsertProduct(String externalId, String name, String sectionExternalId, List<String> aliases);
+
+    void removeProduct(String externalId);
+
+    /**
+     * Вызывается после последнего изменения; здесь сохраняется новая версия каталога,
+     * если не было товаров, которые стоит запросить заново.
+     */
+    void end();
+
+    /**
+     * Вызывается, если разбор прерван ошибкой. Уже примененные изменения остаются,
+     * версия каталога не меняется, поэтому следующая синхронизация повторит дельту.
+     */
+    void abort();
+}
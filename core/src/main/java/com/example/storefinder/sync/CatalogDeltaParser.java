@@ -0,0 +1,175 @@
+package com.example.storefinder.sync;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый разбор дельты каталога. Формат ответа сервера:
+ * <pre>
+ * {
+ *   "version": 42,
+ *   "full": false,
+ *   "sections": [{"id": "s1", "name": "Молочные продукты", "x": 120.0, "y": 80.5}],
+ *   "removedSections": ["s9"],
+ *   "products": [{"id": "p1", "name": "Молоко", "section": "s1", "aliases": ["молочко"]}],
+ *   "removedProducts": ["p7"]
+ * }
+ * </pre>
+ * Поля "version" и "full" должны предшествовать спискам изменений; разделы — товарам,
+ * которые на них ссылаются. Неизвестные поля пропускаются.
+ */
+public final class CatalogDeltaParser {
+
+    private CatalogDeltaParser() {
+    }
+
+    /**
+     * Разбирает дельту и передает изменения получателю по одному, не накапливая их в памяти.
+     * @param reader Тело ответа
+     * @param handler Получатель изменений
+     * @throws IOException Ошибка чтения или некорректный формат
+     */
+    public static void parse(Reader reader, CatalogDeltaHandler handler) throws IOException {
+        JsonPullParser json = new JsonPullParser(reader);
+        long version = -1;
+        boolean fullSnapshot = false;
+        boolean begun = false;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String field = json.nextName();
+            switch (field) {
+                case "version":
+                    version = json.nextLong();
+                    break;
+                case "full":
+                    fullSnapshot = json.nextBoolean();
+                    break;
+                case "sections":
+                case "removedSections":
+                case "products":
+                case "removedProducts":
+                    if (!begun) {
+                        begin(handler, version, fullSnapshot);
+                        begun = true;
+                    }
+                    parseChanges(json, field, handler);
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (!begun) {
+            begin(handler, version, fullSnapshot);
+        }
+        handler.end();
+    }
+
+    private static void begin(CatalogDeltaHandler handler, long version, boolean fullSnapshot)
+            throws IOException {
+        if (version < 0) {
+            throw new IOException("Поле version должно предшествовать изменениям");
+        }
+        handler.begin(version, fullSnapshot);
+    }
+
+    private static void parseChanges(JsonPullParser json, String field, CatalogDeltaHandler handler)
+            throws IOException {
+        if (json.nextNullIfPresent()) {
+            return;
+        }
+        json.beginArray();
+        while (json.hasNext()) {
+            switch (field) {
+                case "sections":
+                    parseSection(json, handler);
+                    break;
+                case "products":
+                    parseProduct(json, handler);
+                    break;
+                case "removedSections":
+                    handler.removeSection(json.nextString());
+                    break;
+                default:
+                    handler.removeProduct(json.nextString());
+            }
+        }
+        json.endArray();
+    }
+
+    private static void parseSection(JsonPullParser json, CatalogDeltaHandler handler) throws IOException {
+        String id = null;
+        String name = null;
+        float x = 0;
+        float y = 0;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                case "x":
+                    x = (float) json.nextDouble();
+                    break;
+                case "y":
+                    y = (float) json.nextDouble();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (id == null || name == null) {
+            throw new IOException("У раздела нет id или name");
+        }
+        handler.upsertSection(id, name, x, y);
+    }
+
+    private static void parseProduct(JsonPullParser json, CatalogDeltaHandler handler) throws IOException {
+        String id = null;
+        String name = null;
+        String section = null;
+        List<String> aliases = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id":
+                    id = json.nextString();
+                    break;
+                case "name":
+                    name = json.nextString();
+                    break;
+                case "section":
+                    section = json.nextString();
+                    break;
+                case "aliases":
+                    if (json.nextNullIfPresent()) break;
+                    aliases = new ArrayList<>();
+                    json.beginArray();
+                    while (json.hasNext()) {
+                        aliases.add(json.nextString());
+                    }
+                    json.endArray();
+                    break;
+                default:
+                    json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (id == null || name == null || section == null) {
+            throw new IOException("У товара нет id, name или section");
+        }
+        handler.upsertProduct(id, name, section, aliases);
+    }
+}
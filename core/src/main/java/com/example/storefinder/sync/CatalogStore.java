@@ -0,0 +1,23 @@
+package com.example.storefinder.sync;
+
+/**
+ * Локальный каталог, который синхронизируется с сервером.
+ */
+public interface CatalogStore {
+    /**
+     * @return Версия последней полностью примененной дельты или 0, если синхронизации не было
+     */
+    long getSyncVersion();
+
+    /**
+     * @return ETag ответа, из которого получена текущая версия, или null
+     */
+    String getSyncEtag();
+
+    /**
+     * Начинает применение дельты. Получатель сохраняет версию и ETag в {@link CatalogDeltaHandler#end()}.
+     * @param etag ETag ответа сервера или null
+     * @return Получатель изменений
+     */
+    CatalogDeltaHandler openDelta(String etag);
+}
@@ -0,0 +1,207 @@
+package com.example.storefinder.sync;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Клиент синхронизации каталога с центральным сервером.
+ * Запрашивает у сервера изменения после локальной версии каталога
+ * (GET endpoint?since=версия) с условным заголовком If-None-Match. Если каталог
+ * не изменился, сервер отвечает 304 без тела; иначе дельта разбирается потоком
+ * и сразу применяется к {@link CatalogStore}, поэтому стоимость синхронизации
+ * пропорциональна объему изменений, а не размеру каталога.
+ */
+public class CatalogSyncClient {
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private static final LatencyHistogram SYNC_LATENCY = Metrics.histogram("sync.request");
+    private static final Counter SYNC_CHANGES = Metrics.counter("sync.changes");
+    private static final Counter SYNC_SKIPPED = Metrics.counter("sync.skipped_products");
+
+    private final String endpoint;
+
+    /**
+     * @param endpoint Адрес дельт каталога, например https://example.com/stores/12/catalog
+     */
+    public CatalogSyncClient(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Загружает и применяет изменения каталога.
+     * @param store Локальный каталог
+     * @return Результат синхронизации
+     * @throws IOException Ошибка сети, ответ с кодом ошибки или некорректная дельта
+     */
+    public Result sync(CatalogStore store) throws IOException {
+        long start = Metrics.startTimer();
+        long localVersion = store.getSyncVersion();
+        String etag = store.getSyncEtag();
+
+        URL url = new URL(endpoint + (endpoint.indexOf('?') < 0 ? '?' : '&') + "since=" + localVersion);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(READ_TIMEOUT_MS);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (etag != null) {
+                connection.setRequestProperty("If-None-Match", etag);
+            }
+
+            int code = connection.getResponseCode();
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return new Result(false, localVersion, new int[CountingHandler.COUNTS]);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Сервер каталога ответил " + code);
+            }
+
+            InputStream body = new BufferedInputStream(connection.getInputStream());
+            if ("gzip".equalsIgnoreCase(connection.getHeaderField("Content-Encoding"))) {
+                body = new GZIPInputStream(body);
+            }
+            CountingHandler handler = new CountingHandler(store.openDelta(connection.getHeaderField("ETag")));
+            try (Reader reader = new InputStreamReader(body, "UTF-8")) {
+                CatalogDeltaParser.parse(reader, handler);
+            } catch (IOException | RuntimeException e) {
+                handler.abort();
+                throw e;
+            }
+            SYNC_CHANGES.add(handler.total());
+            SYNC_SKIPPED.add(handler.counts[CountingHandler.SKIPPED_PRODUCTS]);
+            return new Result(true, handler.version, handler.counts);
+        } finally {
+            connection.disconnect();
+            SYNC_LATENCY.recordSince(start);
+        }
+    }
+
+    /**
+     * Результат синхронизации.
+     */
+    public static final class Result {
+        private final boolean modified;
+        private final long version;
+        private final int[] counts;
+
+        Result(boolean modified, long version, int[] counts) {
+            this.modified = modified;
+            this.version = version;
+            this.counts = counts;
+        }
+
+        /**
+         * @return false, если сервер ответил, что каталог не изменился
+         */
+        public boolean isModified() {
+            return modified;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public int getUpsertedSections() {
+            return counts[CountingHandler.UPSERTED_SECTIONS];
+        }
+
+        public int getRemovedSections() {
+            return counts[CountingHandler.REMOVED_SECTIONS];
+        }
+
+        public int getUpsertedProducts() {
+            return counts[CountingHandler.UPSERTED_PRODUCTS];
+        }
+
+        public int getRemovedProducts() {
+            return counts[CountingHandler.REMOVED_PRODUCTS];
+        }
+
+        /**
+         * @return Количество товаров, которые не удалось применить (например, с неизвестным разделом).
+         *         Если оно больше нуля, версия каталога не сохранена и дельта будет запрошена снова
+         */
+        public int getSkippedProducts() {
+            return counts[CountingHandler.SKIPPED_PRODUCTS];
+        }
+    }
+
+    /**
+     * Передает изменения локальному каталогу и подсчитывает их.
+     */
+    private static final class CountingHandler implements CatalogDeltaHandler {
+        static final int UPSERTED_SECTIONS = 0;
+        static final int REMOVED_SECTIONS = 1;
+        static final int UPSERTED_PRODUCTS = 2;
+        static final int REMOVED_PRODUCTS = 3;
+        static final int SKIPPED_PRODUCTS = 4;
+        static final int COUNTS = 5;
+
+        private final CatalogDeltaHandler target;
+        private final int[] counts = new int[COUNTS];
+        private long version;
+
+        CountingHandler(CatalogDeltaHandler target) {
+            this.target = target;
+        }
+
+        int total() {
+            return counts[0] + counts[1] + counts[2] + counts[3];
+        }
+
+        @Override
+        public void begin(long version, boolean fullSnapshot) {
+            this.version = version;
+            target.begin(version, fullSnapshot);
+        }
+
+        @Override
+        public void upsertSection(String externalId, String name, float x, float y) {
+            counts[UPSERTED_SECTIONS]++;
+            target.upsertSection(externalId, name, x, y);
+        }
+
+        @Override
+        public void removeSection(String externalId) {
+            counts[REMOVED_SECTIONS]++;
+            target.removeSection(externalId);
+        }
+
+        @Override
+        public boolean upsertProduct(String externalId, String name, String sectionExternalId,
+                                     List<String> aliases) {
+            boolean applied = target.upsertProduct(externalId, name, sectionExternalId, aliases);
+            counts[applied ? UPSERTED_PRODUCTS : SKIPPED_PRODUCTS]++;
+            return applied;
+        }
+
+        @Override
+        public void removeProduct(String externalId) {
+            counts[REMOVED_PRODUCTS]++;
+            target.removeProduct(externalId);
+        }
+
+        @Override
+        public void end() {
+            target.end();
+        }
+
+        @Override
+        public void abort() {
+            target.abort();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.storefinder.sync;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Потоковый разбор JSON без построения дерева объектов (по образцу android.util.JsonReader,
+ * который недоступен в модуле core). Значения читаются по мере продвижения по документу,
+ * поэтому память не зависит от размера ответа. Разбор нестрогий: запятые между
+ * элементами не обязательны, что допустимо для ответов собственного сервера и файлов раскладки.
+ */
+public final class JsonPullParser {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder text = new StringBuilder();
+    private int position;
+    private int limit;
+    private long offset;
+
+    public JsonPullParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    public void beginObject() throws IOException {
+        expect('{');
+    }
+
+    public void endObject() throws IOException {
+        expect('}');
+    }
+
+    public void beginArray() throws IOException {
+        expect('[');
+    }
+
+    public void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return true, если в текущем объекте или массиве есть еще элементы
+     */
+    public boolean hasNext() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == ',') {
+            position++;
+            c = peekNonWhitespace();
+        }
+        return c != '}' && c != ']' && c != -1;
+    }
+
+    /**
+     * @return true, если следующее значение — массив
+     */
+    public boolean peekArray() throws IOException {
+        return peekNonWhitespace() == '[';
+    }
+
+    public String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * @return true, если следующее значение — null (оно пропускается)
+     */
+    public boolean nextNullIfPresent() throws IOException {
+        if (peekNonWhitespace() != 'n') {
+            return false;
+        }
+        expectLiteral("null");
+        return true;
+    }
+
+    public String nextString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    case 'r': text.append('\r'); break;
+                    case 'b': text.append('\b'); break;
+                    case 'f': text.append('\f'); break;
+                    case 'u': text.append(readUnicodeEscape()); break;
+                    case -1: throw error("незавершенная строка");
+                    default: text.append((char) c);
+                }
+            } else if (c == -1) {
+                throw error("незавершенная строка");
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    public long nextLong() throws IOException {
+        String number = readNumber();
+        try {
+            return Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error("ожидалось целое число, получено " + number);
+        }
+    }
+
+    public double nextDouble() throws IOException {
+        String number = readNumber();
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("ожидалось число, получено " + number);
+        }
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peekNonWhitespace() == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        expectLiteral("false");
+        return false;
+    }
+
+    /**
+     * Пропускает следующее значение любого типа вместе с вложенными элементами.
+     */
+    public void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        switch (c) {
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case '"':
+                nextString();
+                break;
+            case 't':
+            case 'f':
+                nextBoolean();
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                readNumber();
+        }
+    }
+
+    private String readNumber() throws IOException {
+        peekNonWhitespace();
+        text.setLength(0);
+        while (true) {
+            int c = peek();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                text.append((char) c);
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (text.length() == 0) {
+            throw error("ожидалось значение");
+        }
+        return text.toString();
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("некорректная escape-последовательность");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        peekNonWhitespace();
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("ожидалось " + literal);
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = peekNonWhitespace();
+        if (c == ',' && expected != ':') {
+            position++;
+            c = peekNonWhitespace();
+        }
+        if (c != expected) {
+            throw error("ожидался символ '" + expected + "'");
+        }
+        position++;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                position++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        offset += limit;
+        position = 0;
+        limit = 0;
+        int count = reader.read(buffer, 0, buffer.length);
+        if (count <= 0) {
+            return false;
+        }
+        limit = count;
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException("Некорректный JSON (символ " + (offset + position) + "): " + message);
+    }
+}
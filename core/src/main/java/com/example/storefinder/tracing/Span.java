@@ -0,0 +1,45 @@
+package com.example.storefinder.tracing;
+
+/**
+ * Участок трассировки: один этап обработки действия пользователя.
+ * Открывается через {@link Tracer#begin(long, String)} и закрывается {@link #end()}
+ * в том же потоке; повторный вызов {@link #end()} ничего не делает.
+ */
+public class Span {
+    /** Пустой участок, который возвращается при выключенной трассировке. */
+    static final Span NONE = new Span(0, null, 0);
+
+    private final long interactionId;
+    private final String stage;
+    private final long startNanos;
+    private boolean ended;
+
+    Span(long interactionId, String stage, long startNanos) {
+        this.interactionId = interactionId;
+        this.stage = stage;
+        this.startNanos = startNanos;
+    }
+
+    public long getInteractionId() {
+        return interactionId;
+    }
+
+    /**
+     * Завершает участок и передает его длительность трассировщику.
+     */
+    public void end() {
+        if (interactionId == 0 || ended) {
+            return;
+        }
+        ended = true;
+        Tracer.end(this, System.nanoTime() - startNanos);
+    }
+
+    String getStage() {
+        return stage;
+    }
+
+    long getStartNanos() {
+        return startNanos;
+    }
+}
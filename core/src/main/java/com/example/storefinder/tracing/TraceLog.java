@@ -0,0 +1,220 @@
+package com.example.storefinder.tracing;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал участков трассировки с ротацией по размеру.
+ * Участки складываются в очередь и записываются отдельным потоком, поэтому
+ * вызывающий поток (обычно главный) не ждет диска. При переполнении очереди
+ * участки отбрасываются и учитываются в {@link #getDroppedCount()}.
+ * <p>
+ * Текущий файл называется trace.log, предыдущие — trace.log.1, trace.log.2 и т.д.
+ * Строка журнала: время записи (мс от эпохи), идентификатор действия, этап,
+ * начало этапа и длительность в микросекундах, разделенные табуляцией.
+ * Журнал разбирается {@link TraceSummary}.
+ */
+public class TraceLog implements TraceSink, Closeable {
+    public static final String FILE_NAME = "trace.log";
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long POLL_TIMEOUT_MS = 500;
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    // Доступны только потоку записи
+    private Writer writer;
+    private long fileBytes;
+
+    /**
+     * Создает журнал и запускает поток записи.
+     * @param directory Каталог журнала
+     * @param maxFileBytes Размер файла, после которого начинается новый файл
+     * @param maxFiles Общее количество хранимых файлов, включая текущий
+     */
+    public TraceLog(File directory, long maxFileBytes, int maxFiles) {
+        if (maxFiles < 1) {
+            throw new IllegalArgumentException("maxFiles должен быть положительным");
+        }
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "trace-log");
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
+    }
+
+    @Override
+    public void onSpan(long interactionId, String stage, long startNanos, long durationNanos) {
+        if (closed || !queue.offer(new Entry(System.currentTimeMillis(), interactionId, stage,
+                startNanos, durationNanos))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Количество участков, потерянных из-за переполнения очереди или ошибок записи
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Возвращает существующие файлы журнала от самого старого к текущему.
+     * @return Файлы журнала
+     */
+    public List<File> getFiles() {
+        List<File> files = new ArrayList<>();
+        for (int i = maxFiles - 1; i >= 0; i--) {
+            File file = file(i);
+            if (file.exists()) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Записывает оставшиеся в очереди участки и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        StringBuilder line = new StringBuilder(96);
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (entry == null) {
+                if (closed) break;
+                continue;
+            }
+            // Все накопившиеся участки записываются одной пачкой
+            while (entry != null) {
+                write(entry, line);
+                entry = queue.poll();
+            }
+            flush();
+        }
+        closeWriter();
+    }
+
+    private void write(Entry entry, StringBuilder line) {
+        line.setLength(0);
+        line.append(entry.wallMillis).append('\t')
+                .append(entry.interactionId).append('\t')
+                .append(entry.stage).append('\t')
+                .append(entry.startNanos / 1000).append('\t')
+                .append(entry.durationNanos / 1000).append('\n');
+        try {
+            if (writer == null) {
+                open();
+            } else if (fileBytes >= maxFileBytes) {
+                rotate();
+            }
+            writer.write(line.toString());
+            // Имена этапов состоят из ASCII, поэтому длина строки равна числу байтов
+            fileBytes += line.length();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            closeWriter();
+        }
+    }
+
+    private void open() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + directory);
+        }
+        File current = file(0);
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(current, true), "UTF-8"));
+        fileBytes = current.length();
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        File oldest = file(maxFiles - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Не удалось удалить " + oldest);
+        }
+        for (int i = maxFiles - 2; i >= 0; i--) {
+            File file = file(i);
+            if (file.exists() && !file.renameTo(file(i + 1))) {
+                throw new IOException("Не удалось переименовать " + file);
+            }
+        }
+        open();
+    }
+
+    private void flush() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // Данные, которые не удалось дописать, уже не восстановить
+        }
+        writer = null;
+    }
+
+    private File file(int index) {
+        return new File(directory, index == 0 ? FILE_NAME : FILE_NAME + "." + index);
+    }
+
+    private static final class Entry {
+        final long wallMillis;
+        final long interactionId;
+        final String stage;
+        final long startNanos;
+        final long durationNanos;
+
+        Entry(long wallMillis, long interactionId, String stage, long startNanos, long durationNanos) {
+            this.wallMillis = wallMillis;
+            this.interactionId = interactionId;
+            this.stage = stage;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+}
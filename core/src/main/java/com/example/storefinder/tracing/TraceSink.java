@@ -0,0 +1,15 @@
+package com.example.storefinder.tracing;
+
+/**
+ * Получатель завершенных участков трассировки.
+ * Вызывается в потоке, завершившем участок, поэтому не должен блокироваться.
+ */
+public interface TraceSink {
+    /**
+     * @param interactionId Идентификатор действия пользователя
+     * @param stage Имя этапа, например "search.query"
+     * @param startNanos Начало этапа по {@link System#nanoTime()}
+     * @param durationNanos Длительность этапа в наносекундах
+     */
+    void onSpan(long interactionId, String stage, long startNanos, long durationNanos);
+}
@@ -0,0 +1,279 @@
+package com.example.storefinder.tracing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Сводка журнала {@link TraceLog}: процентили длительности каждого этапа
+ * и сквозной задержки действий по видам (префиксу имени этапа до точки).
+ * Сквозная задержка действия — от начала первого до конца последнего его этапа.
+ * Процентили точные (по рангу), так как сводка строится вне устройства.
+ * <p>
+ * Запуск на скачанном с устройства журнале:
+ * <pre>
+ * java -cp core.jar com.example.storefinder.tracing.TraceSummary trace/
+ * </pre>
+ */
+public class TraceSummary {
+    private static final String END_TO_END_PREFIX = "e2e.";
+
+    private final Map<String, Samples> stages = new TreeMap<>();
+    private final Map<Long, Interaction> interactions = new HashMap<>();
+    private int malformedLines;
+
+    /**
+     * Добавляет строку журнала. Пустые строки и строки с комментарием (#) пропускаются,
+     * нераспознанные строки учитываются в {@link #getMalformedLines()}.
+     * @param line Строка журнала
+     */
+    public void addLine(String line) {
+        if (line.isEmpty() || line.charAt(0) == '#') {
+            return;
+        }
+        String[] fields = line.split("\t");
+        if (fields.length != 5) {
+            malformedLines++;
+            return;
+        }
+        long interactionId;
+        long startMicros;
+        long durationMicros;
+        try {
+            interactionId = Long.parseLong(fields[1]);
+            startMicros = Long.parseLong(fields[3]);
+            durationMicros = Long.parseLong(fields[4]);
+        } catch (NumberFormatException e) {
+            malformedLines++;
+            return;
+        }
+        String stage = fields[2];
+
+        Samples samples = stages.get(stage);
+        if (samples == null) {
+            samples = new Samples();
+            stages.put(stage, samples);
+        }
+        samples.add(durationMicros);
+
+        Interaction interaction = interactions.get(interactionId);
+        if (interaction == null) {
+            interaction = new Interaction(kindOf(stage), startMicros, startMicros + durationMicros);
+            interactions.put(interactionId, interaction);
+        } else {
+            interaction.startMicros = Math.min(interaction.startMicros, startMicros);
+            interaction.endMicros = Math.max(interaction.endMicros, startMicros + durationMicros);
+        }
+    }
+
+    /**
+     * Добавляет все строки из потока.
+     * @param reader Поток журнала
+     * @throws IOException Ошибка чтения
+     */
+    public void read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            addLine(line);
+        }
+    }
+
+    /**
+     * Добавляет файл журнала или все файлы trace.log* из каталога.
+     * @param file Файл или каталог
+     * @throws IOException Ошибка чтения
+     */
+    public void readFile(File file) throws IOException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) return;
+            for (File child : files) {
+                if (child.getName().startsWith(TraceLog.FILE_NAME)) {
+                    readFile(child);
+                }
+            }
+            return;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8")) {
+            read(reader);
+        }
+    }
+
+    public int getMalformedLines() {
+        return malformedLines;
+    }
+
+    /**
+     * @return Имена этапов в алфавитном порядке
+     */
+    public Set<String> getStages() {
+        return stages.keySet();
+    }
+
+    /**
+     * Возвращает статистику длительности этапа.
+     * @param stage Имя этапа
+     * @return Статистика или null, если этап не встречался
+     */
+    public Stats stage(String stage) {
+        Samples samples = stages.get(stage);
+        return samples != null ? samples.stats() : null;
+    }
+
+    /**
+     * Возвращает статистику сквозной задержки действий одного вида.
+     * @param kind Вид действия, например "search"
+     * @return Статистика или null, если таких действий не было
+     */
+    public Stats endToEnd(String kind) {
+        return endToEnd().get(kind);
+    }
+
+    /**
+     * Формирует текстовый отчет: по строке на этап и на вид действия, значения в миллисекундах.
+     * @return Отчет
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "%-32s %8s %9s %9s %9s %9s%n",
+                "stage", "n", "p50", "p95", "p99", "max"));
+        for (Map.Entry<String, Samples> entry : stages.entrySet()) {
+            appendRow(report, entry.getKey(), entry.getValue().stats());
+        }
+        for (Map.Entry<String, Stats> entry : endToEnd().entrySet()) {
+            appendRow(report, END_TO_END_PREFIX + entry.getKey(), entry.getValue());
+        }
+        if (malformedLines > 0) {
+            report.append("# нераспознанных строк: ").append(malformedLines).append('\n');
+        }
+        return report.toString();
+    }
+
+    private Map<String, Stats> endToEnd() {
+        Map<String, Samples> byKind = new TreeMap<>();
+        for (Interaction interaction : interactions.values()) {
+            Samples samples = byKind.get(interaction.kind);
+            if (samples == null) {
+                samples = new Samples();
+                byKind.put(interaction.kind, samples);
+            }
+            samples.add(interaction.endMicros - interaction.startMicros);
+        }
+        Map<String, Stats> result = new TreeMap<>();
+        for (Map.Entry<String, Samples> entry : byKind.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stats());
+        }
+        return result;
+    }
+
+    private static void appendRow(StringBuilder report, String name, Stats stats) {
+        report.append(String.format(Locale.US, "%-32s %8d %9.2f %9.2f %9.2f %9.2f%n",
+                name, stats.getCount(), stats.getP50Micros() / 1000.0, stats.getP95Micros() / 1000.0,
+                stats.getP99Micros() / 1000.0, stats.getMaxMicros() / 1000.0));
+    }
+
+    private static String kindOf(String stage) {
+        int dot = stage.indexOf('.');
+        return dot > 0 ? stage.substring(0, dot) : stage;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Использование: TraceSummary <файл или каталог журнала>...");
+            System.exit(1);
+        }
+        TraceSummary summary = new TraceSummary();
+        for (String arg : args) {
+            summary.readFile(new File(arg));
+        }
+        System.out.print(summary.format());
+    }
+
+    /**
+     * Статистика длительностей; значения в микросекундах.
+     */
+    public static final class Stats {
+        private final int count;
+        private final long p50Micros;
+        private final long p95Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        Stats(int count, long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+            this.count = count;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP95Micros() {
+            return p95Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    /**
+     * Растущий массив значений без упаковки в Long.
+     */
+    private static final class Samples {
+        private long[] values = new long[64];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        Stats stats() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return new Stats(size, rank(sorted, 0.50), rank(sorted, 0.95), rank(sorted, 0.99),
+                    sorted[size - 1]);
+        }
+
+        private static long rank(long[] sorted, double quantile) {
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+    }
+
+    private static final class Interaction {
+        final String kind;
+        long startMicros;
+        long endMicros;
+
+        Interaction(String kind, long startMicros, long endMicros) {
+            this.kind = kind;
+            this.startMicros = startMicros;
+            this.endMicros = endMicros;
+        }
+    }
+}
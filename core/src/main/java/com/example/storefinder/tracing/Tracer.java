@@ -0,0 +1,108 @@
+package com.example.storefinder.tracing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Трассировка этапов обработки действий пользователя.
+ * Каждое действие (нажатие клавиши в поиске, выбор товара) получает идентификатор
+ * {@link #newInteraction()}, которым помечаются все его этапы, в том числе
+ * выполняемые в фоновых потоках. Этапы одного действия называются с общим префиксом
+ * ("search.query", "search.adapter_update"), по нему считается сквозная задержка.
+ * Пока получатель не установлен (по умолчанию), участки не создаются и часы не читаются.
+ * <pre>
+ * long interaction = Tracer.newInteraction();
+ * Span span = Tracer.begin(interaction, "highlight.draw");
+ * ...
+ * span.end();
+ * </pre>
+ */
+public final class Tracer {
+
+    /**
+     * Системная трассировка платформы (например, android.os.Trace), в которую
+     * дублируются открытые участки для просмотра в профилировщике.
+     */
+    public interface SystemTrace {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    // Идентификаторы начинаются с текущего времени, чтобы не повторяться
+    // между запусками приложения в одном журнале
+    private static final AtomicLong NEXT_INTERACTION = new AtomicLong(System.currentTimeMillis() * 1000);
+
+    private static volatile TraceSink sink;
+    private static volatile SystemTrace systemTrace;
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return sink != null;
+    }
+
+    /**
+     * Устанавливает получатель участков.
+     * @param traceSink Получатель или null, чтобы выключить трассировку
+     */
+    public static void setSink(TraceSink traceSink) {
+        sink = traceSink;
+    }
+
+    /**
+     * Устанавливает системную трассировку. Должна вызываться до открытия первых участков.
+     * @param trace Системная трассировка или null
+     */
+    public static void setSystemTrace(SystemTrace trace) {
+        systemTrace = trace;
+    }
+
+    /**
+     * Начинает новое действие пользователя.
+     * @return Идентификатор действия или 0, если трассировка выключена
+     */
+    public static long newInteraction() {
+        return sink != null ? NEXT_INTERACTION.incrementAndGet() : 0;
+    }
+
+    /**
+     * Открывает участок этапа.
+     * @param interactionId Идентификатор действия; при 0 участок не записывается
+     * @param stage Имя этапа
+     * @return Участок, который нужно закрыть вызовом {@link Span#end()}
+     */
+    public static Span begin(long interactionId, String stage) {
+        if (interactionId == 0 || sink == null) {
+            return Span.NONE;
+        }
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.beginSection(stage);
+        }
+        return new Span(interactionId, stage, System.nanoTime());
+    }
+
+    /**
+     * Записывает этап, время которого измерено без открытия участка,
+     * например ожидание в очереди главного потока.
+     * @param interactionId Идентификатор действия; при 0 этап не записывается
+     * @param stage Имя этапа
+     * @param startNanos Начало этапа по {@link System#nanoTime()}
+     * @param durationNanos Длительность этапа
+     */
+    public static void record(long interactionId, String stage, long startNanos, long durationNanos) {
+        TraceSink current = sink;
+        if (interactionId != 0 && current != null) {
+            current.onSpan(interactionId, stage, startNanos, durationNanos);
+        }
+    }
+
+    static void end(Span span, long durationNanos) {
+        SystemTrace trace = systemTrace;
+        if (trace != null) {
+            trace.endSection();
+        }
+        record(span.getInteractionId(), span.getStage(), span.getStartNanos(), durationNanos);
+    }
+}
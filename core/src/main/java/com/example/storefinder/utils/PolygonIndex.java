@@ -0,0 +1,178 @@
+package com.example.storefinder.utils;
+
+/**
+ * Пространственный индекс контуров для поиска контура, содержащего точку.
+ * Область, покрытая контурами, делится на равномерную сетку; в каждой ячейке хранятся
+ * номера контуров, ограничивающие прямоугольники которых ее пересекают. Ячейки записаны
+ * подряд в одном массиве (начало ячейки i — {@code cellStarts[i]}), поэтому поиск
+ * проверяет только контуры своей ячейки и не создает объектов.
+ * Индекс неизменяем; при изменении контуров строится заново.
+ */
+public class PolygonIndex {
+    public static final int NOT_FOUND = -1;
+
+    // Среднее количество контуров на ячейку, под которое подбирается размер сетки
+    private static final int ITEMS_PER_CELL = 2;
+    private static final int MAX_GRID_SIDE = 256;
+
+    private final float[][] polygons;
+    // Ограничивающие прямоугольники: minX, minY, maxX, maxY для каждого контура
+    private final float[] bounds;
+    private final float originX;
+    private final float originY;
+    private final float cellWidth;
+    private final float cellHeight;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStarts;
+    private final int[] cellItems;
+
+    /**
+     * @param polygons Контуры (x0, y0, x1, y1, ...); null и контуры меньше чем из трех вершин пропускаются
+     * @param count Количество используемых элементов массива
+     */
+    public PolygonIndex(float[][] polygons, int count) {
+        this.polygons = polygons;
+        this.bounds = new float[4 * count];
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        int indexed = 0;
+        for (int i = 0; i < count; i++) {
+            float[] polygon = polygons[i];
+            if (!isPolygon(polygon)) {
+                // Пустой прямоугольник не попадает ни в одну ячейку
+                bounds[4 * i] = Float.POSITIVE_INFINITY;
+                bounds[4 * i + 2] = Float.NEGATIVE_INFINITY;
+                continue;
+            }
+            float left = polygon[0];
+            float top = polygon[1];
+            float right = left;
+            float bottom = top;
+            for (int j = 2; j + 1 < polygon.length; j += 2) {
+                left = Math.min(left, polygon[j]);
+                right = Math.max(right, polygon[j]);
+                top = Math.min(top, polygon[j + 1]);
+                bottom = Math.max(bottom, polygon[j + 1]);
+            }
+            bounds[4 * i] = left;
+            bounds[4 * i + 1] = top;
+            bounds[4 * i + 2] = right;
+            bounds[4 * i + 3] = bottom;
+            minX = Math.min(minX, left);
+            minY = Math.min(minY, top);
+            maxX = Math.max(maxX, right);
+            maxY = Math.max(maxY, bottom);
+            indexed++;
+        }
+
+        int side = (int) Math.ceil(Math.sqrt(indexed / (double) ITEMS_PER_CELL));
+        side = Math.max(1, Math.min(MAX_GRID_SIDE, side));
+        columns = side;
+        rows = side;
+        originX = indexed > 0 ? minX : 0;
+        originY = indexed > 0 ? minY : 0;
+        // Ячейка ненулевого размера даже для вырожденной области
+        cellWidth = indexed > 0 ? Math.max((maxX - minX) / columns, Float.MIN_NORMAL) : 1;
+        cellHeight = indexed > 0 ? Math.max((maxY - minY) / rows, Float.MIN_NORMAL) : 1;
+
+        // Первый проход считает контуры в ячейках, второй раскладывает их по местам
+        cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++) {
+            forEachCell(i, cellStarts, null);
+        }
+        for (int cell = 0, offset = 0; cell <= columns * rows; cell++) {
+            int cellCount = cell < columns * rows ? cellStarts[cell] : 0;
+            cellStarts[cell] = offset;
+            offset += cellCount;
+        }
+        cellItems = new int[cellStarts[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < count; i++) {
+            forEachCell(i, fill, cellItems);
+        }
+    }
+
+    /**
+     * Находит контур, содержащий точку. Если точку содержат несколько контуров,
+     * возвращается контур с наименьшим номером.
+     * @param x Координата X
+     * @param y Координата Y
+     * @return Номер контура или {@link #NOT_FOUND}
+     */
+    public int find(float x, float y) {
+        int column = (int) Math.floor((x - originX) / cellWidth);
+        int row = (int) Math.floor((y - originY) / cellHeight);
+        // Точка на правой и нижней границе области относится к крайней ячейке
+        if (column == columns) column--;
+        if (row == rows) row--;
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return NOT_FOUND;
+        }
+        int cell = row * columns + column;
+        for (int k = cellStarts[cell]; k < cellStarts[cell + 1]; k++) {
+            int i = cellItems[k];
+            if (x >= bounds[4 * i] && x <= bounds[4 * i + 2] && y >= bounds[4 * i + 1] && y <= bounds[4 * i + 3]
+                    && PolygonIndex.contains(polygons[i], x, y)) {
+                return i;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Проверяет, лежит ли точка внутри контура (правило четности пересечений).
+     * @param polygon Вершины контура (x0, y0, x1, y1, ...)
+     * @param x Координата X
+     * @param y Координата Y
+     * @return true, если точка внутри
+     */
+    public static boolean contains(float[] polygon, float x, float y) {
+        boolean inside = false;
+        int points = polygon.length / 2;
+        for (int i = 0, j = points - 1; i < points; j = i++) {
+            float xi = polygon[2 * i];
+            float yi = polygon[2 * i + 1];
+            float xj = polygon[2 * j];
+            float yj = polygon[2 * j + 1];
+            if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static boolean isPolygon(float[] polygon) {
+        return polygon != null && polygon.length >= 6;
+    }
+
+    /**
+     * Обходит ячейки, которые пересекает прямоугольник контура: без массива элементов
+     * увеличивает счетчики ячеек, с массивом — записывает номер контура в следующее место ячейки.
+     */
+    private void forEachCell(int item, int[] counters, int[] items) {
+        if (bounds[4 * item] > bounds[4 * item + 2]) {
+            return;
+        }
+        int firstColumn = clamp((int) Math.floor((bounds[4 * item] - originX) / cellWidth), columns);
+        int lastColumn = clamp((int) Math.floor((bounds[4 * item + 2] - originX) / cellWidth), columns);
+        int firstRow = clamp((int) Math.floor((bounds[4 * item + 1] - originY) / cellHeight), rows);
+        int lastRow = clamp((int) Math.floor((bounds[4 * item + 3] - originY) / cellHeight), rows);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                if (items == null) {
+                    counters[cell]++;
+                } else {
+                    items[cellStarts[cell] + counters[cell]++] = item;
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
@@ -0,0 +1,352 @@
+package com.example.storefinder.writeback;
+
+import com.example.storefinder.metrics.Counter;
+import com.example.storefinder.metrics.LatencyHistogram;
+import com.example.storefinder.metrics.Metrics;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Очередь отложенной записи правок оператора с групповой фиксацией.
+ * Каждая одиночная вставка в своей транзакции стоит синхронизации журнала с диском;
+ * очередь собирает правки, поступившие за {@code maxDelayMs} после первой из них
+ * (или пока их не наберется {@code maxBatch}), и фиксирует их одной транзакцией.
+ * Результат правки (например, идентификатор новой строки) доступен через {@link Future},
+ * который завершается только после фиксации транзакции.
+ * <p>
+ * Если транзакция пачки не удалась, правки пачки повторяются по одной, чтобы ошибка
+ * одной правки не отменяла остальные. Отмененные до записи правки не выполняются.
+ * {@link #flush()} дожидается фиксации всех поставленных правок; {@link #requestFlush()}
+ * только запускает запись и не блокирует вызывающий поток (например, главный при уходе с экрана).
+ */
+public class WriteBehindQueue implements Closeable {
+
+    /**
+     * Отложенная правка.
+     * @param <T> Тип результата
+     */
+    public abstract static class Write<T> {
+        /**
+         * Выполняет правку внутри транзакции пачки, в потоке записи.
+         * @return Результат правки
+         */
+        protected abstract T apply();
+
+        /**
+         * Вызывается в потоке записи после фиксации транзакции, до завершения {@link Future}:
+         * здесь обновляются кэши и рассылаются уведомления.
+         * @param result Результат {@link #apply()}
+         */
+        protected void committed(T result) {
+        }
+    }
+
+    private static final LatencyHistogram COMMIT_LATENCY = Metrics.histogram("writeback.commit");
+    private static final Counter WRITES = Metrics.counter("writeback.writes");
+    private static final Counter COMMITS = Metrics.counter("writeback.commits");
+    private static final Counter FAILED_WRITES = Metrics.counter("writeback.failed");
+
+    private final WriteStore store;
+    private final int maxBatch;
+    private final long maxDelayMs;
+    private final Object signal = new Object();
+    private final Thread writerThread;
+
+    // Защищены signal
+    private final List<PendingWrite<?>> pending = new ArrayList<>();
+    private boolean flushRequested;
+    private boolean closed;
+
+    /**
+     * Создает очередь и запускает поток записи.
+     * @param store Хранилище правок
+     * @param maxBatch Количество правок, при котором пачка записывается, не дожидаясь интервала
+     * @param maxDelayMs Наибольшая задержка записи первой правки пачки
+     */
+    public WriteBehindQueue(WriteStore store, int maxBatch, long maxDelayMs) {
+        this.store = store;
+        this.maxBatch = maxBatch;
+        this.maxDelayMs = maxDelayMs;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "write-behind");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Ставит правку в очередь. Может вызываться из любого потока.
+     * @param write Правка
+     * @param <T> Тип результата
+     * @return Результат правки, доступный после фиксации ее пачки
+     * @throws IllegalStateException если очередь закрыта
+     */
+    public <T> Future<T> submit(Write<T> write) {
+        PendingWrite<T> pendingWrite = new PendingWrite<>(write);
+        synchronized (signal) {
+            if (closed) {
+                throw new IllegalStateException("Очередь записи закрыта");
+            }
+            pending.add(pendingWrite);
+            // Поток записи просыпается на первую правку пачки и на заполненную пачку;
+            // остальные правки не сокращают интервал накопления
+            if (pending.size() == 1 || pending.size() >= maxBatch) {
+                signal.notifyAll();
+            }
+        }
+        return pendingWrite;
+    }
+
+    /**
+     * Записывает накопленные правки, не дожидаясь интервала, и ждет их фиксации.
+     * Не вызывается из {@link Write#apply()} и {@link Write#committed(Object)}.
+     */
+    public void flush() {
+        WriteBehindQueue.awaitQuietly(requestFlush());
+    }
+
+    /**
+     * Записывает накопленные правки, не дожидаясь интервала, и не ждет их фиксации.
+     * @return Метка, которая завершается после фиксации всех правок, поставленных до вызова
+     */
+    public Future<Void> requestFlush() {
+        // Пачки фиксируются по порядку, поэтому фиксация метки означает фиксацию всех правок до нее
+        PendingWrite<Void> marker = new PendingWrite<>(new Write<Void>() {
+            @Override
+            protected Void apply() {
+                return null;
+            }
+        });
+        synchronized (signal) {
+            if (closed) {
+                // Поток записи уже записал или запишет при остановке все правки
+                marker.set(null);
+                return marker;
+            }
+            pending.add(marker);
+            flushRequested = true;
+            signal.notifyAll();
+        }
+        return marker;
+    }
+
+    /**
+     * Записывает оставшиеся правки и останавливает поток записи.
+     */
+    @Override
+    public void close() {
+        synchronized (signal) {
+            closed = true;
+            signal.notifyAll();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(Future<?> future) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                future.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException | CancellationException e) {
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingWrite<?>> batch = new ArrayList<>();
+        while (true) {
+            boolean closing;
+            synchronized (signal) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        signal.wait();
+                    }
+                    // Интервал накопления отсчитывается от первой правки пачки
+                    long deadline = System.nanoTime() + maxDelayMs * 1000000L;
+                    long remainingMs = maxDelayMs;
+                    while (!flushRequested && !closed && pending.size() < maxBatch && remainingMs > 0) {
+                        signal.wait(remainingMs);
+                        remainingMs = (deadline - System.nanoTime()) / 1000000L;
+                    }
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                flushRequested = false;
+                closing = closed;
+                batch.addAll(pending);
+                pending.clear();
+            }
+            for (int from = 0; from < batch.size(); from += maxBatch) {
+                write(batch.subList(from, Math.min(batch.size(), from + maxBatch)));
+            }
+            batch.clear();
+            if (closing) break;
+        }
+    }
+
+    private void write(final List<PendingWrite<?>> batch) {
+        long start = Metrics.startTimer();
+        boolean committed;
+        try {
+            store.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for (PendingWrite<?> write : batch) {
+                        write.apply();
+                    }
+                }
+            });
+            committed = true;
+        } catch (RuntimeException batchError) {
+            committed = false;
+        }
+        if (committed) {
+            COMMITS.increment();
+            for (PendingWrite<?> write : batch) {
+                write.complete();
+            }
+        } else {
+            // Ошибка одной правки не должна отменять остальные: правки повторяются по одной
+            for (final PendingWrite<?> write : batch) {
+                try {
+                    store.runInTransaction(new Runnable() {
+                        @Override
+                        public void run() {
+                            write.apply();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    FAILED_WRITES.increment();
+                    write.fail(e);
+                    continue;
+                }
+                COMMITS.increment();
+                write.complete();
+            }
+        }
+        WRITES.add(batch.size());
+        COMMIT_LATENCY.recordSince(start);
+    }
+
+    /**
+     * Правка в очереди и ее результат. Результат задается потоком записи после фиксации
+     * транзакции (или ошибки правки); ожидающие потоки освобождает {@link CountDownLatch}.
+     * Отмена возможна, пока результат не задан; отмененная до записи правка не выполняется.
+     */
+    private static final class PendingWrite<T> implements Future<T> {
+        private final Write<T> write;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        // Поля результата защищены this; после done.countDown() не меняются
+        private T value;
+        private Throwable error;
+        private boolean cancelled;
+
+        // Только поток записи
+        private T result;
+        private boolean applied;
+
+        PendingWrite(Write<T> write) {
+            this.write = write;
+        }
+
+        void apply() {
+            applied = false;
+            if (isCancelled()) return;
+            result = write.apply();
+            applied = true;
+        }
+
+        void complete() {
+            if (!applied) return;
+            try {
+                write.committed(result);
+            } catch (RuntimeException e) {
+                // Правка уже зафиксирована; ошибка обновления кэшей не должна останавливать поток записи
+                e.printStackTrace();
+            }
+            set(result);
+        }
+
+        void fail(Throwable cause) {
+            setException(cause);
+        }
+
+        synchronized void set(T newValue) {
+            if (done.getCount() == 0) return;
+            value = newValue;
+            done.countDown();
+        }
+
+        synchronized void setException(Throwable cause) {
+            if (done.getCount() == 0) return;
+            error = cause;
+            done.countDown();
+        }
+
+        @Override
+        public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+            // Правку нельзя прервать посреди транзакции пачки, поэтому mayInterruptIfRunning не учитывается
+            if (done.getCount() == 0) return false;
+            cancelled = true;
+            done.countDown();
+            return true;
+        }
+
+        @Override
+        public synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return outcome();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return outcome();
+        }
+
+        private synchronized T outcome() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (error != null) {
+                throw new ExecutionException(error);
+            }
+            return value;
+        }
+    }
+}
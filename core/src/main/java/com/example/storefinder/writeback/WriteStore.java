@@ -0,0 +1,14 @@
+package com.example.storefinder.writeback;
+
+/**
+ * Хранилище, в которое {@link WriteBehindQueue} записывает пачки изменений.
+ * Вызывается только потоком записи очереди, поэтому может обращаться к диску.
+ */
+public interface WriteStore {
+    /**
+     * Выполняет записи одной транзакцией: при нормальном завершении body транзакция
+     * фиксируется, при исключении откатывается целиком, а исключение пробрасывается.
+     * @param body Записи пачки
+     */
+    void runInTransaction(Runnable body);
+}
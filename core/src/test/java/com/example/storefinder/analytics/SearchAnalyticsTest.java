@@ -0,0 +1,100 @@
+package com.example.storefinder.analytics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты журнала поиска: склейка набираемых запросов, запись пачками и отбрасывание при переполнении.
+ */
+public class SearchAnalyticsTest {
+
+    /**
+     * Тест на склейку запросов при наборе и сводку по запросам.
+     */
+    @Test
+    public void testTypingIsCoalesced() {
+        MemoryStore store = new MemoryStore();
+        SearchAnalytics analytics = new SearchAnalytics(store, 64, 60000);
+        analytics.recordSearch("мо", 40, 2, 1000);
+        analytics.recordSearch("мол", 12, 2, 1100);
+        analytics.recordSearch("Молоко", 3, 3, 1300);
+        analytics.recordSelection(7, 3, 2000);
+        analytics.recordSearch("кефир", 0, SearchEvent.NO_SECTION, 2500);
+        // Тот же запрос после паузы считается повторным поиском
+        analytics.recordSearch("кефир", 0, SearchEvent.NO_SECTION, 9000);
+        analytics.recordSearch("молока", 3, 3, 9500);
+        analytics.close();
+
+        assertEquals(5, store.events.size());
+        assertEquals("Молоко", store.events.get(0).getQuery());
+        assertEquals(3, store.events.get(0).getResultCount());
+        assertEquals(3, store.events.get(0).getSectionId());
+        assertEquals(SearchEvent.TYPE_SELECT, store.events.get(1).getType());
+        assertEquals("Молоко", store.events.get(1).getQuery());
+        assertEquals(7, store.events.get(1).getProductId());
+        assertTrue(store.events.get(2).isZeroResult());
+        assertEquals(0, analytics.getDroppedCount());
+
+        Map<String, QueryStats> stats = QueryStats.aggregate(store.events);
+        assertEquals(2, stats.size());
+        QueryStats milk = stats.get("молок");
+        assertEquals(2, milk.getSearches());
+        assertEquals(0, milk.getZeroHits());
+        assertEquals(1, milk.getSelections());
+        QueryStats kefir = stats.get("кефир");
+        assertEquals(2, kefir.getSearches());
+        assertEquals(2, kefir.getZeroHits());
+    }
+
+    /**
+     * Тест на переполнение буфера: события отбрасываются, запись не блокируется.
+     */
+    @Test
+    public void testOverflowDropsEvents() throws InterruptedException {
+        MemoryStore store = new MemoryStore();
+        store.blocked = new CountDownLatch(1);
+        SearchAnalytics analytics = new SearchAnalytics(store, 4, 60000);
+
+        // Первое событие забирает поток записи и останавливается в хранилище
+        analytics.recordSelection(1, 1, 1000);
+        analytics.flush();
+        store.writing.await();
+        for (int i = 2; i <= 10; i++) {
+            analytics.recordSelection(i, 1, 1000 + i);
+        }
+        assertEquals(5, analytics.getDroppedCount());
+
+        store.blocked.countDown();
+        analytics.close();
+        assertEquals(5, store.events.size());
+        assertEquals(5, store.events.get(4).getProductId());
+        assertTrue(store.batches >= 2);
+    }
+
+    private static final class MemoryStore implements AnalyticsStore {
+        final List<SearchEvent> events = new ArrayList<>();
+        final CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch blocked;
+        int batches;
+
+        @Override
+        public void append(List<SearchEvent> batch) {
+            writing.countDown();
+            if (blocked != null) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.addAll(batch);
+            batches++;
+        }
+    }
+}
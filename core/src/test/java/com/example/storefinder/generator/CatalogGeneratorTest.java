@@ -0,0 +1,54 @@
+package com.example.storefinder.generator;
+
+import com.example.storefinder.models.Product;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты генератора синтетических каталогов.
+ */
+public class CatalogGeneratorTest {
+
+    /**
+     * Тест на воспроизводимость: одинаковое зерно дает одинаковый каталог.
+     */
+    @Test
+    public void testDeterministic() {
+        CatalogGenerator.Catalog first = new CatalogGenerator(42).generate(30, 5000);
+        CatalogGenerator.Catalog second = new CatalogGenerator(42).generate(30, 5000);
+
+        assertEquals(first.toProductCsv(), second.toProductCsv());
+        assertEquals(first.shoppingList(20, 0.1), second.shoppingList(20, 0.1));
+        assertFalse(first.toProductCsv().equals(
+                new CatalogGenerator(43).generate(30, 5000).toProductCsv()));
+    }
+
+    /**
+     * Тест на размеры каталога, корректность разделов и наличие повторов.
+     */
+    @Test
+    public void testShape() {
+        CatalogGenerator.Catalog catalog = new CatalogGenerator(1).generate(30, 10000);
+        List<Product> products = catalog.getProducts();
+
+        assertEquals(30, catalog.getSections().size());
+        assertEquals(10000, products.size());
+
+        Set<String> names = new HashSet<>();
+        for (Product product : products) {
+            assertTrue(product.getSectionId() >= 1 && product.getSectionId() <= 30);
+            assertTrue(product.getName().indexOf(',') < 0);
+            names.add(product.getName());
+        }
+        // Повторяющиеся названия есть, но их меньшинство
+        assertTrue(names.size() < products.size());
+        assertTrue(names.size() > products.size() / 2);
+        assertEquals(8, catalog.sampleQueries(8).length);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.storefinder.importer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты разбора CSV для импорта.
+ */
+public class CsvImportParserTest {
+
+    /**
+     * Тест на разбор строк товаров: пробелы, \r, лишние поля и строки без раздела.
+     */
+    @Test
+    public void testParseProducts() {
+        List<CsvImportParser.ProductRow> rows = CsvImportParser.parseProducts(
+                " Молоко , Молочный отдел\r\nбез раздела\n\nХлеб,Выпечка,лишнее\n");
+
+        assertEquals(2, rows.size());
+        assertEquals("Молоко", rows.get(0).getProductName());
+        assertEquals("Молочный отдел", rows.get(0).getSectionName());
+        assertEquals("Хлеб", rows.get(1).getProductName());
+        assertEquals("Выпечка", rows.get(1).getSectionName());
+        assertNull(rows.get(0).getBarcode());
+        assertNull(rows.get(1).getBarcode());
+    }
+
+    /**
+     * Тест на разбор штрихкода в третьем поле.
+     */
+    @Test
+    public void testParseProductBarcodes() {
+        List<CsvImportParser.ProductRow> rows = CsvImportParser.parseProducts(
+                "Молоко,Молочный отдел, 4601234567893\r\nКефир,Молочный отдел,sku-7,лишнее\nХлеб,Выпечка,\n");
+
+        assertEquals(3, rows.size());
+        assertEquals("4601234567893", rows.get(0).getBarcode());
+        assertEquals("SKU-7", rows.get(1).getBarcode());
+        assertNull(rows.get(2).getBarcode());
+        assertEquals("Выпечка", rows.get(2).getSectionName());
+    }
+
+    /**
+     * Тест на разбор строк синонимов: пустые синонимы отбрасываются.
+     */
+    @Test
+    public void testParseAliases() {
+        List<CsvImportParser.AliasRow> rows = CsvImportParser.parseAliases(
+                "Газированная вода, газировка,, лимонад \nКефир,\nХлеб");
+
+        assertEquals(1, rows.size());
+        assertEquals("Газированная вода", rows.get(0).getProductName());
+        assertEquals(2, rows.get(0).getAliases().size());
+        assertEquals("газировка", rows.get(0).getAliases().get(0));
+        assertEquals("лимонад", rows.get(0).getAliases().get(1));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.storefinder.importer;
+
+import com.example.storefinder.models.FloorPlan;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты разбора раскладки разделов.
+ */
+public class SectionLayoutParserTest {
+
+    /**
+     * Тест на CSV: заголовок и строки без координат пропускаются, контур необязателен.
+     */
+    @Test
+    public void testParseCsv() throws IOException {
+        List<SectionLayoutParser.SectionRow> rows = SectionLayoutParser.parse(
+                "﻿name,x,y,polygon\r\n"
+                        + "Молочные продукты, 120 , 340.5\r\n"
+                        + "Хлеб,,,0 0;100 0;100 50;0 50\n"
+                        + "Без координат,,\n"
+                        + "Рыба,10,20,0 0;1\n");
+
+        assertEquals(3, rows.size());
+        assertEquals("Молочные продукты", rows.get(0).getName());
+        assertEquals(120f, rows.get(0).getX(), 0f);
+        assertEquals(340.5f, rows.get(0).getY(), 0f);
+        assertNull(rows.get(0).getPolygon());
+
+        // Метка без координат ставится в центр контура
+        assertEquals(50f, rows.get(1).getX(), 0f);
+        assertEquals(25f, rows.get(1).getY(), 0f);
+        assertEquals(8, rows.get(1).getPolygon().length);
+
+        // Некорректный контур отбрасывается, раздел остается
+        assertEquals("Рыба", rows.get(2).getName());
+        assertNull(rows.get(2).getPolygon());
+    }
+
+    /**
+     * Тест на JSON-массив и объект с полем "sections".
+     */
+    @Test
+    public void testParseJson() throws IOException {
+        List<SectionLayoutParser.SectionRow> array = SectionLayoutParser.parse(
+                " [{\"name\": \"Овощи\", \"x\": 1.5, \"y\": 2, \"color\": \"green\"},"
+                        + " {\"name\": \"Фрукты\", \"polygon\": [[0, 0], [10, 0], [10, 10], [0, 10]]},"
+                        + " {\"name\": \"\", \"x\": 1, \"y\": 1}]");
+        assertEquals(2, array.size());
+        assertEquals(1.5f, array.get(0).getX(), 0f);
+        assertEquals(5f, array.get(1).getX(), 0f);
+        assertEquals(5f, array.get(1).getY(), 0f);
+
+        List<SectionLayoutParser.SectionRow> object = SectionLayoutParser.parse(
+                "{\"store\": {\"id\": 12}, \"sections\": [{\"name\": \"Касса\", \"x\": 3, \"y\": 4, \"polygon\": null}]}");
+        assertEquals(1, object.size());
+        assertEquals("Касса", object.get(0).getName());
+        assertNull(object.get(0).getPolygon());
+    }
+
+    /**
+     * Тест на запись контура в базу данных и обратный разбор.
+     */
+    @Test
+    public void testPolygonRoundTrip() {
+        float[] polygon = {0f, 0f, 12.5f, 0f, 12.5f, 7.25f};
+        String text = SectionLayoutParser.formatPolygon(polygon);
+        assertArrayEquals(polygon, SectionLayoutParser.parsePolygon(text), 0f);
+        assertNull(SectionLayoutParser.formatPolygon(null));
+        assertNull(SectionLayoutParser.parsePolygon("0 0;1 1"));
+        assertArrayEquals(new float[]{0f, 0f, 1f, 1f}, SectionLayoutParser.parsePoints("0 0;1 1", 2), 0f);
+    }
+
+    /**
+     * Тест на векторную схему: размеры после фигур, вырожденные фигуры пропускаются,
+     * разделы того же файла читаются как обычная раскладка.
+     */
+    @Test
+    public void testParseFloorPlan() throws IOException {
+        String layout = "{\"walls\": [[[0, 0], [400, 0], [400, 300]], [[5, 5]]],"
+                + " \"shelves\": [[[10, 10], [90, 10], [90, 30], [10, 30]], [[0, 0], [1, 1]]],"
+                + " \"shelves_color\": \"#ccc\","
+                + " \"sections\": [{\"name\": \"Хлеб\", \"polygon\": [[10, 10], [90, 10], [90, 30], [10, 30]]}],"
+                + " \"width\": 400, \"height\": 300}";
+        FloorPlan plan = FloorPlanParser.parse(layout);
+        assertEquals(400f, plan.getWidth(), 0f);
+        assertEquals(300f, plan.getHeight(), 0f);
+        assertEquals(1, plan.getWalls().size());
+        assertEquals(6, plan.getWalls().get(0).length);
+        assertEquals(1, plan.getShelves().size());
+
+        List<SectionLayoutParser.SectionRow> rows = SectionLayoutParser.parse(layout);
+        assertEquals(1, rows.size());
+        assertEquals(50f, rows.get(0).getX(), 0f);
+
+        // Раскладка без размеров не является векторной схемой
+        assertNull(FloorPlanParser.parse("{\"sections\": []}"));
+        assertNull(FloorPlanParser.parse("[{\"name\": \"Касса\", \"x\": 3, \"y\": 4}]"));
+        assertNull(FloorPlanParser.parse("Касса,3,4"));
+    }
+}
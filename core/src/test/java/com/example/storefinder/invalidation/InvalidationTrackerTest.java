@@ -0,0 +1,148 @@
+package com.example.storefinder.invalidation;
+
+import com.example.storefinder.models.SectionDiff;
+import com.example.storefinder.models.SectionRegistry;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты уведомлений об изменениях и наблюдаемых запросов.
+ */
+public class InvalidationTrackerTest {
+
+    /**
+     * Тест на отбор получателей: уведомление приходит только подписчикам затронутых таблиц и схемы.
+     */
+    @Test
+    public void testObserversMatchTablesAndMap() {
+        InvalidationTracker tracker = new InvalidationTracker();
+        final List<String> log = new ArrayList<>();
+        InvalidationTracker.Observer sections = new RecordingObserver("sections", log);
+        InvalidationTracker.Observer anyMap = new RecordingObserver("anyMap", log);
+        tracker.addObserver(sections, InvalidationTracker.TABLE_SECTIONS, 1);
+        tracker.addObserver(anyMap, InvalidationTracker.TABLE_PRODUCTS | InvalidationTracker.TABLE_ALIASES,
+                InvalidationTracker.ALL_MAPS);
+
+        // Импорт товаров не трогает разделы
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS, 1);
+        assertEquals("[anyMap:4]", log.toString());
+
+        log.clear();
+        tracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS | InvalidationTracker.TABLE_PRODUCTS, 2);
+        tracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, InvalidationTracker.ALL_MAPS);
+        assertEquals("[anyMap:4, sections:2]", log.toString());
+
+        log.clear();
+        tracker.removeObserver(anyMap);
+        tracker.notifyChanged(InvalidationTracker.TABLE_PRODUCTS, 1);
+        assertTrue(log.isEmpty());
+    }
+
+    /**
+     * Тест на объединение уведомлений: пачка изменений до начала перезапроса вызывает один перезапрос,
+     * после отписки результаты не доставляются.
+     */
+    @Test
+    public void testInvalidationsAreCoalesced() {
+        InvalidationTracker tracker = new InvalidationTracker();
+        QueuedExecutor background = new QueuedExecutor();
+        QueuedExecutor main = new QueuedExecutor();
+        final int[] runs = new int[1];
+        ObservableQuery<Integer> query = new ObservableQuery<Integer>(tracker, InvalidationTracker.TABLE_SECTIONS,
+                1, background, main) {
+            @Override
+            protected Integer query() {
+                return ++runs[0];
+            }
+        };
+        final List<String> results = new ArrayList<>();
+        query.observe(new ObservableQuery.Listener<Integer>() {
+            @Override
+            public void onResult(Integer previous, Integer current) {
+                results.add(previous + "->" + current);
+            }
+        });
+
+        for (int i = 0; i < 10; i++) {
+            tracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, 1);
+        }
+        background.runAll();
+        main.runAll();
+        assertEquals(1, runs[0]);
+        assertEquals("[null->1]", results.toString());
+
+        tracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, 1);
+        background.runAll();
+        query.dispose();
+        main.runAll();
+        tracker.notifyChanged(InvalidationTracker.TABLE_SECTIONS, 1);
+        background.runAll();
+        assertEquals(2, runs[0]);
+        assertEquals(1, results.size());
+    }
+
+    /**
+     * Тест на разницу реестров разделов.
+     */
+    @Test
+    public void testSectionDiff() {
+        SectionRegistry before = new SectionRegistry(1, 4);
+        before.put(1, "Хлеб", 10, 10);
+        before.put(2, "Молоко", 20, 20, new float[]{0, 0, 5, 0, 5, 5});
+        before.put(3, "Касса", 30, 30);
+
+        SectionRegistry after = new SectionRegistry(1, 4);
+        after.put(1, "Хлеб", 10, 10);
+        after.put(2, "Молоко", 20, 20, new float[]{0, 0, 5, 0, 5, 6});
+        after.put(4, "Рыба", 40, 40);
+
+        SectionDiff diff = SectionDiff.between(before, after);
+        assertArrayEquals(new int[]{2}, diff.getAdded());
+        assertArrayEquals(new int[]{1}, diff.getChanged());
+        assertArrayEquals(new long[]{3}, diff.getRemovedIds());
+        assertFalse(diff.isAppendOnly());
+
+        assertTrue(SectionDiff.between(after, after).isEmpty());
+        SectionDiff initial = SectionDiff.between(null, after);
+        assertEquals(3, initial.getAdded().length);
+        assertTrue(initial.isAppendOnly());
+    }
+
+    private static final class RecordingObserver implements InvalidationTracker.Observer {
+        final String name;
+        final List<String> log;
+
+        RecordingObserver(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void onInvalidated(int tables, long mapId) {
+            log.add(name + ":" + tables);
+        }
+    }
+
+    private static final class QueuedExecutor implements Executor {
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.poll().run();
+            }
+        }
+    }
+}
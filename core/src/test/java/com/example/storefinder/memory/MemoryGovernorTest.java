@@ -0,0 +1,96 @@
+package com.example.storefinder.memory;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты освобождения памяти по сигналам системы.
+ */
+public class MemoryGovernorTest {
+
+    /**
+     * Тест на ступенчатое освобождение: с ростом уровня сигнала отдаются все более дорогие ресурсы.
+     */
+    @Test
+    public void testTrimLevelsReleaseInPriorityOrder() {
+        List<String> released = new ArrayList<>();
+        MemoryGovernor governor = new MemoryGovernor();
+        FakeConsumer results = new FakeConsumer("results", 200000, released);
+        FakeConsumer prepared = new FakeConsumer("prepared", 4000000, released);
+        FakeConsumer hiddenMap = new FakeConsumer("hiddenMap", 8000000, released);
+        FakeConsumer trie = new FakeConsumer("trie", 5000000, released);
+        governor.register("results", MemoryGovernor.PRIORITY_CACHE, results);
+        governor.register("prepared", MemoryGovernor.PRIORITY_CACHE, prepared);
+        governor.register("hiddenMap", MemoryGovernor.PRIORITY_HIDDEN_UI, hiddenMap);
+        governor.register("trie", MemoryGovernor.PRIORITY_INDEX, trie);
+        assertEquals(17200000, governor.getTrackedBytes());
+
+        assertEquals(0, governor.onTrimMemory(0));
+        assertEquals(4200000, governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_RUNNING_MODERATE));
+        // Внутри приоритета первым отдается самый крупный ресурс
+        assertEquals("prepared", released.get(0));
+        assertEquals("results", released.get(1));
+
+        // Кэш заполнился снова, изображение скрытого экрана отдается вместе с ним
+        results.bytes = 100000;
+        assertEquals(8100000, governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_RUNNING_LOW));
+        assertEquals(5000000, governor.getTrackedBytes());
+
+        // Уход в фон не трогает индексы, очередь на завершение процесса — трогает
+        assertEquals(0, governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(5000000, governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_BACKGROUND));
+        assertEquals(0, governor.getTrackedBytes());
+        assertEquals(5, released.size());
+    }
+
+    /**
+     * Тест на ресурс, который нельзя отдать, и на снятие с учета.
+     */
+    @Test
+    public void testPinnedAndUnregisteredConsumers() {
+        List<String> released = new ArrayList<>();
+        MemoryGovernor governor = new MemoryGovernor();
+        FakeConsumer visibleMap = new FakeConsumer("visibleMap", 8000000, released);
+        visibleMap.pinned = true;
+        FakeConsumer closed = new FakeConsumer("closed", 1000, released);
+        governor.register("visibleMap", MemoryGovernor.PRIORITY_HIDDEN_UI, visibleMap);
+        governor.register("closed", MemoryGovernor.PRIORITY_CACHE, closed);
+        governor.register("closed", MemoryGovernor.PRIORITY_CACHE, closed);
+        governor.unregister(closed);
+
+        assertEquals(0, governor.onTrimMemory(MemoryGovernor.TRIM_MEMORY_COMPLETE));
+        assertEquals(8000000, governor.getTrackedBytes());
+        assertEquals(1, released.size());
+        assertEquals("visibleMap", released.get(0));
+    }
+
+    private static final class FakeConsumer implements MemoryGovernor.Consumer {
+        final String name;
+        final List<String> log;
+        long bytes;
+        boolean pinned;
+
+        FakeConsumer(String name, long bytes, List<String> log) {
+            this.name = name;
+            this.bytes = bytes;
+            this.log = log;
+        }
+
+        @Override
+        public long getByteSize() {
+            return bytes;
+        }
+
+        @Override
+        public void release() {
+            log.add(name);
+            if (!pinned) {
+                bytes = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.storefinder.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты гистограммы задержек.
+ */
+public class LatencyHistogramTest {
+
+    @After
+    public void disableMetrics() {
+        Metrics.setEnabled(false);
+    }
+
+    /**
+     * Тест на границы интервалов: каждое значение попадает в интервал, который его содержит.
+     */
+    @Test
+    public void testBucketBounds() {
+        long[] values = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketLowerBound(index) <= value);
+            if (value < Long.MAX_VALUE / 2) {
+                assertTrue(LatencyHistogram.bucketLowerBound(index + 1) > value);
+            }
+        }
+    }
+
+    /**
+     * Тест на процентили с погрешностью не более 12,5%.
+     */
+    @Test
+    public void testPercentiles() {
+        Metrics.setEnabled(true);
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000000L, snapshot.getMaxNanos());
+        assertEquals(500500L, snapshot.getMeanNanos());
+        assertTrue(Math.abs(snapshot.getP50Nanos() - 500000L) <= 500000L / 8);
+        assertTrue(Math.abs(snapshot.getP99Nanos() - 990000L) <= 990000L / 8);
+    }
+
+    /**
+     * Тест на то, что выключенный сбор метрик ничего не записывает.
+     */
+    @Test
+    public void testDisabled() {
+        LatencyHistogram histogram = new LatencyHistogram("disabled");
+        Counter counter = new Counter("disabled");
+
+        long start = Metrics.startTimer();
+        histogram.recordSince(start);
+        histogram.record(100);
+        counter.increment();
+
+        assertEquals(0, start);
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, counter.get());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.storefinder.render;
+
+import com.example.storefinder.analytics.SearchEvent;
+import com.example.storefinder.analytics.SectionDemand;
+import com.example.storefinder.models.SectionRegistry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты спроса на разделы и тепловой карты.
+ */
+public class DemandHeatmapTest {
+
+    /**
+     * Тест на затухание спроса: неделю назад событие весило вдвое больше.
+     */
+    @Test
+    public void testDemandDecays() {
+        long now = 1000L * SectionDemand.HALF_LIFE_MS;
+        SectionDemand demand = SectionDemand.fromEvents(Arrays.asList(
+                SearchEvent.select(now - SectionDemand.HALF_LIFE_MS, "молоко", 1, 10),
+                SearchEvent.search(now - 1000, "кефир", 0),
+                SearchEvent.search(now, "хлеб", 5, 20)));
+
+        assertEquals(now, demand.getReferenceTime());
+        assertEquals(2, demand.size());
+        assertEquals(0.5, demand.getScoreById(10), 1e-9);
+        assertEquals(SectionDemand.SEARCH_WEIGHT, demand.getScoreById(20), 1e-9);
+
+        // Сохраненное значение, приведенное к более позднему моменту
+        SectionDemand later = new SectionDemand(now + SectionDemand.HALF_LIFE_MS, 4);
+        later.add(10, demand.getScoreById(10), now);
+        later.add(10, SectionDemand.SELECT_WEIGHT, now + SectionDemand.HALF_LIFE_MS);
+        assertEquals(1.25, later.getScoreById(10), 1e-9);
+    }
+
+    /**
+     * Тест на растеризацию: пятно самого популярного раздела ярче, пустые области прозрачны.
+     */
+    @Test
+    public void testHotSectionIsBrightest() {
+        SectionRegistry sections = new SectionRegistry(1, 500);
+        SectionDemand demand = new SectionDemand(0, 500);
+        for (int i = 0; i < 500; i++) {
+            sections.put(i + 1, "Раздел " + i, 40 + (i % 25) * 80, 40 + (i / 25) * 70);
+            demand.add(i + 1, 1, 0);
+        }
+        demand.add(13, 50, 0);
+
+        DemandHeatmap heatmap = DemandHeatmap.rasterize(sections, demand, 2000, 1500,
+                DemandHeatmap.DEFAULT_CELL_SIZE, DemandHeatmap.DEFAULT_RADIUS);
+        assertEquals(125, heatmap.getWidth());
+        assertEquals(94, heatmap.getHeight());
+        int[] pixels = heatmap.getPixels();
+        assertEquals(heatmap.getWidth() * heatmap.getHeight(), pixels.length);
+
+        // Раздел 13: x = 40 + 12 * 80 = 1000, y = 40
+        int hot = pixels[(40 / 16) * heatmap.getWidth() + 1000 / 16];
+        int cold = pixels[(40 / 16) * heatmap.getWidth() + 40 / 16];
+        assertTrue((hot >>> 24) > (cold >>> 24));
+        assertEquals(0xFF, hot >> 16 & 0xFF);
+        // Нижний край схемы дальше радиуса от любого раздела
+        assertEquals(0, pixels[pixels.length - 1]);
+    }
+}
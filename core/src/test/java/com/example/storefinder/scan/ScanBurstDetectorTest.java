@@ -0,0 +1,69 @@
+package com.example.storefinder.scan;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты распознавания ввода сканера штрихкодов.
+ */
+public class ScanBurstDetectorTest {
+
+    /**
+     * Тест на код, переданный сканером: символы через 5 мс и Enter.
+     */
+    @Test
+    public void testScannerBurst() {
+        ScanBurstDetector detector = new ScanBurstDetector();
+        long time = 1000;
+        for (char c : "4601234567893".toCharArray()) {
+            assertNull(detector.onCharacter(c, time));
+            time += 5;
+        }
+        assertEquals("4601234567893", detector.onTerminator(time));
+        assertNull(detector.flush());
+    }
+
+    /**
+     * Тест на ручной набор: каждый символ после паузы уходит в поле ввода.
+     */
+    @Test
+    public void testHumanTyping() {
+        ScanBurstDetector detector = new ScanBurstDetector();
+        assertNull(detector.onCharacter('м', 1000));
+        assertEquals("м", detector.onCharacter('о', 1150));
+        assertEquals("о", detector.flushIfIdle(1300));
+        assertNull(detector.flushIfIdle(1400));
+
+        // Короткая быстрая серия с Enter не считается кодом
+        detector.onCharacter('1', 2000);
+        detector.onCharacter('2', 2005);
+        assertNull(detector.onTerminator(2010));
+        assertEquals("12", detector.flush());
+    }
+
+    /**
+     * Тест на Enter после паузы: код набран вручную.
+     */
+    @Test
+    public void testSlowTerminator() {
+        ScanBurstDetector detector = new ScanBurstDetector(50, 3);
+        detector.onCharacter('1', 0);
+        detector.onCharacter('2', 10);
+        detector.onCharacter('3', 20);
+        assertNull(detector.onTerminator(500));
+        assertEquals("123", detector.flush());
+    }
+
+    /**
+     * Тест на нормализацию штрихкодов и артикулов.
+     */
+    @Test
+    public void testNormalizeBarcode() {
+        assertEquals("4601234567893", Barcodes.normalize(" 460 1234 567893\r"));
+        assertEquals("SKU-12.A", Barcodes.normalize("sku-12.a"));
+        assertNull(Barcodes.normalize(""));
+        assertNull(Barcodes.normalize("лишнее"));
+        assertNull(Barcodes.normalize(null));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.storefinder.search;
+
+import com.example.storefinder.generator.CatalogGenerator;
+import com.example.storefinder.models.Product;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты словаря автодополнения.
+ */
+public class CompletionTrieTest {
+
+    private static String texts(List<CompletionTrie.Completion> completions) {
+        StringBuilder builder = new StringBuilder();
+        for (CompletionTrie.Completion completion : completions) {
+            if (builder.length() > 0) builder.append('|');
+            builder.append(completion.getText());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Тест на порядок дополнений по весу и восстановление написания.
+     */
+    @Test
+    public void testCompletionsByWeight() {
+        CompletionTrie trie = new CompletionTrie.Builder()
+                .add("Молоко", 3)
+                .add("Молоко Простоквашино", 10)
+                .add("Мёд липовый", 7)
+                .add("молоко", 1)
+                .add("Морс клюквенный", 0)
+                .add("Кефир", 50)
+                .build();
+        assertEquals(5, trie.size());
+
+        assertEquals("Молоко Простоквашино|Мёд липовый|Молоко|Морс клюквенный",
+                texts(trie.complete("м", 10)));
+        assertEquals("Молоко Простоквашино|Молоко", texts(trie.complete("МОЛ", 10)));
+        assertEquals("Мёд липовый", texts(trie.complete("мед", 10)));
+        assertEquals("Молоко Простоквашино", texts(trie.complete(" молоко п", 10)));
+        assertEquals(10, trie.complete("молоко", 1).get(0).getWeight());
+        assertEquals("Кефир|Молоко Простоквашино", texts(trie.complete("", 2)));
+        assertTrue(trie.complete("молоко ж", 10).isEmpty());
+        assertTrue(trie.complete("хлеб", 10).isEmpty());
+        assertTrue(new CompletionTrie.Builder().build().complete("м", 10).isEmpty());
+    }
+
+    /**
+     * Тест на совпадение с полным перебором и объем памяти на большом каталоге.
+     */
+    @Test
+    public void testMatchesBruteForceOnLargeCatalog() {
+        List<Product> products = new CatalogGenerator(7).generate(200, 100000).getProducts();
+        CompletionTrie.Builder builder = new CompletionTrie.Builder();
+        for (int i = 0; i < products.size(); i++) {
+            builder.add(products.get(i).getName(), (i * 7919) % 1000);
+        }
+        CompletionTrie trie = builder.build();
+        assertTrue("Словарь занимает " + trie.estimateHeapBytes() + " байт",
+                trie.estimateHeapBytes() < 8L * 1024 * 1024);
+
+        for (String prefix : new String[]{"к", "молоко д", "сыр", "хлеб отборный в"}) {
+            List<CompletionTrie.Completion> top = trie.complete(prefix, 10);
+            assertFalse(top.isEmpty());
+            int best = -1;
+            for (int i = 0; i < products.size(); i++) {
+                String name = RussianNormalizer.fold(products.get(i).getName());
+                if (name.startsWith(prefix)) {
+                    best = Math.max(best, (i * 7919) % 1000);
+                }
+            }
+            assertEquals(best, top.get(0).getWeight());
+            for (int i = 1; i < top.size(); i++) {
+                assertTrue(top.get(i - 1).getWeight() >= top.get(i).getWeight());
+                assertTrue(RussianNormalizer.fold(top.get(i).getText()).startsWith(prefix));
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.storefinder.search;
+
+import com.example.storefinder.models.Product;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты поиска товаров в памяти.
+ */
+public class InMemoryProductIndexTest {
+
+    private InMemoryProductIndex index;
+
+    @Before
+    public void createIndex() {
+        index = new InMemoryProductIndex();
+    }
+
+    private static Product product(long id, String name, int popularity) {
+        Product product = new Product(id, name, 1);
+        product.setPopularity(popularity);
+        return product;
+    }
+
+    /**
+     * Тест на порядок результатов: точное совпадение, начало названия, начало слова.
+     */
+    @Test
+    public void testRanking() {
+        index.add(product(1, "Коктейль Молоко и банан", 0));
+        index.add(product(2, "Молоко Простоквашино", 5));
+        index.add(product(3, "Молоко", 0));
+        index.add(product(4, "Молоко Домик в деревне", 9));
+
+        List<Product> result = index.search("молоко", 0, 10);
+        assertEquals(4, result.size());
+        assertEquals(3, result.get(0).getId());
+        assertEquals(2, result.get(1).getId());
+        assertEquals(4, result.get(2).getId());
+        assertEquals(1, result.get(3).getId());
+        assertEquals(4, index.count("молоко"));
+
+        // Страница результатов
+        List<Product> page = index.search("молоко", 1, 2);
+        assertEquals(2, page.size());
+        assertEquals(2, page.get(0).getId());
+    }
+
+    /**
+     * Тест на поиск по словоформам, началу слова и синонимам.
+     */
+    @Test
+    public void testMorphologyPrefixAndAliases() {
+        index.add(product(1, "Молоко Простоквашино", 0));
+        index.add(product(2, "Творожок Ёжик", 0));
+        index.add(product(3, "Газированная вода", 0), Arrays.asList("Газировка", "Лимонад"));
+
+        assertEquals(1, index.search("молока простоквашино", 0, 10).size());
+        assertEquals(2, index.search("ежик", 0, 10).get(0).getId());
+        assertEquals(1, index.search("прост", 0, 10).size());
+        assertEquals(3, index.search("лимонад", 0, 10).get(0).getId());
+        assertTrue(index.search("кефир", 0, 10).isEmpty());
+    }
+
+    /**
+     * Тест на добавление товаров после первого поиска.
+     */
+    @Test
+    public void testAddAfterSearch() {
+        index.add(product(1, "Сыр российский", 0));
+        assertEquals(1, index.count("сыр"));
+
+        index.add(product(2, "Сыр сливочный", 0));
+        assertEquals(2, index.count("сыр"));
+        assertEquals(1, index.count("сыр сливочн"));
+    }
+}
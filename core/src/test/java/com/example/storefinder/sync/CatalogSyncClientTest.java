@@ -0,0 +1,252 @@
+package com.example.storefinder.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты клиента синхронизации на локальном HTTP-сервере, подменяющем центральный.
+ */
+public class CatalogSyncClientTest {
+
+    private static final String FULL_CATALOG = "{\"version\": 1, \"full\": true, \"generatedBy\": {\"x\": [1, 2]},"
+            + " \"sections\": [{\"id\": \"s1\", \"name\": \"Молочные \\\"свежие\\\"\", \"x\": 10, \"y\": 20.5},"
+            + " {\"id\": \"s2\", \"name\": \"Хлеб\", \"x\": 30, \"y\": 40}],"
+            + " \"products\": [{\"id\": \"p1\", \"name\": \"Молоко\", \"section\": \"s1\", \"aliases\": [\"\\u043c\\u043e\\u043b\\u043e\\u0447\\u043a\\u043e\"]},"
+            + " {\"id\": \"p2\", \"name\": \"Кефир\", \"section\": \"s1\"},"
+            + " {\"id\": \"p3\", \"name\": \"Батон\", \"section\": \"s2\", \"aliases\": null}]}";
+
+    private static final String DELTA = "{\"version\": 2, \"full\": false,"
+            + " \"products\": [{\"id\": \"p2\", \"name\": \"Кефир 1%\", \"section\": \"s1\"},"
+            + " {\"id\": \"p4\", \"name\": \"Бородинский\", \"section\": \"s2\"}],"
+            + " \"removedProducts\": [\"p3\"]}";
+
+    private HttpServer server;
+    private final List<String> requests = new ArrayList<>();
+    private volatile int serverVersion = 1;
+    private volatile String brokenBody;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/catalog", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                requests.add(exchange.getRequestURI().getQuery() + " " + ifNoneMatch);
+
+                String etag = "\"v" + serverVersion + "\"";
+                if (etag.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                String body = brokenBody != null ? brokenBody
+                        : exchange.getRequestURI().getQuery().equals("since=1") ? DELTA : FULL_CATALOG;
+                byte[] bytes = body.getBytes("UTF-8");
+                boolean gzip = "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (gzip) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    /**
+     * Тест на полную загрузку, условный запрос без изменений и применение дельты.
+     */
+    @Test
+    public void testFullSyncThenNotModifiedThenDelta() throws IOException {
+        CatalogSyncClient client = new CatalogSyncClient(endpoint());
+        MemoryCatalog catalog = new MemoryCatalog();
+
+        CatalogSyncClient.Result first = client.sync(catalog);
+        assertTrue(first.isModified());
+        assertEquals(1, first.getVersion());
+        assertEquals(2, first.getUpsertedSections());
+        assertEquals(3, first.getUpsertedProducts());
+        assertEquals("Молочные \"свежие\"", catalog.sections.get("s1"));
+        assertEquals("Молоко|s1|[молочко]", catalog.products.get("p1"));
+        assertEquals("Батон|s2|null", catalog.products.get("p3"));
+        assertEquals(1, catalog.version);
+        assertEquals("\"v1\"", catalog.etag);
+
+        CatalogSyncClient.Result second = client.sync(catalog);
+        assertFalse(second.isModified());
+        assertEquals(1, second.getVersion());
+
+        serverVersion = 2;
+        CatalogSyncClient.Result third = client.sync(catalog);
+        assertTrue(third.isModified());
+        assertEquals(2, third.getUpsertedProducts());
+        assertEquals(1, third.getRemovedProducts());
+        assertEquals("Кефир 1%|s1|null", catalog.products.get("p2"));
+        assertTrue(catalog.products.containsKey("p4"));
+        assertFalse(catalog.products.containsKey("p3"));
+        assertEquals(3, catalog.products.size());
+        assertEquals(2, catalog.version);
+
+        assertEquals("since=0 null", requests.get(0));
+        assertEquals("since=1 \"v1\"", requests.get(1));
+        assertEquals("since=1 \"v1\"", requests.get(2));
+    }
+
+    /**
+     * Тест на товар с неизвестным разделом: он считается пропущенным, версия не сохраняется,
+     * и следующая синхронизация запрашивает дельту с прежней версии.
+     */
+    @Test
+    public void testUnknownSectionSkipsProductAndKeepsVersion() throws IOException {
+        CatalogSyncClient client = new CatalogSyncClient(endpoint());
+        MemoryCatalog catalog = new MemoryCatalog();
+        client.sync(catalog);
+        assertEquals(1, catalog.version);
+
+        serverVersion = 2;
+        brokenBody = "{\"version\": 2, \"products\": [{\"id\": \"p5\", \"name\": \"Ряженка\", \"section\": \"s9\"},"
+                + " {\"id\": \"p6\", \"name\": \"Снежок\", \"section\": \"s1\"}]}";
+        CatalogSyncClient.Result result = client.sync(catalog);
+        assertTrue(result.isModified());
+        assertEquals(1, result.getUpsertedProducts());
+        assertEquals(1, result.getSkippedProducts());
+        assertFalse(catalog.products.containsKey("p5"));
+        assertTrue(catalog.products.containsKey("p6"));
+        assertEquals(1, catalog.version);
+        assertEquals("\"v1\"", catalog.etag);
+
+        // Раздел появился на сервере: дельта запрашивается с прежней версии и применяется целиком
+        brokenBody = "{\"version\": 2, \"sections\": [{\"id\": \"s9\", \"name\": \"Молочные\", \"x\": 1, \"y\": 2}],"
+                + " \"products\": [{\"id\": \"p5\", \"name\": \"Ряженка\", \"section\": \"s9\"}]}";
+        result = client.sync(catalog);
+        assertEquals(0, result.getSkippedProducts());
+        assertTrue(catalog.products.containsKey("p5"));
+        assertEquals(2, catalog.version);
+        assertEquals("since=1 \"v1\"", requests.get(requests.size() - 1));
+    }
+
+    /**
+     * Тест на прерванную дельту: версия не меняется, применение прерывается.
+     */
+    @Test
+    public void testBrokenDeltaKeepsVersion() {
+        brokenBody = "{\"version\": 5, \"products\": [{\"id\": \"p1\", \"name\": \"Молоко\", \"section\": \"s1\"}, {\"id\": ";
+        MemoryCatalog catalog = new MemoryCatalog();
+        try {
+            new CatalogSyncClient(endpoint()).sync(catalog);
+            fail("Ожидалась ошибка разбора");
+        } catch (IOException expected) {
+            // Ожидаемая ошибка
+        }
+        assertTrue(catalog.aborted);
+        assertEquals(0, catalog.version);
+        assertNull(catalog.etag);
+    }
+
+    private String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/catalog";
+    }
+
+    /**
+     * Каталог в памяти: значения товаров хранятся строкой "название|раздел|синонимы".
+     */
+    private static final class MemoryCatalog implements CatalogStore {
+        final Map<String, String> sections = new HashMap<>();
+        final Map<String, String> products = new HashMap<>();
+        long version;
+        String etag;
+        boolean aborted;
+
+        @Override
+        public long getSyncVersion() {
+            return version;
+        }
+
+        @Override
+        public String getSyncEtag() {
+            return etag;
+        }
+
+        @Override
+        public CatalogDeltaHandler openDelta(final String responseEtag) {
+            return new CatalogDeltaHandler() {
+                private long deltaVersion;
+                private boolean skipped;
+
+                @Override
+                public void begin(long version, boolean fullSnapshot) {
+                    deltaVersion = version;
+                    if (fullSnapshot) {
+                        sections.clear();
+                        products.clear();
+                    }
+                }
+
+                @Override
+                public void upsertSection(String externalId, String name, float x, float y) {
+                    sections.put(externalId, name);
+                }
+
+                @Override
+                public void removeSection(String externalId) {
+                    sections.remove(externalId);
+                }
+
+                @Override
+                public boolean upsertProduct(String externalId, String name, String sectionExternalId,
+                                             List<String> aliases) {
+                    if (!sections.containsKey(sectionExternalId)) {
+                        skipped = true;
+                        return false;
+                    }
+                    products.put(externalId, name + "|" + sectionExternalId + "|" + aliases);
+                    return true;
+                }
+
+                @Override
+                public void removeProduct(String externalId) {
+                    products.remove(externalId);
+                }
+
+                @Override
+                public void end() {
+                    if (!skipped) {
+                        version = deltaVersion;
+                        etag = responseEtag;
+                    }
+                }
+
+                @Override
+                public void abort() {
+                    aborted = true;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.storefinder.tracing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты журнала трассировки и его сводки.
+ */
+public class TraceSummaryTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("trace").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        Tracer.setSink(null);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Тест на процентили этапов и сквозную задержку по видам действий.
+     */
+    @Test
+    public void testStagePercentilesAndEndToEnd() {
+        TraceSummary summary = new TraceSummary();
+        for (int i = 1; i <= 100; i++) {
+            long start = i * 100000L;
+            // Поиск: 1..100 мс на запрос и 2 мс на обновление списка после него
+            summary.addLine("0\t" + i + "\tsearch.query\t" + start + "\t" + i * 1000);
+            summary.addLine("0\t" + i + "\tsearch.adapter_update\t" + (start + i * 1000) + "\t2000");
+        }
+        summary.addLine("0\t1000\thighlight.set_image\t0\t500");
+        summary.addLine("битая строка");
+        summary.addLine("# комментарий");
+
+        TraceSummary.Stats query = summary.stage("search.query");
+        assertEquals(100, query.getCount());
+        assertEquals(50000, query.getP50Micros());
+        assertEquals(95000, query.getP95Micros());
+        assertEquals(99000, query.getP99Micros());
+        assertEquals(100000, query.getMaxMicros());
+
+        TraceSummary.Stats search = summary.endToEnd("search");
+        assertEquals(100, search.getCount());
+        assertEquals(52000, search.getP50Micros());
+        assertEquals(102000, search.getMaxMicros());
+        assertEquals(1, summary.endToEnd("highlight").getCount());
+        assertNull(summary.endToEnd("sync"));
+        assertEquals(1, summary.getMalformedLines());
+
+        String report = summary.format();
+        assertTrue(report.contains("search.adapter_update"));
+        assertTrue(report.contains("e2e.search"));
+    }
+
+    /**
+     * Тест на ротацию журнала: хранится не больше заданного числа файлов,
+     * а сводка читает все оставшиеся файлы каталога.
+     */
+    @Test
+    public void testLogRotation() throws IOException {
+        TraceLog log = new TraceLog(directory, 1024, 3);
+        Tracer.setSink(log);
+        for (int i = 0; i < 500; i++) {
+            long interaction = Tracer.newInteraction();
+            Span span = Tracer.begin(interaction, "highlight.draw");
+            span.end();
+            span.end();
+        }
+        log.close();
+
+        List<File> files = log.getFiles();
+        assertEquals(3, files.size());
+        assertEquals(TraceLog.FILE_NAME, files.get(files.size() - 1).getName());
+        for (File file : files) {
+            assertTrue(file.length() <= 1024 + 100);
+        }
+
+        TraceSummary summary = new TraceSummary();
+        summary.readFile(directory);
+        int kept = summary.stage("highlight.draw").getCount();
+        assertTrue(kept > 0 && kept < 500);
+        assertEquals(kept, summary.endToEnd("highlight").getCount());
+        assertEquals(0, summary.getMalformedLines());
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    /**
+     * Тест на выключенную трассировку: участки не создаются.
+     */
+    @Test
+    public void testDisabledTracer() {
+        assertEquals(0, Tracer.newInteraction());
+        assertSame(Span.NONE, Tracer.begin(0, "search.query"));
+        assertSame(Span.NONE, Tracer.begin(42, "search.query"));
+    }
+}
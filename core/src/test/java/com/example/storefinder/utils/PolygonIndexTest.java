@@ -0,0 +1,70 @@
+package com.example.storefinder.utils;
+
+import com.example.storefinder.models.SectionRegistry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты поиска контура по точке.
+ */
+public class PolygonIndexTest {
+
+    /**
+     * Тест на невыпуклый контур: точка в вырезе буквы "П" не принадлежит ему.
+     */
+    @Test
+    public void testConcavePolygon() {
+        float[] shape = {0, 0, 30, 0, 30, 30, 20, 30, 20, 10, 10, 10, 10, 30, 0, 30};
+        assertTrue(PolygonIndex.contains(shape, 5, 25));
+        assertTrue(PolygonIndex.contains(shape, 15, 5));
+        assertFalse(PolygonIndex.contains(shape, 15, 25));
+        assertFalse(PolygonIndex.contains(shape, 35, 5));
+    }
+
+    /**
+     * Тест на сетку стеллажей: поиск по индексу совпадает с полным перебором,
+     * разделы без контура пропускаются.
+     */
+    @Test
+    public void testIndexMatchesBruteForce() {
+        int count = 400;
+        float[][] polygons = new float[count + 1][];
+        for (int i = 0; i < count; i++) {
+            float left = (i % 20) * 100;
+            float top = (i / 20) * 50;
+            // Треугольник в нижней левой половине ячейки 80 x 40
+            polygons[i] = new float[]{left, top, left + 80, top + 40, left, top + 40};
+        }
+        PolygonIndex index = new PolygonIndex(polygons, count + 1);
+
+        for (float y = -5; y < 1010; y += 3.7f) {
+            for (float x = -5; x < 2010; x += 7.3f) {
+                int expected = PolygonIndex.NOT_FOUND;
+                for (int i = 0; i < count && expected == PolygonIndex.NOT_FOUND; i++) {
+                    if (PolygonIndex.contains(polygons[i], x, y)) expected = i;
+                }
+                assertEquals(expected, index.find(x, y));
+            }
+        }
+        assertEquals(PolygonIndex.NOT_FOUND, new PolygonIndex(new float[0][], 0).find(0, 0));
+    }
+
+    /**
+     * Тест на поиск раздела в реестре: контур точнее радиуса метки.
+     */
+    @Test
+    public void testRegistryFindsSectionByPolygon() {
+        SectionRegistry registry = new SectionRegistry(1, 4);
+        registry.put(10, "Хлеб", 50, 20, new float[]{0, 0, 100, 0, 100, 40, 0, 40});
+        registry.put(11, "Касса", 150, 20);
+        assertEquals(0, registry.findContaining(95, 35));
+        assertEquals(SectionRegistry.NOT_FOUND, registry.findContaining(150, 20));
+
+        // Индекс перестраивается после изменения контура
+        registry.put(11, "Касса", 150, 20, new float[]{120, 0, 180, 0, 180, 40, 120, 40});
+        assertEquals(1, registry.findContaining(150, 20));
+        assertNotNull(registry.toSection(1).getPolygon());
+    }
+}
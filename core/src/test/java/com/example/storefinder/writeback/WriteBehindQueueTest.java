@@ -0,0 +1,155 @@
+package com.example.storefinder.writeback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты очереди отложенной записи с групповой фиксацией.
+ */
+public class WriteBehindQueueTest {
+
+    /**
+     * Тест на групповую фиксацию: правки до flush() записываются одной транзакцией,
+     * а их результаты доступны только после фиксации.
+     */
+    @Test
+    public void testWritesCoalesceIntoOneTransaction() throws Exception {
+        FakeStore store = new FakeStore();
+        WriteBehindQueue queue = new WriteBehindQueue(store, 100, 60000);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(queue.submit(new Insert(store, "row" + i)));
+        }
+        queue.flush();
+
+        assertEquals(1, store.transactions);
+        assertEquals(10, store.committed.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(results.get(i).isDone());
+            assertEquals(i + 1, (long) results.get(i).get());
+        }
+        queue.close();
+    }
+
+    /**
+     * Тест на ошибку одной правки: пачка откатывается и повторяется по одной,
+     * остальные правки сохраняются.
+     */
+    @Test
+    public void testFailedWriteDoesNotLoseBatch() throws Exception {
+        FakeStore store = new FakeStore();
+        WriteBehindQueue queue = new WriteBehindQueue(store, 100, 60000);
+        Future<Long> first = queue.submit(new Insert(store, "first"));
+        Future<Long> broken = queue.submit(new Insert(store, null));
+        Future<Long> last = queue.submit(new Insert(store, "last"));
+        queue.flush();
+
+        assertEquals(2, store.committed.size());
+        assertEquals("first", store.committed.get(0));
+        assertEquals("last", store.committed.get(1));
+        assertEquals(1, (long) first.get());
+        assertEquals(2, (long) last.get());
+        try {
+            broken.get();
+            fail("Ожидалась ошибка правки");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        }
+        queue.close();
+    }
+
+    /**
+     * Тест на закрытие: отмененная правка не выполняется, остальные записываются при закрытии.
+     */
+    @Test
+    public void testCloseWritesRemainingAndSkipsCancelled() throws Exception {
+        FakeStore store = new FakeStore();
+        WriteBehindQueue queue = new WriteBehindQueue(store, 100, 60000);
+        Future<Long> cancelled = queue.submit(new Insert(store, "cancelled"));
+        Future<Long> kept = queue.submit(new Insert(store, "kept"));
+        assertTrue(cancelled.cancel(false));
+        queue.close();
+
+        assertEquals(1, store.committed.size());
+        assertEquals("kept", store.committed.get(0));
+        assertEquals(1, (long) kept.get());
+        try {
+            queue.submit(new Insert(store, "late"));
+            fail("Закрытая очередь не принимает правки");
+        } catch (IllegalStateException expected) {
+            // Ожидаемое исключение
+        }
+    }
+
+    /**
+     * Тест на запись без ожидания: requestFlush() не ждет фиксации, а его метка завершается
+     * после фиксации всех правок до нее, не дожидаясь интервала накопления.
+     */
+    @Test
+    public void testRequestFlushDoesNotWaitForInterval() throws Exception {
+        FakeStore store = new FakeStore();
+        WriteBehindQueue queue = new WriteBehindQueue(store, 100, 60000);
+        Future<Long> first = queue.submit(new Insert(store, "first"));
+        try {
+            first.get(50, TimeUnit.MILLISECONDS);
+            fail("Правка не должна фиксироваться до конца интервала");
+        } catch (TimeoutException expected) {
+            // Ожидаемое исключение
+        }
+        Future<Void> marker = queue.requestFlush();
+        marker.get(5, TimeUnit.SECONDS);
+
+        assertTrue(first.isDone());
+        assertEquals(1, (long) first.get());
+        assertFalse(first.cancel(false));
+        assertFalse(first.isCancelled());
+        queue.close();
+        assertTrue(queue.requestFlush().isDone());
+    }
+
+    /**
+     * Хранилище строк с откатом незафиксированных вставок.
+     */
+    private static final class FakeStore implements WriteStore {
+        final List<String> committed = new ArrayList<>();
+        final List<String> staged = new ArrayList<>();
+        int transactions;
+
+        @Override
+        public void runInTransaction(Runnable body) {
+            staged.clear();
+            staged.addAll(committed);
+            body.run();
+            committed.clear();
+            committed.addAll(staged);
+            transactions++;
+        }
+    }
+
+    private static final class Insert extends WriteBehindQueue.Write<Long> {
+        final FakeStore store;
+        final String value;
+
+        Insert(FakeStore store, String value) {
+            this.store = store;
+            this.value = value;
+        }
+
+        @Override
+        protected Long apply() {
+            if (value == null) {
+                throw new IllegalArgumentException("Пустое значение");
+            }
+            store.staged.add(value);
+            return (long) store.staged.size();
+        }
+    }
+}